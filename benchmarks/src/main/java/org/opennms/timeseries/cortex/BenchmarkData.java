@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+/**
+ * Generates metrics, samples and query results shaped like the ones OpenNMS produces.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static Metric metric(final int node, final int index) {
+        final String resourceId = String.format("snmp:fs:NODES:node%d:interfaceSnmp:eth%d-0050569a%04x", node, index, index);
+        return ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, resourceId)
+                .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+                .metaTag("mtype", Metric.Mtype.counter.name())
+                .metaTag("_idx0", "(snmp,5)")
+                .metaTag("_idx1", String.format("(snmp:fs:NODES:node%d,5)", node))
+                .metaTag("_idx2", String.format("(snmp:fs:NODES:node%d:interfaceSnmp,5)", node))
+                .metaTag("_idx2w", String.format("(snmp:fs:NODES:node%d,*)", node))
+                .metaTag("_idx3", String.format("(%s,5)", resourceId))
+                .metaTag("node", "node" + node)
+                .metaTag("location", "Default")
+                .metaTag("ifDescr", "eth" + index)
+                .externalTag("ifAlias", "uplink " + index)
+                .build();
+    }
+
+    static List<Sample> samples(final int count) {
+        final Instant now = Instant.now();
+        final List<Sample> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            samples.add(ImmutableSample.builder()
+                    .metric(metric(i / 20, i % 20))
+                    .time(now.minusSeconds(count - i))
+                    .value((double) i)
+                    .build());
+        }
+        return samples;
+    }
+
+    static JSONObject labels(final Metric metric) {
+        final JSONObject labels = new JSONObject();
+        metric.getIntrinsicTags().forEach(t -> labels.put(IntrinsicTagNames.name.equals(t.getKey()) ? CortexTSS.METRIC_NAME_LABEL : t.getKey(), t.getValue()));
+        metric.getMetaTags().forEach(t -> labels.put(t.getKey(), t.getValue()));
+        return labels;
+    }
+
+    static String rangeQueryResult(final int series, final int samplesPerSeries) {
+        final long start = Instant.now().getEpochSecond() - samplesPerSeries;
+        final JSONArray result = new JSONArray();
+        for (int s = 0; s < series; s++) {
+            final JSONArray values = new JSONArray();
+            for (int i = 0; i < samplesPerSeries; i++) {
+                values.put(new JSONArray().put(start + i).put(Double.toString(i * 1.5d)));
+            }
+            result.put(new JSONObject()
+                    .put("metric", labels(metric(s / 20, s % 20)))
+                    .put("values", values));
+        }
+        return new JSONObject()
+                .put("status", "success")
+                .put("data", new JSONObject()
+                        .put("resultType", "matrix")
+                        .put("result", result))
+                .toString();
+    }
+
+    static String seriesQueryResult(final int series) {
+        final JSONArray data = new JSONArray();
+        for (int s = 0; s < series; s++) {
+            data.put(labels(metric(s / 20, s % 20)));
+        }
+        return new JSONObject()
+                .put("status", "success")
+                .put("data", data)
+                .toString();
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.StorageException;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import com.codahale.metrics.Snapshot;
+
+/**
+ * Pushes samples at a configurable rate through {@link CortexTSS} into a {@link MockCortexServer} and reports the
+ * achieved throughput, the write latencies and the number of lost samples.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar org.opennms.timeseries.cortex.LoadTestDriver [option=value ...]
+ * <ul>
+ *     <li>rate: samples per second to offer (default 50000)</li>
+ *     <li>duration: seconds to run (default 30)</li>
+ *     <li>batchSize: samples per store() call (default 1000)</li>
+ *     <li>series: number of distinct series (default 10000)</li>
+ *     <li>latencyMs: latency injected by the server (default 0)</li>
+ *     <li>failureRate: fraction of requests the server fails (default 0)</li>
+ *     <li>failureStatus: status code of the failed requests (default 503)</li>
+ *     <li>maxConcurrentHttpConnections: passed to the plugin config (default 100)</li>
+ * </ul>
+ */
+public class LoadTestDriver {
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Expected option=value but got: " + arg);
+            }
+            options.put(keyValue[0], keyValue[1]);
+        }
+        final int rate = Integer.parseInt(options.getOrDefault("rate", "50000"));
+        final int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        final int batchSize = Integer.parseInt(options.getOrDefault("batchSize", "1000"));
+        final int seriesCount = Integer.parseInt(options.getOrDefault("series", "10000"));
+        final long latencyMs = Long.parseLong(options.getOrDefault("latencyMs", "0"));
+        final double failureRate = Double.parseDouble(options.getOrDefault("failureRate", "0"));
+        final int failureStatus = Integer.parseInt(options.getOrDefault("failureStatus", "503"));
+        final int maxConnections = Integer.parseInt(options.getOrDefault("maxConcurrentHttpConnections", "100"));
+
+        final List<Metric> metrics = new ArrayList<>(seriesCount);
+        for (int i = 0; i < seriesCount; i++) {
+            metrics.add(BenchmarkData.metric(i / 20, i % 20));
+        }
+
+        try (MockCortexServer server = new MockCortexServer()
+                .withLatency(Duration.ofMillis(latencyMs))
+                .withFailures(failureRate, failureStatus)) {
+            final CortexTSS tss = new CortexTSS(CortexTSSConfig.builder()
+                    .writeUrl(server.getWriteUrl())
+                    .readUrl(server.getReadUrl())
+                    .maxConcurrentHttpConnections(maxConnections)
+                    .jmxReporterEnabled(false)
+                    .build(), new KVStoreMock());
+
+            System.out.printf("Offering %d samples/s in batches of %d over %d series for %ds%n", rate, batchSize, seriesCount, duration);
+            final long batchIntervalNanos = TimeUnit.SECONDS.toNanos(1) * batchSize / rate;
+            final long startNanos = System.nanoTime();
+            final long endNanos = startNanos + TimeUnit.SECONDS.toNanos(duration);
+            long nextBatchNanos = startNanos;
+            long offered = 0;
+            int seriesIndex = 0;
+            while (System.nanoTime() < endNanos) {
+                final Instant now = Instant.now();
+                final List<Sample> batch = new ArrayList<>(batchSize);
+                for (int i = 0; i < batchSize; i++) {
+                    batch.add(ImmutableSample.builder()
+                            .metric(metrics.get(seriesIndex))
+                            .time(now)
+                            .value((double) offered + i)
+                            .build());
+                    seriesIndex = (seriesIndex + 1) % seriesCount;
+                }
+                try {
+                    tss.store(batch);
+                } catch (StorageException e) {
+                    System.err.println("store() failed: " + e.getMessage());
+                }
+                offered += batchSize;
+                nextBatchNanos += batchIntervalNanos;
+                final long sleepNanos = nextBatchNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+            }
+            final long offerNanos = System.nanoTime() - startNanos;
+
+            // wait for the in-flight writes
+            final long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (tss.getMetrics().meter("samplesWritten").getCount() + tss.getMetrics().meter("samplesLost").getCount() < offered
+                    && System.nanoTime() < drainDeadline) {
+                Thread.sleep(100);
+            }
+            final long totalNanos = System.nanoTime() - startNanos;
+
+            final long written = tss.getMetrics().meter("samplesWritten").getCount();
+            final long lost = tss.getMetrics().meter("samplesLost").getCount();
+            final Snapshot latency = tss.getMetrics().timer("write.latency").getSnapshot();
+            System.out.printf("Offered:    %d samples (%.0f samples/s)%n", offered, offered / (offerNanos / 1e9));
+            System.out.printf("Written:    %d samples (%.0f samples/s)%n", written, written / (totalNanos / 1e9));
+            System.out.printf("Lost:       %d samples (%.2f%%)%n", lost, offered == 0 ? 0.0d : 100.0d * lost / offered);
+            System.out.printf("Received:   %d samples in %d requests, %d requests failed by the server%n",
+                    server.getSamplesReceived(), server.getWriteRequestsReceived(), server.getRequestsFailed());
+            System.out.printf("Latency ms: p50=%.1f p95=%.1f p99=%.1f max=%.1f%n",
+                    latency.getMedian() / 1e6, latency.get95thPercentile() / 1e6, latency.get99thPercentile() / 1e6, latency.getMax() / 1e6);
+            tss.destroy();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+
+/**
+ * Measures the parsing of large /query_range and /series responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultMapperBenchmark {
+
+    @Param({"1", "20"})
+    public int series;
+
+    @Param({"1200", "11000"})
+    public int samplesPerSeries;
+
+    private String rangeQueryResult;
+    private String seriesQueryResult;
+    private Metric metric;
+    private KVStoreMock kvStore;
+
+    @Setup
+    public void setUp() {
+        rangeQueryResult = BenchmarkData.rangeQueryResult(series, samplesPerSeries);
+        // the number of series a wide findMetrics() returns
+        seriesQueryResult = BenchmarkData.seriesQueryResult(series * 500);
+        metric = BenchmarkData.metric(0, 0);
+        kvStore = new KVStoreMock();
+    }
+
+    @Benchmark
+    public List<Sample> fromRangeQueryResult() {
+        return ResultMapper.fromRangeQueryResult(rangeQueryResult, metric);
+    }
+
+    @Benchmark
+    public List<Metric> fromSeriesQueryResult() {
+        return ResultMapper.fromSeriesQueryResult(seriesQueryResult, kvStore);
+    }
+}
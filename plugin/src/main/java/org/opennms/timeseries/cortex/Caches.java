@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Tag;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Builds the metric and external tags caches. They are Caffeine caches: the W-TinyLFU admission policy keeps the
+ * frequently used entries when a wide findMetrics() passes many entries used only once through the cache,
+ * and they can be bounded by the estimated size of their entries in bytes rather than by their number.
+ */
+final class Caches {
+
+    // Rough estimates of the memory used, assuming compressed oops and compact (latin-1) strings
+    private static final int ENTRY_BYTES = 64; // cache node and hash table slot
+    private static final int OBJECT_BYTES = 16;
+    private static final int STRING_BYTES = 40; // string object and array header
+    private static final int TAG_BYTES = 56; // tag object and its slot in the set of tags
+
+    // Refreshes running at once and waiting to run, further ones are skipped while the executor is saturated
+    static final int REFRESH_THREADS = 2;
+    static final int REFRESH_QUEUE_SIZE = 1000;
+
+    /** Reloads the value of an entry, returns null if it doesn't exist anymore. */
+    @FunctionalInterface
+    interface Reloader<V> {
+        V reload(V oldValue) throws Exception;
+    }
+
+    private Caches() {
+    }
+
+    /**
+     * Returns a builder for a cache with at most maxBytes (estimated by the given function for the values),
+     * or maxEntries entries if maxBytes is 0. Statistics are recorded, see {@link #registerMetrics}.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> Caffeine<String, V> newBuilder(final long maxBytes, final long maxEntries, final ToIntFunction<V> valueBytes) {
+        final Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (maxBytes > 0) {
+            return builder.maximumWeight(maxBytes)
+                    .weigher((String key, V value) -> ENTRY_BYTES + estimateBytes(key) + valueBytes.applyAsInt(value));
+        }
+        return (Caffeine<String, V>) (Caffeine<?, ?>) builder.maximumSize(maxEntries);
+    }
+
+    /**
+     * A loader for caches that are filled with put(), entries due to be refreshed are reloaded with the given reloader.
+     * If the executor rejects the refresh, the entry keeps its value until it is due again.
+     */
+    static <V> CacheLoader<String, V> reloadingWith(final Reloader<V> reloader) {
+        return new CacheLoader<>() {
+            @Override
+            public V load(final String key) {
+                return null;
+            }
+
+            @Override
+            public V reload(final String key, final V oldValue) throws Exception {
+                return reloader.reload(oldValue);
+            }
+
+            @Override
+            public CompletableFuture<? extends V> asyncReload(final String key, final V oldValue, final Executor executor) throws Exception {
+                try {
+                    return CacheLoader.super.asyncReload(key, oldValue, executor);
+                } catch (RejectedExecutionException e) {
+                    return CompletableFuture.completedFuture(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * A bounded executor for the refreshes of a cache: they block on calls to Cortex and must not run in the common
+     * pool. Its daemon threads have the given name.
+     */
+    static ExecutorService newRefreshExecutor(final String threadName) {
+        return new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE), runnable -> {
+                    final Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    static int estimateBytes(final String s) {
+        return s == null ? 0 : STRING_BYTES + s.length();
+    }
+
+    static int estimateBytes(final Metric metric) {
+        int bytes = OBJECT_BYTES * 4; // the metric and its sets of tags
+        for (Tag tag : metric.getIntrinsicTags()) {
+            bytes += TAG_BYTES + estimateBytes(tag.getKey()) + estimateBytes(tag.getValue());
+        }
+        for (Tag tag : metric.getMetaTags()) {
+            bytes += TAG_BYTES + estimateBytes(tag.getKey()) + estimateBytes(tag.getValue());
+        }
+        for (Tag tag : metric.getExternalTags()) {
+            bytes += TAG_BYTES + estimateBytes(tag.getKey()) + estimateBytes(tag.getValue());
+        }
+        return bytes;
+    }
+
+    /**
+     * Registers the statistics of the cache as gauges named &lt;name&gt;.hits, .misses, .hitRate, .evictions, .size and
+     * .estimatedBytes. The cache is looked up on every read since it is replaced when reconfigured.
+     */
+    static void registerMetrics(final MetricRegistry metrics, final String name, final Supplier<? extends Cache<?, ?>> cache) {
+        metrics.register(MetricRegistry.name(name, "hits"), (Gauge<Long>) () -> cache.get().stats().hitCount());
+        metrics.register(MetricRegistry.name(name, "misses"), (Gauge<Long>) () -> cache.get().stats().missCount());
+        metrics.register(MetricRegistry.name(name, "hitRate"), (Gauge<Double>) () -> cache.get().stats().hitRate());
+        metrics.register(MetricRegistry.name(name, "evictions"), (Gauge<Long>) () -> cache.get().stats().evictionCount());
+        metrics.register(MetricRegistry.name(name, "size"), (Gauge<Long>) () -> cache.get().estimatedSize());
+        metrics.register(MetricRegistry.name(name, "estimatedBytes"), (Gauge<Long>) () -> cache.get().policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L));
+    }
+}
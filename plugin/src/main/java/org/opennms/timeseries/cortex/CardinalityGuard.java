@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.Tag;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Tracks the active series and the number of distinct values per label, and enforces the limits of
+ * {@link CortexTSSConfig#getMaxActiveSeries()} and {@link CortexTSSConfig#getMaxLabelValues()} before the samples are
+ * serialized.
+ *
+ * A series is active if it got a sample within the current or the last window of
+ * {@link CortexTSSConfig#getCardinalityWindowInMs()}. Each window has a bloom filter of the series seen and
+ * HyperLogLogs counting the series and the values of each label, so the memory used doesn't grow with the number of
+ * series. Samples of series already seen in the window only cost a hash and a bloom filter lookup.
+ *
+ * The limits only apply to new series, series of the last window keep being accepted:
+ * - above the maximum number of active series, the samples of new series are dropped
+ * - a new series with a label above the maximum number of values is dropped, or with
+ *   {@link CortexTSSConfig.CardinalityLimitAction#RELABEL} written with the label value {@value #OVERFLOW_VALUE}
+ *   instead. The metric name is never relabeled.
+ */
+public final class CardinalityGuard {
+
+    public static final String OVERFLOW_VALUE = "__overflow__";
+
+    static final String METRIC_PREFIX = "cardinality";
+    static final int SERIES_PRECISION = 14;
+    static final int LABEL_PRECISION = 12;
+    // Stop tracking new label names beyond that, meta tag names should be few
+    static final int MAX_TRACKED_LABELS = 1000;
+    static final int MIN_EXPECTED_SERIES = 1_000_000;
+    private static final double BLOOM_FALSE_POSITIVE_PROBABILITY = 0.01d;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final LongSupplier clock;
+    private final Map<String, LongAdder> limitedSamplesByLabel = new ConcurrentHashMap<>();
+    private final Meter samplesDropped;
+    private final Meter samplesRelabeled;
+
+    private volatile CortexTSSConfig config;
+    private volatile Window current;
+    private volatile Window previous;
+
+    CardinalityGuard(final CortexTSSConfig config, final MetricRegistry metrics) {
+        this(config, metrics, System::currentTimeMillis);
+    }
+
+    CardinalityGuard(final CortexTSSConfig config, final MetricRegistry metrics, final LongSupplier clock) {
+        this.config = Objects.requireNonNull(config);
+        this.clock = clock;
+        this.current = new Window(clock.getAsLong(), config, 0);
+        this.samplesDropped = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "samplesDropped"));
+        this.samplesRelabeled = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "samplesRelabeled"));
+        metrics.register(MetricRegistry.name(METRIC_PREFIX, "activeSeries"), (Gauge<Long>) this::getActiveSeries);
+    }
+
+    /** The new limits apply right away, the window and the bloom filter size with the next window. */
+    void setConfig(final CortexTSSConfig config) {
+        this.config = Objects.requireNonNull(config);
+    }
+
+    /**
+     * Returns the sample to write: the given one, a relabeled one or null if it is to be dropped.
+     */
+    Sample check(final Sample sample, final String tenant) {
+        final CortexTSSConfig config = this.config;
+        final Window window = getCurrentWindow(config);
+        final Metric metric = sample.getMetric();
+        final long seriesHash = HASH.newHasher()
+                .putUnencodedChars(tenant)
+                .putByte((byte) 0)
+                .putUnencodedChars(metric.getKey())
+                .hash().asLong();
+        if (window.series.mightContain(seriesHash)) {
+            return sample;
+        }
+        final Window previous = this.previous;
+        final boolean isNew = previous == null || !previous.series.mightContain(seriesHash);
+        // the series of the last window not seen again yet are still active, they count right after the window rolled over
+        if (isNew && config.getMaxActiveSeries() > 0
+                && Math.max(window.previousSeries, window.seriesCount.estimate()) >= config.getMaxActiveSeries()) {
+            samplesDropped.mark();
+            return null;
+        }
+        final String offendingLabel = trackLabels(window, metric, isNew ? config.getMaxLabelValues() : 0);
+        if (offendingLabel == null) {
+            window.series.put(seriesHash);
+            window.seriesCount.add(seriesHash);
+            return sample;
+        }
+        // not remembered as seen, the following samples of the series are checked again
+        limitedSamplesByLabel.computeIfAbsent(offendingLabel, label -> new LongAdder()).increment();
+        if (config.getCardinalityLimitAction() == CortexTSSConfig.CardinalityLimitAction.RELABEL
+                && !IntrinsicTagNames.name.equals(offendingLabel)) {
+            samplesRelabeled.mark();
+            return relabel(sample, offendingLabel);
+        }
+        samplesDropped.mark();
+        return null;
+    }
+
+    /** Counts the label values of the metric, returns the first label above the given limit or null. */
+    private static String trackLabels(final Window window, final Metric metric, final long maxLabelValues) {
+        String offendingLabel = null;
+        for (Tag tag : metric.getIntrinsicTags()) {
+            offendingLabel = trackLabel(window, tag, maxLabelValues, offendingLabel);
+        }
+        for (Tag tag : metric.getMetaTags()) {
+            offendingLabel = trackLabel(window, tag, maxLabelValues, offendingLabel);
+        }
+        return offendingLabel;
+    }
+
+    private static String trackLabel(final Window window, final Tag tag, final long maxLabelValues, final String offendingLabel) {
+        HyperLogLog values = window.labelValues.get(tag.getKey());
+        if (values == null) {
+            if (window.labelValues.size() >= MAX_TRACKED_LABELS) {
+                return offendingLabel;
+            }
+            values = window.labelValues.computeIfAbsent(tag.getKey(), key -> new HyperLogLog(LABEL_PRECISION));
+        }
+        values.add(HASH.hashUnencodedChars(tag.getValue()).asLong());
+        if (offendingLabel == null && maxLabelValues > 0 && values.estimate() > maxLabelValues) {
+            return tag.getKey();
+        }
+        return offendingLabel;
+    }
+
+    private static Sample relabel(final Sample sample, final String label) {
+        final ImmutableMetric.MetricBuilder metric = ImmutableMetric.builder();
+        sample.getMetric().getIntrinsicTags().forEach(tag -> metric.intrinsicTag(tag.getKey(), label.equals(tag.getKey()) ? OVERFLOW_VALUE : tag.getValue()));
+        sample.getMetric().getMetaTags().forEach(tag -> metric.metaTag(tag.getKey(), label.equals(tag.getKey()) ? OVERFLOW_VALUE : tag.getValue()));
+        metric.externalTags(sample.getMetric().getExternalTags());
+        return ImmutableSample.builder()
+                .metric(metric.build())
+                .time(sample.getTime())
+                .value(sample.getValue())
+                .build();
+    }
+
+    private Window getCurrentWindow(final CortexTSSConfig config) {
+        final Window window = this.current;
+        final long now = clock.getAsLong();
+        if (now - window.start < config.getCardinalityWindowInMs()) {
+            return window;
+        }
+        synchronized (this) {
+            if (this.current == window) {
+                // a window without samples in between doesn't count as last window
+                this.previous = now - window.start < 2 * config.getCardinalityWindowInMs() ? window : null;
+                this.current = new Window(now, config, this.previous == null ? 0 : window.seriesCount.estimate());
+            }
+            return this.current;
+        }
+    }
+
+    /** Estimated number of series with samples in the current or last window. */
+    public long getActiveSeries() {
+        final Window current = getCurrentWindow(config);
+        final Window previous = this.previous;
+        return previous == null ? current.seriesCount.estimate() : HyperLogLog.estimateUnion(current.seriesCount, previous.seriesCount);
+    }
+
+    /** The labels with the most distinct values in the current and last window, most values first. */
+    public List<LabelCardinality> getTopLabels(final int limit) {
+        final Window current = getCurrentWindow(config);
+        final Window previous = this.previous;
+        final List<LabelCardinality> labels = new ArrayList<>();
+        current.labelValues.forEach((label, values) -> {
+            final HyperLogLog previousValues = previous == null ? null : previous.labelValues.get(label);
+            labels.add(new LabelCardinality(label,
+                    previousValues == null ? values.estimate() : HyperLogLog.estimateUnion(values, previousValues),
+                    getLimitedSamples(label)));
+        });
+        if (previous != null) {
+            previous.labelValues.forEach((label, values) -> {
+                if (!current.labelValues.containsKey(label)) {
+                    labels.add(new LabelCardinality(label, values.estimate(), getLimitedSamples(label)));
+                }
+            });
+        }
+        return labels.stream()
+                .sorted(Comparator.comparingLong(LabelCardinality::getValues).reversed()
+                        .thenComparing(LabelCardinality::getLabel))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private long getLimitedSamples(final String label) {
+        final LongAdder limited = limitedSamplesByLabel.get(label);
+        return limited == null ? 0 : limited.sum();
+    }
+
+    private static final class Window {
+        final long start;
+        final BloomFilter<Long> series;
+        final HyperLogLog seriesCount = new HyperLogLog(SERIES_PRECISION);
+        final Map<String, HyperLogLog> labelValues = new ConcurrentHashMap<>();
+        // estimated series of the last window, taken when this one started
+        final long previousSeries;
+
+        Window(final long start, final CortexTSSConfig config, final long previousSeries) {
+            this.start = start;
+            this.previousSeries = previousSeries;
+            this.series = BloomFilter.create(Funnels.longFunnel(),
+                    Math.max(config.getMaxActiveSeries(), MIN_EXPECTED_SERIES), BLOOM_FALSE_POSITIVE_PROBABILITY);
+        }
+    }
+
+    public static final class LabelCardinality {
+        private final String label;
+        private final long values;
+        private final long limitedSamples;
+
+        LabelCardinality(final String label, final long values, final long limitedSamples) {
+            this.label = label;
+            this.values = values;
+            this.limitedSamples = limitedSamples;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /** Estimated number of distinct values. */
+        public long getValues() {
+            return values;
+        }
+
+        /** Number of samples dropped or relabeled because of this label since the start. */
+        public long getLimitedSamples() {
+            return limitedSamples;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Maps keys to nodes by consistent hashing: each node is placed on the ring at several points (virtual nodes) and a
+ * key belongs to the first node at or after its own hash. Adding or removing a node only moves the keys of that node.
+ * The ring is immutable, lookups are a binary search over a sorted array and do not allocate beyond hashing the key.
+ */
+final class ConsistentHashRing<T> {
+
+    static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32_fixed();
+
+    private final int[] hashes;
+    private final Object[] nodes;
+
+    /**
+     * @param nodes the nodes on the ring, the string representation of a node determines its position
+     */
+    ConsistentHashRing(final List<T> nodes, final int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one node is required.");
+        }
+        final long[] points = new long[nodes.size() * virtualNodes];
+        int i = 0;
+        for (int nodeIndex = 0; nodeIndex < nodes.size(); nodeIndex++) {
+            final String name = Objects.requireNonNull(nodes.get(nodeIndex)).toString();
+            for (int v = 0; v < virtualNodes; v++) {
+                // high 32 bits: position on the ring, low 32 bits: index of the node
+                points[i++] = ((long) hash(name + "#" + v) << 32) | nodeIndex;
+            }
+        }
+        Arrays.sort(points);
+        this.hashes = new int[points.length];
+        this.nodes = new Object[points.length];
+        for (i = 0; i < points.length; i++) {
+            this.hashes[i] = (int) (points[i] >> 32);
+            this.nodes[i] = nodes.get((int) points[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(final String key) {
+        int index = Arrays.binarySearch(hashes, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return (T) nodes[index == hashes.length ? 0 : index];
+    }
+
+    private static int hash(final String key) {
+        return HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asInt();
+    }
+}
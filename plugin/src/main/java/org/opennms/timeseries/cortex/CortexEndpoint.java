@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+
+/**
+ * A single Cortex / Mimir url with its own HTTP client (connection pool and dispatcher), metrics and health state.
+ * The metrics are registered as "endpoints.&lt;role&gt;.&lt;host_port_path&gt;.*", e.g. "endpoints.write.cortex1_9009_api_prom_push.latency",
+ * so endpoints behind the same gateway have their own metrics.
+ * An endpoint is considered unhealthy for the retry interval after a failed call, a successful call makes it healthy again.
+ */
+final class CortexEndpoint {
+    private static final Logger LOG = LoggerFactory.getLogger(CortexEndpoint.class);
+
+    static final String METRIC_PREFIX = "endpoints";
+    private static final Pattern NON_NAME_CHARS = Pattern.compile("[^a-zA-Z0-9_-]");
+
+    private final String url;
+    private final String name;
+    private final MetricRegistry metrics;
+    private final OkHttpClient client;
+    private final long retryIntervalInMs;
+    private final Timer latency;
+    private final Meter failures;
+    private volatile long unhealthyUntilMs = 0;
+    // calls that picked this endpoint, including the ones still waiting for a bulkhead
+    private final AtomicInteger pendingCalls = new AtomicInteger();
+
+    CortexEndpoint(final String role, final String url, final CortexTSSConfig config, final MetricRegistry metrics) {
+        this.url = url;
+        this.metrics = metrics;
+        this.retryIntervalInMs = config.getEndpointRetryIntervalInMs();
+        final HttpUrl httpUrl = HttpUrl.get(url);
+        this.name = MetricRegistry.name(METRIC_PREFIX, role, toName(httpUrl));
+
+        final int maxThreads = config.getMaxConcurrentHttpConnections();
+        final ConnectionPool connectionPool = new ConnectionPool(maxThreads, 5, TimeUnit.MINUTES);
+        final ExecutorService okHttpExecutor = Executors.newFixedThreadPool(maxThreads);
+        final Dispatcher dispatcher = new Dispatcher(okHttpExecutor);
+        dispatcher.setMaxRequests(maxThreads);
+        dispatcher.setMaxRequestsPerHost(maxThreads);
+        this.client = new OkHttpClient.Builder()
+                .readTimeout(config.getReadTimeoutInMs(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getWriteTimeoutInMs(), TimeUnit.MILLISECONDS)
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .build();
+
+        this.latency = metrics.timer(MetricRegistry.name(name, "latency"));
+        this.failures = metrics.meter(MetricRegistry.name(name, "failures"));
+        metrics.register(MetricRegistry.name(name, "connectionCount"), (Gauge<Integer>) () -> client.connectionPool().connectionCount());
+        metrics.register(MetricRegistry.name(name, "idleConnectionCount"), (Gauge<Integer>) () -> client.connectionPool().idleConnectionCount());
+        metrics.register(MetricRegistry.name(name, "queuedCallsCount"), (Gauge<Integer>) () -> client.dispatcher().queuedCallsCount());
+        metrics.register(MetricRegistry.name(name, "runningCallsCount"), (Gauge<Integer>) () -> client.dispatcher().runningCallsCount());
+        metrics.register(MetricRegistry.name(name, "healthy"), (Gauge<Integer>) () -> isHealthy() ? 1 : 0);
+    }
+
+    /** The host, port and path of the url, with all characters but letters, digits and dashes replaced by underscores. */
+    static String toName(final HttpUrl url) {
+        final String path = url.encodedPath().replaceAll("^/+|/+$", "");
+        final String name = url.host() + "_" + url.port() + (path.isEmpty() ? "" : "_" + path);
+        return NON_NAME_CHARS.matcher(name).replaceAll("_");
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    OkHttpClient getClient() {
+        return client;
+    }
+
+    boolean isHealthy() {
+        return System.currentTimeMillis() >= unhealthyUntilMs;
+    }
+
+    void callStarted() {
+        pendingCalls.incrementAndGet();
+    }
+
+    void callFinished() {
+        pendingCalls.decrementAndGet();
+    }
+
+    /**
+     * Records a call to this endpoint. A status code &lt; 0 denotes an I/O failure, those and 5xx / 429 responses mark
+     * the endpoint as unhealthy.
+     */
+    void recordCall(final int statusCode, final long durationInNanos) {
+        latency.update(durationInNanos, TimeUnit.NANOSECONDS);
+        if (isFailure(statusCode)) {
+            failures.mark();
+            unhealthyUntilMs = System.currentTimeMillis() + retryIntervalInMs;
+        } else {
+            unhealthyUntilMs = 0;
+        }
+    }
+
+    /** Failures another endpoint might not have, as opposed to client errors. */
+    static boolean isFailure(final int statusCode) {
+        return statusCode < 0 || statusCode >= 500 || statusCode == 429;
+    }
+
+    /** True if an endpoint created with either config would have the same client settings. */
+    static boolean hasSameClientSettings(final CortexTSSConfig config, final CortexTSSConfig otherConfig) {
+        return config.getMaxConcurrentHttpConnections() == otherConfig.getMaxConcurrentHttpConnections()
+                && config.getReadTimeoutInMs() == otherConfig.getReadTimeoutInMs()
+                && config.getWriteTimeoutInMs() == otherConfig.getWriteTimeoutInMs()
+                && config.getEndpointRetryIntervalInMs() == otherConfig.getEndpointRetryIntervalInMs();
+    }
+
+    void removeMetrics() {
+        final String prefix = name + ".";
+        metrics.removeMatching((metricName, metric) -> metricName.startsWith(prefix));
+    }
+
+    /**
+     * Lets the pending calls finish, waiting at most for the given timeout, and destroys the endpoint then.
+     * Must only be called once no new calls pick this endpoint anymore. Blocks the calling thread.
+     */
+    void drainAndDestroy(final Duration timeout) {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            // grace period for callers that picked the endpoint right before it was replaced
+            do {
+                Thread.sleep(100);
+            } while (isBusy() && System.nanoTime() < deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (isBusy()) {
+            LOG.warn("{} calls to {} still pending after {}, cancelling them.", pendingCalls.get(), url, timeout);
+        }
+        destroy();
+    }
+
+    private boolean isBusy() {
+        return pendingCalls.get() > 0 || client.dispatcher().runningCallsCount() > 0 || client.dispatcher().queuedCallsCount() > 0;
+    }
+
+    void destroy() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        client.dispatcher().cancelAll();
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToIntFunction;
+
+import com.codahale.metrics.MetricRegistry;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * The write and read endpoints for a config, see {@link CortexEndpoint}. Immutable, {@link CortexTSS} swaps the whole set
+ * when reconfigured.
+ * If the series are sharded over several clusters and there are several read urls, the read url at the position of a
+ * write url reads the same cluster, see {@link #getReadFor(String)}.
+ */
+final class CortexEndpoints {
+    static final String WRITE_ROLE = "write";
+    static final String READ_ROLE = "read";
+
+    private final List<CortexEndpoint> write;
+    private final List<CortexEndpoint> read;
+    // set if the samples are sharded over several write endpoints
+    private final ConsistentHashRing<CortexEndpoint> writeRing;
+    // write endpoint => read endpoint of its cluster, set if the reads are sharded as well
+    private final Map<CortexEndpoint, CortexEndpoint> readByShard;
+
+    private CortexEndpoints(final List<CortexEndpoint> write, final List<CortexEndpoint> read, final CortexTSSConfig config) {
+        this.write = List.copyOf(write);
+        this.read = List.copyOf(read);
+        if (write.size() > 1 && config.getWriteMode() == CortexTSSConfig.WriteMode.SHARD) {
+            this.writeRing = new ConsistentHashRing<>(this.write, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        } else {
+            this.writeRing = null;
+        }
+        if (writeRing != null && read.size() > 1) {
+            // same number of urls, see CortexTSSConfig
+            this.readByShard = new IdentityHashMap<>();
+            for (int i = 0; i < write.size(); i++) {
+                readByShard.put(this.write.get(i), this.read.get(i));
+            }
+        } else {
+            this.readByShard = null;
+        }
+    }
+
+    static CortexEndpoints create(final CortexTSSConfig config, final MetricRegistry metrics) {
+        final List<CortexEndpoint> write = new ArrayList<>();
+        for (String url : config.getWriteUrls()) {
+            write.add(new CortexEndpoint(WRITE_ROLE, url, config, metrics));
+        }
+        final List<CortexEndpoint> read = new ArrayList<>();
+        for (String url : config.getReadUrls()) {
+            read.add(new CortexEndpoint(READ_ROLE, url, config, metrics));
+        }
+        return new CortexEndpoints(write, read, config);
+    }
+
+    /**
+     * Creates the endpoints for the new config. Endpoints with the same url and client settings are taken over, including
+     * their connections and health state. The metrics of the others are removed, the caller has to drain them.
+     */
+    CortexEndpoints reconfigure(final CortexTSSConfig oldConfig, final CortexTSSConfig newConfig, final MetricRegistry metrics) {
+        final boolean sameClientSettings = CortexEndpoint.hasSameClientSettings(oldConfig, newConfig);
+        final List<CortexEndpoint> reused = new ArrayList<>();
+        if (sameClientSettings) {
+            write.stream().filter(e -> newConfig.getWriteUrls().contains(e.getUrl())).forEach(reused::add);
+            read.stream().filter(e -> newConfig.getReadUrls().contains(e.getUrl())).forEach(reused::add);
+        }
+        // before creating the new ones, which might use the same names
+        getAll().stream().filter(e -> !reused.contains(e)).forEach(CortexEndpoint::removeMetrics);
+
+        final List<CortexEndpoint> newWrite = new ArrayList<>();
+        for (String url : newConfig.getWriteUrls()) {
+            newWrite.add(find(reused, write, url).orElseGet(() -> new CortexEndpoint(WRITE_ROLE, url, newConfig, metrics)));
+        }
+        final List<CortexEndpoint> newRead = new ArrayList<>();
+        for (String url : newConfig.getReadUrls()) {
+            newRead.add(find(reused, read, url).orElseGet(() -> new CortexEndpoint(READ_ROLE, url, newConfig, metrics)));
+        }
+        return new CortexEndpoints(newWrite, newRead, newConfig);
+    }
+
+    private static Optional<CortexEndpoint> find(final List<CortexEndpoint> reused, final List<CortexEndpoint> endpoints, final String url) {
+        return endpoints.stream().filter(e -> e.getUrl().equals(url) && reused.contains(e)).findFirst();
+    }
+
+    /** Returns the endpoints of this set that are not part of the given one. */
+    List<CortexEndpoint> getRemovedIn(final CortexEndpoints other) {
+        final List<CortexEndpoint> otherEndpoints = other.getAll();
+        final List<CortexEndpoint> removed = new ArrayList<>();
+        for (CortexEndpoint endpoint : getAll()) {
+            if (!otherEndpoints.contains(endpoint)) {
+                removed.add(endpoint);
+            }
+        }
+        return removed;
+    }
+
+    List<CortexEndpoint> getAll() {
+        final List<CortexEndpoint> all = new ArrayList<>(write);
+        all.addAll(read);
+        return all;
+    }
+
+    List<CortexEndpoint> getWrite() {
+        return write;
+    }
+
+    List<CortexEndpoint> getRead() {
+        return read;
+    }
+
+    /** Null if the samples are not sharded. */
+    ConsistentHashRing<CortexEndpoint> getWriteRing() {
+        return writeRing;
+    }
+
+    /** True if every read endpoint reads a cluster holding only the shard of the series written to it. */
+    boolean isReadSharded() {
+        return readByShard != null;
+    }
+
+    /**
+     * The read endpoints to try for the series with the given key: the one of its cluster if the reads are sharded,
+     * otherwise all of them, see {@link #getReadInOrder()}.
+     */
+    List<CortexEndpoint> getReadFor(final String key) {
+        return readByShard == null ? getReadInOrder() : List.of(readByShard.get(writeRing.get(key)));
+    }
+
+    /** The read endpoints in the order they should be tried: the healthy ones first, each group in the configured order. */
+    List<CortexEndpoint> getReadInOrder() {
+        if (read.size() == 1) {
+            return read;
+        }
+        final List<CortexEndpoint> endpoints = new ArrayList<>(read.size());
+        final List<CortexEndpoint> unhealthyEndpoints = new ArrayList<>(read.size());
+        for (CortexEndpoint endpoint : read) {
+            (endpoint.isHealthy() ? endpoints : unhealthyEndpoints).add(endpoint);
+        }
+        endpoints.addAll(unhealthyEndpoints);
+        return endpoints;
+    }
+
+    int sum(final ToIntFunction<OkHttpClient> statistic) {
+        int sum = 0;
+        for (CortexEndpoint endpoint : write) {
+            sum += statistic.applyAsInt(endpoint.getClient());
+        }
+        for (CortexEndpoint endpoint : read) {
+            sum += statistic.applyAsInt(endpoint.getClient());
+        }
+        return sum;
+    }
+}
@@ -30,21 +30,33 @@ package org.opennms.timeseries.cortex;
 
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -62,6 +74,7 @@ import org.opennms.integration.api.v1.timeseries.Tag;
 import org.opennms.integration.api.v1.timeseries.TagMatcher;
 import org.opennms.integration.api.v1.timeseries.TimeSeriesFetchRequest;
 import org.opennms.integration.api.v1.timeseries.TimeSeriesStorage;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTagMatcher.TagMatcherBuilder;
 import org.opennms.timeseries.cortex.shaded.resilience4j.bulkhead.Bulkhead;
 import org.opennms.timeseries.cortex.shaded.resilience4j.bulkhead.BulkheadConfig;
@@ -70,23 +83,30 @@ import org.slf4j.LoggerFactory;
 import org.xerial.snappy.Snappy;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.google.common.cache.Cache;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.jmx.JmxReporter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
 import com.google.common.collect.Sets;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
 
 import okhttp3.Call;
 import okhttp3.Callback;
-import okhttp3.ConnectionPool;
-import okhttp3.Dispatcher;
+import okhttp3.FormBody;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import io.prometheus.write.v2.PrometheusWriteV2;
 import prometheus.PrometheusRemote;
 import prometheus.PrometheusTypes;
 
@@ -117,9 +137,46 @@ public class CortexTSS implements TimeSeriesStorage {
     // Used to sanitize the label name
     private static final Pattern SANITIZE_LABEL_NAME_PATTERN = Pattern.compile("[^a-zA-Z0-9_]");
 
+    // Lookup table for the characters allowed in metric and label names, indexed by the (ASCII) character
+    private static final byte METRIC_NAME_CHAR = 1;
+    private static final byte LABEL_NAME_CHAR = 2;
+    private static final byte DIGIT_CHAR = 4;
+    private static final byte[] NAME_CHARS = new byte[128];
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            NAME_CHARS[c] = METRIC_NAME_CHAR | LABEL_NAME_CHAR;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            NAME_CHARS[c] = METRIC_NAME_CHAR | LABEL_NAME_CHAR;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            NAME_CHARS[c] = METRIC_NAME_CHAR | LABEL_NAME_CHAR | DIGIT_CHAR;
+        }
+        NAME_CHARS['_'] = METRIC_NAME_CHAR | LABEL_NAME_CHAR;
+        NAME_CHARS[':'] = METRIC_NAME_CHAR;
+    }
+
     private static final String X_SCOPE_ORG_ID_HEADER = "X-Scope-OrgID";
 
-    private static final MediaType PROTOBUF_MEDIA_TYPE = MediaType.parse("application/x-protobuf");
+    // Names of the call types used for the latency timers
+    static final String CALL_TYPE_WRITE = "write";
+    static final String CALL_TYPE_SERIES = "series";
+    static final String CALL_TYPE_QUERY_RANGE = "queryRange";
+    static final String CALL_TYPE_REMOTE_READ = "remoteRead";
+    static final String CALL_TYPE_DELETE = "delete";
+    static final String CALL_TYPE_METADATA = "metadata";
+    // Tenant name used in metric names when no org id is set
+    static final String DEFAULT_TENANT = "default";
+
+    private static final MediaType PROTOBUF_MEDIA_TYPE = MediaType.parse(CortexTSSConfig.RemoteWriteVersion.V1.getContentType());
+    private static final MediaType PROTOBUF_V2_MEDIA_TYPE = MediaType.parse(CortexTSSConfig.RemoteWriteVersion.V2.getContentType());
+
+    // Estimated serialized size of a time series with one sample without its labels, and of a label without its name and value
+    private static final int WRITE_SAMPLE_BYTES = 24;
+    private static final int WRITE_LABEL_BYTES = 6;
+
+    // Admin api to delete series, relative to the read url, see https://cortexmetrics.io/docs/api/#delete-series
+    static final String DELETE_SERIES_PATH = "/admin/tsdb/delete_series";
 
     public final static Set<String> INTRINSIC_TAG_NAMES = Sets.newHashSet(IntrinsicTagNames.name, IntrinsicTagNames.resourceId);
 
@@ -127,66 +184,365 @@ public class CortexTSS implements TimeSeriesStorage {
 
     final static int MAX_SAMPLES = 1200;
 
-    private final OkHttpClient client;
+    // How long replaced endpoints get to finish their pending calls when reconfigured
+    static final Duration DRAIN_TIMEOUT = Duration.ofMinutes(1);
+
+    /** Where the samples of a write come from. */
+    private enum WriteSource {
+        /** Samples stored by OpenNMS. */
+        STORED,
+        /** Rollups of the stored samples, see {@link Rollups}. */
+        ROLLUP,
+        /** The plugin's own metrics, see {@link SelfMonitoringReporter}. */
+        SELF_MONITORING
+    }
+
+    /** A write rejected by Cortex, the status code tells whether retrying it makes sense. */
+    static final class WriteException extends StorageException {
+        private final int statusCode;
+
+        WriteException(final int statusCode, final String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    // every url has its own client, the whole set is swapped when reconfigured
+    private volatile CortexEndpoints endpoints;
 
     private final MetricRegistry metrics = new MetricRegistry();
     private final Meter samplesWritten = metrics.meter("samplesWritten");
     private final Meter samplesLost = metrics.meter("samplesLost");
+    private final Meter samplesDroppedByRelabeling = metrics.meter(MetricRegistry.name("relabel", "samplesDropped"));
+
+    // Latency of the calls to Cortex, additional timers broken down by tenant and status class are created on demand
+    private final Timer writeLatency = metrics.timer(MetricRegistry.name(CALL_TYPE_WRITE, "latency"));
+    private final Timer seriesLatency = metrics.timer(MetricRegistry.name(CALL_TYPE_SERIES, "latency"));
+    private final Timer queryRangeLatency = metrics.timer(MetricRegistry.name(CALL_TYPE_QUERY_RANGE, "latency"));
+    private final Timer metadataLatency = metrics.timer(MetricRegistry.name(CALL_TYPE_METADATA, "latency"));
+    private final Timer remoteReadLatency = metrics.timer(MetricRegistry.name(CALL_TYPE_REMOTE_READ, "latency"));
+    private final Timer deleteLatency = metrics.timer(MetricRegistry.name(CALL_TYPE_DELETE, "latency"));
+    private final Histogram writeUncompressedBytes = metrics.histogram(MetricRegistry.name(CALL_TYPE_WRITE, "uncompressedBytes"));
+    private final Histogram writeCompressedBytes = metrics.histogram(MetricRegistry.name(CALL_TYPE_WRITE, "compressedBytes"));
+    private final Histogram writeSamplesPerRequest = metrics.histogram(MetricRegistry.name(CALL_TYPE_WRITE, "samplesPerRequest"));
+    private final Meter writeRequestsSplit = metrics.meter(MetricRegistry.name(CALL_TYPE_WRITE, "requestsSplit"));
+    private final Histogram seriesPerResponse = metrics.histogram(MetricRegistry.name(CALL_TYPE_SERIES, "seriesPerResponse"));
+    private final Histogram queryRangeSamplesPerResponse = metrics.histogram(MetricRegistry.name(CALL_TYPE_QUERY_RANGE, "samplesPerResponse"));
+    private final Meter queryRangeAligned = metrics.meter(MetricRegistry.name(CALL_TYPE_QUERY_RANGE, "aligned"));
+    private final Meter queryRangeUnaligned = metrics.meter(MetricRegistry.name(CALL_TYPE_QUERY_RANGE, "unaligned"));
+    private final Meter rollupQueriesFallenBack = metrics.meter(MetricRegistry.name(Rollups.METRIC_PREFIX, "queriesFallenBack"));
+    private final Histogram remoteReadSamplesPerResponse = metrics.histogram(MetricRegistry.name(CALL_TYPE_REMOTE_READ, "samplesPerResponse"));
 
     // when retrieving aggregated time series data we loose the metric information and thus take it from cache
-    private final Cache<String, Metric> metricCache;
+    private volatile Cache<String, Metric> metricCache;
+    private volatile MetricMetadataCache metricMetadataCache;
     private final Bulkhead asyncHttpCallsBulkhead;
-    private final CortexTSSConfig config;
+    private volatile LoadingCache<String, TenantPipeline> tenantPipelines;
+    private final CardinalityGuard cardinalityGuard;
+    // null if there are no relabel rules
+    private volatile Relabeler relabeler;
+    private final SeriesDeleter seriesDeleter;
+    private final ReorderBuffer reorderBuffer;
+    private final ExternalTagsWarmup externalTagsWarmup;
+    private volatile SeriesIndex seriesIndex;
+    private volatile HotTier hotTier;
+    private volatile Rollups rollups;
+    private volatile CortexTSSConfig config;
 
     public static final String CORTEX_TSS = "CORTEX_TSS";
     private final KeyValueStore kvStore;
-    private final Cache<String, String> externalTagsCache;
+    private volatile Cache<String, String> externalTagsCache;
     private final Meter extTagsModified = metrics.meter("extTagsModified");
     private final Meter extTagsCacheUsed = metrics.meter("extTagsCacheUsed");
     private final Meter extTagsCacheMissed = metrics.meter("extTagsCacheMissed");
     private final Meter extTagPutTransactionFailed = metrics.meter("extTagPutTransactionFailed");
+    private final Timer extTagsKvGetLatency = metrics.timer("extTagsKvGetLatency");
+    private final Timer extTagsKvPutLatency = metrics.timer("extTagsKvPutLatency");
+
+    // JMX domain the metrics are exposed in
+    public static final String JMX_DOMAIN = "org.opennms.plugins.tss.cortex";
+    private JmxReporter jmxReporter;
+    private SelfMonitoringReporter selfMonitoringReporter;
+
+    // write requests sent but not completed yet, spilled if still pending when shutting down
+    private final Set<SpillFile.Entry> pendingWrites = ConcurrentHashMap.newKeySet();
+    private volatile boolean acceptingSamples = true;
+    private Thread replayThread;
+    private final ExecutorService metricCacheRefreshExecutor = Caches.newRefreshExecutor("cortex-tss-metric-refresh");
 
     public CortexTSS(final CortexTSSConfig config, final KeyValueStore keyValueStore) {
         this.config = Objects.requireNonNull(config);
 
-        int maxThreads = config.getMaxConcurrentHttpConnections();
-        ConnectionPool connectionPool =
-                new ConnectionPool(maxThreads, 5, TimeUnit.MINUTES);
-        ExecutorService okHttpExecutor = Executors.newFixedThreadPool(maxThreads);
-        Dispatcher dispatcher = new Dispatcher(okHttpExecutor);
-        dispatcher.setMaxRequests(maxThreads);
-        dispatcher.setMaxRequestsPerHost(maxThreads);
+        this.endpoints = CortexEndpoints.create(config, metrics);
 
+        this.externalTagsCache = createExternalTagsCache(config);
+        this.kvStore = keyValueStore;
 
-        this.client = new OkHttpClient.Builder()
-                .readTimeout(config.getReadTimeoutInMs(), TimeUnit.MILLISECONDS)
-                .writeTimeout(config.getWriteTimeoutInMs(), TimeUnit.MILLISECONDS)
-                .dispatcher(dispatcher)
-                .connectionPool(connectionPool)
-                .build();
+        this.metricCache = createMetricCache(config);
+        this.metricMetadataCache = new MetricMetadataCache(config.getMetadataCacheSize(), config.getMetadataIntervalInMs());
 
-        this.externalTagsCache = CacheBuilder.newBuilder().maximumSize(config.getExternalTagsCacheSize()).build();
-        this.kvStore = keyValueStore;
+        asyncHttpCallsBulkhead = Bulkhead.of("asyncHttpCalls", createBulkheadConfig(config));
 
-        this.metricCache = CacheBuilder.newBuilder().maximumSize(config.getMetricCacheSize()).build();
+        this.tenantPipelines = createTenantPipelines(config);
+        this.cardinalityGuard = new CardinalityGuard(config, metrics);
+        this.relabeler = Relabeler.create(config);
+        this.seriesDeleter = new SeriesDeleter(this::getConfig, this::deleteSeries, metrics);
+        this.reorderBuffer = new ReorderBuffer(this::getConfig, (clientID, samples) -> storeSorted(samples, clientID), metrics);
 
-        BulkheadConfig bulkheadConfig = BulkheadConfig.custom()
-                .maxConcurrentCalls(maxThreads * 4)
+        // Expose HTTP client statistics, summed up over all endpoints
+        metrics.register("connectionCount", (Gauge<Integer>) () -> endpoints.sum(client -> client.connectionPool().connectionCount()));
+        metrics.register("idleConnectionCount", (Gauge<Integer>) () -> endpoints.sum(client -> client.connectionPool().idleConnectionCount()));
+        metrics.register("queuedCallsCount", (Gauge<Integer>) () -> endpoints.sum(client -> client.dispatcher().queuedCallsCount()));
+        metrics.register("runningCallsCount", (Gauge<Integer>) () -> endpoints.sum(client -> client.dispatcher().runningCallsCount()));
+        metrics.register("availableConcurrentCalls", (Gauge<Integer>) () -> asyncHttpCallsBulkhead.getMetrics().getAvailableConcurrentCalls());
+        metrics.register("maxAllowedConcurrentCalls", (Gauge<Integer>) () -> asyncHttpCallsBulkhead.getMetrics().getMaxAllowedConcurrentCalls());
+        metrics.register("pendingWrites", (Gauge<Integer>) pendingWrites::size);
+        Caches.registerMetrics(metrics, "metricCache", () -> metricCache);
+        Caches.registerMetrics(metrics, "externalTagsCache", () -> externalTagsCache);
+
+        this.seriesIndex = openSeriesIndex(config);
+        metrics.register(MetricRegistry.name(SeriesIndex.METRIC_PREFIX, "series"), (Gauge<Integer>) () -> seriesIndex == null ? 0 : seriesIndex.size());
+        metrics.register(MetricRegistry.name(SeriesIndex.METRIC_PREFIX, "bytes"), (Gauge<Integer>) () -> seriesIndex == null ? 0 : seriesIndex.getBytes());
+
+        this.hotTier = createHotTier(config);
+        metrics.register(MetricRegistry.name(HotTier.METRIC_PREFIX, "series"), (Gauge<Integer>) () -> hotTier == null ? 0 : hotTier.size());
+
+        this.rollups = createRollups(config);
+
+        this.externalTagsWarmup = new ExternalTagsWarmup(this::getConfig, () -> externalTagsCache, metrics);
+        if (isExternalTagsCacheEnabled(config) && config.getExternalTagsWarmupBatchSize() > 0) {
+            this.externalTagsWarmup.start(kvStore, CORTEX_TSS);
+        }
+
+        startReporters();
+
+        final Path spillFile = getSpillFile();
+        if (spillFile != null) {
+            final Path replayFile = spillFile.resolveSibling(SpillFile.REPLAY_FILE_NAME);
+            try {
+                if (SpillFile.moveToReplayFile(spillFile, replayFile)) {
+                    replayThread = new Thread(() -> replaySpilledWrites(replayFile), "cortex-tss-spill-replay");
+                    replayThread.setDaemon(true);
+                    replayThread.start();
+                }
+            } catch (IOException e) {
+                LOG.error("Moving spill file {} to {} failed, its samples will be replayed on the next start.", spillFile, replayFile, e);
+            }
+        }
+    }
+
+    private static BulkheadConfig createBulkheadConfig(final CortexTSSConfig config) {
+        return BulkheadConfig.custom()
+                .maxConcurrentCalls(config.getMaxConcurrentHttpConnections() * 4)
                 .maxWaitDuration(Duration.ofMillis(config.getBulkheadMaxWaitDurationInMs()))
                 .fairCallHandlingStrategyEnabled(true)
                 .build();
-        asyncHttpCallsBulkhead = Bulkhead.of("asyncHttpCalls", bulkheadConfig);
+    }
 
-        // Expose HTTP client statistics
-        metrics.register("connectionCount", (Gauge<Integer>) () -> client.connectionPool().connectionCount());
-        metrics.register("idleConnectionCount", (Gauge<Integer>) () -> client.connectionPool().idleConnectionCount());
-        metrics.register("queuedCallsCount", (Gauge<Integer>) () -> client.dispatcher().queuedCallsCount());
-        metrics.register("runningCallsCount", (Gauge<Integer>) () -> client.dispatcher().runningCallsCount());
-        metrics.register("availableConcurrentCalls", (Gauge<Integer>) () -> asyncHttpCallsBulkhead.getMetrics().getAvailableConcurrentCalls());
-        metrics.register("maxAllowedConcurrentCalls", (Gauge<Integer>) () -> asyncHttpCallsBulkhead.getMetrics().getMaxAllowedConcurrentCalls());
+    private Cache<String, Metric> createMetricCache(final CortexTSSConfig config) {
+        final Caffeine<String, Metric> builder = Caches.<Metric>newBuilder(config.getMetricCacheMaxBytes(), config.getMetricCacheSize(), Caches::estimateBytes);
+        if (config.getMetricCacheRefreshIntervalInMs() > 0) {
+            // entries still in use are refreshed in the background, entries not used for a while expire instead
+            builder.executor(metricCacheRefreshExecutor)
+                    .refreshAfterWrite(config.getMetricCacheRefreshIntervalInMs(), TimeUnit.MILLISECONDS)
+                    .expireAfterWrite(2 * config.getMetricCacheRefreshIntervalInMs(), TimeUnit.MILLISECONDS);
+        }
+        return builder.build(Caches.reloadingWith(this::refreshMetric));
+    }
+
+    private static Cache<String, String> createExternalTagsCache(final CortexTSSConfig config) {
+        // a disabled cache doesn't keep anything, whatever its byte limit
+        final long maxBytes = isExternalTagsCacheEnabled(config) ? config.getExternalTagsCacheMaxBytes() : 0;
+        return Caches.<String>newBuilder(maxBytes, config.getExternalTagsCacheSize(), Caches::estimateBytes).build();
+    }
+
+    private static boolean isExternalTagsCacheEnabled(final CortexTSSConfig config) {
+        return config.getExternalTagsCacheSize() > 0;
+    }
+
+    private SeriesIndex openSeriesIndex(final CortexTSSConfig config) {
+        if (!config.hasSeriesIndexDirectory()) {
+            return null;
+        }
+        final Path file = Paths.get(config.getSeriesIndexDirectory(), SeriesIndex.FILE_NAME);
+        try {
+            return SeriesIndex.open(file, metrics);
+        } catch (IOException e) {
+            LOG.error("Opening the series index {} failed, metrics are looked up in Cortex only.", file, e);
+            return null;
+        }
+    }
+
+    private HotTier createHotTier(final CortexTSSConfig config) {
+        return config.getHotTierMaxBytes() > 0 ? new HotTier(config.getHotTierMaxBytes(), config.getHotTierSamplesPerSeries(), metrics) : null;
+    }
+
+    private Rollups createRollups(final CortexTSSConfig config) {
+        return config.getRollupIntervalsInSeconds().isEmpty() ? null : new Rollups(config.getRollupIntervalsInSeconds(), metrics);
+    }
+
+    private void closeSeriesIndex(final SeriesIndex seriesIndex) {
+        if (seriesIndex != null) {
+            try {
+                seriesIndex.close();
+            } catch (IOException e) {
+                LOG.warn("Closing the series index failed.", e);
+            }
+        }
+    }
+
+    private LoadingCache<String, TenantPipeline> createTenantPipelines(final CortexTSSConfig config) {
+        return CacheBuilder.newBuilder()
+                .expireAfterAccess(config.getTenantIdleTimeoutInMs(), TimeUnit.MILLISECONDS)
+                .removalListener((RemovalListener<String, TenantPipeline>) notification -> {
+                    // keep the metrics if the tenant became active again in the meantime
+                    if (!tenantPipelinesContains(notification.getKey())) {
+                        notification.getValue().removeMetrics();
+                    }
+                })
+                .build(CacheLoader.from(tenant -> new TenantPipeline(tenant, config, metrics)));
+    }
+
+    private void startReporters() {
+        if (config.isJmxReporterEnabled()) {
+            this.jmxReporter = JmxReporter.forRegistry(metrics)
+                    .inDomain(JMX_DOMAIN)
+                    .convertRatesTo(TimeUnit.SECONDS)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build();
+            this.jmxReporter.start();
+        }
+        if (config.getSelfMonitoringIntervalInMs() > 0) {
+            this.selfMonitoringReporter = new SelfMonitoringReporter(metrics, this::storeSelfMonitoring);
+            this.selfMonitoringReporter.start(config.getSelfMonitoringIntervalInMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopReporters() {
+        if (selfMonitoringReporter != null) {
+            selfMonitoringReporter.stop();
+            selfMonitoringReporter = null;
+        }
+        if (jmxReporter != null) {
+            jmxReporter.stop();
+            jmxReporter = null;
+        }
+    }
+
+    /**
+     * Called via blueprint when the properties of the org.opennms.plugins.tss.cortex pid changed.
+     */
+    public void update(final Map<String, ?> properties) {
+        reconfigure(CortexTSSConfig.fromProperties(properties));
+    }
+
+    /**
+     * Applies the given config without restarting the plugin:
+     * - Endpoints with unchanged url and client settings are kept, including their connections. Replaced endpoints get
+     *   up to {@link #DRAIN_TIMEOUT} to finish their pending calls in the background, new calls go to the new endpoints.
+     * - The caches are resized and keep their entries. The metric cache is only cleared if the read urls or the
+     *   organization id changed, the cached metrics might not exist there.
+     * - The global bulkhead is changed in place, the tenant pipelines are recreated if their limits changed.
+     */
+    public synchronized void reconfigure(final CortexTSSConfig newConfig) {
+        Objects.requireNonNull(newConfig);
+        final CortexTSSConfig oldConfig = this.config;
+        if (oldConfig.equals(newConfig)) {
+            return;
+        }
+        LOG.info("Reconfiguring with {}", newConfig);
+
+        final CortexEndpoints oldEndpoints = this.endpoints;
+        final CortexEndpoints newEndpoints = oldEndpoints.reconfigure(oldConfig, newConfig, metrics);
+        final boolean sameReadSource = oldConfig.getReadUrls().equals(newConfig.getReadUrls())
+                && Objects.equals(oldConfig.getOrganizationId(), newConfig.getOrganizationId());
+        if (oldConfig.getMetricCacheSize() != newConfig.getMetricCacheSize()
+                || oldConfig.getMetricCacheMaxBytes() != newConfig.getMetricCacheMaxBytes()
+                || oldConfig.getMetricCacheRefreshIntervalInMs() != newConfig.getMetricCacheRefreshIntervalInMs() || !sameReadSource) {
+            final Cache<String, Metric> newMetricCache = createMetricCache(newConfig);
+            if (sameReadSource) {
+                newMetricCache.putAll(metricCache.asMap());
+            }
+            this.metricCache = newMetricCache;
+        }
+        if (oldConfig.getMetadataCacheSize() != newConfig.getMetadataCacheSize()
+                || oldConfig.getMetadataIntervalInMs() != newConfig.getMetadataIntervalInMs() || !sameReadSource) {
+            this.metricMetadataCache = new MetricMetadataCache(newConfig.getMetadataCacheSize(), newConfig.getMetadataIntervalInMs());
+        }
+        if (oldConfig.getExternalTagsCacheSize() != newConfig.getExternalTagsCacheSize()
+                || oldConfig.getExternalTagsCacheMaxBytes() != newConfig.getExternalTagsCacheMaxBytes()) {
+            final Cache<String, String> newExternalTagsCache = createExternalTagsCache(newConfig);
+            newExternalTagsCache.putAll(externalTagsCache.asMap());
+            this.externalTagsCache = newExternalTagsCache;
+        }
+        if (!oldConfig.getSeriesIndexDirectory().equals(newConfig.getSeriesIndexDirectory())) {
+            final SeriesIndex oldSeriesIndex = this.seriesIndex;
+            this.seriesIndex = openSeriesIndex(newConfig);
+            closeSeriesIndex(oldSeriesIndex);
+        }
+        if (oldConfig.getHotTierMaxBytes() != newConfig.getHotTierMaxBytes()
+                || oldConfig.getHotTierSamplesPerSeries() != newConfig.getHotTierSamplesPerSeries()) {
+            this.hotTier = createHotTier(newConfig);
+        }
+        if (!oldConfig.getRollupIntervals().equals(newConfig.getRollupIntervals())) {
+            this.rollups = createRollups(newConfig);
+        }
+        asyncHttpCallsBulkhead.changeConfig(createBulkheadConfig(newConfig));
+
+        this.config = newConfig;
+        this.endpoints = newEndpoints;
+        reorderBuffer.reconfigure(oldConfig, newConfig);
+        cardinalityGuard.setConfig(newConfig);
+        if (!oldConfig.getWriteRelabelConfigs().equals(newConfig.getWriteRelabelConfigs())
+                || oldConfig.getWriteRelabelCacheSize() != newConfig.getWriteRelabelCacheSize()) {
+            this.relabeler = Relabeler.create(newConfig);
+        }
+        if (oldConfig.getTenantMaxConcurrentCalls() != newConfig.getTenantMaxConcurrentCalls()
+                || oldConfig.getTenantMaxQueuedCalls() != newConfig.getTenantMaxQueuedCalls()
+                || oldConfig.getTenantMaxSamplesPerSecond() != newConfig.getTenantMaxSamplesPerSecond()
+                || oldConfig.getTenantIdleTimeoutInMs() != newConfig.getTenantIdleTimeoutInMs()) {
+            final LoadingCache<String, TenantPipeline> oldTenantPipelines = this.tenantPipelines;
+            this.tenantPipelines = createTenantPipelines(newConfig);
+            // pending calls of the old pipelines still complete
+            oldTenantPipelines.invalidateAll();
+        }
+        if (oldConfig.isJmxReporterEnabled() != newConfig.isJmxReporterEnabled()
+                || oldConfig.getSelfMonitoringIntervalInMs() != newConfig.getSelfMonitoringIntervalInMs()) {
+            stopReporters();
+            startReporters();
+        }
+
+        final List<CortexEndpoint> replacedEndpoints = oldEndpoints.getRemovedIn(newEndpoints);
+        if (!replacedEndpoints.isEmpty()) {
+            final Thread drainThread = new Thread(() -> replacedEndpoints.forEach(e -> e.drainAndDestroy(DRAIN_TIMEOUT)),
+                    "cortex-tss-endpoint-drain");
+            drainThread.setDaemon(true);
+            drainThread.start();
+        }
+    }
 
-        this.kvStore.enumerateContextAsync(CORTEX_TSS).thenAccept(map -> externalTagsCache.putAll((Map<String, String>) map));
+    CortexTSSConfig getConfig() {
+        return config;
+    }
 
+    private boolean tenantPipelinesContains(final String tenant) {
+        return tenantPipelines.asMap().containsKey(tenant);
+    }
+
+    /**
+     * Name of the tenant that samples stored with the given client id (null for the configured organization id) are
+     * accounted to in the metrics, e.g. "tenants.&lt;tenant&gt;.samplesWritten".
+     */
+    public String getTenantName(final String clientID) {
+        return toTenantName(clientID == null ? config.getOrganizationId() : clientID);
+    }
+
+    TenantPipeline getTenantPipeline(final String clientID) {
+        return tenantPipelines.getUnchecked(toTenantName(clientID));
     }
 
     @Override
@@ -195,56 +551,433 @@ public class CortexTSS implements TimeSeriesStorage {
     }
 
     public void store(final List<Sample> samples, String clientID) throws StorageException {
-        final List<Sample> samplesSorted = samples.stream() // Cortex doesn't like the Samples to be out of time order
+        if (!acceptingSamples) {
+            throw new StorageException("Shutting down, not accepting samples anymore.");
+        }
+        final String tenantName = toTenantName(clientID);
+        final Relabeler relabeler = this.relabeler;
+        final List<Sample> samplesAccepted = samples.stream()
                 .filter(sample -> !sample.getValue().isNaN())
-                .sorted(Comparator.comparing(Sample::getTime))
+                .filter(sample -> relabeler == null || isKeptByRelabeling(relabeler, sample))
+                .map(sample -> cardinalityGuard.check(sample, tenantName))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        // Cortex doesn't like the Samples of a series to be out of time order
+        final List<Sample> samplesSorted = reorderBuffer.isEnabled()
+                ? reorderBuffer.add(clientID, samplesAccepted)
+                : ReorderBuffer.sortPerSeries(samplesAccepted);
+        if (!samplesSorted.isEmpty()) {
+            storeSorted(samplesSorted, clientID);
+        }
+    }
+
+    /** Stores samples that passed the filters of {@link #store(List, String)} and are in time order per series. */
+    private void storeSorted(final List<Sample> samplesSorted, final String clientID) throws StorageException {
+        final String tenantName = toTenantName(clientID);
+        final Relabeler relabeler = this.relabeler;
+        final TenantPipeline tenant = getTenantPipeline(clientID);
+        if (!tenant.tryAcquireSamples(samplesSorted.size())) {
+            samplesLost.mark(samplesSorted.size());
+            tenant.samplesLost.mark(samplesSorted.size());
+            LOG.debug("Sample rate limit of tenant {} exceeded, {} samples will be lost.", tenant.getTenant(), samplesSorted.size());
+            return;
+        }
+        final HotTier hotTier = this.hotTier;
+        if (hotTier != null) {
+            hotTier.add(tenantName, samplesSorted);
+        }
+        // the rollup series count against the cardinality and sample rate limits like any other series
+        final Rollups rollups = this.rollups;
+        final List<Sample> rollupSamples = rollups == null ? Collections.emptyList() : rollups.add(tenantName, samplesSorted).stream()
+                .filter(sample -> relabeler == null || isKeptByRelabeling(relabeler, sample))
+                .map(sample -> cardinalityGuard.check(sample, tenantName))
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
 
-        PrometheusRemote.WriteRequest.Builder writeBuilder = PrometheusRemote.WriteRequest.newBuilder();
-        samplesSorted.forEach(s -> {
+        writeSharded(samplesSorted, clientID, tenant, relabeler, WriteSource.STORED);
+        if (rollupSamples.isEmpty()) {
+            return;
+        }
+        if (!tenant.tryAcquireSamples(rollupSamples.size())) {
+            samplesLost.mark(rollupSamples.size());
+            tenant.samplesLost.mark(rollupSamples.size());
+            LOG.debug("Sample rate limit of tenant {} exceeded, {} rollup samples will be lost.", tenant.getTenant(), rollupSamples.size());
+            return;
+        }
+        writeSharded(rollupSamples, clientID, tenant, relabeler, WriteSource.ROLLUP);
+    }
 
-            writeBuilder.addTimeseries(toPrometheusTimeSeries(s));
-            persistExternalTags(s);
-        });
+    /**
+     * Writes the samples of the self monitoring for the configured organization id. They bypass the filters, limits
+     * and metrics of the tenants and have no external tags, so the plugin's metrics don't count themselves.
+     */
+    void storeSelfMonitoring(final List<Sample> samples) throws StorageException {
+        if (!acceptingSamples) {
+            return;
+        }
+        writeSharded(ReorderBuffer.sortPerSeries(samples), config.getOrganizationId(), null, null, WriteSource.SELF_MONITORING);
+    }
+
+    private void writeSharded(final List<Sample> samplesSorted, final String clientID, final TenantPipeline tenant,
+                              final Relabeler relabeler, final WriteSource source) throws StorageException {
+        final CortexEndpoints endpoints = this.endpoints;
+        final ConsistentHashRing<CortexEndpoint> writeRing = endpoints.getWriteRing();
+        if (writeRing == null) {
+            write(endpoints.getWrite(), samplesSorted, clientID, tenant, relabeler, source);
+            return;
+        }
+        // shard by series, the samples of each series stay in time order. The rollups go to the shard of their series,
+        // they are read in place of it
+        final Map<CortexEndpoint, List<Sample>> shards = new LinkedHashMap<>();
+        for (Sample sample : samplesSorted) {
+            final String key = source == WriteSource.ROLLUP ? Rollups.toSeriesKey(sample.getMetric()) : sample.getMetric().getKey();
+            shards.computeIfAbsent(writeRing.get(key), endpoint -> new ArrayList<>()).add(sample);
+        }
+        for (Map.Entry<CortexEndpoint, List<Sample>> shard : shards.entrySet()) {
+            write(Collections.singletonList(shard.getKey()), shard.getValue(), clientID, tenant, relabeler, source);
+        }
+    }
+
+    private boolean isKeptByRelabeling(final Relabeler relabeler, final Sample sample) {
+        if (relabeler.getLabels(sample.getMetric()) != null) {
+            return true;
+        }
+        samplesDroppedByRelabeling.mark();
+        return false;
+    }
+
+    /** The metric as Cortex has it after relabeling (like {@code /series} returns it), null if its series is dropped. */
+    private static Metric toWrittenMetric(final Metric metric, final Relabeler relabeler) {
+        if (relabeler == null) {
+            return metric;
+        }
+        final List<PrometheusTypes.Label> labels = relabeler.getLabels(metric);
+        if (labels == null) {
+            return null;
+        }
+        final Map<String, String> tags = new LinkedHashMap<>();
+        labels.forEach(label -> tags.put(label.getName(), label.getValue()));
+        final Metric relabeled = ResultMapper.toMetricFromMap(tags);
+        return ImmutableMetric.builder()
+                .intrinsicTags(relabeled.getIntrinsicTags())
+                .metaTags(relabeled.getMetaTags())
+                .externalTags(metric.getExternalTags())
+                .build();
+    }
+
+    /**
+     * Writes the samples to all the given endpoints, split into requests of at most
+     * {@link CortexTSSConfig#getWriteRequestMaxBytes()}. The requests are sent concurrently and fail on their own.
+     */
+    private void write(final List<CortexEndpoint> endpoints, final List<Sample> samplesSorted, final String clientID,
+                       final TenantPipeline tenant, final Relabeler relabeler, final WriteSource source) throws StorageException {
+        final List<List<Sample>> pieces = splitBySize(samplesSorted, config.getWriteRequestMaxBytes());
+        if (pieces.size() > 1) {
+            writeRequestsSplit.mark();
+        }
+        for (List<Sample> piece : pieces) {
+            writeRequest(endpoints, piece, clientID, tenant, relabeler, source);
+        }
+    }
+
+    /**
+     * Splits the samples into pieces with an estimated serialized size of at most maxBytes. The samples of a series stay
+     * together, so that they arrive in order; a series larger than maxBytes is a piece of its own.
+     */
+    static List<List<Sample>> splitBySize(final List<Sample> samplesSorted, final long maxBytes) {
+        if (maxBytes <= 0) {
+            return Collections.singletonList(samplesSorted);
+        }
+        final List<List<Sample>> pieces = new ArrayList<>();
+        int pieceStart = 0;
+        long pieceBytes = 0;
+        Metric metric = null;
+        int seriesBytes = 0;
+        for (int i = 0; i < samplesSorted.size(); i++) {
+            final Metric sampleMetric = samplesSorted.get(i).getMetric();
+            if (!sampleMetric.equals(metric)) {
+                // a new series, the piece can end before it
+                if (pieceBytes + estimateWriteBytes(samplesSorted, i, sampleMetric) > maxBytes) {
+                    if (i > pieceStart) {
+                        pieces.add(samplesSorted.subList(pieceStart, i));
+                    }
+                    pieceStart = i;
+                    pieceBytes = 0;
+                }
+                metric = sampleMetric;
+                seriesBytes = estimateWriteBytes(sampleMetric);
+            }
+            pieceBytes += seriesBytes;
+        }
+        if (pieceStart < samplesSorted.size()) {
+            pieces.add(samplesSorted.subList(pieceStart, samplesSorted.size()));
+        }
+        return pieces;
+    }
 
+    /** The estimated serialized size of the samples of the series starting at the given index. */
+    private static long estimateWriteBytes(final List<Sample> samplesSorted, final int start, final Metric metric) {
+        final int sampleBytes = estimateWriteBytes(metric);
+        long bytes = 0;
+        for (int i = start; i < samplesSorted.size() && samplesSorted.get(i).getMetric().equals(metric); i++) {
+            bytes += sampleBytes;
+        }
+        return bytes;
+    }
 
-        PrometheusRemote.WriteRequest writeRequest = writeBuilder.build();
+    /**
+     * The estimated size of a sample of the metric in a remote write 1.0 request, each sample is a time series with
+     * all the labels there.
+     */
+    static int estimateWriteBytes(final Metric metric) {
+        int bytes = WRITE_SAMPLE_BYTES;
+        for (Tag tag : metric.getIntrinsicTags()) {
+            bytes += WRITE_LABEL_BYTES + tag.getKey().length() + tag.getValue().length();
+        }
+        for (Tag tag : metric.getMetaTags()) {
+            bytes += WRITE_LABEL_BYTES + tag.getKey().length() + tag.getValue().length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the samples with one request to all the given endpoints. The samples only count as lost if none of the
+     * endpoints accepted them. Only stored samples have external tags and are indexed, self monitoring samples are not
+     * counted and have no tenant.
+     */
+    private void writeRequest(final List<CortexEndpoint> endpoints, final List<Sample> samplesSorted, final String clientID,
+                              final TenantPipeline tenant, final Relabeler relabeler, final WriteSource source) throws StorageException {
+        final CortexTSSConfig config = this.config;
+        final String tenantName = toTenantName(clientID);
+        final CortexTSSConfig.RemoteWriteVersion remoteWriteVersion = config.getRemoteWriteVersion();
+        // remote write 2.0 carries the type with every series
+        final MetricMetadataCache metadataCache = config.isMetadataEnabled() && remoteWriteVersion == CortexTSSConfig.RemoteWriteVersion.V1
+                ? this.metricMetadataCache : null;
+        // the metadata written is tracked per endpoint, all the given ones get the same request
+        final String metadataDestination = endpoints.size() == 1 ? endpoints.get(0).getUrl() : "";
+        final Message writeRequest = remoteWriteVersion == CortexTSSConfig.RemoteWriteVersion.V2
+                ? toWriteRequestV2(samplesSorted, relabeler)
+                : toWriteRequest(samplesSorted, relabeler, tenantName, metadataDestination, metadataCache);
+        if (source == WriteSource.STORED) {
+            samplesSorted.forEach(this::persistExternalTags);
+        }
+        final SeriesIndex seriesIndex = this.seriesIndex;
+        if (seriesIndex != null && source == WriteSource.STORED) {
+            final long nowMs = System.currentTimeMillis();
+            for (Sample sample : samplesSorted) {
+                final Metric written = toWrittenMetric(sample.getMetric(), relabeler);
+                if (written != null) {
+                    seriesIndex.add(tenantName, written, nowMs);
+                }
+            }
+        }
 
         // Compress the write request using Snappy
+        final byte[] writeRequestUncompressed = writeRequest.toByteArray();
         final byte[] writeRequestCompressed;
         try {
-            writeRequestCompressed = Snappy.compress(writeRequest.toByteArray());
+            writeRequestCompressed = Snappy.compress(writeRequestUncompressed);
         } catch (IOException e) {
             throw new StorageException(e);
         }
+        writeUncompressedBytes.update(writeRequestUncompressed.length);
+        writeCompressedBytes.update(writeRequestCompressed.length);
+        writeSamplesPerRequest.update(samplesSorted.size());
 
-        // Build the HTTP request
-        final RequestBody body = RequestBody.create(PROTOBUF_MEDIA_TYPE, writeRequestCompressed);
+        LOG.trace("Writing: {}", writeRequest);
+        final AtomicInteger pending = new AtomicInteger(endpoints.size());
+        final AtomicBoolean written = new AtomicBoolean(false);
+        for (CortexEndpoint endpoint : endpoints) {
+            final SpillFile.Entry pendingWrite = new SpillFile.Entry(endpoint.getUrl(), clientID, samplesSorted.size(),
+                    writeRequestCompressed, remoteWriteVersion);
+            sendAsync(endpoint, pendingWrite, tenant).whenComplete((r, ex) -> {
+                if (pendingWrite.isSpilled()) {
+                    return;
+                }
+                if (ex == null) {
+                    written.set(true);
+                } else if (endpoints.size() > 1) {
+                    LOG.warn("Error occurred while storing samples to {}.", endpoint.getUrl(), ex);
+                } else {
+                    LOG.error("Error occurred while storing samples, sample will be lost.", ex);
+                }
+                if (pending.decrementAndGet() == 0 && source != WriteSource.SELF_MONITORING) {
+                    if (written.get()) {
+                        samplesWritten.mark(samplesSorted.size());
+                        tenant.samplesWritten.mark(samplesSorted.size());
+                    } else {
+                        // FIXME: Data loss
+                        samplesLost.mark(samplesSorted.size());
+                        tenant.samplesLost.mark(samplesSorted.size());
+                        if (metadataCache != null) {
+                            // so that the metadata goes with the next write
+                            ((PrometheusRemote.WriteRequest) writeRequest).getMetadataList()
+                                    .forEach(m -> metadataCache.invalidate(tenantName, metadataDestination, m.getMetricFamilyName()));
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds a remote write 1.0 request, with the metadata of the metric families not written to the destination recently
+     * if a metadata cache is given.
+     */
+    private static PrometheusRemote.WriteRequest toWriteRequest(final List<Sample> samplesSorted, final Relabeler relabeler, final String tenant,
+                                                                final String destination, final MetricMetadataCache metadataCache) {
+        final PrometheusRemote.WriteRequest.Builder writeBuilder = PrometheusRemote.WriteRequest.newBuilder();
+        for (Sample sample : samplesSorted) {
+            final List<PrometheusTypes.Label> labels = relabeler == null
+                    ? toPrometheusLabels(sample.getMetric())
+                    : relabeler.getLabels(sample.getMetric());
+            writeBuilder.addTimeseries(toPrometheusTimeSeries(sample, labels));
+            if (metadataCache != null) {
+                final PrometheusTypes.MetricMetadata metadata = metadataCache.toSend(tenant, destination, getMetricName(labels), sample.getMetric());
+                if (metadata != null) {
+                    writeBuilder.addMetadata(metadata);
+                }
+            }
+        }
+        return writeBuilder.build();
+    }
+
+    private static String getMetricName(final List<PrometheusTypes.Label> labels) {
+        for (PrometheusTypes.Label label : labels) {
+            if (METRIC_NAME_LABEL.equals(label.getName())) {
+                return label.getValue();
+            }
+        }
+        return "";
+    }
+
+    private static PrometheusWriteV2.Request toWriteRequestV2(final List<Sample> samplesSorted, final Relabeler relabeler) {
+        final RemoteWriteV2Encoder encoder = new RemoteWriteV2Encoder();
+        for (Sample sample : samplesSorted) {
+            encoder.add(sample, relabeler == null
+                    ? toPrometheusLabels(sample.getMetric())
+                    : relabeler.getLabels(sample.getMetric()));
+        }
+        return encoder.build();
+    }
+
+    /**
+     * Sends the write request within the limits of the tenant (if any) and the global bulkhead and tracks it until completed.
+     */
+    private CompletionStage<Void> sendAsync(final CortexEndpoint endpoint, final SpillFile.Entry pendingWrite, final TenantPipeline tenant) {
         final Request.Builder builder = new Request.Builder()
-                .url(config.getWriteUrl())
-                .addHeader("X-Prometheus-Remote-Write-Version", "0.1.0")
+                .url(endpoint.getUrl())
+                .addHeader("X-Prometheus-Remote-Write-Version", pendingWrite.getRemoteWriteVersion().getHeader())
                 .addHeader("Content-Encoding", "snappy")
                 .addHeader("User-Agent", CortexTSS.class.getCanonicalName())
-                .post(body);
+                .post(RequestBody.create(pendingWrite.getRemoteWriteVersion() == CortexTSSConfig.RemoteWriteVersion.V2
+                        ? PROTOBUF_V2_MEDIA_TYPE : PROTOBUF_MEDIA_TYPE, pendingWrite.getWriteRequestCompressed()));
         // Add the OrgId header if set
+        final String clientID = pendingWrite.getClientID();
         if (clientID != null && clientID.trim().length() > 0) {
             builder.addHeader(X_SCOPE_ORG_ID_HEADER, clientID);
         }
         final Request request = builder.build();
 
-        LOG.trace("Writing: {}", writeRequest);
-        asyncHttpCallsBulkhead.executeCompletionStage(() -> executeAsync(request)).whenComplete((r, ex) -> {
-            if (ex == null) {
-                samplesWritten.mark(samplesSorted.size());
-            } else {
-                // FIXME: Data loss
-                samplesLost.mark(samples.size());
-                LOG.error("Error occurred while storing samples, sample will be lost.", ex);
+        pendingWrites.add(pendingWrite);
+        endpoint.callStarted();
+        // the tenant's share first, so a tenant waiting for its share doesn't hold any of the global ones
+        final CompletionStage<Void> call = tenant == null
+                ? asyncHttpCallsBulkhead.executeCompletionStage(() -> executeAsync(endpoint, request))
+                : tenant.execute(() -> asyncHttpCallsBulkhead.executeCompletionStage(() -> executeAsync(endpoint, request)));
+        return call.whenComplete((r, ex) -> {
+                    endpoint.callFinished();
+                    pendingWrites.remove(pendingWrite);
+                });
+    }
+
+    private Path getSpillFile() {
+        return config.hasSpillDirectory() ? Paths.get(config.getSpillDirectory(), SpillFile.FILE_NAME) : null;
+    }
+
+    /**
+     * Sends the writes spilled by the previous runs, one at a time so they don't compete with the live writes. They go
+     * to the same url if it is still configured. Writes failing with a retryable error are retried after the endpoint
+     * retry interval; the replay file always holds the writes not sent yet, so they survive another restart.
+     */
+    private void replaySpilledWrites(final Path replayFile) {
+        final Deque<SpillFile.Entry> unsent;
+        try {
+            unsent = new ArrayDeque<>(SpillFile.read(replayFile));
+        } catch (IOException e) {
+            LOG.error("Reading replay file {} failed, its samples will be replayed on the next start.", replayFile, e);
+            return;
+        }
+        final List<SpillFile.Entry> failed = new ArrayList<>();
+        final int numberOfSamples = unsent.stream().mapToInt(SpillFile.Entry::getNumberOfSamples).sum();
+        LOG.info("Replaying {} samples in {} write requests from replay file {}.", numberOfSamples, unsent.size(), replayFile);
+        try {
+            while (acceptingSamples && !(unsent.isEmpty() && failed.isEmpty())) {
+                if (unsent.isEmpty()) {
+                    rewriteReplayFile(replayFile, failed);
+                    Thread.sleep(config.getEndpointRetryIntervalInMs());
+                    unsent.addAll(failed);
+                    failed.clear();
+                    continue;
+                }
+                // the entry stays queued until it's done, so it's kept if the replay is interrupted meanwhile
+                final SpillFile.Entry entry = unsent.peek();
+                if (!replay(entry)) {
+                    failed.add(entry);
+                }
+                unsent.poll();
             }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // writes spilled again on shutdown are in the spill file already
+            rewriteReplayFile(replayFile, Stream.concat(failed.stream(), unsent.stream())
+                    .filter(e -> !e.isSpilled())
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /** Returns false if the write failed and should be retried. */
+    private boolean replay(final SpillFile.Entry entry) throws InterruptedException {
+        final List<CortexEndpoint> writeEndpoints = endpoints.getWrite();
+        final CortexEndpoint endpoint = writeEndpoints.stream()
+                .filter(e -> e.getUrl().equals(entry.getUrl()))
+                .findFirst()
+                .orElse(writeEndpoints.get(0));
+        final TenantPipeline tenant = getTenantPipeline(entry.getClientID());
+        try {
+            sendAsync(endpoint, entry, tenant).toCompletableFuture().get();
+            samplesWritten.mark(entry.getNumberOfSamples());
+            tenant.samplesWritten.mark(entry.getNumberOfSamples());
+            return true;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof WriteException && !CortexEndpoint.isFailure(((WriteException) cause).getStatusCode())) {
+                samplesLost.mark(entry.getNumberOfSamples());
+                tenant.samplesLost.mark(entry.getNumberOfSamples());
+                LOG.error("Error occurred while replaying spilled samples, samples will be lost.", cause);
+                return true;
+            }
+            LOG.warn("Error occurred while replaying spilled samples, will retry.", cause);
+            return false;
+        } catch (RuntimeException e) {
+            LOG.warn("Error occurred while replaying spilled samples, will retry.", e);
+            return false;
+        }
     }
 
-    private void persistExternalTags(final Sample s) {
+    private static void rewriteReplayFile(final Path replayFile, final Collection<SpillFile.Entry> entries) {
+        try {
+            SpillFile.rewrite(replayFile, entries);
+        } catch (IOException e) {
+            LOG.error("Rewriting replay file {} failed, its samples might be replayed more than once.", replayFile, e);
+        }
+    }
+
+    void persistExternalTags(final Sample s) {
         // save external tags on a separate database
         String key = s.getMetric().getKey();
         var externalTags = externalTagsCache.getIfPresent(key);
@@ -253,7 +986,7 @@ public class CortexTSS implements TimeSeriesStorage {
         JSONObject jsonMetrics = null;
         JSONObject jsonNewMetric = new JSONObject();
 
-        if (config.getExternalTagsCacheSize() > 0 && externalTags != null) {
+        if (isExternalTagsCacheEnabled(config) && externalTags != null) {
             jsonMetrics = new JSONObject(externalTags);
             for (Tag tag : s.getMetric().getExternalTags()) {
                 if (!jsonMetrics.has(tag.getKey())) {
@@ -262,18 +995,15 @@ public class CortexTSS implements TimeSeriesStorage {
                 }
             }
             if (needUpsert) {
-                kvStore.putAsync(key, jsonMetrics.toString(), CORTEX_TSS)
-                        .whenComplete((res,ex)->{
-                            if(ex != null){
-                                LOG.debug("Exception occurred persisting external tag for metric: " + key );
-                                extTagPutTransactionFailed.mark();
-                            }
-                        });
+                putExternalTagsAsync(key, jsonMetrics.toString());
                 extTagsModified.mark();
             }
             extTagsCacheUsed.mark();
         } else {
-            var externalMetricFromDb = kvStore.get(s.getMetric().getKey(), CORTEX_TSS);
+            final Optional<?> externalMetricFromDb;
+            try (Timer.Context ignored = extTagsKvGetLatency.time()) {
+                externalMetricFromDb = kvStore.get(s.getMetric().getKey(), CORTEX_TSS);
+            }
             if (externalMetricFromDb.isPresent()) {
                 jsonMetrics = new JSONObject(externalMetricFromDb.get().toString());
                 for (Tag tag : s.getMetric().getExternalTags()) {
@@ -283,44 +1013,48 @@ public class CortexTSS implements TimeSeriesStorage {
                     }
                 }
                 if (needUpsert) {
-                    kvStore.putAsync(key, jsonMetrics.toString(), CORTEX_TSS)
-                            .whenComplete((res,ex)->{
-                                if(ex != null){
-                                    LOG.debug("Exception occurred persisting external tag for metric: " + key );
-                                    extTagPutTransactionFailed.mark();
-                                }
-                            });
-                    externalTagsCache.put(key, jsonMetrics.toString());
+                    putExternalTagsAsync(key, jsonMetrics.toString());
                     extTagsModified.mark();
                 }
+                externalTagsCache.put(key, jsonMetrics.toString());
                 //missed caching this record
                 extTagsCacheMissed.mark();
             } else {
                 for (Tag tag : s.getMetric().getExternalTags()) {
                     jsonNewMetric.put(tag.getKey(), tag.getValue());
                 }
-                kvStore.putAsync(key, jsonNewMetric.toString(), CORTEX_TSS)
-                        .whenComplete((res,ex)->{
-                            if(ex != null){
-                                LOG.debug("Exception occurred persisting external tag for metric: " + key );
-                                extTagPutTransactionFailed.mark();
-                            }
-                        });
+                putExternalTagsAsync(key, jsonNewMetric.toString());
                 externalTagsCache.put(key, jsonNewMetric.toString());
             }
         }
     }
 
-    public CompletableFuture<Void> executeAsync(Request request) {
+    private void putExternalTagsAsync(final String key, final String externalTags) {
+        final Timer.Context timerContext = extTagsKvPutLatency.time();
+        kvStore.putAsync(key, externalTags, CORTEX_TSS)
+                .whenComplete((res,ex)->{
+                    timerContext.stop();
+                    if(ex != null){
+                        LOG.debug("Exception occurred persisting external tag for metric: " + key );
+                        extTagPutTransactionFailed.mark();
+                    }
+                });
+    }
+
+    private CompletableFuture<Void> executeAsync(final CortexEndpoint endpoint, final Request request) {
         final CompletableFuture<Void> future = new CompletableFuture<>();
-        client.newCall(request).enqueue(new Callback() {
+        final String tenant = request.header(X_SCOPE_ORG_ID_HEADER);
+        final long startNanos = System.nanoTime();
+        endpoint.getClient().newCall(request).enqueue(new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
+                recordCall(endpoint, CALL_TYPE_WRITE, writeLatency, tenant, -1, startNanos);
                 future.completeExceptionally(e);
             }
 
             @Override
             public void onResponse(Call call, Response response) {
+                recordCall(endpoint, CALL_TYPE_WRITE, writeLatency, tenant, response.code(), startNanos);
                 try (ResponseBody body = response.body()) {
                     if (!response.isSuccessful()) {
                         String bodyAsString = "(null)";
@@ -331,7 +1065,7 @@ public class CortexTSS implements TimeSeriesStorage {
                                 bodyAsString = "(error reading body)";
                             }
                         }
-                        future.completeExceptionally(new StorageException(String.format("Writing to Prometheus failed: %s - %s: %s",
+                        future.completeExceptionally(new WriteException(response.code(), String.format("Writing to Prometheus failed: %s - %s: %s",
                                 response.code(),
                                 response.message(),
                                 bodyAsString)));
@@ -344,16 +1078,47 @@ public class CortexTSS implements TimeSeriesStorage {
         return future;
     }
 
-    private static PrometheusTypes.TimeSeries.Builder toPrometheusTimeSeries(Sample sample) {
+    /**
+     * Records the latency of a call to Cortex in the overall timer of the call type, in the endpoint and in a timer broken
+     * down by tenant and HTTP status class, e.g. "write.latency.myTenant.2xx". A status code < 0 denotes an I/O failure.
+     */
+    private void recordCall(final CortexEndpoint endpoint, final String callType, final Timer overall, final String tenant, final int statusCode, final long startNanos) {
+        final long durationInNanos = System.nanoTime() - startNanos;
+        overall.update(durationInNanos, TimeUnit.NANOSECONDS);
+        endpoint.recordCall(statusCode, durationInNanos);
+        metrics.timer(MetricRegistry.name(callType, "latency", toTenantName(tenant), toStatusClass(statusCode)))
+                .update(durationInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    static String toStatusClass(final int statusCode) {
+        if (statusCode < 0) {
+            return "error";
+        }
+        return (statusCode / 100) + "xx";
+    }
+
+    static String toTenantName(final String clientID) {
+        if (clientID == null || clientID.trim().isEmpty()) {
+            return DEFAULT_TENANT;
+        }
+        return clientID;
+    }
+
+    static PrometheusTypes.TimeSeries.Builder toPrometheusTimeSeries(Sample sample) {
     // ------------------------------------------------------------------
     // 1) Translate tags to Prometheus labels (with sanitization)
     // 2) Sort by label name (lexicographically)
     // 3) Assemble the TimeSeries with sorted labels
     // Consistent with the Prometheus remote write spec: https://prometheus.io/docs/specs/prw/remote_write_spec/
     // ------------------------------------------------------------------
-        List<PrometheusTypes.Label> labels = Stream
-                .concat(sample.getMetric().getIntrinsicTags().stream(),
-                        sample.getMetric().getMetaTags().stream())
+        return toPrometheusTimeSeries(sample, toPrometheusLabels(sample.getMetric()));
+    }
+
+    /** The labels of the metric, sanitized and sorted by name. */
+    static List<PrometheusTypes.Label> toPrometheusLabels(final Metric metric) {
+        return Stream
+                .concat(metric.getIntrinsicTags().stream(),
+                        metric.getMetaTags().stream())
                 .map(tag -> {
                     final String labelName;
                     final String labelValue;
@@ -371,7 +1136,9 @@ public class CortexTSS implements TimeSeriesStorage {
                 })
                 .sorted(Comparator.comparing(PrometheusTypes.Label::getName))
                 .collect(Collectors.toList());
+    }
 
+    static PrometheusTypes.TimeSeries.Builder toPrometheusTimeSeries(final Sample sample, final List<PrometheusTypes.Label> labels) {
         PrometheusTypes.TimeSeries.Builder tsBuilder = PrometheusTypes.TimeSeries.newBuilder();
         labels.forEach(tsBuilder::addLabels);
 
@@ -385,31 +1152,59 @@ public class CortexTSS implements TimeSeriesStorage {
     public static String sanitizeMetricName(String metricName) {
         // Hard-coded implementation optimized for speed - see
         // See https://github.com/prometheus/common/blob/v0.22.0/model/metric.go#L92
-        StringBuilder sb = new StringBuilder();
-        for (int i=0; i < metricName.length(); i++) {
-            char b = metricName.charAt(i);
-            if (!((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || b == ':' || (b >= '0' && b <= '9' && i > 0))) {
-                sb.append("_");
-            } else {
-                sb.append(b);
-            }
-        }
-        return sb.toString();
+        return sanitize(metricName, METRIC_NAME_CHAR);
     }
 
     public static String sanitizeLabelName(String labelName) {
         // Hard-coded implementation optimized for speed - see
         // See https://github.com/prometheus/common/blob/v0.22.0/model/labels.go#L95
-        StringBuilder sb = new StringBuilder();
-        for (int i=0; i < labelName.length(); i++) {
-            char b = labelName.charAt(i);
-            if (!((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || (b >= '0' && b <= '9' && i > 0))) {
-                sb.append("_");
-            } else {
-                sb.append(b);
+        return sanitize(labelName, LABEL_NAME_CHAR);
+    }
+
+    /**
+     * Replaces all invalid characters with '_'. Digits are only valid after the first character.
+     * Most names are already valid, in that case the given instance is returned and nothing is allocated.
+     */
+    private static String sanitize(final String name, final byte validFlag) {
+        final int length = name.length();
+        int i = 0;
+        while (i < length && isValidChar(name.charAt(i), i, validFlag)) {
+            i++;
+        }
+        if (i == length) {
+            return name;
+        }
+        final char[] chars = name.toCharArray();
+        for (; i < length; i++) {
+            if (!isValidChar(chars[i], i, validFlag)) {
+                chars[i] = '_';
             }
         }
-        return sb.toString();
+        return new String(chars);
+    }
+
+    private static boolean isValidChar(final char c, final int index, final byte validFlag) {
+        if (c >= NAME_CHARS.length) {
+            return false;
+        }
+        final byte flags = NAME_CHARS[c];
+        return (flags & validFlag) != 0 && (index > 0 || (flags & DIGIT_CHAR) == 0);
+    }
+
+    /** Escapes the backslash since it is the escape character itself in PromQL strings, see NMS-13157. */
+    static String escapeBackslashes(final String value) {
+        int idx = value.indexOf('\\');
+        if (idx < 0) {
+            return value;
+        }
+        final StringBuilder sb = new StringBuilder(value.length() + 8);
+        int start = 0;
+        while (idx >= 0) {
+            sb.append(value, start, idx + 1).append('\\');
+            start = idx + 1;
+            idx = value.indexOf('\\', start);
+        }
+        return sb.append(value, start, value.length()).toString();
     }
 
     public static String sanitizeLabelValue(String labelValue) {
@@ -423,6 +1218,30 @@ public class CortexTSS implements TimeSeriesStorage {
     }
 
     public List<Metric> findMetrics(Collection<TagMatcher> tagMatchers, String clientID) throws StorageException {
+        final SeriesIndex seriesIndex = this.seriesIndex;
+        List<Metric> metrics;
+        if (seriesIndex == null) {
+            metrics = querySeries(tagMatchers, clientID);
+        } else {
+            final String tenant = toTenantName(clientID);
+            final long nowMs = System.currentTimeMillis();
+            final long notWrittenBeforeMs = nowMs - TimeUnit.SECONDS.toMillis(config.getMaxSeriesLookback());
+            metrics = seriesIndex.find(tenant, tagMatchers, notWrittenBeforeMs, nowMs);
+            if (metrics == null) {
+                // not seeded (anymore): ask Cortex, it knows the series written before the index or by other instances
+                metrics = seriesIndex.seed(tenant, tagMatchers, querySeries(tagMatchers, clientID), notWrittenBeforeMs, nowMs);
+            }
+            // e.g. seeded before the rollups were excluded from the series queries
+            metrics = metrics.stream()
+                    .filter(metric -> !Rollups.isRollup(metric))
+                    .collect(Collectors.toList());
+        }
+        metrics.forEach(m -> this.metricCache.put(m.getKey(), m));
+        return metrics;
+    }
+
+    /** Finds the series matching the tag matchers, without caching them. */
+    private List<Metric> querySeries(Collection<TagMatcher> tagMatchers, String clientID) throws StorageException {
         LOG.info("Retrieving metrics for tagMatchers: {}", tagMatchers);
         Objects.requireNonNull(tagMatchers);
         Instant instant = Instant.now();
@@ -430,26 +1249,59 @@ public class CortexTSS implements TimeSeriesStorage {
         if(tagMatchers.isEmpty()) {
             throw new IllegalArgumentException("tagMatchers cannot be null");
         }
-        String url = String.format("%s/series?match[]={%s}&start=%d",
-                config.getReadUrl(),
-                tagMatchersToQuery(tagMatchers),
+        // the rollup series are no metrics of their own, they are only read in place of their series
+        final List<TagMatcher> withoutRollups = new ArrayList<>(tagMatchers);
+        withoutRollups.add(Rollups.NOT_A_ROLLUP);
+        String pathAndQuery = String.format("/series?match[]={%s}&start=%d",
+                tagMatchersToQuery(withoutRollups),
                 start);
-        String json = makeCallToQueryApi(url, clientID);
-        List<Metric> metrics = ResultMapper.fromSeriesQueryResult(json, kvStore);
-        metrics.forEach(m -> this.metricCache.put(m.getKey(), m));
-        return metrics;
+        final CortexEndpoints endpoints = this.endpoints;
+        if (!endpoints.isReadSharded()) {
+            String json = makeCallToQueryApi(endpoints.getReadInOrder(), pathAndQuery, clientID, CALL_TYPE_SERIES, seriesLatency);
+            List<Metric> metrics = ResultMapper.fromSeriesQueryResult(json, kvStore);
+            seriesPerResponse.update(metrics.size());
+            return metrics;
+        }
+        // every cluster has a shard of the series
+        final Map<String, Metric> metrics = new LinkedHashMap<>();
+        for (CortexEndpoint endpoint : endpoints.getRead()) {
+            String json = makeCallToQueryApi(List.of(endpoint), pathAndQuery, clientID, CALL_TYPE_SERIES, seriesLatency);
+            List<Metric> shard = ResultMapper.fromSeriesQueryResult(json, kvStore);
+            seriesPerResponse.update(shard.size());
+            shard.forEach(metric -> metrics.putIfAbsent(metric.getKey(), metric));
+        }
+        return new ArrayList<>(metrics.values());
+    }
+
+    /** Finds the series of a cached metric again, to refresh its meta data. Returns null if it doesn't exist anymore. */
+    private Metric refreshMetric(final Metric metric) throws StorageException {
+        final String key = metric.getKey();
+        return querySeries(toTagMatchers(metric), config.getOrganizationId()).stream()
+                .filter(m -> key.equals(m.getKey()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static List<TagMatcher> toTagMatchers(final Metric metric) {
+        return metric.getIntrinsicTags().stream()
+                .map(TagMatcherBuilder::of) // build matcher that matches this tag
+                .map(TagMatcherBuilder::build)
+                .collect(Collectors.toList());
     }
 
     /** Returns the full metric (incl. meta data from the database).
      * This is only needed if not in cache already - which it should be. */
-    private Optional<Metric> loadMetric(final Metric metric) throws StorageException {
+    private Optional<Metric> loadMetric(final Metric metric, final String clientID) throws StorageException {
         Metric loadedMetric = this.metricCache.getIfPresent(metric.getKey());
+        final SeriesIndex seriesIndex = this.seriesIndex;
+        if (loadedMetric == null && seriesIndex != null) {
+            loadedMetric = seriesIndex.get(toTenantName(clientID), metric.getKey());
+            if (loadedMetric != null) {
+                this.metricCache.put(loadedMetric.getKey(), loadedMetric);
+            }
+        }
         if(loadedMetric == null) {
-            List<TagMatcher> matchers = metric.getIntrinsicTags().stream()
-                    .map(TagMatcherBuilder::of) // build matcher that matches this tag
-                    .map(TagMatcherBuilder::build)
-                    .collect(Collectors.toList());
-            List<Metric> metrics = findMetrics(matchers);
+            List<Metric> metrics = findMetrics(toTagMatchers(metric), clientID);
             if(metrics.size() < 1 ) {
                 return Optional.empty();
             }
@@ -459,6 +1311,48 @@ public class CortexTSS implements TimeSeriesStorage {
         return Optional.of(loadedMetric);
     }
 
+    /**
+     * Returns the full metric like {@link #loadMetric(Metric, String)}, with the type from the metadata api added if it has no
+     * mtype meta tag, e.g. because it was written by another source.
+     */
+    private Optional<Metric> loadMetricWithType(final Metric metric, final String clientID) throws StorageException {
+        final Optional<Metric> loadedMetric = loadMetric(metric, clientID);
+        if (!loadedMetric.isPresent() || loadedMetric.get().getFirstTagByKey(MetaTagNames.mtype) != null) {
+            return loadedMetric;
+        }
+        final Tag name = loadedMetric.get().getFirstTagByKey(IntrinsicTagNames.name);
+        if (name == null) {
+            return loadedMetric;
+        }
+        final Metric.Mtype type = loadMetricType(sanitizeMetricName(name.getValue()), metric.getKey(), clientID);
+        if (type == null) {
+            return loadedMetric;
+        }
+        return Optional.of(ImmutableMetric.builder()
+                .intrinsicTags(loadedMetric.get().getIntrinsicTags())
+                .metaTags(loadedMetric.get().getMetaTags())
+                .metaTag(MetaTagNames.mtype, type.name())
+                .externalTags(loadedMetric.get().getExternalTags())
+                .build());
+    }
+
+    /** The type of the metric family from the metadata cache or the metadata api, null if unknown. */
+    private Metric.Mtype loadMetricType(final String family, final String key, final String clientID) throws StorageException {
+        final String tenant = toTenantName(clientID);
+        final MetricMetadataCache metadataCache = this.metricMetadataCache;
+        PrometheusTypes.MetricMetadata.MetricType type = metadataCache.get(tenant, family);
+        if (type == null) {
+            // the cluster holding the series has the metadata of its family
+            final String json = makeCallToQueryApi(endpoints.getReadFor(key), "/metadata?metric=" + family, clientID, CALL_TYPE_METADATA, metadataLatency);
+            type = ResultMapper.fromMetadataQueryResult(json, family);
+            if (type == null) {
+                return null;
+            }
+            metadataCache.put(tenant, family, type);
+        }
+        return MetricMetadataCache.toMtype(type);
+    }
+
     @Override
     public List<Sample> getTimeseries(TimeSeriesFetchRequest request) throws StorageException {
         return getTimeseries(request, config.getOrganizationId());
@@ -467,23 +1361,167 @@ public class CortexTSS implements TimeSeriesStorage {
     public List<Sample> getTimeseries(TimeSeriesFetchRequest request, String clientID) throws StorageException {
 
         // first load the original metric - we need it for the meta data
-        Optional<Metric> metric = loadMetric(request.getMetric());
+        Optional<Metric> metric = config.isMetadataEnabled()
+                ? loadMetricWithType(request.getMetric(), clientID)
+                : loadMetric(request.getMetric(), clientID);
         if(!metric.isPresent()) {
             return Collections.emptyList();
         }
 
-        String query = createQuery(request, metric.get());
-        String url = String.format("%s/query_range?query=%s&start=%s&end=%s&step=%ss",
-                config.getReadUrl(),
+        final HotTier hotTier = this.hotTier;
+        if (config.isRemoteReadEnabled() && Aggregation.NONE.equals(request.getAggregation())) {
+            final List<Sample> samples = hotTier == null ? null
+                    : hotTier.getSamples(toTenantName(clientID), request.getMetric().getKey(), metric.get(), request.getStart().toEpochMilli(), request.getEnd().toEpochMilli());
+            if (samples != null) {
+                return isCounter(metric.get()) ? RemoteReadMapper.toRates(samples) : samples;
+            }
+            return getTimeseriesViaRemoteRead(request, metric.get(), clientID);
+        }
+
+        final long stepInSeconds = determineStepInSeconds(request);
+        final long stepInMs = stepInSeconds * 1000;
+        // the query frontend only caches the results of queries on the same grid of steps
+        final boolean align = config.isQueryStepAlignmentEnabled();
+        final long startMs = align ? floorToStep(request.getStart().toEpochMilli(), stepInMs) : request.getStart().toEpochMilli();
+        final long endMs = align ? ceilToStep(request.getEnd().toEpochMilli(), stepInMs) : request.getEnd().toEpochMilli();
+
+        // the recent steps may be evaluated locally, only the ones before are queried then
+        final HotTier.Evaluation local = hotTier == null ? null : hotTier.evaluate(toTenantName(clientID), request.getMetric().getKey(), metric.get(),
+                startMs, endMs, stepInMs, isCounter(metric.get()), getRateIntervalInSeconds(request) * 1000);
+        List<Sample> samples;
+        if (local != null && local.getFromMs() == startMs) {
+            samples = local.getSamples();
+        } else {
+            final long queryEndMs = local == null ? endMs : local.getFromMs() - stepInMs;
+            if (startMs % stepInMs == 0 && queryEndMs % stepInMs == 0) {
+                queryRangeAligned.mark();
+            } else {
+                queryRangeUnaligned.mark();
+            }
+            samples = queryRange(request, metric.get(), startMs, queryEndMs, stepInSeconds, clientID);
+            if (local != null) {
+                samples = new ArrayList<>(samples);
+                samples.addAll(local.getSamples());
+            }
+        }
+        if (align) {
+            // the steps outside of the requested range were only queried for the alignment
+            samples = samples.stream()
+                    .filter(sample -> !sample.getTime().isBefore(request.getStart()) && !sample.getTime().isAfter(request.getEnd()))
+                    .collect(Collectors.toList());
+        }
+        return samples;
+    }
+
+    /**
+     * Queries the steps from startMs to endMs. Aggregated fetches read the rollups for the steps covered by rollup windows
+     * completed and written, and the raw samples for the others: the steps before the rollups existed and the recent ones.
+     * Without any rollups in the range (e.g. enabled only recently) the raw samples are read for all steps.
+     */
+    private List<Sample> queryRange(final TimeSeriesFetchRequest request, final Metric metric, final long startMs, final long endMs,
+                                    final long stepInSeconds, final String clientID) throws StorageException {
+        final long rollupInterval = Aggregation.NONE.equals(request.getAggregation()) ? -1
+                : Rollups.selectInterval(config.getRollupIntervalsInSeconds(), stepInSeconds);
+        if (rollupInterval <= 0) {
+            return queryRange(request, createQuery(request, metric), metric, startMs, endMs, stepInSeconds, clientID);
+        }
+        final long stepInMs = stepInSeconds * 1000;
+        // the last step whose windows are all written
+        final long rollupEndMs = Math.min(endMs,
+                startMs + floorToStep(Rollups.writtenUntilMs(System.currentTimeMillis(), rollupInterval) - startMs, stepInMs));
+        final List<Sample> rollupSamples = rollupEndMs < startMs ? Collections.emptyList()
+                : queryRange(request, createRollupQuery(request, metric, rollupInterval), metric, startMs, rollupEndMs, stepInSeconds, clientID);
+        if (rollupSamples.isEmpty()) {
+            rollupQueriesFallenBack.mark();
+            return queryRange(request, createQuery(request, metric), metric, startMs, endMs, stepInSeconds, clientID);
+        }
+        final long firstMs = rollupSamples.get(0).getTime().toEpochMilli();
+        final long lastMs = rollupSamples.get(rollupSamples.size() - 1).getTime().toEpochMilli();
+        final List<Sample> samples = new ArrayList<>();
+        if (firstMs > startMs) {
+            // the rollups started within the step of the first one found, that step is read from the raw samples as well
+            samples.addAll(queryRange(request, createQuery(request, metric), metric, startMs, firstMs, stepInSeconds, clientID));
+            rollupSamples.stream()
+                    .filter(sample -> sample.getTime().toEpochMilli() > firstMs)
+                    .forEach(samples::add);
+        } else {
+            samples.addAll(rollupSamples);
+        }
+        if (lastMs < endMs) {
+            samples.addAll(queryRange(request, createQuery(request, metric), metric, lastMs + stepInMs, endMs, stepInSeconds, clientID));
+        }
+        return samples;
+    }
+
+    private List<Sample> queryRange(final TimeSeriesFetchRequest request, final String query, final Metric metric, final long startMs,
+                                    final long endMs, final long stepInSeconds, final String clientID) throws StorageException {
+        String pathAndQuery = String.format("/query_range?query=%s&start=%s&end=%s&step=%ss",
                 query,
-                request.getStart().getEpochSecond(),
-                request.getEnd().getEpochSecond(),
-                determineStepInSeconds(request));
-        LOG.info("Retrieving time series for metric: {} with query {}", request, url);
+                toPrometheusTime(Instant.ofEpochMilli(startMs)),
+                toPrometheusTime(Instant.ofEpochMilli(endMs)),
+                stepInSeconds);
+        LOG.info("Retrieving time series for metric: {} with query {}", request, pathAndQuery);
+
+        String json = makeCallToQueryApi(endpoints.getReadFor(request.getMetric().getKey()), pathAndQuery, clientID, CALL_TYPE_QUERY_RANGE, queryRangeLatency);
+        final List<Sample> samples = ResultMapper.fromRangeQueryResult(json, metric);
+        queryRangeSamplesPerResponse.update(samples.size());
+        return samples;
+    }
+
+    /** The time rounded down to a multiple of the step. */
+    static long floorToStep(final long timeMs, final long stepMs) {
+        return Math.floorDiv(timeMs, stepMs) * stepMs;
+    }
+
+    /** The time rounded up to a multiple of the step. */
+    static long ceilToStep(final long timeMs, final long stepMs) {
+        return -Math.floorDiv(-timeMs, stepMs) * stepMs;
+    }
 
+    static boolean isCounter(final Metric metric) {
+        final Tag typeTag = metric.getFirstTagByKey(MetaTagNames.mtype);
+        final String type = typeTag == null ? null : typeTag.getValue();
+        return Metric.Mtype.count.name().equals(type) || Metric.Mtype.counter.name().equals(type);
+    }
 
-        String json = makeCallToQueryApi(url, clientID);
-        return ResultMapper.fromRangeQueryResult(json, metric.get());
+    private static long getRateIntervalInSeconds(final TimeSeriesFetchRequest request) {
+        return (long)(determineStepInSeconds(request) * 2.1d); // make sure we always have at least 2 samples captured
+    }
+
+    /** Fetches the raw samples via the remote-read api, see {@link RemoteReadMapper}. */
+    private List<Sample> getTimeseriesViaRemoteRead(final TimeSeriesFetchRequest request, final Metric metric, final String clientID) throws StorageException {
+        final byte[] readRequestCompressed;
+        try {
+            readRequestCompressed = Snappy.compress(RemoteReadMapper.toReadRequest(request).toByteArray());
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+        final Request.Builder builder = new Request.Builder()
+                .addHeader("X-Prometheus-Remote-Read-Version", "0.1.0")
+                .addHeader("Content-Encoding", "snappy")
+                .addHeader("User-Agent", CortexTSS.class.getCanonicalName())
+                .post(RequestBody.create(PROTOBUF_MEDIA_TYPE, readRequestCompressed));
+        if (clientID != null && clientID.trim().length() > 0) {
+            builder.addHeader(X_SCOPE_ORG_ID_HEADER, clientID);
+        }
+        LOG.info("Retrieving time series for metric: {} via remote read", request);
+
+        List<Sample> samples = callReadEndpoints(endpoints.getReadFor(request.getMetric().getKey()), "/read", url -> builder.url(url).build(),
+                CALL_TYPE_REMOTE_READ, remoteReadLatency,
+                (response, responseBody) -> {
+                    final String contentType = response.header("Content-Type", "");
+                    if (contentType.startsWith(RemoteReadMapper.STREAMED_CONTENT_TYPE)) {
+                        return RemoteReadMapper.fromChunkedReadResponse(responseBody.byteStream(), metric, request.getStart(), request.getEnd());
+                    }
+                    return RemoteReadMapper.fromReadResponse(responseBody.bytes(), metric);
+                });
+
+        // the query api returns the rate of counters, do the same here
+        if (isCounter(metric)) {
+            samples = RemoteReadMapper.toRates(samples);
+        }
+        remoteReadSamplesPerResponse.update(samples.size());
+        return samples;
     }
 
     private String createQuery(final TimeSeriesFetchRequest request, final Metric metric) {
@@ -497,7 +1535,7 @@ public class CortexTSS implements TimeSeriesStorage {
         query.append("}");
 
         // rate
-        long interval = (long)(determineStepInSeconds(request) * 2.1d); // make sure we always have at least 2 samples captured
+        long interval = getRateIntervalInSeconds(request);
         String type = metric.getFirstTagByKey(MetaTagNames.mtype).getValue();
         if(Metric.Mtype.count.name().equals(type) || Metric.Mtype.counter.name().equals(type)) {
             query.insert(0, "rate(");
@@ -516,7 +1554,28 @@ public class CortexTSS implements TimeSeriesStorage {
         return query.toString();
     }
 
-    private String toFunction(final Aggregation aggregation) {
+    /** Builds the query of an aggregated fetch from the rollup series of the given interval, see {@link Rollups}. */
+    static String createRollupQuery(final TimeSeriesFetchRequest request, final Metric metric, final long rollupInterval) {
+        final String range = "[" + determineStepInSeconds(request) + "s]";
+        final String query;
+        if (isCounter(metric)) {
+            query = "rate(" + toRollupSelector(request, rollupInterval, Rollups.MAX) + "[" + getRateIntervalInSeconds(request) + "s])";
+        } else if (Aggregation.AVERAGE == request.getAggregation()) {
+            query = "sum_over_time(" + toRollupSelector(request, rollupInterval, Rollups.SUM) + range + ")"
+                    + " / sum_over_time(" + toRollupSelector(request, rollupInterval, Rollups.COUNT) + range + ")";
+        } else if (Aggregation.MAX == request.getAggregation()) {
+            query = "max_over_time(" + toRollupSelector(request, rollupInterval, Rollups.MAX) + range + ")";
+        } else {
+            query = "min_over_time(" + toRollupSelector(request, rollupInterval, Rollups.MIN) + range + ")";
+        }
+        return toFunction(request.getAggregation()) + "(" + query + ")";
+    }
+
+    private static String toRollupSelector(final TimeSeriesFetchRequest request, final long rollupInterval, final String aggregate) {
+        return "{" + tagsToQuery(Rollups.toRollupMetric(request.getMetric(), rollupInterval, aggregate).getIntrinsicTags()) + "}";
+    }
+
+    private static String toFunction(final Aggregation aggregation) {
         if(Aggregation.AVERAGE == aggregation){
             return "avg";
         } else if(Aggregation.MAX == aggregation) {
@@ -528,10 +1587,10 @@ public class CortexTSS implements TimeSeriesStorage {
         }
     }
 
-    private String makeCallToQueryApi(final String url, String clientID) throws StorageException {
+    private String makeCallToQueryApi(final List<CortexEndpoint> readEndpoints, final String pathAndQuery, String clientID,
+                                      final String callType, final Timer latency) throws StorageException {
 
         final Request.Builder builder = new Request.Builder()
-                .url(url)
                 .addHeader("User-Agent", CortexTSS.class.getCanonicalName())
                 .get();
         if(clientID != null && clientID.trim().length()>0) {
@@ -541,26 +1600,61 @@ public class CortexTSS implements TimeSeriesStorage {
         if (config.hasOrganizationId()) {
             builder.addHeader(X_SCOPE_ORG_ID_HEADER, config.getOrganizationId());
         }
-        final Request httpRequest = builder.build();
+        return callReadEndpoints(readEndpoints, pathAndQuery, url -> builder.url(url).build(), callType, latency,
+                (response, responseBody) -> responseBody.string());
+    }
+
+    /** Reads the body of a successful response. */
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(Response response, ResponseBody responseBody) throws IOException, StorageException;
+    }
 
-        try (Response response = client.newCall(httpRequest).execute()) {
-            try(ResponseBody responseBody = response.body()) {
+    /**
+     * Calls the given read endpoints until one of them answers successfully, e.g. the healthy ones first, in the configured
+     * order, then the unhealthy ones (see {@link CortexEndpoints#getReadInOrder()}). Client errors are not retried since the
+     * other endpoints would answer the same.
+     */
+    private <T> T callReadEndpoints(final List<CortexEndpoint> readEndpoints, final String pathAndQuery, final Function<String, Request> requestFactory,
+                                    final String callType, final Timer latency, final ResponseHandler<T> handler) throws StorageException {
+        StorageException lastException = null;
+        for (CortexEndpoint endpoint : readEndpoints) {
+            final String url = endpoint.getUrl() + pathAndQuery;
+            final Request httpRequest = requestFactory.apply(url);
+            final String tenant = httpRequest.header(X_SCOPE_ORG_ID_HEADER);
+            final long startNanos = System.nanoTime();
+            endpoint.callStarted();
+            try (Response response = endpoint.getClient().newCall(httpRequest).execute();
+                 ResponseBody responseBody = response.body()) {
                 if (!response.isSuccessful()) {
+                    recordCall(endpoint, callType, latency, tenant, response.code(), startNanos);
                     String bodyMsg = "";
                     if (responseBody != null) {
                         bodyMsg = responseBody.string();
                     }
-                    throw new StorageException(String.format("Call to %s failed: response code:%s, response message:%s, bodyMessage:%s", url, response.code(), response.message(), bodyMsg));
-                }
-                if (responseBody != null) {
-                    return responseBody.string();
-                } else {
+                    lastException = new StorageException(String.format("Call to %s failed: response code:%s, response message:%s, bodyMessage:%s", url, response.code(), response.message(), bodyMsg));
+                    if (!CortexEndpoint.isFailure(response.code())) {
+                        throw lastException;
+                    }
+                } else if (responseBody == null) {
+                    recordCall(endpoint, callType, latency, tenant, response.code(), startNanos);
                     throw new StorageException(String.format("Call to %s delivered no body.", url));
+                } else {
+                    final T result = handler.handle(response, responseBody);
+                    recordCall(endpoint, callType, latency, tenant, response.code(), startNanos);
+                    return result;
                 }
+            } catch (IOException e) {
+                recordCall(endpoint, callType, latency, tenant, -1, startNanos);
+                lastException = new StorageException(String.format("Call to %s failed.", url), e);
+            } finally {
+                endpoint.callFinished();
+            }
+            if (readEndpoints.size() > 1) {
+                LOG.warn("Reading from {} failed, trying the next read endpoint.", endpoint.getUrl(), lastException);
             }
-        } catch (IOException | StorageException e) {
-            throw new StorageException(String.format("Call to %s failed.", url), e);
         }
+        throw lastException;
     }
 
     static long determineStepInSeconds(TimeSeriesFetchRequest request) {
@@ -575,6 +1669,14 @@ public class CortexTSS implements TimeSeriesStorage {
         return Math.max(1L, (long) step);
     }
 
+    /** Formats the time as seconds since the epoch with millisecond precision, e.g. 1602783564.123. */
+    static String toPrometheusTime(final Instant time) {
+        final long millis = time.toEpochMilli();
+        final long seconds = Math.floorDiv(millis, 1000L);
+        final long fraction = Math.floorMod(millis, 1000L);
+        return fraction == 0 ? Long.toString(seconds) : String.format("%d.%03d", seconds, fraction);
+    }
+
     protected static String tagsToQuery(final Collection<Tag> tags) {
         StringBuilder b = new StringBuilder();
         for (Tag tag : tags) {
@@ -586,7 +1688,7 @@ public class CortexTSS implements TimeSeriesStorage {
             } else {
                 key = sanitizeLabelName(tag.getKey());
                 // see NMS-13157: the backslash must be escaped since it is the escape character itself
-                value = tag.getValue().replaceAll("\\\\", "\\\\\\\\");
+                value = escapeBackslashes(tag.getValue());
             }
             if (b.length() > 0) {
                 b.append(", ");
@@ -611,7 +1713,7 @@ public class CortexTSS implements TimeSeriesStorage {
             } else {
                 key = sanitizeLabelName(matcher.getKey());
                 // see NMS-13157: the backslash must be escaped since it is the escape character itself
-                value = matcher.getValue().replaceAll("\\\\", "\\\\\\\\");
+                value = escapeBackslashes(matcher.getValue());
             }
             if (b.length() > 0) {
                 b.append(", ");
@@ -639,29 +1741,126 @@ public class CortexTSS implements TimeSeriesStorage {
 
     @Override
     public void delete(Metric metric) {
-        LOG.warn("Deletes are not currently supported. Ignoring delete for: {}", metric);
-        // delete can only be done when enabled:
-        // --web.enable-admin-api flag to Prometheus through start-up script or docker-compose file, depending on installation method.
-        // curl -X POST -g 'http://localhost:9090/api/v1/admin/tsdb/delete_series?match[]={foo="bar"}'
-
+        delete(metric, config.getOrganizationId());
     }
 
-    public void destroy() throws InterruptedException {
-       ExecutorService executorService =  client.dispatcher().executorService();
-
-       executorService.shutdown();
-
-
-        client.connectionPool().evictAll();
+    /**
+     * Removes the cached metric and the external tags of the metric right away. If enabled, the series is queued to be
+     * deleted from Cortex, see {@link SeriesDeleter}.
+     */
+    public void delete(final Metric metric, final String clientID) {
+        final String key = metric.getKey();
+        metricCache.invalidate(key);
+        externalTagsCache.invalidate(key);
+        final SeriesIndex seriesIndex = this.seriesIndex;
+        if (seriesIndex != null) {
+            final Metric written = toWrittenMetric(metric, this.relabeler);
+            seriesIndex.remove(toTenantName(clientID), written == null ? metric : written);
+        }
+        kvStore.deleteAsync(key, CORTEX_TSS).whenComplete((r, ex) -> {
+            if (ex != null) {
+                LOG.warn("Deleting the external tags of {} failed.", key, ex);
+            }
+        });
+        if (!config.isDeleteEnabled()) {
+            LOG.debug("Deleting series is disabled, {} remains in Cortex.", metric);
+            return;
+        }
+        seriesDeleter.delete(clientID, "{" + tagsToQuery(metric.getIntrinsicTags()) + "}");
+    }
 
-        client.dispatcher().cancelAll();
+    /**
+     * Deletes the series matching any of the selectors from all read endpoints (every one might hold some of them).
+     * The admin api needs to be enabled in Cortex.
+     */
+    private void deleteSeries(final String clientID, final List<String> selectors) throws StorageException {
+        final FormBody.Builder form = new FormBody.Builder();
+        selectors.forEach(selector -> form.add("match[]", selector));
+        final FormBody body = form.build();
+        StorageException failure = null;
+        for (CortexEndpoint endpoint : endpoints.getRead()) {
+            final String url = endpoint.getUrl() + DELETE_SERIES_PATH;
+            final Request.Builder builder = new Request.Builder()
+                    .url(url)
+                    .addHeader("User-Agent", CortexTSS.class.getCanonicalName())
+                    .post(body);
+            if (clientID != null && clientID.trim().length() > 0) {
+                builder.addHeader(X_SCOPE_ORG_ID_HEADER, clientID);
+            }
+            final long startNanos = System.nanoTime();
+            endpoint.callStarted();
+            try (Response response = endpoint.getClient().newCall(builder.build()).execute();
+                 ResponseBody responseBody = response.body()) {
+                recordCall(endpoint, CALL_TYPE_DELETE, deleteLatency, clientID, response.code(), startNanos);
+                if (!response.isSuccessful()) {
+                    failure = new StorageException(String.format("Call to %s failed: response code:%s, response message:%s, bodyMessage:%s",
+                            url, response.code(), response.message(), responseBody == null ? "" : responseBody.string()));
+                }
+            } catch (IOException e) {
+                recordCall(endpoint, CALL_TYPE_DELETE, deleteLatency, clientID, -1, startNanos);
+                failure = new StorageException(String.format("Call to %s failed.", url), e);
+            } finally {
+                endpoint.callFinished();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 
+    /**
+     * Stops accepting samples, writes the ones held in the reorder buffer and waits up to the flush timeout for the pending writes. The ones still pending then
+     * are saved to the spill file (if configured) before all calls are cancelled.
+     */
+    public synchronized void destroy() throws InterruptedException {
+        stopReporters();
+        acceptingSamples = false;
+        reorderBuffer.close();
+
+        final long startNanos = System.nanoTime();
+        final long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(config.getShutdownFlushTimeoutInMs());
+        final long samplesWrittenBefore = samplesWritten.getCount();
+        while (!pendingWrites.isEmpty() && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(50);
+        }
+        final long samplesFlushed = samplesWritten.getCount() - samplesWrittenBefore;
+
+        final List<SpillFile.Entry> remainingWrites = new ArrayList<>(pendingWrites);
+        final long samplesRemaining = remainingWrites.stream().mapToLong(SpillFile.Entry::getNumberOfSamples).sum();
+        long samplesSpilled = 0;
+        final Path spillFile = getSpillFile();
+        if (!remainingWrites.isEmpty() && spillFile != null) {
+            try {
+                SpillFile.append(spillFile, remainingWrites);
+                remainingWrites.forEach(SpillFile.Entry::markSpilled);
+                samplesSpilled = samplesRemaining;
+            } catch (IOException e) {
+                LOG.error("Writing spill file {} failed.", spillFile, e);
+            }
+        }
+        LOG.info("Shutting down after {} ms: {} samples flushed, {} samples spilled to {}, {} samples lost.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), samplesFlushed, samplesSpilled,
+                spillFile == null ? "(no spill directory configured)" : spillFile, samplesRemaining - samplesSpilled);
+
+        externalTagsWarmup.close();
+        seriesDeleter.close();
+        closeSeriesIndex(seriesIndex);
+        if (replayThread != null) {
+            replayThread.interrupt();
+            replayThread.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        metricCacheRefreshExecutor.shutdownNow();
+        endpoints.getAll().forEach(CortexEndpoint::destroy);
     }
 
     public MetricRegistry getMetrics() {
         return metrics;
     }
 
+    public CardinalityGuard getCardinalityGuard() {
+        return cardinalityGuard;
+    }
+
     @Override
     public boolean supportsAggregation(Aggregation aggregation) {
         return SUPPORTED_AGGREGATION.contains(aggregation);
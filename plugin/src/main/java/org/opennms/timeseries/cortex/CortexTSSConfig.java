@@ -1,11 +1,68 @@
 package org.opennms.timeseries.cortex;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.StringJoiner;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class CortexTSSConfig {
+
+    private static final Pattern INTERVAL_PATTERN = Pattern.compile("(\\d+)([smhd])");
+    private static final Map<String, Long> INTERVAL_UNITS = Map.of("s", 1L, "m", 60L, "h", 3600L, "d", 86400L);
+
+    /** How samples are distributed if several write urls are configured. */
+    public enum WriteMode {
+        /** Every series is written to one of the urls, chosen by consistent hashing of the series key. */
+        SHARD,
+        /** Every sample is written to all urls. */
+        REPLICATE
+    }
+
+    /** What happens to new series with a label above the maximum number of values. */
+    public enum CardinalityLimitAction {
+        /** The samples are dropped. */
+        DROP,
+        /** The samples are written with the value of the label replaced by {@value CardinalityGuard#OVERFLOW_VALUE}. */
+        RELABEL
+    }
+
+    /** The version of the Prometheus remote write protocol, see https://prometheus.io/docs/specs/prw/remote_write_spec_2_0/ */
+    public enum RemoteWriteVersion {
+        /** prometheus.WriteRequest, every series carries its label names and values. */
+        V1("0.1.0", "application/x-protobuf"),
+        /** io.prometheus.write.v2.Request, the labels reference a symbol table shared by all series of a request. */
+        V2("2.0.0", "application/x-protobuf;proto=io.prometheus.write.v2.Request");
+
+        private final String header;
+        private final String contentType;
+
+        RemoteWriteVersion(final String header, final String contentType) {
+            this.header = header;
+            this.contentType = contentType;
+        }
+
+        /** The value of the X-Prometheus-Remote-Write-Version header. */
+        public String getHeader() {
+            return header;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
     private final String writeUrl;
     private final String readUrl;
+    private final List<String> writeUrls;
+    private final List<String> readUrls;
+    private final List<Long> rollupIntervalsInSeconds;
     private final int maxConcurrentHttpConnections;
     private final long writeTimeoutInMs;
     private final long readTimeoutInMs;
@@ -15,6 +72,43 @@ public class CortexTSSConfig {
     private final long maxSeriesLookback;
     private final String organizationId;
     private final boolean hasOrganizationId;
+    private final boolean jmxReporterEnabled;
+    private final long selfMonitoringIntervalInMs;
+    private final boolean remoteReadEnabled;
+    private final WriteMode writeMode;
+    private final long endpointRetryIntervalInMs;
+    private final int tenantMaxConcurrentCalls;
+    private final int tenantMaxQueuedCalls;
+    private final long tenantMaxSamplesPerSecond;
+    private final long tenantIdleTimeoutInMs;
+    private final long shutdownFlushTimeoutInMs;
+    private final String spillDirectory;
+    private final long maxActiveSeries;
+    private final long maxLabelValues;
+    private final CardinalityLimitAction cardinalityLimitAction;
+    private final long cardinalityWindowInMs;
+    private final String writeRelabelConfigs;
+    private final long writeRelabelCacheSize;
+    private final boolean deleteEnabled;
+    private final int deleteBatchSize;
+    private final long deleteBatchIntervalInMs;
+    private final RemoteWriteVersion remoteWriteVersion;
+    private final boolean metadataEnabled;
+    private final long metadataIntervalInMs;
+    private final long metricCacheMaxBytes;
+    private final long externalTagsCacheMaxBytes;
+    private final long metricCacheRefreshIntervalInMs;
+    private final int externalTagsWarmupBatchSize;
+    private final long externalTagsWarmupPauseInMs;
+    private final String seriesIndexDirectory;
+    private final long hotTierMaxBytes;
+    private final int hotTierSamplesPerSeries;
+    private final String rollupIntervals;
+    private final int reorderBufferMaxSeries;
+    private final long reorderToleranceInMs;
+    private final long writeRequestMaxBytes;
+    private final boolean queryStepAlignmentEnabled;
+    private final long metadataCacheSize;
 
     public CortexTSSConfig() {
         this(builder());
@@ -32,6 +126,83 @@ public class CortexTSSConfig {
         this.maxSeriesLookback = builder.maxSeriesLookback;
         this.organizationId = builder.organizationId;
         this.hasOrganizationId = organizationId != null && organizationId.trim().length() > 0;
+        this.jmxReporterEnabled = builder.jmxReporterEnabled;
+        this.selfMonitoringIntervalInMs = builder.selfMonitoringIntervalInMs;
+        this.remoteReadEnabled = builder.remoteReadEnabled;
+        this.writeMode = Objects.requireNonNull(builder.writeMode);
+        this.endpointRetryIntervalInMs = builder.endpointRetryIntervalInMs;
+        this.tenantMaxConcurrentCalls = builder.tenantMaxConcurrentCalls;
+        this.tenantMaxQueuedCalls = builder.tenantMaxQueuedCalls;
+        this.tenantMaxSamplesPerSecond = builder.tenantMaxSamplesPerSecond;
+        this.tenantIdleTimeoutInMs = builder.tenantIdleTimeoutInMs;
+        this.shutdownFlushTimeoutInMs = builder.shutdownFlushTimeoutInMs;
+        this.spillDirectory = builder.spillDirectory == null ? "" : builder.spillDirectory.trim();
+        this.maxActiveSeries = builder.maxActiveSeries;
+        this.maxLabelValues = builder.maxLabelValues;
+        this.cardinalityLimitAction = Objects.requireNonNull(builder.cardinalityLimitAction);
+        this.cardinalityWindowInMs = builder.cardinalityWindowInMs;
+        this.writeRelabelConfigs = builder.writeRelabelConfigs == null ? "" : builder.writeRelabelConfigs.trim();
+        this.writeRelabelCacheSize = builder.writeRelabelCacheSize;
+        this.deleteEnabled = builder.deleteEnabled;
+        this.deleteBatchSize = builder.deleteBatchSize;
+        this.deleteBatchIntervalInMs = builder.deleteBatchIntervalInMs;
+        this.remoteWriteVersion = builder.remoteWriteVersion;
+        this.metadataEnabled = builder.metadataEnabled;
+        this.metadataIntervalInMs = builder.metadataIntervalInMs;
+        this.metricCacheMaxBytes = builder.metricCacheMaxBytes;
+        this.externalTagsCacheMaxBytes = builder.externalTagsCacheMaxBytes;
+        this.metricCacheRefreshIntervalInMs = builder.metricCacheRefreshIntervalInMs;
+        this.externalTagsWarmupBatchSize = builder.externalTagsWarmupBatchSize;
+        this.externalTagsWarmupPauseInMs = builder.externalTagsWarmupPauseInMs;
+        this.seriesIndexDirectory = builder.seriesIndexDirectory == null ? "" : builder.seriesIndexDirectory.trim();
+        this.hotTierMaxBytes = builder.hotTierMaxBytes;
+        this.hotTierSamplesPerSeries = builder.hotTierSamplesPerSeries;
+        this.rollupIntervals = builder.rollupIntervals == null ? "" : builder.rollupIntervals.trim();
+        this.reorderBufferMaxSeries = builder.reorderBufferMaxSeries;
+        this.reorderToleranceInMs = builder.reorderToleranceInMs;
+        this.writeRequestMaxBytes = builder.writeRequestMaxBytes;
+        this.queryStepAlignmentEnabled = builder.queryStepAlignmentEnabled;
+        this.metadataCacheSize = builder.metadataCacheSize;
+        // fail early on invalid rules
+        Relabeler.parseRules(writeRelabelConfigs);
+        this.writeUrls = splitUrls(writeUrl);
+        this.readUrls = splitUrls(readUrl);
+        if (writeMode == WriteMode.SHARD && writeUrls.size() > 1 && readUrls.size() > 1 && readUrls.size() != writeUrls.size()) {
+            throw new IllegalArgumentException("With writeMode shard the read urls need to be the ones of the clusters of the write urls,"
+                    + " in the same order, or a single url reading all of them: got " + writeUrls.size() + " write and "
+                    + readUrls.size() + " read urls");
+        }
+        this.rollupIntervalsInSeconds = parseIntervals(rollupIntervals);
+    }
+
+    /** Parses a comma separated list of durations like 30s, 5m, 1h or 1d, in ascending order. */
+    private static List<Long> parseIntervals(final String intervals) {
+        return Arrays.stream(intervals.split(","))
+                .map(String::trim)
+                .filter(interval -> !interval.isEmpty())
+                .map(interval -> {
+                    final Matcher matcher = INTERVAL_PATTERN.matcher(interval);
+                    if (!matcher.matches() || Long.parseLong(matcher.group(1)) == 0) {
+                        throw new IllegalArgumentException("Invalid interval '" + interval + "', expected e.g. 5m or 1h");
+                    }
+                    return Long.parseLong(matcher.group(1)) * INTERVAL_UNITS.get(matcher.group(2));
+                })
+                .sorted()
+                .distinct()
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    private static List<String> splitUrls(final String urls) {
+        final List<String> result = Arrays.stream(urls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                // an url listed twice would be written to twice
+                .distinct()
+                .collect(Collectors.toUnmodifiableList());
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("At least one url is required, got: '" + urls + "'");
+        }
+        return result;
     }
 
     /** Will be called via blueprint. The builder can be called when not running as Osgi plugin. */
@@ -45,7 +216,44 @@ public class CortexTSSConfig {
             final long externalTagsCacheSize,
             final long bulkheadMaxWaitDurationInMs,
             final long maxSeriesLookback,
-            final String organizationId) {
+            final String organizationId,
+            final boolean jmxReporterEnabled,
+            final long selfMonitoringIntervalInMs,
+            final boolean remoteReadEnabled,
+            final String writeMode,
+            final long endpointRetryIntervalInMs,
+            final int tenantMaxConcurrentCalls,
+            final int tenantMaxQueuedCalls,
+            final long tenantMaxSamplesPerSecond,
+            final long tenantIdleTimeoutInMs,
+            final long shutdownFlushTimeoutInMs,
+            final String spillDirectory,
+            final long maxActiveSeries,
+            final long maxLabelValues,
+            final String cardinalityLimitAction,
+            final long cardinalityWindowInMs,
+            final String writeRelabelConfigs,
+            final long writeRelabelCacheSize,
+            final boolean deleteEnabled,
+            final int deleteBatchSize,
+            final long deleteBatchIntervalInMs,
+            final String remoteWriteVersion,
+            final boolean metadataEnabled,
+            final long metadataIntervalInMs,
+            final long metricCacheMaxBytes,
+            final long externalTagsCacheMaxBytes,
+            final long metricCacheRefreshIntervalInMs,
+            final int externalTagsWarmupBatchSize,
+            final long externalTagsWarmupPauseInMs,
+            final String seriesIndexDirectory,
+            final long hotTierMaxBytes,
+            final int hotTierSamplesPerSeries,
+            final String rollupIntervals,
+            final int reorderBufferMaxSeries,
+            final long reorderToleranceInMs,
+            final long writeRequestMaxBytes,
+            final boolean queryStepAlignmentEnabled,
+            final long metadataCacheSize) {
         this(builder()
                 .writeUrl(writeUrl)
                 .readUrl(readUrl)
@@ -56,7 +264,44 @@ public class CortexTSSConfig {
                 .externalCacheSize(externalTagsCacheSize)
                 .bulkheadMaxWaitDurationInMs(bulkheadMaxWaitDurationInMs)
                 .maxSeriesLookback(maxSeriesLookback)
-                .organizationId(organizationId));
+                .organizationId(organizationId)
+                .jmxReporterEnabled(jmxReporterEnabled)
+                .selfMonitoringIntervalInMs(selfMonitoringIntervalInMs)
+                .remoteReadEnabled(remoteReadEnabled)
+                .writeMode(WriteMode.valueOf(writeMode.trim().toUpperCase(Locale.ROOT)))
+                .endpointRetryIntervalInMs(endpointRetryIntervalInMs)
+                .tenantMaxConcurrentCalls(tenantMaxConcurrentCalls)
+                .tenantMaxQueuedCalls(tenantMaxQueuedCalls)
+                .tenantMaxSamplesPerSecond(tenantMaxSamplesPerSecond)
+                .tenantIdleTimeoutInMs(tenantIdleTimeoutInMs)
+                .shutdownFlushTimeoutInMs(shutdownFlushTimeoutInMs)
+                .spillDirectory(spillDirectory)
+                .maxActiveSeries(maxActiveSeries)
+                .maxLabelValues(maxLabelValues)
+                .cardinalityLimitAction(CardinalityLimitAction.valueOf(cardinalityLimitAction.trim().toUpperCase(Locale.ROOT)))
+                .cardinalityWindowInMs(cardinalityWindowInMs)
+                .writeRelabelConfigs(writeRelabelConfigs)
+                .writeRelabelCacheSize(writeRelabelCacheSize)
+                .deleteEnabled(deleteEnabled)
+                .deleteBatchSize(deleteBatchSize)
+                .deleteBatchIntervalInMs(deleteBatchIntervalInMs)
+                .remoteWriteVersion(RemoteWriteVersion.valueOf(remoteWriteVersion.trim().toUpperCase(Locale.ROOT)))
+                .metadataEnabled(metadataEnabled)
+                .metadataIntervalInMs(metadataIntervalInMs)
+                .metricCacheMaxBytes(metricCacheMaxBytes)
+                .externalTagsCacheMaxBytes(externalTagsCacheMaxBytes)
+                .metricCacheRefreshIntervalInMs(metricCacheRefreshIntervalInMs)
+                .externalTagsWarmupBatchSize(externalTagsWarmupBatchSize)
+                .externalTagsWarmupPauseInMs(externalTagsWarmupPauseInMs)
+                .seriesIndexDirectory(seriesIndexDirectory)
+                .hotTierMaxBytes(hotTierMaxBytes)
+                .hotTierSamplesPerSeries(hotTierSamplesPerSeries)
+                .rollupIntervals(rollupIntervals)
+                .reorderBufferMaxSeries(reorderBufferMaxSeries)
+                .reorderToleranceInMs(reorderToleranceInMs)
+                .writeRequestMaxBytes(writeRequestMaxBytes)
+                .queryStepAlignmentEnabled(queryStepAlignmentEnabled)
+                .metadataCacheSize(metadataCacheSize));
     }
 
     public String getWriteUrl() {
@@ -67,6 +312,16 @@ public class CortexTSSConfig {
         return readUrl;
     }
 
+    /** The write url(s), writeUrl may contain a comma separated list. */
+    public List<String> getWriteUrls() {
+        return writeUrls;
+    }
+
+    /** The read url(s) in the order of preference, readUrl may contain a comma separated list. */
+    public List<String> getReadUrls() {
+        return readUrls;
+    }
+
     public int getMaxConcurrentHttpConnections() {
         return maxConcurrentHttpConnections;
     }
@@ -101,6 +356,261 @@ public class CortexTSSConfig {
         return organizationId;
     }
 
+    public boolean isJmxReporterEnabled() {
+        return jmxReporterEnabled;
+    }
+
+    /** Interval in which the plugin's own metrics are written to Cortex, 0 disables the self monitoring. */
+    public long getSelfMonitoringIntervalInMs() {
+        return selfMonitoringIntervalInMs;
+    }
+
+    /** If true, raw (non aggregated) time series are fetched via the remote-read api instead of the query api. */
+    public boolean isRemoteReadEnabled() {
+        return remoteReadEnabled;
+    }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    /** How long a read url is skipped after a failed call, as long as other read urls are healthy. */
+    public long getEndpointRetryIntervalInMs() {
+        return endpointRetryIntervalInMs;
+    }
+
+    /** Maximum number of concurrent write calls per tenant, 0 means no limit besides the global one. */
+    public int getTenantMaxConcurrentCalls() {
+        return tenantMaxConcurrentCalls;
+    }
+
+    /** Maximum number of write calls per tenant waiting for a free slot, further calls are rejected. 0 means no limit. */
+    public int getTenantMaxQueuedCalls() {
+        return tenantMaxQueuedCalls;
+    }
+
+    /** Maximum number of samples per second and tenant, samples above the rate are dropped. 0 means no limit. */
+    public long getTenantMaxSamplesPerSecond() {
+        return tenantMaxSamplesPerSecond;
+    }
+
+    /** Time after which the pipeline and metrics of an idle tenant are dropped. */
+    public long getTenantIdleTimeoutInMs() {
+        return tenantIdleTimeoutInMs;
+    }
+
+    /** How long pending writes may take to complete when shutting down. */
+    public long getShutdownFlushTimeoutInMs() {
+        return shutdownFlushTimeoutInMs;
+    }
+
+    /** Directory for the writes still pending after the flush timeout, replayed on the next start. Empty disables spilling. */
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public boolean hasSpillDirectory() {
+        return !spillDirectory.isEmpty();
+    }
+
+    /** Maximum number of active series, samples of further new series are dropped. 0 means no limit. */
+    public long getMaxActiveSeries() {
+        return maxActiveSeries;
+    }
+
+    /** Maximum number of distinct values of a label among the active series. 0 means no limit. */
+    public long getMaxLabelValues() {
+        return maxLabelValues;
+    }
+
+    /** What happens to new series with a label above {@link #getMaxLabelValues()}. */
+    public CardinalityLimitAction getCardinalityLimitAction() {
+        return cardinalityLimitAction;
+    }
+
+    /** Series without samples for one to two windows don't count as active anymore. */
+    public long getCardinalityWindowInMs() {
+        return cardinalityWindowInMs;
+    }
+
+    /** Relabel rules applied to the written series as JSON array, see {@link Relabeler}. Empty disables relabeling. */
+    public String getWriteRelabelConfigs() {
+        return writeRelabelConfigs;
+    }
+
+    /** Maximum number of series whose relabeled labels are cached. */
+    public long getWriteRelabelCacheSize() {
+        return writeRelabelCacheSize;
+    }
+
+    /** If true, deleted metrics are also deleted from Cortex via the admin api, otherwise only their cached and stored meta data. */
+    public boolean isDeleteEnabled() {
+        return deleteEnabled;
+    }
+
+    /** Maximum number of series deleted with one call. */
+    public int getDeleteBatchSize() {
+        return deleteBatchSize;
+    }
+
+    /** Interval in which the queued deletions are sent. */
+    public long getDeleteBatchIntervalInMs() {
+        return deleteBatchIntervalInMs;
+    }
+
+    /** The version of the remote write protocol used to write to Cortex. */
+    public RemoteWriteVersion getRemoteWriteVersion() {
+        return remoteWriteVersion;
+    }
+
+    /** If true, the metric types are written as metadata and fetches look them up via the metadata api instead of /series. */
+    public boolean isMetadataEnabled() {
+        return metadataEnabled;
+    }
+
+    /** How long written or read metadata is cached, the metadata of a metric is sent again after that. */
+    public long getMetadataIntervalInMs() {
+        return metadataIntervalInMs;
+    }
+
+    /** Maximum estimated size of the metric cache in bytes, 0 to limit it by metricCacheSize entries instead. */
+    public long getMetricCacheMaxBytes() {
+        return metricCacheMaxBytes;
+    }
+
+    /** Maximum estimated size of the external tags cache in bytes, 0 to limit it by externalTagsCacheSize entries instead. */
+    public long getExternalTagsCacheMaxBytes() {
+        return externalTagsCacheMaxBytes;
+    }
+
+    /** Cached metrics read after this interval are refreshed in the background, the ones not read for twice the interval expire. 0 disables both. */
+    public long getMetricCacheRefreshIntervalInMs() {
+        return metricCacheRefreshIntervalInMs;
+    }
+
+    /** Number of external tags loaded into the cache at a time when warming it up on start, 0 disables the warm-up. */
+    public int getExternalTagsWarmupBatchSize() {
+        return externalTagsWarmupBatchSize;
+    }
+
+    /** Pause between the batches of the external tags warm-up, leaves room for the writes while starting. */
+    public long getExternalTagsWarmupPauseInMs() {
+        return externalTagsWarmupPauseInMs;
+    }
+
+    /** Directory of the local series index, empty to not keep one. */
+    public String getSeriesIndexDirectory() {
+        return seriesIndexDirectory;
+    }
+
+    /** Memory for the recent samples kept to answer reads locally, 0 disables it. */
+    public long getHotTierMaxBytes() {
+        return hotTierMaxBytes;
+    }
+
+    /** Number of recent samples kept per series if hotTierMaxBytes is set. */
+    public int getHotTierSamplesPerSeries() {
+        return hotTierSamplesPerSeries;
+    }
+
+    /** Comma separated intervals of the rollups written (e.g. 5m,1h), empty to not write any. */
+    public String getRollupIntervals() {
+        return rollupIntervals;
+    }
+
+    /** The rollup intervals in ascending order. */
+    public List<Long> getRollupIntervalsInSeconds() {
+        return rollupIntervalsInSeconds;
+    }
+
+    /** Maximum number of series the reorder buffer keeps track of, 0 disables it. */
+    public int getReorderBufferMaxSeries() {
+        return reorderBufferMaxSeries;
+    }
+
+    /** How long samples are held back in the reorder buffer for earlier samples of their series to arrive. */
+    public long getReorderToleranceInMs() {
+        return reorderToleranceInMs;
+    }
+
+    /** Write requests estimated to be larger than this (uncompressed) are split by series, 0 disables splitting. */
+    public long getWriteRequestMaxBytes() {
+        return writeRequestMaxBytes;
+    }
+
+    /** Whether range queries start and end at multiples of the step, for the results cache of the query frontend. */
+    public boolean isQueryStepAlignmentEnabled() {
+        return queryStepAlignmentEnabled;
+    }
+
+    /** Maximum number of metric families whose type is kept in the metadata cache. */
+    public long getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    public boolean hasSeriesIndexDirectory() {
+        return !seriesIndexDirectory.isEmpty();
+    }
+
+    /**
+     * Creates a config from the properties of the org.opennms.plugins.tss.cortex pid, as set in blueprint.xml.
+     * Missing properties keep their default.
+     */
+    public static CortexTSSConfig fromProperties(final Map<String, ?> properties) {
+        final Builder builder = builder();
+        final Function<String, String> property = name -> properties.get(name) == null ? null : properties.get(name).toString().trim();
+        Optional.ofNullable(property.apply("writeUrl")).ifPresent(builder::writeUrl);
+        Optional.ofNullable(property.apply("readUrl")).ifPresent(builder::readUrl);
+        Optional.ofNullable(property.apply("maxConcurrentHttpConnections")).map(Integer::parseInt).ifPresent(builder::maxConcurrentHttpConnections);
+        Optional.ofNullable(property.apply("writeTimeoutInMs")).map(Long::parseLong).ifPresent(builder::writeTimeoutInMs);
+        Optional.ofNullable(property.apply("readTimeoutInMs")).map(Long::parseLong).ifPresent(builder::readTimeoutInMs);
+        Optional.ofNullable(property.apply("metricCacheSize")).map(Long::parseLong).ifPresent(builder::metricCacheSize);
+        Optional.ofNullable(property.apply("externalTagsCacheSize")).map(Long::parseLong).ifPresent(builder::externalCacheSize);
+        // blueprint.xml calls it bulkheadMaxWaitDuration, the README bulkheadMaxWaitDurationInMs
+        Optional.ofNullable(property.apply("bulkheadMaxWaitDuration")).or(() -> Optional.ofNullable(property.apply("bulkheadMaxWaitDurationInMs")))
+                .map(Long::parseLong).ifPresent(builder::bulkheadMaxWaitDurationInMs);
+        Optional.ofNullable(property.apply("maxSeriesLookback")).map(Long::parseLong).ifPresent(builder::maxSeriesLookback);
+        Optional.ofNullable(property.apply("organizationId")).ifPresent(builder::organizationId);
+        Optional.ofNullable(property.apply("jmxReporterEnabled")).map(Boolean::parseBoolean).ifPresent(builder::jmxReporterEnabled);
+        Optional.ofNullable(property.apply("selfMonitoringIntervalInMs")).map(Long::parseLong).ifPresent(builder::selfMonitoringIntervalInMs);
+        Optional.ofNullable(property.apply("remoteReadEnabled")).map(Boolean::parseBoolean).ifPresent(builder::remoteReadEnabled);
+        Optional.ofNullable(property.apply("writeMode")).map(mode -> WriteMode.valueOf(mode.toUpperCase(Locale.ROOT))).ifPresent(builder::writeMode);
+        Optional.ofNullable(property.apply("endpointRetryIntervalInMs")).map(Long::parseLong).ifPresent(builder::endpointRetryIntervalInMs);
+        Optional.ofNullable(property.apply("tenantMaxConcurrentCalls")).map(Integer::parseInt).ifPresent(builder::tenantMaxConcurrentCalls);
+        Optional.ofNullable(property.apply("tenantMaxQueuedCalls")).map(Integer::parseInt).ifPresent(builder::tenantMaxQueuedCalls);
+        Optional.ofNullable(property.apply("tenantMaxSamplesPerSecond")).map(Long::parseLong).ifPresent(builder::tenantMaxSamplesPerSecond);
+        Optional.ofNullable(property.apply("tenantIdleTimeoutInMs")).map(Long::parseLong).ifPresent(builder::tenantIdleTimeoutInMs);
+        Optional.ofNullable(property.apply("shutdownFlushTimeoutInMs")).map(Long::parseLong).ifPresent(builder::shutdownFlushTimeoutInMs);
+        Optional.ofNullable(property.apply("spillDirectory")).ifPresent(builder::spillDirectory);
+        Optional.ofNullable(property.apply("maxActiveSeries")).map(Long::parseLong).ifPresent(builder::maxActiveSeries);
+        Optional.ofNullable(property.apply("maxLabelValues")).map(Long::parseLong).ifPresent(builder::maxLabelValues);
+        Optional.ofNullable(property.apply("cardinalityLimitAction")).map(action -> CardinalityLimitAction.valueOf(action.toUpperCase(Locale.ROOT))).ifPresent(builder::cardinalityLimitAction);
+        Optional.ofNullable(property.apply("cardinalityWindowInMs")).map(Long::parseLong).ifPresent(builder::cardinalityWindowInMs);
+        Optional.ofNullable(property.apply("writeRelabelConfigs")).ifPresent(builder::writeRelabelConfigs);
+        Optional.ofNullable(property.apply("writeRelabelCacheSize")).map(Long::parseLong).ifPresent(builder::writeRelabelCacheSize);
+        Optional.ofNullable(property.apply("deleteEnabled")).map(Boolean::parseBoolean).ifPresent(builder::deleteEnabled);
+        Optional.ofNullable(property.apply("deleteBatchSize")).map(Integer::parseInt).ifPresent(builder::deleteBatchSize);
+        Optional.ofNullable(property.apply("deleteBatchIntervalInMs")).map(Long::parseLong).ifPresent(builder::deleteBatchIntervalInMs);
+        Optional.ofNullable(property.apply("remoteWriteVersion")).map(version -> RemoteWriteVersion.valueOf(version.toUpperCase(Locale.ROOT))).ifPresent(builder::remoteWriteVersion);
+        Optional.ofNullable(property.apply("metadataEnabled")).map(Boolean::parseBoolean).ifPresent(builder::metadataEnabled);
+        Optional.ofNullable(property.apply("metadataIntervalInMs")).map(Long::parseLong).ifPresent(builder::metadataIntervalInMs);
+        Optional.ofNullable(property.apply("metricCacheMaxBytes")).map(Long::parseLong).ifPresent(builder::metricCacheMaxBytes);
+        Optional.ofNullable(property.apply("externalTagsCacheMaxBytes")).map(Long::parseLong).ifPresent(builder::externalTagsCacheMaxBytes);
+        Optional.ofNullable(property.apply("metricCacheRefreshIntervalInMs")).map(Long::parseLong).ifPresent(builder::metricCacheRefreshIntervalInMs);
+        Optional.ofNullable(property.apply("externalTagsWarmupBatchSize")).map(Integer::parseInt).ifPresent(builder::externalTagsWarmupBatchSize);
+        Optional.ofNullable(property.apply("externalTagsWarmupPauseInMs")).map(Long::parseLong).ifPresent(builder::externalTagsWarmupPauseInMs);
+        Optional.ofNullable(property.apply("seriesIndexDirectory")).ifPresent(builder::seriesIndexDirectory);
+        Optional.ofNullable(property.apply("hotTierMaxBytes")).map(Long::parseLong).ifPresent(builder::hotTierMaxBytes);
+        Optional.ofNullable(property.apply("hotTierSamplesPerSeries")).map(Integer::parseInt).ifPresent(builder::hotTierSamplesPerSeries);
+        Optional.ofNullable(property.apply("rollupIntervals")).ifPresent(builder::rollupIntervals);
+        Optional.ofNullable(property.apply("reorderBufferMaxSeries")).map(Integer::parseInt).ifPresent(builder::reorderBufferMaxSeries);
+        Optional.ofNullable(property.apply("reorderToleranceInMs")).map(Long::parseLong).ifPresent(builder::reorderToleranceInMs);
+        Optional.ofNullable(property.apply("writeRequestMaxBytes")).map(Long::parseLong).ifPresent(builder::writeRequestMaxBytes);
+        Optional.ofNullable(property.apply("queryStepAlignmentEnabled")).map(Boolean::parseBoolean).ifPresent(builder::queryStepAlignmentEnabled);
+        Optional.ofNullable(property.apply("metadataCacheSize")).map(Long::parseLong).ifPresent(builder::metadataCacheSize);
+        return builder.build();
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -116,6 +626,43 @@ public class CortexTSSConfig {
         private long bulkheadMaxWaitDurationInMs = Long.MAX_VALUE;
         private long maxSeriesLookback = 7776000;
         private String organizationId = null;
+        private boolean jmxReporterEnabled = true;
+        private long selfMonitoringIntervalInMs = 0;
+        private boolean remoteReadEnabled = false;
+        private WriteMode writeMode = WriteMode.SHARD;
+        private long endpointRetryIntervalInMs = 30000;
+        private int tenantMaxConcurrentCalls = 0;
+        private int tenantMaxQueuedCalls = 0;
+        private long tenantMaxSamplesPerSecond = 0;
+        private long tenantIdleTimeoutInMs = 600000;
+        private long shutdownFlushTimeoutInMs = 10000;
+        private String spillDirectory = "";
+        private long maxActiveSeries = 0;
+        private long maxLabelValues = 0;
+        private CardinalityLimitAction cardinalityLimitAction = CardinalityLimitAction.DROP;
+        private long cardinalityWindowInMs = 7200000;
+        private String writeRelabelConfigs = "";
+        private long writeRelabelCacheSize = 10000;
+        private boolean deleteEnabled = false;
+        private int deleteBatchSize = 100;
+        private long deleteBatchIntervalInMs = 5000;
+        private RemoteWriteVersion remoteWriteVersion = RemoteWriteVersion.V1;
+        private boolean metadataEnabled = false;
+        private long metadataIntervalInMs = 3600000;
+        private long metricCacheMaxBytes = 0;
+        private long externalTagsCacheMaxBytes = 0;
+        private long metricCacheRefreshIntervalInMs = 3600000;
+        private int externalTagsWarmupBatchSize = 10000;
+        private long externalTagsWarmupPauseInMs = 10;
+        private String seriesIndexDirectory = "";
+        private long hotTierMaxBytes = 0;
+        private int hotTierSamplesPerSeries = 128;
+        private String rollupIntervals = "";
+        private int reorderBufferMaxSeries = 0;
+        private long reorderToleranceInMs = 0;
+        private long writeRequestMaxBytes = 4194304;
+        private boolean queryStepAlignmentEnabled = false;
+        private long metadataCacheSize = 1000;
 
         public Builder writeUrl(final String writeUrl) {
             this.writeUrl = writeUrl;
@@ -166,11 +713,263 @@ public class CortexTSSConfig {
             return this;
         }
 
+        public Builder jmxReporterEnabled(final boolean jmxReporterEnabled) {
+            this.jmxReporterEnabled = jmxReporterEnabled;
+            return this;
+        }
+
+        public Builder selfMonitoringIntervalInMs(final long selfMonitoringIntervalInMs) {
+            this.selfMonitoringIntervalInMs = selfMonitoringIntervalInMs;
+            return this;
+        }
+
+        public Builder remoteReadEnabled(final boolean remoteReadEnabled) {
+            this.remoteReadEnabled = remoteReadEnabled;
+            return this;
+        }
+
+        public Builder writeMode(final WriteMode writeMode) {
+            this.writeMode = writeMode;
+            return this;
+        }
+
+        public Builder endpointRetryIntervalInMs(final long endpointRetryIntervalInMs) {
+            this.endpointRetryIntervalInMs = endpointRetryIntervalInMs;
+            return this;
+        }
+
+        public Builder tenantMaxConcurrentCalls(final int tenantMaxConcurrentCalls) {
+            this.tenantMaxConcurrentCalls = tenantMaxConcurrentCalls;
+            return this;
+        }
+
+        public Builder tenantMaxQueuedCalls(final int tenantMaxQueuedCalls) {
+            this.tenantMaxQueuedCalls = tenantMaxQueuedCalls;
+            return this;
+        }
+
+        public Builder tenantMaxSamplesPerSecond(final long tenantMaxSamplesPerSecond) {
+            this.tenantMaxSamplesPerSecond = tenantMaxSamplesPerSecond;
+            return this;
+        }
+
+        public Builder tenantIdleTimeoutInMs(final long tenantIdleTimeoutInMs) {
+            this.tenantIdleTimeoutInMs = tenantIdleTimeoutInMs;
+            return this;
+        }
+
+        public Builder shutdownFlushTimeoutInMs(final long shutdownFlushTimeoutInMs) {
+            this.shutdownFlushTimeoutInMs = shutdownFlushTimeoutInMs;
+            return this;
+        }
+
+        public Builder spillDirectory(final String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        public Builder maxActiveSeries(final long maxActiveSeries) {
+            this.maxActiveSeries = maxActiveSeries;
+            return this;
+        }
+
+        public Builder maxLabelValues(final long maxLabelValues) {
+            this.maxLabelValues = maxLabelValues;
+            return this;
+        }
+
+        public Builder cardinalityLimitAction(final CardinalityLimitAction cardinalityLimitAction) {
+            this.cardinalityLimitAction = cardinalityLimitAction;
+            return this;
+        }
+
+        public Builder cardinalityWindowInMs(final long cardinalityWindowInMs) {
+            this.cardinalityWindowInMs = cardinalityWindowInMs;
+            return this;
+        }
+
+        public Builder writeRelabelConfigs(final String writeRelabelConfigs) {
+            this.writeRelabelConfigs = writeRelabelConfigs;
+            return this;
+        }
+
+        public Builder writeRelabelCacheSize(final long writeRelabelCacheSize) {
+            this.writeRelabelCacheSize = writeRelabelCacheSize;
+            return this;
+        }
+
+        public Builder deleteEnabled(final boolean deleteEnabled) {
+            this.deleteEnabled = deleteEnabled;
+            return this;
+        }
+
+        public Builder deleteBatchSize(final int deleteBatchSize) {
+            this.deleteBatchSize = deleteBatchSize;
+            return this;
+        }
+
+        public Builder deleteBatchIntervalInMs(final long deleteBatchIntervalInMs) {
+            this.deleteBatchIntervalInMs = deleteBatchIntervalInMs;
+            return this;
+        }
+
+        public Builder remoteWriteVersion(final RemoteWriteVersion remoteWriteVersion) {
+            this.remoteWriteVersion = remoteWriteVersion;
+            return this;
+        }
+
+        public Builder metadataEnabled(final boolean metadataEnabled) {
+            this.metadataEnabled = metadataEnabled;
+            return this;
+        }
+
+        public Builder metadataIntervalInMs(final long metadataIntervalInMs) {
+            this.metadataIntervalInMs = metadataIntervalInMs;
+            return this;
+        }
+
+        public Builder metricCacheMaxBytes(final long metricCacheMaxBytes) {
+            this.metricCacheMaxBytes = metricCacheMaxBytes;
+            return this;
+        }
+
+        public Builder externalTagsCacheMaxBytes(final long externalTagsCacheMaxBytes) {
+            this.externalTagsCacheMaxBytes = externalTagsCacheMaxBytes;
+            return this;
+        }
+
+        public Builder metricCacheRefreshIntervalInMs(final long metricCacheRefreshIntervalInMs) {
+            this.metricCacheRefreshIntervalInMs = metricCacheRefreshIntervalInMs;
+            return this;
+        }
+
+        public Builder externalTagsWarmupBatchSize(final int externalTagsWarmupBatchSize) {
+            this.externalTagsWarmupBatchSize = externalTagsWarmupBatchSize;
+            return this;
+        }
+
+        public Builder externalTagsWarmupPauseInMs(final long externalTagsWarmupPauseInMs) {
+            this.externalTagsWarmupPauseInMs = externalTagsWarmupPauseInMs;
+            return this;
+        }
+
+        public Builder seriesIndexDirectory(final String seriesIndexDirectory) {
+            this.seriesIndexDirectory = seriesIndexDirectory;
+            return this;
+        }
+
+        public Builder hotTierMaxBytes(final long hotTierMaxBytes) {
+            this.hotTierMaxBytes = hotTierMaxBytes;
+            return this;
+        }
+
+        public Builder hotTierSamplesPerSeries(final int hotTierSamplesPerSeries) {
+            this.hotTierSamplesPerSeries = hotTierSamplesPerSeries;
+            return this;
+        }
+
+        public Builder rollupIntervals(final String rollupIntervals) {
+            this.rollupIntervals = rollupIntervals;
+            return this;
+        }
+
+        public Builder reorderBufferMaxSeries(final int reorderBufferMaxSeries) {
+            this.reorderBufferMaxSeries = reorderBufferMaxSeries;
+            return this;
+        }
+
+        public Builder reorderToleranceInMs(final long reorderToleranceInMs) {
+            this.reorderToleranceInMs = reorderToleranceInMs;
+            return this;
+        }
+
+        public Builder writeRequestMaxBytes(final long writeRequestMaxBytes) {
+            this.writeRequestMaxBytes = writeRequestMaxBytes;
+            return this;
+        }
+
+        public Builder queryStepAlignmentEnabled(final boolean queryStepAlignmentEnabled) {
+            this.queryStepAlignmentEnabled = queryStepAlignmentEnabled;
+            return this;
+        }
+
+        public Builder metadataCacheSize(final long metadataCacheSize) {
+            this.metadataCacheSize = metadataCacheSize;
+            return this;
+        }
+
         public CortexTSSConfig build() {
             return new CortexTSSConfig(this);
         }
     }
 
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final CortexTSSConfig that = (CortexTSSConfig) o;
+        return Objects.equals(writeUrl, that.writeUrl)
+                && Objects.equals(readUrl, that.readUrl)
+                && maxConcurrentHttpConnections == that.maxConcurrentHttpConnections
+                && writeTimeoutInMs == that.writeTimeoutInMs
+                && readTimeoutInMs == that.readTimeoutInMs
+                && metricCacheSize == that.metricCacheSize
+                && externalTagsCacheSize == that.externalTagsCacheSize
+                && bulkheadMaxWaitDurationInMs == that.bulkheadMaxWaitDurationInMs
+                && maxSeriesLookback == that.maxSeriesLookback
+                && Objects.equals(organizationId, that.organizationId)
+                && jmxReporterEnabled == that.jmxReporterEnabled
+                && selfMonitoringIntervalInMs == that.selfMonitoringIntervalInMs
+                && remoteReadEnabled == that.remoteReadEnabled
+                && writeMode == that.writeMode
+                && endpointRetryIntervalInMs == that.endpointRetryIntervalInMs
+                && tenantMaxConcurrentCalls == that.tenantMaxConcurrentCalls
+                && tenantMaxQueuedCalls == that.tenantMaxQueuedCalls
+                && tenantMaxSamplesPerSecond == that.tenantMaxSamplesPerSecond
+                && tenantIdleTimeoutInMs == that.tenantIdleTimeoutInMs
+                && shutdownFlushTimeoutInMs == that.shutdownFlushTimeoutInMs
+                && Objects.equals(spillDirectory, that.spillDirectory)
+                && maxActiveSeries == that.maxActiveSeries
+                && maxLabelValues == that.maxLabelValues
+                && cardinalityLimitAction == that.cardinalityLimitAction
+                && cardinalityWindowInMs == that.cardinalityWindowInMs
+                && Objects.equals(writeRelabelConfigs, that.writeRelabelConfigs)
+                && writeRelabelCacheSize == that.writeRelabelCacheSize
+                && deleteEnabled == that.deleteEnabled
+                && deleteBatchSize == that.deleteBatchSize
+                && deleteBatchIntervalInMs == that.deleteBatchIntervalInMs
+                && remoteWriteVersion == that.remoteWriteVersion
+                && metadataEnabled == that.metadataEnabled
+                && metadataIntervalInMs == that.metadataIntervalInMs
+                && metricCacheMaxBytes == that.metricCacheMaxBytes
+                && externalTagsCacheMaxBytes == that.externalTagsCacheMaxBytes
+                && metricCacheRefreshIntervalInMs == that.metricCacheRefreshIntervalInMs
+                && externalTagsWarmupBatchSize == that.externalTagsWarmupBatchSize
+                && externalTagsWarmupPauseInMs == that.externalTagsWarmupPauseInMs
+                && Objects.equals(seriesIndexDirectory, that.seriesIndexDirectory)
+                && hotTierMaxBytes == that.hotTierMaxBytes
+                && hotTierSamplesPerSeries == that.hotTierSamplesPerSeries
+                && Objects.equals(rollupIntervals, that.rollupIntervals)
+                && reorderBufferMaxSeries == that.reorderBufferMaxSeries
+                && reorderToleranceInMs == that.reorderToleranceInMs
+                && writeRequestMaxBytes == that.writeRequestMaxBytes
+                && queryStepAlignmentEnabled == that.queryStepAlignmentEnabled
+                && metadataCacheSize == that.metadataCacheSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(writeUrl, readUrl, maxConcurrentHttpConnections, writeTimeoutInMs, readTimeoutInMs, metricCacheSize,
+                externalTagsCacheSize, bulkheadMaxWaitDurationInMs, maxSeriesLookback, organizationId, jmxReporterEnabled, selfMonitoringIntervalInMs, remoteReadEnabled,
+                writeMode, endpointRetryIntervalInMs, tenantMaxConcurrentCalls, tenantMaxQueuedCalls, tenantMaxSamplesPerSecond, tenantIdleTimeoutInMs,
+                shutdownFlushTimeoutInMs, spillDirectory, maxActiveSeries, maxLabelValues, cardinalityLimitAction, cardinalityWindowInMs,
+                writeRelabelConfigs, writeRelabelCacheSize, deleteEnabled, deleteBatchSize, deleteBatchIntervalInMs, remoteWriteVersion, metadataEnabled, metadataIntervalInMs, metricCacheMaxBytes, externalTagsCacheMaxBytes, metricCacheRefreshIntervalInMs, externalTagsWarmupBatchSize, externalTagsWarmupPauseInMs, seriesIndexDirectory, hotTierMaxBytes, hotTierSamplesPerSeries, rollupIntervals, reorderBufferMaxSeries, reorderToleranceInMs, writeRequestMaxBytes, queryStepAlignmentEnabled, metadataCacheSize);
+    }
+
     @Override
     public String toString() {
         return new StringJoiner(", ", CortexTSSConfig.class.getSimpleName() + "[", "]")
@@ -184,6 +983,43 @@ public class CortexTSSConfig {
                 .add("bulkheadMaxWaitDurationInMs=" + bulkheadMaxWaitDurationInMs)
                 .add("maxSeriesLookback=" + maxSeriesLookback)
                 .add("organizationId=" + organizationId)
+                .add("jmxReporterEnabled=" + jmxReporterEnabled)
+                .add("selfMonitoringIntervalInMs=" + selfMonitoringIntervalInMs)
+                .add("remoteReadEnabled=" + remoteReadEnabled)
+                .add("writeMode=" + writeMode)
+                .add("endpointRetryIntervalInMs=" + endpointRetryIntervalInMs)
+                .add("tenantMaxConcurrentCalls=" + tenantMaxConcurrentCalls)
+                .add("tenantMaxQueuedCalls=" + tenantMaxQueuedCalls)
+                .add("tenantMaxSamplesPerSecond=" + tenantMaxSamplesPerSecond)
+                .add("tenantIdleTimeoutInMs=" + tenantIdleTimeoutInMs)
+                .add("shutdownFlushTimeoutInMs=" + shutdownFlushTimeoutInMs)
+                .add("spillDirectory='" + spillDirectory + "'")
+                .add("maxActiveSeries=" + maxActiveSeries)
+                .add("maxLabelValues=" + maxLabelValues)
+                .add("cardinalityLimitAction=" + cardinalityLimitAction)
+                .add("cardinalityWindowInMs=" + cardinalityWindowInMs)
+                .add("writeRelabelConfigs='" + writeRelabelConfigs + "'")
+                .add("writeRelabelCacheSize=" + writeRelabelCacheSize)
+                .add("deleteEnabled=" + deleteEnabled)
+                .add("deleteBatchSize=" + deleteBatchSize)
+                .add("deleteBatchIntervalInMs=" + deleteBatchIntervalInMs)
+                .add("remoteWriteVersion=" + remoteWriteVersion)
+                .add("metadataEnabled=" + metadataEnabled)
+                .add("metadataIntervalInMs=" + metadataIntervalInMs)
+                .add("metricCacheMaxBytes=" + metricCacheMaxBytes)
+                .add("externalTagsCacheMaxBytes=" + externalTagsCacheMaxBytes)
+                .add("metricCacheRefreshIntervalInMs=" + metricCacheRefreshIntervalInMs)
+                .add("externalTagsWarmupBatchSize=" + externalTagsWarmupBatchSize)
+                .add("externalTagsWarmupPauseInMs=" + externalTagsWarmupPauseInMs)
+                .add("seriesIndexDirectory='" + seriesIndexDirectory + "'")
+                .add("hotTierMaxBytes=" + hotTierMaxBytes)
+                .add("hotTierSamplesPerSeries=" + hotTierSamplesPerSeries)
+                .add("rollupIntervals='" + rollupIntervals + "'")
+                .add("reorderBufferMaxSeries=" + reorderBufferMaxSeries)
+                .add("reorderToleranceInMs=" + reorderToleranceInMs)
+                .add("writeRequestMaxBytes=" + writeRequestMaxBytes)
+                .add("queryStepAlignmentEnabled=" + queryStepAlignmentEnabled)
+                .add("metadataCacheSize=" + metadataCacheSize)
                 .toString();
     }
 }
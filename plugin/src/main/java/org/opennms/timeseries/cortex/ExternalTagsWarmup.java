@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.opennms.integration.api.v1.distributed.KeyValueStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+
+/**
+ * Fills the external tags cache with the tags stored in the key value store when starting. The entries are put into the
+ * cache in batches of {@link CortexTSSConfig#getExternalTagsWarmupBatchSize()} on a thread of its own, pausing
+ * {@link CortexTSSConfig#getExternalTagsWarmupPauseInMs()} in between so the writes coming in meanwhile are not slowed
+ * down, and stops before the cache is full: once it evicted entries or another batch wouldn't fit anymore. Tags cached by
+ * the writes meanwhile are newer and kept.
+ */
+final class ExternalTagsWarmup {
+    private static final Logger LOG = LoggerFactory.getLogger(ExternalTagsWarmup.class);
+
+    static final String METRIC_PREFIX = "externalTagsWarmup";
+
+    private final Supplier<CortexTSSConfig> config;
+    private final Supplier<Cache<String, String>> cache;
+    private final ExecutorService executor;
+    private final Counter entriesLoaded;
+    private final AtomicLong entriesTotal = new AtomicLong();
+    private final AtomicLong durationInMs = new AtomicLong();
+    private volatile boolean closed;
+
+    ExternalTagsWarmup(final Supplier<CortexTSSConfig> config, final Supplier<Cache<String, String>> cache, final MetricRegistry metrics) {
+        this.config = config;
+        this.cache = cache;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "cortex-tss-warmup");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.entriesLoaded = metrics.counter(MetricRegistry.name(METRIC_PREFIX, "entriesLoaded"));
+        metrics.register(MetricRegistry.name(METRIC_PREFIX, "entriesTotal"), (Gauge<Long>) entriesTotal::get);
+        metrics.register(MetricRegistry.name(METRIC_PREFIX, "durationInMs"), (Gauge<Long>) durationInMs::get);
+    }
+
+    /** Enumerates the context of the key value store and loads it into the cache in the background. */
+    CompletableFuture<Void> start(final KeyValueStore<?> kvStore, final String context) {
+        final long start = System.currentTimeMillis();
+        return kvStore.enumerateContextAsync(context)
+                .thenAcceptAsync(entries -> load(entries, start), executor)
+                .exceptionally(e -> {
+                    LOG.warn("Warming up the external tags cache failed.", e);
+                    return null;
+                });
+    }
+
+    private void load(final Map<String, ?> entries, final long start) {
+        entriesTotal.set(entries.size());
+        final Iterator<? extends Map.Entry<String, ?>> iterator = entries.entrySet().iterator();
+        long loaded = 0;
+        Cache<String, String> lastCache = null;
+        long evictionsBefore = 0;
+        long batchWeight = 0;
+        while (iterator.hasNext() && !closed) {
+            final Cache<String, String> cache = this.cache.get();
+            if (cache != lastCache) {
+                // replaced when reconfigured
+                lastCache = cache;
+                evictionsBefore = cache.stats().evictionCount();
+                batchWeight = 0;
+            }
+            if (isFull(cache, evictionsBefore, batchWeight)) {
+                LOG.info("External tags cache is full, stopped warming it up after {} of {} entries.", loaded, entries.size());
+                break;
+            }
+            final long weightBefore = weightedSize(cache);
+            final int batchSize = config.get().getExternalTagsWarmupBatchSize();
+            for (int i = 0; i < batchSize && iterator.hasNext(); i++) {
+                final Map.Entry<String, ?> entry = iterator.next();
+                cache.asMap().putIfAbsent(entry.getKey(), entry.getValue().toString());
+                loaded++;
+                entriesLoaded.inc();
+            }
+            cache.cleanUp();
+            batchWeight = Math.max(batchWeight, weightedSize(cache) - weightBefore);
+            durationInMs.set(System.currentTimeMillis() - start);
+            pause();
+        }
+        durationInMs.set(System.currentTimeMillis() - start);
+        LOG.info("Loaded {} external tags into the cache in {} ms.", loaded, durationInMs.get());
+    }
+
+    /** Full if it evicted entries since the warm-up started or if the next batch (as heavy as the heaviest so far) won't fit. */
+    private static boolean isFull(final Cache<String, String> cache, final long evictionsBefore, final long batchWeight) {
+        cache.cleanUp();
+        if (cache.stats().evictionCount() > evictionsBefore) {
+            return true;
+        }
+        return cache.policy().eviction()
+                .map(eviction -> weightedSize(cache) + batchWeight > eviction.getMaximum())
+                .orElse(false);
+    }
+
+    /** The weight of the entries for caches bounded by bytes, the number of entries otherwise. */
+    private static long weightedSize(final Cache<String, String> cache) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(cache.estimatedSize()))
+                .orElse(cache.estimatedSize());
+    }
+
+    private void pause() {
+        final long pauseInMs = config.get().getExternalTagsWarmupPauseInMs();
+        if (pauseInMs > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(pauseInMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+        }
+    }
+
+    /** Stops the warm-up, the entries loaded so far stay cached. */
+    void close() {
+        closed = true;
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Keeps the most recent samples of the series written in memory, to answer reads of recent data without Cortex
+ * (and before the samples are queryable there). Every series gets a ring buffer of
+ * {@link CortexTSSConfig#getHotTierSamplesPerSeries()} samples in a direct buffer of
+ * {@link CortexTSSConfig#getHotTierMaxBytes()}, the least recently used series gives up its ring when it is full.
+ * Range queries are evaluated like Prometheus does: the latest sample within the lookback delta for gauges and the
+ * extrapolated rate for counters.
+ */
+final class HotTier {
+
+    static final String METRIC_PREFIX = "hotTier";
+    // default lookback delta of Prometheus
+    static final long LOOKBACK_DELTA_MS = 5 * 60 * 1000L;
+    private static final int SAMPLE_BYTES = 16; // timestamp in ms and value
+
+    /** The ring of a series. Holds all samples of the series written since coveredFromMs. */
+    private static final class Series {
+        private final int offset;
+        private int first;
+        private int count;
+        private long coveredFromMs;
+
+        private Series(final int offset, final long coveredFromMs) {
+            this.offset = offset;
+            this.coveredFromMs = coveredFromMs;
+        }
+    }
+
+    /** The samples evaluated locally, from the given time on. */
+    static final class Evaluation {
+        private final long fromMs;
+        private final List<Sample> samples;
+
+        private Evaluation(final long fromMs, final List<Sample> samples) {
+            this.fromMs = fromMs;
+            this.samples = samples;
+        }
+
+        long getFromMs() {
+            return fromMs;
+        }
+
+        List<Sample> getSamples() {
+            return samples;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int samplesPerSeries;
+    private final int maxSeries;
+    private int nextOffset;
+    // in access order, the eldest one is evicted
+    private final LinkedHashMap<String, Series> series = new LinkedHashMap<>(16, 0.75f, true);
+    private final Meter seriesEvicted;
+    private final Meter queriesAnswered;
+    private final Meter queriesMerged;
+
+    HotTier(final long maxBytes, final int samplesPerSeries, final MetricRegistry metrics) {
+        this.samplesPerSeries = Math.max(2, samplesPerSeries);
+        final long seriesBytes = (long) this.samplesPerSeries * SAMPLE_BYTES;
+        this.maxSeries = (int) Math.min(Integer.MAX_VALUE / seriesBytes, maxBytes / seriesBytes);
+        this.buffer = ByteBuffer.allocateDirect((int) (maxSeries * seriesBytes));
+        this.seriesEvicted = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "seriesEvicted"));
+        this.queriesAnswered = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "queriesAnswered"));
+        this.queriesMerged = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "queriesMerged"));
+    }
+
+    /** Adds the samples (in time order) of a tenant. Samples not newer than the latest one of their series are skipped. */
+    synchronized void add(final String tenant, final Collection<Sample> samples) {
+        if (maxSeries == 0) {
+            return;
+        }
+        for (Sample sample : samples) {
+            final long time = sample.getTime().toEpochMilli();
+            final String key = toKey(tenant, sample.getMetric().getKey());
+            Series s = series.get(key);
+            if (s == null) {
+                s = new Series(allocate(), time);
+                series.put(key, s);
+            } else if (s.count > 0 && time <= getTime(s, s.count - 1)) {
+                continue;
+            }
+            if (s.count == samplesPerSeries) {
+                // the oldest sample is overwritten, the ring holds all samples after it only
+                s.coveredFromMs = getTime(s, 0) + 1;
+                s.first = (s.first + 1) % samplesPerSeries;
+                s.count--;
+            }
+            final int position = position(s, s.count);
+            buffer.putLong(position, time);
+            buffer.putDouble(position + 8, sample.getValue());
+            s.count++;
+        }
+    }
+
+    /**
+     * Evaluates the range query like Prometheus would, from the first step (start + n * step) that the ring covers
+     * to the end, with samples of the given metric. For counters the rate over rangeMs is calculated. Returns null if not even the last step is covered.
+     */
+    synchronized Evaluation evaluate(final String tenant, final String key, final Metric metric, final long startMs, final long endMs, final long stepMs,
+                                     final boolean counter, final long rangeMs) {
+        final Series s = series.get(toKey(tenant, key));
+        if (s == null || stepMs <= 0) {
+            return null;
+        }
+        final long lookbackMs = counter ? rangeMs : LOOKBACK_DELTA_MS;
+        long fromMs = startMs;
+        if (fromMs - lookbackMs < s.coveredFromMs) {
+            fromMs = startMs + ceilDiv(s.coveredFromMs + lookbackMs - startMs, stepMs) * stepMs;
+        }
+        if (fromMs > endMs) {
+            return null;
+        }
+        final List<Sample> samples = new ArrayList<>();
+        for (long t = fromMs; t <= endMs; t += stepMs) {
+            final Double value = counter ? rate(s, t, rangeMs) : latest(s, t);
+            if (value != null) {
+                samples.add(ImmutableSample.builder().metric(metric).time(Instant.ofEpochMilli(t)).value(value).build());
+            }
+        }
+        if (fromMs == startMs) {
+            queriesAnswered.mark();
+        } else {
+            queriesMerged.mark();
+        }
+        return new Evaluation(fromMs, samples);
+    }
+
+    /** Returns the raw samples within the range, null if the ring doesn't cover all of it. */
+    synchronized List<Sample> getSamples(final String tenant, final String key, final Metric metric, final long startMs, final long endMs) {
+        final Series s = series.get(toKey(tenant, key));
+        if (s == null || startMs < s.coveredFromMs) {
+            return null;
+        }
+        final List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < s.count; i++) {
+            final long time = getTime(s, i);
+            if (time >= startMs && time <= endMs) {
+                samples.add(ImmutableSample.builder().metric(metric).time(Instant.ofEpochMilli(time)).value(getValue(s, i)).build());
+            }
+        }
+        queriesAnswered.mark();
+        return Collections.unmodifiableList(samples);
+    }
+
+    synchronized int size() {
+        return series.size();
+    }
+
+    private int allocate() {
+        if (series.size() < maxSeries) {
+            final int offset = nextOffset;
+            nextOffset += samplesPerSeries * SAMPLE_BYTES;
+            return offset;
+        }
+        final Iterator<Map.Entry<String, Series>> eldest = series.entrySet().iterator();
+        final int offset = eldest.next().getValue().offset;
+        eldest.remove();
+        seriesEvicted.mark();
+        return offset;
+    }
+
+    /** The value of the latest sample at or before t within the lookback delta. */
+    private Double latest(final Series s, final long t) {
+        for (int i = s.count - 1; i >= 0; i--) {
+            final long time = getTime(s, i);
+            if (time <= t) {
+                return time > t - LOOKBACK_DELTA_MS ? getValue(s, i) : null;
+            }
+        }
+        return null;
+    }
+
+    /** The per second rate of the counter in (t - rangeMs, t], extrapolated like Prometheus' rate() does. */
+    private Double rate(final Series s, final long t, final long rangeMs) {
+        final long rangeStart = t - rangeMs;
+        int firstIndex = -1;
+        int lastIndex = -1;
+        double increase = 0;
+        double previous = 0;
+        for (int i = 0; i < s.count; i++) {
+            final long time = getTime(s, i);
+            if (time <= rangeStart) {
+                continue;
+            }
+            if (time > t) {
+                break;
+            }
+            final double value = getValue(s, i);
+            if (firstIndex < 0) {
+                firstIndex = i;
+            } else {
+                // a counter reset starts from 0 again
+                increase += value >= previous ? value - previous : value;
+            }
+            previous = value;
+            lastIndex = i;
+        }
+        if (firstIndex < 0 || lastIndex == firstIndex) {
+            return null;
+        }
+        final double firstTime = getTime(s, firstIndex) / 1000.0d;
+        final double lastTime = getTime(s, lastIndex) / 1000.0d;
+        final double sampledInterval = lastTime - firstTime;
+        final double averageDurationBetweenSamples = sampledInterval / (lastIndex - firstIndex);
+        double durationToStart = firstTime - rangeStart / 1000.0d;
+        final double durationToEnd = t / 1000.0d - lastTime;
+        final double firstValue = getValue(s, firstIndex);
+        if (increase > 0 && firstValue >= 0) {
+            // don't extrapolate to before the counter was 0
+            durationToStart = Math.min(durationToStart, sampledInterval * (firstValue / increase));
+        }
+        final double extrapolationThreshold = averageDurationBetweenSamples * 1.1d;
+        double extrapolateToInterval = sampledInterval;
+        extrapolateToInterval += durationToStart < extrapolationThreshold ? durationToStart : averageDurationBetweenSamples / 2;
+        extrapolateToInterval += durationToEnd < extrapolationThreshold ? durationToEnd : averageDurationBetweenSamples / 2;
+        return increase * (extrapolateToInterval / sampledInterval) / (rangeMs / 1000.0d);
+    }
+
+    private int position(final Series s, final int index) {
+        return s.offset + ((s.first + index) % samplesPerSeries) * SAMPLE_BYTES;
+    }
+
+    private long getTime(final Series s, final int index) {
+        return buffer.getLong(position(s, index));
+    }
+
+    private double getValue(final Series s, final int index) {
+        return buffer.getDouble(position(s, index) + 8);
+    }
+
+    private static long ceilDiv(final long x, final long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private static String toKey(final String tenant, final String key) {
+        return tenant + '\u0000' + key;
+    }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estimates the number of distinct elements added, based on their 64 bit hashes.
+ * With 2^precision registers the standard error is about 1.04 / sqrt(2^precision), e.g. 0.8% for precision 14.
+ * Thread safe. Adding doesn't allocate and the estimate is kept up to date incrementally, so both are cheap enough
+ * for the write path.
+ * See Flajolet et al., "HyperLogLog: the analysis of a near-optimal cardinality estimation algorithm".
+ */
+final class HyperLogLog {
+
+    private final int precision;
+    private final AtomicIntegerArray registers;
+    // sum of 2^-register and number of registers still 0, maintained on every register change
+    private final DoubleAdder inverseSum = new DoubleAdder();
+    private final LongAdder zeroRegisters = new LongAdder();
+
+    HyperLogLog(final int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision must be between 4 and 18, got " + precision);
+        }
+        this.precision = precision;
+        this.registers = new AtomicIntegerArray(1 << precision);
+        this.inverseSum.add(1 << precision);
+        this.zeroRegisters.add(1 << precision);
+    }
+
+    void add(final long hash) {
+        final int index = (int) (hash >>> (64 - precision));
+        // position of the first 1 bit in the remaining bits, the marker bit bounds it
+        final int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        int current = registers.get(index);
+        while (rank > current) {
+            if (registers.compareAndSet(index, current, rank)) {
+                inverseSum.add(Math.scalb(1.0d, -rank) - Math.scalb(1.0d, -current));
+                if (current == 0) {
+                    zeroRegisters.decrement();
+                }
+                return;
+            }
+            current = registers.get(index);
+        }
+    }
+
+    long estimate() {
+        return estimate(precision, inverseSum.sum(), zeroRegisters.intValue());
+    }
+
+    /** Estimates the number of distinct elements added to any of the two. */
+    static long estimateUnion(final HyperLogLog hll, final HyperLogLog other) {
+        if (other.precision != hll.precision) {
+            throw new IllegalArgumentException("Can't merge HyperLogLogs of different precision.");
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < hll.registers.length(); i++) {
+            final int register = Math.max(hll.registers.get(i), other.registers.get(i));
+            sum += Math.scalb(1.0d, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        return estimate(hll.precision, sum, zeros);
+    }
+
+    private static long estimate(final int precision, final double inverseSum, final int zeros) {
+        final int m = 1 << precision;
+        final double alpha = 0.7213d / (1.0d + 1.079d / m);
+        final double estimate = alpha * m * m / inverseSum;
+        if (estimate <= 2.5d * m && zeros > 0) {
+            // small range correction: linear counting
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.integration.api.v1.timeseries.MetaTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Tag;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import prometheus.PrometheusTypes;
+
+/**
+ * The metric types (counter or gauge) per tenant and metric family (the sanitized metric name), as written to or
+ * read from Cortex. The entries expire after the metadata interval: the metadata of a family is only written with the
+ * first sample after that, or if its type changed, instead of with every write request. What was written is kept per
+ * endpoint as well, since with sharding the series of a family go to several clusters and each needs its metadata.
+ */
+final class MetricMetadataCache {
+
+    private final Cache<String, PrometheusTypes.MetricMetadata.MetricType> types;
+
+    MetricMetadataCache(final long maximumSize, final long expireAfterInMs) {
+        this(maximumSize, expireAfterInMs, Ticker.systemTicker());
+    }
+
+    MetricMetadataCache(final long maximumSize, final long expireAfterInMs, final Ticker ticker) {
+        this.types = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterInMs, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Returns the metadata to write with a sample of the metric to the given endpoint, null if it was written there within
+     * the interval or if the metric has no known type.
+     */
+    PrometheusTypes.MetricMetadata toSend(final String tenant, final String endpoint, final String family, final Metric metric) {
+        final PrometheusTypes.MetricMetadata.MetricType type = toMetricType(metric);
+        if (type == PrometheusTypes.MetricMetadata.MetricType.UNKNOWN) {
+            return null;
+        }
+        final String key = key(tenant, endpoint, family);
+        if (types.getIfPresent(key) == type) {
+            return null;
+        }
+        types.put(key, type);
+        types.put(key(tenant, family), type);
+        return PrometheusTypes.MetricMetadata.newBuilder()
+                .setType(type)
+                .setMetricFamilyName(family)
+                .build();
+    }
+
+    /** Forgets the metadata of a family, e.g. because its write request to the endpoint failed, so that it is written again. */
+    void invalidate(final String tenant, final String endpoint, final String family) {
+        types.invalidate(key(tenant, endpoint, family));
+        types.invalidate(key(tenant, family));
+    }
+
+    /** Returns the type of the family, null if not cached. */
+    PrometheusTypes.MetricMetadata.MetricType get(final String tenant, final String family) {
+        return types.getIfPresent(key(tenant, family));
+    }
+
+    void put(final String tenant, final String family, final PrometheusTypes.MetricMetadata.MetricType type) {
+        types.put(key(tenant, family), type);
+    }
+
+    private static String key(final String tenant, final String family) {
+        return tenant + '/' + family;
+    }
+
+    private static String key(final String tenant, final String endpoint, final String family) {
+        // family names have no control characters
+        return tenant + '/' + family + '\u0000' + endpoint;
+    }
+
+    /** The Prometheus type of the metric, from its mtype meta tag. */
+    static PrometheusTypes.MetricMetadata.MetricType toMetricType(final Metric metric) {
+        final Tag mtype = metric.getFirstTagByKey(MetaTagNames.mtype);
+        if (mtype == null) {
+            return PrometheusTypes.MetricMetadata.MetricType.UNKNOWN;
+        }
+        switch (mtype.getValue()) {
+            case "counter":
+            case "count":
+                return PrometheusTypes.MetricMetadata.MetricType.COUNTER;
+            case "gauge":
+            case "rate":
+            case "timestamp":
+                return PrometheusTypes.MetricMetadata.MetricType.GAUGE;
+            default:
+                return PrometheusTypes.MetricMetadata.MetricType.UNKNOWN;
+        }
+    }
+
+    /** The mtype for a Prometheus type, null for the ones OpenNMS doesn't write. */
+    static Metric.Mtype toMtype(final PrometheusTypes.MetricMetadata.MetricType type) {
+        switch (type) {
+            case COUNTER:
+                return Metric.Mtype.counter;
+            case GAUGE:
+                return Metric.Mtype.gauge;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Tag;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import prometheus.PrometheusTypes;
+
+/**
+ * Applies the rules of {@link CortexTSSConfig#getWriteRelabelConfigs()} to the labels of the written series, in the
+ * spirit of the Prometheus write_relabel_configs. The rules are given as JSON array, e.g.
+ * <pre>
+ * [{"action": "labeldrop", "regex": "ifAlias|ifDescr"},
+ *  {"action": "drop", "source_labels": ["__name__"], "regex": "go_.*"},
+ *  {"action": "replace", "source_labels": ["node"], "regex": "(.*):.*", "target_label": "location", "replacement": "$1"}]
+ * </pre>
+ * Supported actions are keep, drop, replace, labelkeep and labeldrop with the same semantics and defaults as in
+ * Prometheus (regexes are anchored). The rules work on the sanitized label names, i.e. the metric name is "__name__".
+ *
+ * The patterns are compiled once and the resulting labels are cached by the key of the metric, so samples of known
+ * series don't evaluate any regex.
+ */
+final class Relabeler {
+
+    enum Action {
+        KEEP, DROP, REPLACE, LABELKEEP, LABELDROP
+    }
+
+    static final class Rule {
+        private final Action action;
+        private final List<String> sourceLabels;
+        private final String separator;
+        private final Pattern regex;
+        private final String targetLabel;
+        private final String replacement;
+
+        Rule(final Action action, final List<String> sourceLabels, final String separator, final String regex,
+             final String targetLabel, final String replacement) {
+            this.action = Objects.requireNonNull(action);
+            this.sourceLabels = List.copyOf(sourceLabels);
+            this.separator = Objects.requireNonNull(separator);
+            this.regex = Pattern.compile("^(?:" + regex + ")$");
+            this.targetLabel = targetLabel;
+            this.replacement = Objects.requireNonNull(replacement);
+            if ((action == Action.KEEP || action == Action.DROP || action == Action.REPLACE) && this.sourceLabels.isEmpty()) {
+                throw new IllegalArgumentException("The " + action.name().toLowerCase(Locale.ROOT) + " action requires source_labels.");
+            }
+            if (action == Action.REPLACE && (targetLabel == null || !CortexTSS.LABEL_NAME_PATTERN.matcher(targetLabel).matches())) {
+                throw new IllegalArgumentException("The replace action requires a valid target_label, got: " + targetLabel);
+            }
+        }
+
+        /** Returns false if the series is to be dropped. */
+        private boolean apply(final Map<String, String> labels) {
+            switch (action) {
+                case KEEP:
+                    return regex.matcher(sourceValue(labels)).matches();
+                case DROP:
+                    return !regex.matcher(sourceValue(labels)).matches();
+                case REPLACE:
+                    final Matcher matcher = regex.matcher(sourceValue(labels));
+                    if (matcher.matches()) {
+                        final String value = matcher.replaceFirst(replacement);
+                        if (value.isEmpty()) {
+                            labels.remove(targetLabel);
+                        } else {
+                            labels.put(targetLabel, value);
+                        }
+                    }
+                    return true;
+                case LABELKEEP:
+                    labels.keySet().removeIf(name -> !regex.matcher(name).matches());
+                    return true;
+                case LABELDROP:
+                    labels.keySet().removeIf(name -> regex.matcher(name).matches());
+                    return true;
+                default:
+                    throw new IllegalStateException("Unknown action " + action);
+            }
+        }
+
+        private String sourceValue(final Map<String, String> labels) {
+            if (sourceLabels.size() == 1) {
+                return labels.getOrDefault(sourceLabels.get(0), "");
+            }
+            return sourceLabels.stream()
+                    .map(label -> labels.getOrDefault(label, ""))
+                    .collect(Collectors.joining(separator));
+        }
+    }
+
+    // Marks a dropped series in the cache
+    private static final List<PrometheusTypes.Label> DROPPED = Collections.emptyList();
+
+    private final List<Rule> rules;
+    private final Cache<String, CachedLabels> labelsByMetricKey;
+
+    Relabeler(final List<Rule> rules, final long cacheSize) {
+        this.rules = List.copyOf(rules);
+        this.labelsByMetricKey = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /**
+     * Parses the rules, see the class comment. Returns null if there are none.
+     */
+    static Relabeler create(final CortexTSSConfig config) {
+        final List<Rule> rules = parseRules(config.getWriteRelabelConfigs());
+        return rules.isEmpty() ? null : new Relabeler(rules, config.getWriteRelabelCacheSize());
+    }
+
+    static List<Rule> parseRules(final String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Rule> rules = new ArrayList<>();
+        try {
+            final JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                final JSONObject rule = array.getJSONObject(i);
+                final List<String> sourceLabels = new ArrayList<>();
+                final JSONArray sourceLabelsArray = rule.optJSONArray("source_labels");
+                if (sourceLabelsArray != null) {
+                    for (int j = 0; j < sourceLabelsArray.length(); j++) {
+                        sourceLabels.add(sourceLabelsArray.getString(j));
+                    }
+                }
+                rules.add(new Rule(
+                        Action.valueOf(rule.optString("action", "replace").toUpperCase(Locale.ROOT)),
+                        sourceLabels,
+                        rule.optString("separator", ";"),
+                        rule.optString("regex", "(.*)"),
+                        rule.has("target_label") ? rule.getString("target_label") : null,
+                        rule.optString("replacement", "$1")));
+            }
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid writeRelabelConfigs: " + e.getMessage(), e);
+        }
+        return rules;
+    }
+
+    /**
+     * Returns the relabeled labels of the metric sorted by name, or null if the series is to be dropped.
+     */
+    List<PrometheusTypes.Label> getLabels(final Metric metric) {
+        final CachedLabels cached = labelsByMetricKey.getIfPresent(metric.getKey());
+        // the key only covers the intrinsic tags
+        if (cached != null && cached.metaTags.equals(metric.getMetaTags())) {
+            return cached.labels == DROPPED ? null : cached.labels;
+        }
+        final List<PrometheusTypes.Label> labels = relabel(CortexTSS.toPrometheusLabels(metric));
+        labelsByMetricKey.put(metric.getKey(), new CachedLabels(metric.getMetaTags(), labels == null ? DROPPED : labels));
+        return labels;
+    }
+
+    private List<PrometheusTypes.Label> relabel(final List<PrometheusTypes.Label> original) {
+        final Map<String, String> labels = new TreeMap<>();
+        original.forEach(label -> labels.put(label.getName(), label.getValue()));
+        for (Rule rule : rules) {
+            if (!rule.apply(labels)) {
+                return null;
+            }
+        }
+        final List<PrometheusTypes.Label> result = new ArrayList<>(labels.size());
+        labels.forEach((name, value) -> result.add(PrometheusTypes.Label.newBuilder().setName(name).setValue(value).build()));
+        return Collections.unmodifiableList(result);
+    }
+
+    private static final class CachedLabels {
+        private final Set<Tag> metaTags;
+        private final List<PrometheusTypes.Label> labels;
+
+        private CachedLabels(final Set<Tag> metaTags, final List<PrometheusTypes.Label> labels) {
+            this.metaTags = metaTags;
+            this.labels = labels;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.opennms.timeseries.cortex.CortexTSS.METRIC_NAME_LABEL;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.Tag;
+import org.opennms.integration.api.v1.timeseries.TimeSeriesFetchRequest;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+import org.xerial.snappy.Snappy;
+
+import com.google.protobuf.CodedInputStream;
+
+import prometheus.PrometheusRemote;
+import prometheus.PrometheusTypes;
+
+/**
+ * Maps between the Prometheus remote-read protocol (https://prometheus.io/docs/prometheus/latest/querying/remote_read_api/)
+ * and our model. The preferred response type is STREAMED_XOR_CHUNKS: a stream of frames, each consisting of the
+ * uvarint encoded size, the CRC32C (Castagnoli) checksum and a ChunkedReadResponse message. Servers that don't support
+ * streaming answer with a Snappy compressed ReadResponse.
+ */
+public class RemoteReadMapper {
+
+    public static final String STREAMED_CONTENT_TYPE = "application/x-streamed-protobuf; proto=prometheus.ChunkedReadResponse";
+
+    // Prometheus limits a frame to 50MB by default
+    private static final int MAX_FRAME_SIZE = 50 * 1024 * 1024;
+
+    private RemoteReadMapper() {
+    }
+
+    public static PrometheusRemote.ReadRequest toReadRequest(final TimeSeriesFetchRequest request) {
+        final long start = request.getStart().toEpochMilli();
+        final long end = request.getEnd().toEpochMilli();
+        final PrometheusRemote.Query.Builder query = PrometheusRemote.Query.newBuilder()
+                .setStartTimestampMs(start)
+                .setEndTimestampMs(end)
+                .setHints(PrometheusTypes.ReadHints.newBuilder()
+                        .setStartMs(start)
+                        .setEndMs(end));
+        for (Tag tag : request.getMetric().getIntrinsicTags()) {
+            final String name;
+            final String value;
+            if (IntrinsicTagNames.name.equals(tag.getKey())) {
+                name = METRIC_NAME_LABEL;
+                value = CortexTSS.sanitizeMetricName(tag.getValue());
+            } else {
+                name = CortexTSS.sanitizeLabelName(tag.getKey());
+                value = tag.getValue();
+            }
+            query.addMatchers(PrometheusTypes.LabelMatcher.newBuilder()
+                    .setType(PrometheusTypes.LabelMatcher.Type.EQ)
+                    .setName(name)
+                    .setValue(value));
+        }
+        return PrometheusRemote.ReadRequest.newBuilder()
+                .addQueries(query)
+                .addAcceptedResponseTypes(PrometheusRemote.ReadRequest.ResponseType.STREAMED_XOR_CHUNKS)
+                .addAcceptedResponseTypes(PrometheusRemote.ReadRequest.ResponseType.SAMPLES)
+                .build();
+    }
+
+    /**
+     * Decodes a STREAMED_XOR_CHUNKS response frame by frame. Chunks may overlap and may contain samples outside of the
+     * requested range, both is taken care of. NaN values (e.g. Prometheus' stale markers) are dropped.
+     */
+    public static List<Sample> fromChunkedReadResponse(final InputStream in, final Metric metric, final Instant start, final Instant end) throws IOException {
+        final long startMs = start.toEpochMilli();
+        final long endMs = end.toEpochMilli();
+        // we query by the intrinsic tags, it's one series - but merge defensively in case there are more
+        final NavigableMap<Long, Double> samples = new TreeMap<>();
+        final CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[4096];
+        while (true) {
+            final long size = readUvarint(in);
+            if (size < 0) {
+                break;
+            }
+            if (size > MAX_FRAME_SIZE) {
+                throw new IOException(String.format("Frame size %d exceeds limit of %d bytes", size, MAX_FRAME_SIZE));
+            }
+            final long expectedChecksum = readUint32(in);
+            if (buffer.length < size) {
+                buffer = new byte[(int) size];
+            }
+            readFully(in, buffer, (int) size);
+            crc.reset();
+            crc.update(buffer, 0, (int) size);
+            if (crc.getValue() != expectedChecksum) {
+                throw new IOException("Checksum mismatch in remote read response");
+            }
+            final PrometheusRemote.ChunkedReadResponse response = PrometheusRemote.ChunkedReadResponse.parseFrom(
+                    CodedInputStream.newInstance(buffer, 0, (int) size));
+            for (PrometheusTypes.ChunkedSeries series : response.getChunkedSeriesList()) {
+                for (PrometheusTypes.Chunk chunk : series.getChunksList()) {
+                    if (chunk.getType() != PrometheusTypes.Chunk.Encoding.XOR
+                            || chunk.getMaxTimeMs() < startMs || chunk.getMinTimeMs() > endMs) {
+                        continue;
+                    }
+                    XorChunkDecoder.decode(chunk.getData().toByteArray(), (t, v) -> {
+                        if (t >= startMs && t <= endMs && !Double.isNaN(v)) {
+                            samples.put(t, v);
+                        }
+                    });
+                }
+            }
+        }
+        return toSamples(samples, metric);
+    }
+
+    /** Maps a (Snappy compressed) SAMPLES response. */
+    public static List<Sample> fromReadResponse(final byte[] compressed, final Metric metric) throws IOException {
+        final PrometheusRemote.ReadResponse response = PrometheusRemote.ReadResponse.parseFrom(Snappy.uncompress(compressed));
+        final NavigableMap<Long, Double> samples = new TreeMap<>();
+        for (PrometheusRemote.QueryResult result : response.getResultsList()) {
+            for (PrometheusTypes.TimeSeries series : result.getTimeseriesList()) {
+                for (PrometheusTypes.Sample sample : series.getSamplesList()) {
+                    if (!Double.isNaN(sample.getValue())) {
+                        samples.put(sample.getTimestamp(), sample.getValue());
+                    }
+                }
+            }
+        }
+        return toSamples(samples, metric);
+    }
+
+    /**
+     * Converts raw counter values into per second rates between consecutive samples, the equivalent of what the
+     * query api returns for counters. A decreasing value is treated as a counter reset.
+     */
+    public static List<Sample> toRates(final List<Sample> counterSamples) {
+        final List<Sample> rates = new ArrayList<>(Math.max(0, counterSamples.size() - 1));
+        for (int i = 1; i < counterSamples.size(); i++) {
+            final Sample previous = counterSamples.get(i - 1);
+            final Sample current = counterSamples.get(i);
+            final double seconds = (current.getTime().toEpochMilli() - previous.getTime().toEpochMilli()) / 1000.0d;
+            if (seconds <= 0) {
+                continue;
+            }
+            final double increase = current.getValue() >= previous.getValue()
+                    ? current.getValue() - previous.getValue()
+                    : current.getValue();
+            rates.add(ImmutableSample.builder()
+                    .metric(current.getMetric())
+                    .time(current.getTime())
+                    .value(increase / seconds)
+                    .build());
+        }
+        return rates;
+    }
+
+    private static List<Sample> toSamples(final NavigableMap<Long, Double> samples, final Metric metric) {
+        final List<Sample> result = new ArrayList<>(samples.size());
+        for (Map.Entry<Long, Double> entry : samples.entrySet()) {
+            result.add(ImmutableSample.builder()
+                    .metric(metric)
+                    .time(Instant.ofEpochMilli(entry.getKey()))
+                    .value(entry.getValue())
+                    .build());
+        }
+        return result;
+    }
+
+    /** @return the value or -1 at the end of the stream */
+    private static long readUvarint(final InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException("Unexpected end of remote read response");
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint overflow in remote read response");
+    }
+
+    private static long readUint32(final InputStream in) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of remote read response");
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private static void readFully(final InputStream in, final byte[] buffer, final int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of remote read response");
+            }
+            read += n;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+
+import io.prometheus.write.v2.PrometheusWriteV2;
+import prometheus.PrometheusTypes;
+
+/**
+ * Builds a Prometheus remote write 2.0 request, see https://prometheus.io/docs/specs/prw/remote_write_spec_2_0/.
+ * Label names and values are interned into the symbol table of the request and the series only reference them,
+ * so the long resource ids and the label names shared by many series are written once per request.
+ * The samples of a series are collected into one time series, in the order they are added,
+ * and the metric type (the mtype meta tag) is written as its metadata.
+ */
+final class RemoteWriteV2Encoder {
+
+    private final PrometheusWriteV2.Request.Builder request = PrometheusWriteV2.Request.newBuilder();
+    private final Map<String, Integer> symbols = new HashMap<>();
+    private final Map<List<PrometheusTypes.Label>, PrometheusWriteV2.TimeSeries.Builder> series = new LinkedHashMap<>();
+
+    RemoteWriteV2Encoder() {
+        // the spec requires the empty string as first symbol
+        toSymbolRef("");
+    }
+
+    /** Adds the sample with the given labels, which are sorted by name (see {@link CortexTSS#toPrometheusLabels(Metric)}). */
+    void add(final Sample sample, final List<PrometheusTypes.Label> labels) {
+        series.computeIfAbsent(labels, l -> newTimeSeries(l, sample.getMetric()))
+                .addSamples(PrometheusWriteV2.Sample.newBuilder()
+                        .setTimestamp(sample.getTime().toEpochMilli())
+                        .setValue(sample.getValue()));
+    }
+
+    PrometheusWriteV2.Request build() {
+        series.values().forEach(request::addTimeseries);
+        return request.build();
+    }
+
+    private PrometheusWriteV2.TimeSeries.Builder newTimeSeries(final List<PrometheusTypes.Label> labels, final Metric metric) {
+        final PrometheusWriteV2.TimeSeries.Builder timeSeries = PrometheusWriteV2.TimeSeries.newBuilder();
+        for (PrometheusTypes.Label label : labels) {
+            timeSeries.addLabelsRefs(toSymbolRef(label.getName()));
+            timeSeries.addLabelsRefs(toSymbolRef(label.getValue()));
+        }
+        timeSeries.setMetadata(PrometheusWriteV2.Metadata.newBuilder().setType(toMetricType(metric)));
+        return timeSeries;
+    }
+
+    private int toSymbolRef(final String symbol) {
+        return symbols.computeIfAbsent(symbol, s -> {
+            request.addSymbols(s);
+            return request.getSymbolsCount() - 1;
+        });
+    }
+
+    static PrometheusWriteV2.Metadata.MetricType toMetricType(final Metric metric) {
+        // both enums use the same numbers
+        return PrometheusWriteV2.Metadata.MetricType.forNumber(MetricMetadataCache.toMetricType(metric).getNumber());
+    }
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+
+/**
+ * Holds samples back per series for up to {@link CortexTSSConfig#getReorderToleranceInMs()}, so that samples arriving
+ * out of order within that time are still written in time order. Samples older than the last one written of their
+ * series, and samples with the timestamp of one already seen, would be rejected by Cortex and are dropped here instead.
+ * Samples are released once a sample of their series newer than the tolerance arrives, or by the background flush
+ * once they are older than the tolerance.
+ */
+final class ReorderBuffer {
+    private static final Logger LOG = LoggerFactory.getLogger(ReorderBuffer.class);
+
+    static final String METRIC_PREFIX = "reorder";
+
+    private static final long MIN_FLUSH_INTERVAL_IN_MS = 1000;
+
+    /** Writes the released samples of a tenant. */
+    @FunctionalInterface
+    interface Sender {
+        void send(String clientID, List<Sample> samples) throws StorageException;
+    }
+
+    private static final class Series {
+        private final String clientID;
+        private final NavigableMap<Long, Sample> pending = new TreeMap<>();
+        private long lastReleasedMs = Long.MIN_VALUE;
+        private long newestMs = Long.MIN_VALUE;
+        // evicted from the buffer, samples added concurrently are released right away
+        private boolean removed;
+
+        private Series(final String clientID) {
+            this.clientID = clientID;
+        }
+    }
+
+    private static final class Released {
+        private final String clientID;
+        private final List<Sample> samples;
+
+        private Released(final String clientID, final List<Sample> samples) {
+            this.clientID = clientID;
+            this.samples = samples;
+        }
+    }
+
+    private final Supplier<CortexTSSConfig> config;
+    private final Sender sender;
+    private final ScheduledThreadPoolExecutor executor;
+    private volatile Cache<String, Series> series;
+    // pending samples of series evicted from the buffer, written with the next flush
+    private final Queue<Released> evicted = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSamples = new AtomicInteger();
+    private final Meter duplicatesDropped;
+    private final Meter outOfOrderDropped;
+
+    ReorderBuffer(final Supplier<CortexTSSConfig> config, final Sender sender, final MetricRegistry metrics) {
+        this.config = config;
+        this.sender = sender;
+        this.series = createSeriesCache(config.get().getReorderBufferMaxSeries());
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "cortex-tss-reorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.duplicatesDropped = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "duplicatesDropped"));
+        this.outOfOrderDropped = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "outOfOrderDropped"));
+        metrics.register(MetricRegistry.name(METRIC_PREFIX, "series"), (Gauge<Long>) () -> series.size());
+        metrics.register(MetricRegistry.name(METRIC_PREFIX, "pendingSamples"), (Gauge<Integer>) pendingSamples::get);
+        scheduleFlush();
+    }
+
+    private Cache<String, Series> createSeriesCache(final int maxSeries) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, maxSeries))
+                .removalListener((RemovalListener<String, Series>) notification -> {
+                    if (notification.getCause() != RemovalCause.SIZE) {
+                        return;
+                    }
+                    final Series evictedSeries = notification.getValue();
+                    synchronized (evictedSeries) {
+                        evictedSeries.removed = true;
+                        if (!evictedSeries.pending.isEmpty()) {
+                            evicted.add(new Released(evictedSeries.clientID, release(evictedSeries, Long.MAX_VALUE)));
+                        }
+                    }
+                })
+                .build();
+    }
+
+    boolean isEnabled() {
+        return config.get().getReorderBufferMaxSeries() > 0;
+    }
+
+    /** Applies a changed buffer size, the samples pending until then are released. */
+    void reconfigure(final CortexTSSConfig oldConfig, final CortexTSSConfig newConfig) {
+        if (oldConfig.getReorderBufferMaxSeries() != newConfig.getReorderBufferMaxSeries()) {
+            final Cache<String, Series> oldSeries = this.series;
+            this.series = createSeriesCache(newConfig.getReorderBufferMaxSeries());
+            send(releaseAll(oldSeries.asMap().values(), Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Adds the samples of the given tenant and returns the ones that can be written now, in time order per series.
+     * The others are written by the background flush unless released by a later call.
+     */
+    List<Sample> add(final String clientID, final List<Sample> samples) {
+        final long toleranceInMs = config.get().getReorderToleranceInMs();
+        final Cache<String, Series> series = this.series;
+        final List<Sample> released = new ArrayList<>(samples.size());
+        for (Map.Entry<String, List<Sample>> samplesOfSeries : groupBySeries(samples).entrySet()) {
+            final Series s = series.asMap().computeIfAbsent(clientID + '\0' + samplesOfSeries.getKey(), key -> new Series(clientID));
+            synchronized (s) {
+                for (Sample sample : samplesOfSeries.getValue()) {
+                    final long timeMs = sample.getTime().toEpochMilli();
+                    if (timeMs == s.lastReleasedMs) {
+                        duplicatesDropped.mark();
+                    } else if (timeMs < s.lastReleasedMs) {
+                        outOfOrderDropped.mark();
+                    } else if (s.pending.putIfAbsent(timeMs, sample) != null) {
+                        duplicatesDropped.mark();
+                    } else {
+                        pendingSamples.incrementAndGet();
+                        s.newestMs = Math.max(s.newestMs, timeMs);
+                    }
+                }
+                released.addAll(release(s, s.removed ? Long.MAX_VALUE : s.newestMs - toleranceInMs));
+            }
+        }
+        return released;
+    }
+
+    /** Removes the pending samples of the series up to the given time. Must hold the lock of the series. */
+    private List<Sample> release(final Series s, final long upToMs) {
+        final NavigableMap<Long, Sample> head = s.pending.headMap(upToMs, true);
+        if (head.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        final List<Sample> released = new ArrayList<>(head.values());
+        s.lastReleasedMs = head.lastKey();
+        head.clear();
+        pendingSamples.addAndGet(-released.size());
+        return released;
+    }
+
+    private List<Released> releaseAll(final Collection<Series> series, final long upToMs) {
+        final List<Released> released = new ArrayList<>();
+        for (Series s : series) {
+            synchronized (s) {
+                final List<Sample> samples = release(s, upToMs);
+                if (!samples.isEmpty()) {
+                    released.add(new Released(s.clientID, samples));
+                }
+            }
+        }
+        return released;
+    }
+
+    private void scheduleFlush() {
+        try {
+            // scheduled anew each time, so a changed tolerance applies
+            executor.schedule(() -> {
+                flush(System.currentTimeMillis() - config.get().getReorderToleranceInMs());
+                scheduleFlush();
+            }, Math.max(MIN_FLUSH_INTERVAL_IN_MS, config.get().getReorderToleranceInMs()), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    /** Writes the pending samples up to the given time. */
+    synchronized void flush(final long upToMs) {
+        send(releaseAll(series.asMap().values(), upToMs));
+    }
+
+    private void send(final List<Released> released) {
+        Released evictedSamples;
+        while ((evictedSamples = evicted.poll()) != null) {
+            released.add(evictedSamples);
+        }
+        // one write per tenant
+        final Map<String, List<Sample>> samplesByClientID = new LinkedHashMap<>();
+        for (Released r : released) {
+            samplesByClientID.computeIfAbsent(r.clientID, clientID -> new ArrayList<>()).addAll(r.samples);
+        }
+        samplesByClientID.forEach((clientID, samples) -> {
+            try {
+                sender.send(clientID, samples);
+            } catch (StorageException | RuntimeException e) {
+                LOG.error("Writing {} reordered samples failed, they will be lost.", samples.size(), e);
+            }
+        });
+    }
+
+    /** Stops the background flushes and writes all samples still pending. */
+    void close() {
+        executor.shutdown();
+        flush(Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the samples grouped by series, in time order per series. Cortex only requires the samples of a series
+     * to be in order, which is cheaper than sorting all of them.
+     */
+    static List<Sample> sortPerSeries(final List<Sample> samples) {
+        final List<Sample> sorted = new ArrayList<>(samples.size());
+        groupBySeries(samples).values().forEach(sorted::addAll);
+        return sorted;
+    }
+
+    private static Map<String, List<Sample>> groupBySeries(final List<Sample> samples) {
+        final Map<String, List<Sample>> samplesBySeries = new LinkedHashMap<>();
+        for (Sample sample : samples) {
+            samplesBySeries.computeIfAbsent(sample.getMetric().getKey(), key -> new ArrayList<>(1)).add(sample);
+        }
+        for (List<Sample> samplesOfSeries : samplesBySeries.values()) {
+            if (!isSorted(samplesOfSeries)) {
+                samplesOfSeries.sort(Comparator.comparing(Sample::getTime));
+            }
+        }
+        return samplesBySeries;
+    }
+
+    private static boolean isSorted(final List<Sample> samples) {
+        for (int i = 1; i < samples.size(); i++) {
+            if (samples.get(i - 1).getTime().isAfter(samples.get(i).getTime())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,16 +1,12 @@
 package org.opennms.timeseries.cortex;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Collections;
-import java.util.Spliterators;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
@@ -29,6 +25,8 @@ import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTag;
 
+import prometheus.PrometheusTypes;
+
 import static org.opennms.timeseries.cortex.CortexTSS.CORTEX_TSS;
 import static org.opennms.timeseries.cortex.CortexTSS.INTRINSIC_TAG_NAMES;
 import static org.opennms.timeseries.cortex.CortexTSS.METRIC_NAME_LABEL;
@@ -39,33 +37,227 @@ public class ResultMapper {
     private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final JsonFactory JSON_FACTORY = new JsonFactory(MAPPER);
 
+    // exact powers of ten, see parseDouble()
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
     private ResultMapper(){
     }
 
+    /**
+     * Maps the matrix of a range query to samples. The response is streamed: timestamps (fractional seconds) and values
+     * are parsed straight from the parser's buffer, without building a JSON tree or a string per value.
+     */
     public static List<Sample> fromRangeQueryResult(final String queryResult, final Metric metric) {
-        return iteratorToFiniteStream(new JSONObject(queryResult)
-                .getJSONObject("data")
-                .getJSONArray("result")
-                .iterator())
-                .map(j -> toSamples(((JSONObject)j), metric))
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
+        final List<Sample> samples = new ArrayList<>();
+        try (JsonParser p = JSON_FACTORY.createParser(queryResult)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Invalid JSON");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = p.getCurrentName();
+                p.nextToken();
+                if ("data".equals(field)) {
+                    parseData(p, metric, samples);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return samples;
+    }
+
+    private static void parseData(final JsonParser p, final Metric metric, final List<Sample> samples) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = p.getCurrentName();
+            p.nextToken();
+            if ("result".equals(field)) {
+                expect(p, JsonToken.START_ARRAY);
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    parseSeries(p, metric, samples);
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
     }
 
-    public static List<Sample> toSamples(final JSONObject result, final Metric metric) {
-        // final org.opennms.integration.api.v1.timeseries.Metric metric = toMetricFromMap(result.getJSONObject("metric").toMap());
-        return iteratorToFiniteStream(result.getJSONArray("values").iterator())
-                .map(value -> toSample(metric, (JSONArray)value)).collect(Collectors.toList());
+    private static void parseSeries(final JsonParser p, final Metric metric, final List<Sample> samples) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = p.getCurrentName();
+            p.nextToken();
+            if ("values".equals(field)) {
+                expect(p, JsonToken.START_ARRAY);
+                while (p.nextToken() == JsonToken.START_ARRAY) {
+                    samples.add(parseSample(p, metric));
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
     }
 
-    public static Sample toSample(final Metric metric, final JSONArray jarray) {
+    /** Parses a [&lt;timestamp&gt;, "&lt;value&gt;"] pair, the parser is positioned at its start. */
+    private static Sample parseSample(final JsonParser p, final Metric metric) throws IOException {
+        if (!p.nextToken().isNumeric()) {
+            throw new JsonParseException(p, "Expected a timestamp");
+        }
+        final long time = parseEpochMillis(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+        expect(p, p.nextToken(), JsonToken.VALUE_STRING);
+        final double value = parseDouble(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            p.skipChildren();
+        }
         return ImmutableSample.builder()
-                .time(Instant.ofEpochSecond(jarray.getLong(0)))
-                .value(jarray.getDouble(1))
+                .time(Instant.ofEpochMilli(time))
+                .value(value)
                 .metric(metric)
                 .build();
     }
 
+    private static void expect(final JsonParser p, final JsonToken expected) throws IOException {
+        expect(p, p.currentToken(), expected);
+    }
+
+    private static void expect(final JsonParser p, final JsonToken actual, final JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(p, "Expected " + expected + " but got " + actual);
+        }
+    }
+
+    /**
+     * Parses a Prometheus timestamp (seconds since the epoch with up to millisecond precision, e.g. 1602783564.123)
+     * to milliseconds. Further fractional digits are truncated.
+     */
+    static long parseEpochMillis(final char[] chars, final int offset, final int length) {
+        final int end = offset + length;
+        int i = offset;
+        final boolean negative = i < end && chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long millis = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            final char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                if (fractionDigits < 0) {
+                    millis = millis * 10 + (c - '0');
+                } else if (fractionDigits < 3) {
+                    millis = millis * 10 + (c - '0');
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                // exponent or anything else unexpected: take the slow path
+                return new BigDecimal(chars, offset, length).movePointRight(3).longValue();
+            }
+        }
+        for (int k = Math.max(fractionDigits, 0); k < 3; k++) {
+            millis *= 10;
+        }
+        return negative ? -millis : millis;
+    }
+
+    /**
+     * Parses a sample value as formatted by Prometheus, including NaN, +Inf and -Inf.
+     * Values whose digits fit into 53 bits and have a small exponent (nearly all of them) are computed exactly
+     * from the digits and a power of ten, others fall back to {@link Double#parseDouble(String)}.
+     */
+    static double parseDouble(final char[] chars, final int offset, final int length) {
+        final int end = offset + length;
+        int i = offset;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        if (regionMatches(chars, i, end, "Inf")) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        if (regionMatches(chars, i, end, "NaN")) {
+            return Double.NaN;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            final char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa > (Long.MAX_VALUE - 9) / 10) {
+                    return slowParseDouble(chars, offset, length);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    exponent--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else if ((c == 'e' || c == 'E') && digits > 0) {
+                final int explicitExponent = parseExponent(chars, i + 1, end);
+                if (explicitExponent == Integer.MIN_VALUE) {
+                    return slowParseDouble(chars, offset, length);
+                }
+                exponent += explicitExponent;
+                break;
+            } else {
+                return slowParseDouble(chars, offset, length);
+            }
+        }
+        if (digits == 0 || mantissa > MAX_EXACT_MANTISSA
+                || exponent < -(POWERS_OF_TEN.length - 1) || exponent > POWERS_OF_TEN.length - 1) {
+            return slowParseDouble(chars, offset, length);
+        }
+        // both operands are exact doubles, so the single rounding of the division/multiplication gives the correct result
+        final double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /** Returns the exponent or {@link Integer#MIN_VALUE} if it is malformed or too large for the fast path. */
+    private static int parseExponent(final char[] chars, int i, final int end) {
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            return Integer.MIN_VALUE;
+        }
+        int exponent = 0;
+        for (; i < end; i++) {
+            final char c = chars[i];
+            if (c < '0' || c > '9' || exponent > 1000) {
+                return Integer.MIN_VALUE;
+            }
+            exponent = exponent * 10 + (c - '0');
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    private static boolean regionMatches(final char[] chars, final int offset, final int end, final String s) {
+        if (end - offset != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (chars[offset + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double slowParseDouble(final char[] chars, final int offset, final int length) {
+        return Double.parseDouble(new String(chars, offset, length));
+    }
 
     public static List<Metric> fromSeriesQueryResult(
             final String queryResult,
@@ -76,6 +268,26 @@ public class ResultMapper {
     }
 
 
+    /**
+     * Returns the type of the metric family from the result of the metadata api (see
+     * https://prometheus.io/docs/prometheus/latest/querying/api/#querying-metric-metadata), null if it has none.
+     */
+    public static PrometheusTypes.MetricMetadata.MetricType fromMetadataQueryResult(final String queryResult, final String family) {
+        final JSONObject data = new JSONObject(queryResult).optJSONObject("data");
+        final JSONArray metadata = data == null ? null : data.optJSONArray(family);
+        if (metadata == null || metadata.isEmpty()) {
+            return null;
+        }
+        switch (metadata.getJSONObject(0).optString("type")) {
+            case "counter":
+                return PrometheusTypes.MetricMetadata.MetricType.COUNTER;
+            case "gauge":
+                return PrometheusTypes.MetricMetadata.MetricType.GAUGE;
+            default:
+                return null;
+        }
+    }
+
     public static <T> Metric toMetricFromMap(Map<String, T> tags) {
         ImmutableMetric.MetricBuilder metric = ImmutableMetric.builder();
 
@@ -94,10 +306,6 @@ public class ResultMapper {
         return metric.build();
     }
 
-    static <T> Stream<T> iteratorToFiniteStream(final Iterator<T> iterator) {
-        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, 0), false);
-    }
-
     static Metric appendExternalTagsToMetric(final Metric metric, final KeyValueStore store) {
         var externalTagsRaw = store.get(metric.getKey(), CORTEX_TSS);
         if (externalTagsRaw.isPresent()) {
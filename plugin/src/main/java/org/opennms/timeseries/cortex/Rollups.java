@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.Tag;
+import org.opennms.integration.api.v1.timeseries.TagMatcher;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTagMatcher;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Aggregates the samples written into windows of {@link CortexTSSConfig#getRollupIntervalsInSeconds()} and emits the
+ * aggregates as series of their own once a window is complete (with the end of the window as time), named
+ * &lt;name&gt;:&lt;interval&gt;_&lt;aggregate&gt;, e.g. ifHCInOctets:5m_max. Gauges get the min, max, sum and count of
+ * every window, counters only the max (their last value, rates are calculated from it). Long range fetches read the
+ * coarsest rollup that fits their step then, see {@link #selectInterval(List, long)}, for the steps covered by windows
+ * written already, see {@link #writtenUntilMs(long, long)}. The rollup series are not returned by
+ * {@link CortexTSS#findMetrics}, see {@link #NOT_A_ROLLUP}.
+ */
+final class Rollups {
+
+    static final String METRIC_PREFIX = "rollups";
+    static final String MIN = "min";
+    static final String MAX = "max";
+    static final String SUM = "sum";
+    static final String COUNT = "count";
+    // the names of the rollup series, see toRollupMetric
+    static final String NAME_REGEX = ".*:[0-9][0-9]*[smhd]_(" + MIN + "|" + MAX + "|" + SUM + "|" + COUNT + ")";
+    private static final Pattern NAME_PATTERN = Pattern.compile(NAME_REGEX);
+    /** Excludes the rollup series from series lookups, they are only read in place of their series. */
+    static final TagMatcher NOT_A_ROLLUP = ImmutableTagMatcher.builder()
+            .type(TagMatcher.Type.NOT_EQUALS_REGEX)
+            .key(IntrinsicTagNames.name)
+            .value(NAME_REGEX)
+            .build();
+
+    private static final class Window {
+        private long startMs = Long.MIN_VALUE;
+        private double min;
+        private double max;
+        private double sum;
+        private long count;
+    }
+
+    private final List<Long> intervalsInSeconds;
+    // the open windows per tenant and series, dropped if the series isn't written anymore
+    private final Cache<String, Window[]> windows;
+    private final Meter samplesEmitted;
+
+    Rollups(final List<Long> intervalsInSeconds, final MetricRegistry metrics) {
+        this.intervalsInSeconds = List.copyOf(intervalsInSeconds);
+        final long maxIntervalInSeconds = intervalsInSeconds.stream().mapToLong(Long::longValue).max().orElse(0);
+        this.windows = CacheBuilder.newBuilder()
+                .expireAfterAccess(2 * maxIntervalInSeconds, TimeUnit.SECONDS)
+                .build();
+        this.samplesEmitted = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "samplesEmitted"));
+    }
+
+    /** Adds the samples (in time order) of a tenant, returns the rollup samples of the windows completed by them. */
+    List<Sample> add(final String tenant, final List<Sample> samples) {
+        final List<Sample> rollups = new ArrayList<>();
+        for (Sample sample : samples) {
+            final Window[] seriesWindows;
+            try {
+                seriesWindows = windows.get(tenant + '\u0000' + sample.getMetric().getKey(), () -> newWindows(intervalsInSeconds.size()));
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+            final boolean counter = CortexTSS.isCounter(sample.getMetric());
+            final long time = sample.getTime().toEpochMilli();
+            final double value = sample.getValue();
+            synchronized (seriesWindows) {
+                for (int i = 0; i < seriesWindows.length; i++) {
+                    final long intervalMs = intervalsInSeconds.get(i) * 1000;
+                    final long startMs = Math.floorDiv(time, intervalMs) * intervalMs;
+                    final Window window = seriesWindows[i];
+                    if (startMs < window.startMs) {
+                        // the window was emitted already
+                        continue;
+                    }
+                    if (startMs > window.startMs) {
+                        if (window.count > 0) {
+                            emit(sample.getMetric(), intervalsInSeconds.get(i), window, counter, rollups);
+                        }
+                        window.startMs = startMs;
+                        window.min = value;
+                        window.max = value;
+                        window.sum = 0;
+                        window.count = 0;
+                    }
+                    window.min = Math.min(window.min, value);
+                    window.max = Math.max(window.max, value);
+                    window.sum += value;
+                    window.count++;
+                }
+            }
+        }
+        samplesEmitted.mark(rollups.size());
+        return rollups;
+    }
+
+    private static Window[] newWindows(final int size) {
+        final Window[] windows = new Window[size];
+        for (int i = 0; i < size; i++) {
+            windows[i] = new Window();
+        }
+        return windows;
+    }
+
+    private static void emit(final Metric metric, final long intervalInSeconds, final Window window, final boolean counter,
+                             final List<Sample> rollups) {
+        final Instant end = Instant.ofEpochMilli(window.startMs + intervalInSeconds * 1000);
+        rollups.add(toSample(metric, intervalInSeconds, MAX, end, window.max));
+        if (!counter) {
+            rollups.add(toSample(metric, intervalInSeconds, MIN, end, window.min));
+            rollups.add(toSample(metric, intervalInSeconds, SUM, end, window.sum));
+            rollups.add(toSample(metric, intervalInSeconds, COUNT, end, window.count));
+        }
+    }
+
+    private static Sample toSample(final Metric metric, final long intervalInSeconds, final String aggregate,
+                                   final Instant time, final double value) {
+        return ImmutableSample.builder()
+                .metric(toRollupMetric(metric, intervalInSeconds, aggregate))
+                .time(time)
+                .value(value)
+                .build();
+    }
+
+    /** Returns the metric of the rollup series: the same intrinsic and meta tags, with the name of the rollup. */
+    static Metric toRollupMetric(final Metric metric, final long intervalInSeconds, final String aggregate) {
+        final ImmutableMetric.MetricBuilder builder = ImmutableMetric.builder();
+        for (Tag tag : metric.getIntrinsicTags()) {
+            if (IntrinsicTagNames.name.equals(tag.getKey())) {
+                builder.intrinsicTag(IntrinsicTagNames.name, tag.getValue() + ":" + toDuration(intervalInSeconds) + "_" + aggregate);
+            } else {
+                builder.intrinsicTag(tag);
+            }
+        }
+        return builder.metaTags(metric.getMetaTags()).build();
+    }
+
+    /** Returns the key of the series a rollup series was computed from. */
+    static String toSeriesKey(final Metric rollupMetric) {
+        final ImmutableMetric.MetricBuilder builder = ImmutableMetric.builder();
+        for (Tag tag : rollupMetric.getIntrinsicTags()) {
+            if (IntrinsicTagNames.name.equals(tag.getKey())) {
+                builder.intrinsicTag(IntrinsicTagNames.name, tag.getValue().substring(0, tag.getValue().lastIndexOf(':')));
+            } else {
+                builder.intrinsicTag(tag);
+            }
+        }
+        return builder.build().getKey();
+    }
+
+    /** True if the metric is a rollup series, i.e. has a name like the ones of {@link #toRollupMetric}. */
+    static boolean isRollup(final Metric metric) {
+        final Tag name = metric.getFirstTagByKey(IntrinsicTagNames.name);
+        return name != null && NAME_PATTERN.matcher(name.getValue()).matches();
+    }
+
+    /** Returns the coarsest interval that is not longer than the step, -1 if there is none. */
+    static long selectInterval(final List<Long> intervalsInSeconds, final long stepInSeconds) {
+        long selected = -1;
+        for (long interval : intervalsInSeconds) {
+            if (interval <= stepInSeconds) {
+                selected = interval;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * The end of the last window whose rollups are surely written: a window is only emitted with the first sample after
+     * it, so the one that ended last might not be yet.
+     */
+    static long writtenUntilMs(final long nowMs, final long intervalInSeconds) {
+        final long intervalMs = intervalInSeconds * 1000;
+        return Math.floorDiv(nowMs, intervalMs) * intervalMs - intervalMs;
+    }
+
+    /** Formats the interval like Prometheus durations, in the largest unit it is a multiple of (e.g. 90s, 5m, 1h). */
+    static String toDuration(final long intervalInSeconds) {
+        if (intervalInSeconds % 86400 == 0) {
+            return intervalInSeconds / 86400 + "d";
+        } else if (intervalInSeconds % 3600 == 0) {
+            return intervalInSeconds / 3600 + "h";
+        } else if (intervalInSeconds % 60 == 0) {
+            return intervalInSeconds / 60 + "m";
+        }
+        return intervalInSeconds + "s";
+    }
+}
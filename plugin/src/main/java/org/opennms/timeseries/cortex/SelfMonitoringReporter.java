@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.MetaTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.StorageException;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Writes the plugin's own metrics to Cortex with the given writer, {@link CortexTSS#storeSelfMonitoring(List)} keeps
+ * them out of the limits and metrics of the tenants.
+ * Every value becomes a series named {@value #METRIC_NAME_PREFIX}&lt;registry name&gt;_&lt;statistic&gt;,
+ * durations are reported in milliseconds and rates per second. The tenant, endpoint and status class in the names of
+ * the per tenant and per endpoint metrics become the labels {@value #TENANT_LABEL}, {@value #ENDPOINT_LABEL} and
+ * {@value #STATUS_LABEL} instead, so the number of metric names is fixed, e.g. "tenants.customer1.samplesWritten" is
+ * written as opennms_cortex_tss_tenants_samplesWritten_count{tenant="customer1"}.
+ * All series have the label {@value #INSTANCE_LABEL} to tell the OpenNMS instances writing into the same tenant apart.
+ */
+public class SelfMonitoringReporter extends ScheduledReporter {
+    private static final Logger LOG = LoggerFactory.getLogger(SelfMonitoringReporter.class);
+
+    // Reserved prefix for all series written by the self monitoring
+    public static final String METRIC_NAME_PREFIX = "opennms_cortex_tss_";
+    static final String RESOURCE_ID = "cortex-tss";
+    static final String INSTANCE_LABEL = "instance";
+    static final String TENANT_LABEL = "tenant";
+    static final String ENDPOINT_LABEL = "endpoint";
+    static final String STATUS_LABEL = "status";
+
+    /** Writes the samples of a report. */
+    @FunctionalInterface
+    public interface Writer {
+        void write(List<Sample> samples) throws StorageException;
+    }
+
+    /** The name of a series and its labels, without the {@value #INSTANCE_LABEL}. */
+    static final class Series {
+        private final String name;
+        private final Map<String, String> labels;
+
+        Series(final String name, final Map<String, String> labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Map<String, String> getLabels() {
+            return labels;
+        }
+    }
+
+    private final String instance;
+    private final Writer writer;
+
+    public SelfMonitoringReporter(final MetricRegistry registry, final Writer writer) {
+        this(registry, getLocalHostName(), writer);
+    }
+
+    public SelfMonitoringReporter(final MetricRegistry registry, final String instance, final Writer writer) {
+        super(registry, "cortex-tss-self-monitoring", MetricFilter.ALL, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+        this.instance = instance;
+        this.writer = writer;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void report(final SortedMap<String, Gauge> gauges,
+                       final SortedMap<String, Counter> counters,
+                       final SortedMap<String, Histogram> histograms,
+                       final SortedMap<String, Meter> meters,
+                       final SortedMap<String, Timer> timers) {
+        final Instant now = Instant.now();
+        final List<Sample> samples = new ArrayList<>();
+
+        gauges.forEach((name, gauge) -> {
+            final Object value = gauge.getValue();
+            if (value instanceof Number) {
+                samples.add(sample(now, toSeries(name), "value", Metric.Mtype.gauge, ((Number) value).doubleValue()));
+            }
+        });
+        counters.forEach((name, counter) -> samples.add(sample(now, toSeries(name), "count", Metric.Mtype.gauge, counter.getCount())));
+        histograms.forEach((name, histogram) -> {
+            final Series series = toSeries(name);
+            samples.add(sample(now, series, "count", Metric.Mtype.counter, histogram.getCount()));
+            addSnapshot(samples, now, series, histogram.getSnapshot(), 1.0d);
+        });
+        meters.forEach((name, meter) -> {
+            final Series series = toSeries(name);
+            samples.add(sample(now, series, "count", Metric.Mtype.counter, meter.getCount()));
+            samples.add(sample(now, series, "m1_rate", Metric.Mtype.gauge, convertRate(meter.getOneMinuteRate())));
+        });
+        timers.forEach((name, timer) -> {
+            final Series series = toSeries(name);
+            samples.add(sample(now, series, "count", Metric.Mtype.counter, timer.getCount()));
+            samples.add(sample(now, series, "m1_rate", Metric.Mtype.gauge, convertRate(timer.getOneMinuteRate())));
+            addSnapshot(samples, now, series, timer.getSnapshot(), convertDuration(1));
+        });
+
+        if (samples.isEmpty()) {
+            return;
+        }
+        try {
+            writer.write(samples);
+        } catch (StorageException e) {
+            LOG.warn("Writing {} self monitoring samples failed.", samples.size(), e);
+        }
+    }
+
+    private void addSnapshot(final List<Sample> samples, final Instant now, final Series series, final Snapshot snapshot, final double factor) {
+        samples.add(sample(now, series, "mean", Metric.Mtype.gauge, snapshot.getMean() * factor));
+        samples.add(sample(now, series, "p50", Metric.Mtype.gauge, snapshot.getMedian() * factor));
+        samples.add(sample(now, series, "p99", Metric.Mtype.gauge, snapshot.get99thPercentile() * factor));
+        samples.add(sample(now, series, "max", Metric.Mtype.gauge, snapshot.getMax() * factor));
+    }
+
+    private Sample sample(final Instant time, final Series series, final String statistic, final Metric.Mtype type, final double value) {
+        final ImmutableMetric.MetricBuilder builder = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, toMetricName(series.getName(), statistic))
+                .intrinsicTag(IntrinsicTagNames.resourceId, RESOURCE_ID)
+                .intrinsicTag(INSTANCE_LABEL, instance);
+        series.getLabels().forEach(builder::intrinsicTag);
+        final Metric metric = builder
+                .metaTag(MetaTagNames.mtype, type.name())
+                .build();
+        return ImmutableSample.builder()
+                .metric(metric)
+                .time(time)
+                .value(value)
+                .build();
+    }
+
+    static String toMetricName(final String name, final String statistic) {
+        return CortexTSS.sanitizeMetricName(METRIC_NAME_PREFIX + name + "_" + statistic);
+    }
+
+    /**
+     * Splits the variable parts off a registry name: "tenants.&lt;tenant&gt;.&lt;metric&gt;",
+     * "endpoints.&lt;role&gt;.&lt;endpoint&gt;.&lt;metric&gt;" and "&lt;call type&gt;.latency.&lt;tenant&gt;.&lt;status class&gt;"
+     * (see {@link CortexTSS}), the latter is named "&lt;call type&gt;.tenantLatency" to keep it apart from the overall latency.
+     * Tenants may contain dots, endpoint names and the other parts don't.
+     */
+    static Series toSeries(final String name) {
+        final String[] parts = name.split("\\.");
+        final Map<String, String> labels = new LinkedHashMap<>();
+        if (parts.length >= 3 && TenantPipeline.METRIC_PREFIX.equals(parts[0])) {
+            final int metricStart = name.lastIndexOf('.');
+            labels.put(TENANT_LABEL, name.substring(parts[0].length() + 1, metricStart));
+            return new Series(parts[0] + name.substring(metricStart), labels);
+        }
+        if (parts.length == 4 && CortexEndpoint.METRIC_PREFIX.equals(parts[0])) {
+            labels.put(ENDPOINT_LABEL, parts[2]);
+            return new Series(MetricRegistry.name(parts[0], parts[1], parts[3]), labels);
+        }
+        if (parts.length >= 4 && "latency".equals(parts[1])) {
+            final int statusStart = name.lastIndexOf('.');
+            labels.put(TENANT_LABEL, name.substring(parts[0].length() + parts[1].length() + 2, statusStart));
+            labels.put(STATUS_LABEL, name.substring(statusStart + 1));
+            return new Series(MetricRegistry.name(parts[0], "tenantLatency"), labels);
+        }
+        return new Series(name, labels);
+    }
+
+    private static String getLocalHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            LOG.warn("Can't determine the host name, self monitoring series are written with {}=unknown.", INSTANCE_LABEL, e);
+            return "unknown";
+        }
+    }
+}
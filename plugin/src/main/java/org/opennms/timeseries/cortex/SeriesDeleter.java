@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.opennms.integration.api.v1.timeseries.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Queues series deletions and sends them in batches: every {@link CortexTSSConfig#getDeleteBatchIntervalInMs()} or
+ * as soon as {@link CortexTSSConfig#getDeleteBatchSize()} deletions are queued, one call per tenant with a match[]
+ * selector per series. Failed batches are not retried, the series stay then.
+ */
+final class SeriesDeleter {
+    private static final Logger LOG = LoggerFactory.getLogger(SeriesDeleter.class);
+
+    static final String METRIC_PREFIX = "delete";
+
+    /** Deletes the series matching any of the selectors from Cortex. */
+    @FunctionalInterface
+    interface BatchSender {
+        void send(String clientID, List<String> selectors) throws StorageException;
+    }
+
+    private static final class PendingDelete {
+        private final String clientID;
+        private final String selector;
+
+        private PendingDelete(final String clientID, final String selector) {
+            this.clientID = clientID;
+            this.selector = selector;
+        }
+    }
+
+    private final Supplier<CortexTSSConfig> config;
+    private final BatchSender sender;
+    private final BlockingQueue<PendingDelete> pendingDeletes = new LinkedBlockingQueue<>();
+    private final ScheduledThreadPoolExecutor executor;
+    private final Meter seriesDeleted;
+    private final Meter seriesDeleteFailed;
+
+    SeriesDeleter(final Supplier<CortexTSSConfig> config, final BatchSender sender, final MetricRegistry metrics) {
+        this.config = config;
+        this.sender = sender;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "cortex-tss-delete");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.seriesDeleted = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "seriesDeleted"));
+        this.seriesDeleteFailed = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "seriesFailed"));
+        metrics.register(MetricRegistry.name(METRIC_PREFIX, "pendingSeries"), (Gauge<Integer>) pendingDeletes::size);
+        scheduleFlush();
+    }
+
+    void delete(final String clientID, final String selector) {
+        pendingDeletes.add(new PendingDelete(clientID, selector));
+        if (pendingDeletes.size() >= config.get().getDeleteBatchSize()) {
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // closed, flushed one last time there
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        try {
+            // scheduled anew each time, so a changed interval applies
+            executor.schedule(() -> {
+                flush();
+                scheduleFlush();
+            }, config.get().getDeleteBatchIntervalInMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    /** Sends all queued deletions. */
+    synchronized void flush() {
+        final int batchSize = Math.max(1, config.get().getDeleteBatchSize());
+        final List<PendingDelete> batch = new ArrayList<>(batchSize);
+        while (pendingDeletes.drainTo(batch, batchSize) > 0) {
+            final Map<String, List<String>> selectorsByClientID = new LinkedHashMap<>();
+            for (PendingDelete pendingDelete : batch) {
+                selectorsByClientID.computeIfAbsent(pendingDelete.clientID, clientID -> new ArrayList<>()).add(pendingDelete.selector);
+            }
+            selectorsByClientID.forEach((clientID, selectors) -> {
+                try {
+                    sender.send(clientID, selectors);
+                    seriesDeleted.mark(selectors.size());
+                } catch (StorageException | RuntimeException e) {
+                    seriesDeleteFailed.mark(selectors.size());
+                    LOG.error("Deleting {} series failed, they will remain in Cortex.", selectors.size(), e);
+                }
+            });
+            batch.clear();
+        }
+    }
+
+    /** Stops the background flushes and sends the deletions still queued. */
+    void close() {
+        executor.shutdown();
+        flush();
+    }
+}
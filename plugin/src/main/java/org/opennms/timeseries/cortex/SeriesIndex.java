@@ -0,0 +1,655 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Tag;
+import org.opennms.integration.api.v1.timeseries.TagMatcher;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Local index of the series written, to find metrics without asking Cortex (see {@link CortexTSS#findMetrics}).
+ * The series (tenant, key, tags and when last written) are appended to a memory mapped file as they are written for the
+ * first time or with changed tags, a deletion appends a tombstone. The file is read again on start, so the index
+ * survives restarts, and compacted then if most of it are replaced records.
+ * In memory there are only the positions of the series in the file and the postings: the ids of the series per
+ * tenant and label=value (of the intrinsic and meta tags, as written to Cortex), which are intersected to answer queries.
+ *
+ * The index only knows the series written by this instance. It answers a query only once it was seeded with the series
+ * Cortex returned for the same tag matchers (e.g. written before the index was enabled or by another instance), and
+ * for {@link #RESEED_INTERVAL_MS} after that.
+ */
+final class SeriesIndex implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SeriesIndex.class);
+
+    static final String FILE_NAME = "cortex-tss-series.idx";
+    static final String METRIC_PREFIX = "seriesIndex";
+    private static final int MAGIC = 0x43545349; // "CTSI"
+    private static final int VERSION = 2;
+    // magic, version and the end of the records (long)
+    private static final int HEADER_BYTES = 16;
+    private static final int END_POSITION = 8;
+    private static final int INITIAL_BYTES = 1 << 20;
+    private static final byte SERIES = 1;
+    private static final byte DELETED = 2;
+    private static final byte SEEDED = 3;
+    // the time a series was last written is the first field of its record, updated in place
+    private static final int WRITTEN_OFFSET = 1 + 4;
+    // the time a series was last written is only updated in the file once a day
+    static final long TOUCH_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+    static final long RESEED_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    // the tag matchers seeded at most, the least recently seeded ones are forwarded to Cortex again
+    static final int MAX_SEEDED_QUERIES = 10_000;
+
+    /** A series in the index: its id, a hash of its tags, to tell if they changed, and when it was last written. */
+    private static final class Series {
+        private final int id;
+        private final int hash;
+        private volatile long writtenMs;
+
+        private Series(final int id, final int hash, final long writtenMs) {
+            this.id = id;
+            this.hash = hash;
+            this.writtenMs = writtenMs;
+        }
+    }
+
+    /** Ids of series in ascending order. */
+    private static final class Postings {
+        private int[] ids = new int[1];
+        private int size;
+
+        private void add(final int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private boolean contains(final int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end;
+    private int[] positions = new int[1024];
+    private int nextId;
+    private final BitSet removed = new BitSet();
+    private final Map<String, Series> seriesByKey = new ConcurrentHashMap<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+    // tenant and tag matchers => when seeded, dropped once they need to be seeded again
+    private final Cache<String, Long> seeded = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SEEDED_QUERIES)
+            .expireAfterWrite(RESEED_INTERVAL_MS, TimeUnit.MILLISECONDS)
+            .build();
+    private final Meter queriesAnswered;
+    private final Meter queriesForwarded;
+
+    private SeriesIndex(final Path file, final MetricRegistry metrics) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.queriesAnswered = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "queriesAnswered"));
+        this.queriesForwarded = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "queriesForwarded"));
+    }
+
+    /** Opens the index in the given file, the series indexed before are read from it. */
+    static SeriesIndex open(final Path file, final MetricRegistry metrics) throws IOException {
+        final SeriesIndex index = load(file, metrics);
+        if (!index.needsCompaction()) {
+            return index;
+        }
+        final Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            index.compactTo(compacted, System.currentTimeMillis());
+        } catch (IOException e) {
+            LOG.warn("Compacting the series index {} failed, keeping it as it is.", file, e);
+            Files.deleteIfExists(compacted);
+            return index;
+        }
+        final int bytesBefore = index.getBytes();
+        index.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        final SeriesIndex compactedIndex = load(file, metrics);
+        LOG.info("Compacted {} from {} to {} bytes.", file, bytesBefore, compactedIndex.getBytes());
+        return compactedIndex;
+    }
+
+    private static SeriesIndex load(final Path file, final MetricRegistry metrics) throws IOException {
+        final SeriesIndex index = new SeriesIndex(file, metrics);
+        try {
+            index.load();
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw e;
+        }
+        return index;
+    }
+
+    private void load() throws IOException {
+        final long size = channel.size();
+        map(Math.max(size, INITIAL_BYTES));
+        if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            if (size > 0) {
+                LOG.warn("{} is not a series index (of this version), starting with an empty one.", file);
+            }
+            buffer.putInt(0, MAGIC).putInt(4, VERSION);
+            setEnd(HEADER_BYTES);
+            return;
+        }
+        final long storedEnd = buffer.getLong(END_POSITION);
+        int position = HEADER_BYTES;
+        try {
+            while (position < storedEnd) {
+                final ByteBuffer record = buffer.duplicate();
+                record.position(position);
+                final byte type = record.get();
+                final int length = record.getInt();
+                record.limit(record.position() + length);
+                if (type == SERIES) {
+                    final long writtenMs = record.getLong();
+                    final String tenant = getString(record);
+                    final String key = getString(record);
+                    final int hash = record.getInt();
+                    final int id = addSeries(tenant, key, hash, writtenMs, position);
+                    readTags(record, (tagKey, value) -> addPosting(tenant, tagKey, value, id)); // intrinsic tags
+                    readTags(record, (tagKey, value) -> addPosting(tenant, tagKey, value, id)); // meta tags
+                } else if (type == SEEDED) {
+                    final long seededMs = record.getLong();
+                    seeded.put(toSeriesKey(getString(record), getString(record)), seededMs);
+                } else {
+                    removeSeries(getString(record), getString(record));
+                }
+                position = record.limit();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            LOG.warn("{} is truncated at {}, the series after it are dropped.", file, position);
+        }
+        end = position;
+        LOG.info("Loaded {} series from {}.", seriesByKey.size(), file);
+    }
+
+    /** Adds the series of the metric written at the given time, or updates it if its tags changed. */
+    void add(final String tenant, final Metric metric, final long writtenMs) {
+        final String key = metric.getKey();
+        final int hash = hash(metric);
+        final Series series = seriesByKey.get(toSeriesKey(tenant, key));
+        if (series != null && series.hash == hash && writtenMs - series.writtenMs < TOUCH_INTERVAL_MS) {
+            return;
+        }
+        synchronized (this) {
+            final Series current = seriesByKey.get(toSeriesKey(tenant, key));
+            if (current != null && current.hash == hash) {
+                touch(current, writtenMs);
+                return;
+            }
+            final byte[] tenantBytes = tenant.getBytes(StandardCharsets.UTF_8);
+            final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            final List<byte[]> tagBytes = new ArrayList<>();
+            int length = 8 + 4 + tenantBytes.length + 4 + keyBytes.length + 4;
+            for (Set<Tag> tags : List.of(metric.getIntrinsicTags(), metric.getMetaTags(), metric.getExternalTags())) {
+                length += 4;
+                for (Tag tag : tags) {
+                    final byte[] tagKey = tag.getKey().getBytes(StandardCharsets.UTF_8);
+                    final byte[] tagValue = tag.getValue() == null ? new byte[0] : tag.getValue().getBytes(StandardCharsets.UTF_8);
+                    tagBytes.add(tagKey);
+                    tagBytes.add(tagValue);
+                    length += 8 + tagKey.length + tagValue.length;
+                }
+            }
+            final int position = end;
+            final ByteBuffer record;
+            try {
+                record = allocate(1 + 4 + length);
+            } catch (IOException e) {
+                LOG.warn("Can't grow the series index {}, {} is not indexed.", file, key, e);
+                return;
+            }
+            record.put(SERIES).putInt(length).putLong(writtenMs);
+            putBytes(record, tenantBytes);
+            putBytes(record, keyBytes);
+            record.putInt(hash);
+            int tag = 0;
+            for (Set<Tag> tags : List.of(metric.getIntrinsicTags(), metric.getMetaTags(), metric.getExternalTags())) {
+                record.putInt(tags.size());
+                for (int i = 0; i < tags.size(); i++) {
+                    putBytes(record, tagBytes.get(tag++));
+                    putBytes(record, tagBytes.get(tag++));
+                }
+            }
+            if (current != null) {
+                removed.set(current.id);
+            }
+            final int id = addSeries(tenant, key, hash, writtenMs, position);
+            for (Tag intrinsicTag : metric.getIntrinsicTags()) {
+                addPosting(tenant, intrinsicTag.getKey(), intrinsicTag.getValue(), id);
+            }
+            for (Tag metaTag : metric.getMetaTags()) {
+                addPosting(tenant, metaTag.getKey(), metaTag.getValue(), id);
+            }
+            setEnd(position + 1 + 4 + length);
+        }
+    }
+
+    /** Removes the series of the metric. */
+    synchronized void remove(final String tenant, final Metric metric) {
+        final String key = metric.getKey();
+        if (!seriesByKey.containsKey(toSeriesKey(tenant, key))) {
+            return;
+        }
+        final byte[] tenantBytes = tenant.getBytes(StandardCharsets.UTF_8);
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int length = 4 + tenantBytes.length + 4 + keyBytes.length;
+        final int position = end;
+        try {
+            final ByteBuffer record = allocate(1 + 4 + length);
+            record.put(DELETED).putInt(length);
+            putBytes(record, tenantBytes);
+            putBytes(record, keyBytes);
+        } catch (IOException e) {
+            LOG.warn("Can't grow the series index {}, {} is removed until restarting only.", file, key, e);
+            removeSeries(tenant, key);
+            return;
+        }
+        removeSeries(tenant, key);
+        setEnd(position + 1 + 4 + length);
+    }
+
+    /** Returns the indexed metric with the given key, null if it is not indexed. */
+    synchronized Metric get(final String tenant, final String key) {
+        final Series series = seriesByKey.get(toSeriesKey(tenant, key));
+        return series == null ? null : readMetric(series.id);
+    }
+
+    /**
+     * Returns the indexed metrics matching all tag matchers that were written since the given time. Returns null if the
+     * index can't tell, i.e. there is no equals matcher to look up or it wasn't seeded for the tag matchers within
+     * {@link #RESEED_INTERVAL_MS}: Cortex needs to be asked then, see {@link #seed}.
+     */
+    synchronized List<Metric> find(final String tenant, final Collection<TagMatcher> tagMatchers, final long notWrittenBeforeMs, final long nowMs) {
+        final Long seededMs = seeded.getIfPresent(toSeriesKey(tenant, toQueryKey(tagMatchers)));
+        final List<Metric> metrics = seededMs == null || nowMs - seededMs >= RESEED_INTERVAL_MS
+                ? null
+                : match(tenant, tagMatchers, notWrittenBeforeMs);
+        if (metrics == null) {
+            queriesForwarded.mark();
+            return null;
+        }
+        queriesAnswered.mark();
+        return metrics;
+    }
+
+    /**
+     * Adds the series Cortex found for the tag matchers (unless indexed already, then they are only marked as written)
+     * and answers queries with the same tag matchers from the index from now on. Returns these series together with the
+     * indexed ones matching, e.g. written meanwhile.
+     */
+    synchronized List<Metric> seed(final String tenant, final Collection<TagMatcher> tagMatchers, final List<Metric> found,
+                                   final long notWrittenBeforeMs, final long nowMs) {
+        for (Metric metric : found) {
+            final Series series = seriesByKey.get(toSeriesKey(tenant, metric.getKey()));
+            if (series == null) {
+                add(tenant, metric, nowMs);
+            } else {
+                touch(series, nowMs);
+            }
+        }
+        final List<Metric> indexed = match(tenant, tagMatchers, notWrittenBeforeMs);
+        if (indexed == null) {
+            // never answered from the index
+            return found;
+        }
+        final String query = toQueryKey(tagMatchers);
+        final byte[] tenantBytes = tenant.getBytes(StandardCharsets.UTF_8);
+        final byte[] queryBytes = query.getBytes(StandardCharsets.UTF_8);
+        final int length = 8 + 4 + tenantBytes.length + 4 + queryBytes.length;
+        final int position = end;
+        try {
+            final ByteBuffer record = allocate(1 + 4 + length);
+            record.put(SEEDED).putInt(length).putLong(nowMs);
+            putBytes(record, tenantBytes);
+            putBytes(record, queryBytes);
+            setEnd(position + 1 + 4 + length);
+            seeded.put(toSeriesKey(tenant, query), nowMs);
+        } catch (IOException e) {
+            LOG.warn("Can't grow the series index {}, queries for {} are not answered from it.", file, tagMatchers, e);
+        }
+        final Map<String, Metric> metrics = new LinkedHashMap<>();
+        found.forEach(metric -> metrics.put(metric.getKey(), metric));
+        indexed.forEach(metric -> metrics.putIfAbsent(metric.getKey(), metric));
+        return new ArrayList<>(metrics.values());
+    }
+
+    /** The indexed metrics matching all tag matchers and written since the given time, null without equals matcher. */
+    private List<Metric> match(final String tenant, final Collection<TagMatcher> tagMatchers, final long notWrittenBeforeMs) {
+        Postings smallest = null;
+        final List<Postings> equalPostings = new ArrayList<>();
+        for (TagMatcher matcher : tagMatchers) {
+            if (matcher.getType() != TagMatcher.Type.EQUALS) {
+                continue;
+            }
+            final Postings ids = postings.get(toPostingKey(tenant, matcher.getKey(), matcher.getValue()));
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            equalPostings.add(ids);
+            if (smallest == null || ids.size < smallest.size) {
+                smallest = ids;
+            }
+        }
+        if (smallest == null) {
+            return null;
+        }
+        // the time in the file lags behind by up to a day, rather return a series too many than one too few
+        final long writtenSinceMs = notWrittenBeforeMs - TOUCH_INTERVAL_MS;
+        final Map<TagMatcher, Pattern> patterns = new HashMap<>();
+        final List<Metric> metrics = new ArrayList<>();
+        for (int i = 0; i < smallest.size; i++) {
+            final int id = smallest.ids[i];
+            if (removed.get(id) || !containedInAll(equalPostings, id) || buffer.getLong(positions[id] + WRITTEN_OFFSET) < writtenSinceMs) {
+                continue;
+            }
+            final Metric metric = readMetric(id);
+            if (tagMatchers.stream().allMatch(matcher -> matches(metric, matcher, patterns))) {
+                metrics.add(metric);
+            }
+        }
+        return metrics;
+    }
+
+    /** Number of series indexed. */
+    int size() {
+        return seriesByKey.size();
+    }
+
+    /** Number of tag matchers seeded. */
+    long seededQueries() {
+        return seeded.size();
+    }
+
+    /** Size of the records in the file. */
+    synchronized int getBytes() {
+        return end;
+    }
+
+    /** True if less than half of the records are the current ones of the series, the others were replaced or deleted. */
+    private boolean needsCompaction() {
+        long liveBytes = 0;
+        for (Series series : seriesByKey.values()) {
+            liveBytes += recordLength(series.id);
+        }
+        return end - HEADER_BYTES > 2 * liveBytes;
+    }
+
+    /** Writes the current records of the series and the seeds still valid to a new index file. */
+    private void compactTo(final Path target, final long nowMs) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = HEADER_BYTES;
+            out.position(position);
+            final int[] ids = seriesByKey.values().stream().mapToInt(series -> series.id).sorted().toArray();
+            for (int id : ids) {
+                final ByteBuffer record = buffer.duplicate();
+                record.position(positions[id]).limit(positions[id] + recordLength(id));
+                position += writeFully(out, record);
+            }
+            for (Map.Entry<String, Long> seed : seeded.asMap().entrySet()) {
+                if (nowMs - seed.getValue() >= RESEED_INTERVAL_MS) {
+                    continue;
+                }
+                final String[] tenantAndQuery = seed.getKey().split("\u0000", 2);
+                final byte[] tenantBytes = tenantAndQuery[0].getBytes(StandardCharsets.UTF_8);
+                final byte[] queryBytes = tenantAndQuery[1].getBytes(StandardCharsets.UTF_8);
+                final int length = 8 + 4 + tenantBytes.length + 4 + queryBytes.length;
+                final ByteBuffer record = ByteBuffer.allocate(1 + 4 + length);
+                record.put(SEEDED).putInt(length).putLong(seed.getValue());
+                putBytes(record, tenantBytes);
+                putBytes(record, queryBytes);
+                record.flip();
+                position += writeFully(out, record);
+            }
+            writeFully(out.position(0), ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(position).flip());
+            out.force(true);
+        }
+    }
+
+    private static int writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        final int bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return bytes;
+    }
+
+    private int recordLength(final int id) {
+        return 1 + 4 + buffer.getInt(positions[id] + 1);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        channel.close();
+    }
+
+    private static boolean containedInAll(final List<Postings> postings, final int id) {
+        for (Postings ids : postings) {
+            if (!ids.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Matches like Cortex would: against the labels as written and with regular expressions anchored at both ends. */
+    private static boolean matches(final Metric metric, final TagMatcher matcher, final Map<TagMatcher, Pattern> patterns) {
+        final String value = toLabelValue(matcher.getKey(), findValue(metric, matcher.getKey()));
+        switch (matcher.getType()) {
+            case EQUALS:
+                return value.equals(toLabelValue(matcher.getKey(), matcher.getValue()));
+            case NOT_EQUALS:
+                return !value.equals(toLabelValue(matcher.getKey(), matcher.getValue()));
+            case EQUALS_REGEX:
+                return patterns.computeIfAbsent(matcher, m -> Pattern.compile(m.getValue())).matcher(value).matches();
+            case NOT_EQUALS_REGEX:
+                return !patterns.computeIfAbsent(matcher, m -> Pattern.compile(m.getValue())).matcher(value).matches();
+            default:
+                return false;
+        }
+    }
+
+    private static String findValue(final Metric metric, final String key) {
+        for (Set<Tag> tags : List.of(metric.getIntrinsicTags(), metric.getMetaTags())) {
+            for (Tag tag : tags) {
+                if (key.equals(tag.getKey())) {
+                    return tag.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String toLabelValue(final String key, final String value) {
+        if (value == null) {
+            return "";
+        }
+        return IntrinsicTagNames.name.equals(key) ? CortexTSS.sanitizeMetricName(value) : CortexTSS.sanitizeLabelValue(value);
+    }
+
+    private static String toSeriesKey(final String tenant, final String key) {
+        return tenant + '\u0000' + key;
+    }
+
+    private static String toPostingKey(final String tenant, final String key, final String value) {
+        return tenant + '\u0000' + key + '\u0000' + toLabelValue(key, value);
+    }
+
+    /** The tag matchers in a canonical order, to tell if a query was seeded. */
+    private static String toQueryKey(final Collection<TagMatcher> tagMatchers) {
+        return tagMatchers.stream()
+                .map(matcher -> matcher.getType() + "\u0001" + matcher.getKey() + "\u0001" + matcher.getValue())
+                .sorted()
+                .collect(Collectors.joining("\u0002"));
+    }
+
+    private static int hash(final Metric metric) {
+        return 31 * (31 * metric.getIntrinsicTags().hashCode() + metric.getMetaTags().hashCode()) + metric.getExternalTags().hashCode();
+    }
+
+    private int addSeries(final String tenant, final String key, final int hash, final long writtenMs, final int position) {
+        final int id = nextId++;
+        if (id == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        positions[id] = position;
+        final Series previous = seriesByKey.put(toSeriesKey(tenant, key), new Series(id, hash, writtenMs));
+        if (previous != null) {
+            removed.set(previous.id);
+        }
+        return id;
+    }
+
+    /** Updates when the series was last written, in the file only once a day. */
+    private void touch(final Series series, final long writtenMs) {
+        if (writtenMs - series.writtenMs >= TOUCH_INTERVAL_MS) {
+            buffer.putLong(positions[series.id] + WRITTEN_OFFSET, writtenMs);
+            series.writtenMs = writtenMs;
+        }
+    }
+
+    private void removeSeries(final String tenant, final String key) {
+        final Series series = seriesByKey.remove(toSeriesKey(tenant, key));
+        if (series != null) {
+            removed.set(series.id);
+        }
+    }
+
+    private void addPosting(final String tenant, final String key, final String value, final int id) {
+        postings.computeIfAbsent(toPostingKey(tenant, key, value), k -> new Postings()).add(id);
+    }
+
+    private Metric readMetric(final int id) {
+        final ByteBuffer record = buffer.duplicate();
+        record.position(positions[id] + 1 + 4 + 8);
+        getString(record); // tenant
+        getString(record); // key
+        record.getInt(); // hash
+        final ImmutableMetric.MetricBuilder metric = ImmutableMetric.builder();
+        readTags(record, metric::intrinsicTag);
+        readTags(record, metric::metaTag);
+        readTags(record, metric::externalTag);
+        return metric.build();
+    }
+
+    @FunctionalInterface
+    private interface TagConsumer {
+        void accept(String key, String value);
+    }
+
+    private static void readTags(final ByteBuffer record, final TagConsumer consumer) {
+        final int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+            consumer.accept(getString(record), getString(record));
+        }
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(final ByteBuffer buffer, final byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    /** Returns a buffer for a record of the given length at the end of the records, grows the file if needed. */
+    private ByteBuffer allocate(final int length) throws IOException {
+        final long needed = (long) end + length;
+        if (needed > Integer.MAX_VALUE) {
+            throw new IOException("The series index is full");
+        }
+        if (needed > buffer.capacity()) {
+            map(Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * buffer.capacity())));
+        }
+        final ByteBuffer record = buffer.duplicate();
+        record.position(end).limit(end + length);
+        return record.slice();
+    }
+
+    private void map(final long size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /** Records are only visible once the end in the header includes them, a partially written record is ignored then. */
+    private void setEnd(final int end) {
+        this.end = end;
+        buffer.putLong(END_POSITION, end);
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local file for the write requests that could not be sent before shutting down, see {@link CortexTSS#destroy()}.
+ * The entries are appended as they are (Snappy compressed remote write requests). On the next start they are moved to
+ * the replay file, which holds the entries not sent yet while they are replayed, see {@link CortexTSS}.
+ * Every entry starts with a magic number (which also tells the remote write version of the request), a truncated entry
+ * at the end of the file is skipped on reading.
+ */
+final class SpillFile {
+    private static final Logger LOG = LoggerFactory.getLogger(SpillFile.class);
+
+    static final String FILE_NAME = "cortex-tss-spill.bin";
+    static final String REPLAY_FILE_NAME = "cortex-tss-spill-replay.bin";
+    private static final int MAGIC = 0x43545331; // "CTS1"
+    private static final int MAGIC_V2 = 0x43545332; // "CTS2", same layout with a remote write 2.0 request
+
+    /** A write request to an url, for a tenant (may be null). */
+    static final class Entry {
+        private final String url;
+        private final String clientID;
+        private final int numberOfSamples;
+        private final byte[] writeRequestCompressed;
+        private final CortexTSSConfig.RemoteWriteVersion remoteWriteVersion;
+        private volatile boolean spilled = false;
+
+        Entry(final String url, final String clientID, final int numberOfSamples, final byte[] writeRequestCompressed) {
+            this(url, clientID, numberOfSamples, writeRequestCompressed, CortexTSSConfig.RemoteWriteVersion.V1);
+        }
+
+        Entry(final String url, final String clientID, final int numberOfSamples, final byte[] writeRequestCompressed,
+              final CortexTSSConfig.RemoteWriteVersion remoteWriteVersion) {
+            this.url = url;
+            this.clientID = clientID;
+            this.numberOfSamples = numberOfSamples;
+            this.writeRequestCompressed = writeRequestCompressed;
+            this.remoteWriteVersion = remoteWriteVersion;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        String getClientID() {
+            return clientID;
+        }
+
+        int getNumberOfSamples() {
+            return numberOfSamples;
+        }
+
+        byte[] getWriteRequestCompressed() {
+            return writeRequestCompressed;
+        }
+
+        CortexTSSConfig.RemoteWriteVersion getRemoteWriteVersion() {
+            return remoteWriteVersion;
+        }
+
+        /** Set once the entry was written to the spill file, the outcome of the original call doesn't matter then. */
+        boolean isSpilled() {
+            return spilled;
+        }
+
+        void markSpilled() {
+            spilled = true;
+        }
+    }
+
+    private SpillFile() {
+    }
+
+    static void append(final Path file, final Collection<Entry> entries) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE)))) {
+            for (Entry entry : entries) {
+                out.writeInt(entry.getRemoteWriteVersion() == CortexTSSConfig.RemoteWriteVersion.V2 ? MAGIC_V2 : MAGIC);
+                out.writeUTF(entry.getUrl());
+                out.writeBoolean(entry.getClientID() != null);
+                if (entry.getClientID() != null) {
+                    out.writeUTF(entry.getClientID());
+                }
+                out.writeInt(entry.getNumberOfSamples());
+                out.writeInt(entry.getWriteRequestCompressed().length);
+                out.write(entry.getWriteRequestCompressed());
+            }
+        }
+    }
+
+    /**
+     * Appends the entries of the spill file to the replay file and deletes the spill file. Returns true if there are
+     * entries to replay.
+     */
+    static boolean moveToReplayFile(final Path file, final Path replayFile) throws IOException {
+        if (Files.exists(file)) {
+            append(replayFile, read(file));
+            Files.delete(file);
+        }
+        return Files.exists(replayFile);
+    }
+
+    /** Replaces the content of the file with the given entries, the file is deleted if there are none. */
+    static void rewrite(final Path file, final Collection<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmpFile);
+        append(tmpFile, entries);
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Reads all entries. Returns an empty list if there is no file. */
+    static List<Entry> read(final Path file) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                final int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (magic != MAGIC && magic != MAGIC_V2) {
+                    LOG.warn("Unexpected content in spill file {} after {} entries, skipping the rest.", file, entries.size());
+                    break;
+                }
+                final String url = in.readUTF();
+                final String clientID = in.readBoolean() ? in.readUTF() : null;
+                final int numberOfSamples = in.readInt();
+                final byte[] writeRequestCompressed = new byte[in.readInt()];
+                in.readFully(writeRequestCompressed);
+                entries.add(new Entry(url, clientID, numberOfSamples, writeRequestCompressed,
+                        magic == MAGIC_V2 ? CortexTSSConfig.RemoteWriteVersion.V2 : CortexTSSConfig.RemoteWriteVersion.V1));
+            }
+        } catch (EOFException e) {
+            LOG.warn("Spill file {} is truncated after {} entries, skipping the rest.", file, entries.size());
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.opennms.integration.api.v1.timeseries.StorageException;
+import org.opennms.timeseries.cortex.shaded.resilience4j.bulkhead.Bulkhead;
+import org.opennms.timeseries.cortex.shaded.resilience4j.bulkhead.BulkheadConfig;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * The write path of a single tenant (organization id): its own share of concurrent calls, a bounded number of pending
+ * calls, an optional sample rate limit and metrics registered as "tenants.&lt;tenant&gt;.*".
+ * Keeps a noisy tenant from starving the others. Created on first use and dropped by {@link CortexTSS} when idle.
+ */
+final class TenantPipeline {
+
+    static final String METRIC_PREFIX = "tenants";
+
+    private final String tenant;
+    private final MetricRegistry metrics;
+    private final Bulkhead bulkhead;
+    private final int maxPendingCalls;
+    private final RateLimiter rateLimiter;
+    private final AtomicInteger pendingCalls = new AtomicInteger();
+
+    final Meter samplesWritten;
+    final Meter samplesLost;
+    final Meter samplesRateLimited;
+    final Meter callsRejected;
+
+    TenantPipeline(final String tenant, final CortexTSSConfig config, final MetricRegistry metrics) {
+        this.tenant = tenant;
+        this.metrics = metrics;
+        if (config.getTenantMaxConcurrentCalls() > 0) {
+            this.bulkhead = Bulkhead.of("tenant-" + tenant, BulkheadConfig.custom()
+                    .maxConcurrentCalls(config.getTenantMaxConcurrentCalls())
+                    .maxWaitDuration(Duration.ofMillis(config.getBulkheadMaxWaitDurationInMs()))
+                    .fairCallHandlingStrategyEnabled(true)
+                    .build());
+        } else {
+            this.bulkhead = null;
+        }
+        this.maxPendingCalls = config.getTenantMaxQueuedCalls() > 0
+                ? config.getTenantMaxConcurrentCalls() + config.getTenantMaxQueuedCalls()
+                : Integer.MAX_VALUE;
+        this.rateLimiter = config.getTenantMaxSamplesPerSecond() > 0
+                ? RateLimiter.create(config.getTenantMaxSamplesPerSecond())
+                : null;
+
+        this.samplesWritten = metrics.meter(name("samplesWritten"));
+        this.samplesLost = metrics.meter(name("samplesLost"));
+        this.samplesRateLimited = metrics.meter(name("samplesRateLimited"));
+        this.callsRejected = metrics.meter(name("callsRejected"));
+        // replaces the gauge of a previous pipeline of the same tenant that might not have been cleaned up yet
+        metrics.remove(name("pendingCalls"));
+        metrics.register(name("pendingCalls"), (Gauge<Integer>) pendingCalls::get);
+        metrics.remove(name("availableConcurrentCalls"));
+        metrics.remove(name("maxAllowedConcurrentCalls"));
+        if (bulkhead != null) {
+            metrics.register(name("availableConcurrentCalls"), (Gauge<Integer>) () -> bulkhead.getMetrics().getAvailableConcurrentCalls());
+            metrics.register(name("maxAllowedConcurrentCalls"), (Gauge<Integer>) () -> bulkhead.getMetrics().getMaxAllowedConcurrentCalls());
+        }
+    }
+
+    String getTenant() {
+        return tenant;
+    }
+
+    private String name(final String metric) {
+        return MetricRegistry.name(METRIC_PREFIX, tenant, metric);
+    }
+
+    /** Returns false if the samples exceed the tenant's sample rate, they are accounted as rate limited then. */
+    boolean tryAcquireSamples(final int numberOfSamples) {
+        if (rateLimiter == null || numberOfSamples == 0 || rateLimiter.tryAcquire(numberOfSamples)) {
+            return true;
+        }
+        samplesRateLimited.mark(numberOfSamples);
+        return false;
+    }
+
+    /**
+     * Executes the call within the tenant's share of concurrent calls. Blocks while the share is used up, like the
+     * global bulkhead. Fails right away if the tenant has too many pending calls already.
+     */
+    CompletionStage<Void> execute(final Supplier<CompletionStage<Void>> call) {
+        if (pendingCalls.incrementAndGet() > maxPendingCalls) {
+            pendingCalls.decrementAndGet();
+            callsRejected.mark();
+            final CompletableFuture<Void> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new StorageException(String.format("Too many pending calls for tenant %s.", tenant)));
+            return rejected;
+        }
+        final CompletionStage<Void> stage;
+        try {
+            stage = bulkhead == null ? call.get() : bulkhead.executeCompletionStage(call);
+        } catch (RuntimeException e) {
+            pendingCalls.decrementAndGet();
+            throw e;
+        }
+        return stage.whenComplete((r, ex) -> pendingCalls.decrementAndGet());
+    }
+
+    /** Removes the tenant's metrics, including the latency timers broken down by tenant, e.g. "write.latency.&lt;tenant&gt;.2xx". */
+    void removeMetrics() {
+        final String prefix = MetricRegistry.name(METRIC_PREFIX, tenant) + ".";
+        final String latencyInfix = ".latency." + tenant + ".";
+        metrics.removeMatching((name, metric) -> {
+            if (name.startsWith(prefix)) {
+                // not the metrics of a tenant with a name starting with "<tenant>."
+                return name.indexOf('.', prefix.length()) < 0;
+            }
+            final int idx = name.indexOf(latencyInfix);
+            return idx >= 0 && name.indexOf('.', idx + latencyInfix.length()) < 0;
+        });
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+/**
+ * Decodes Prometheus XOR (Gorilla) chunks as sent in STREAMED_XOR_CHUNKS remote-read responses.
+ * The layout follows https://github.com/prometheus/prometheus/blob/main/tsdb/chunkenc/xor.go:
+ * a 2 byte sample count, the first timestamp as varint and value as raw 64 bits, the second timestamp as uvarint delta
+ * and from then on delta-of-delta encoded timestamps and XOR encoded values.
+ */
+final class XorChunkDecoder {
+
+    interface SampleConsumer {
+        void accept(long timestampInMs, double value);
+    }
+
+    private final byte[] data;
+    private int bitPosition;
+
+    private XorChunkDecoder(final byte[] data) {
+        this.data = data;
+    }
+
+    static void decode(final byte[] data, final SampleConsumer consumer) {
+        if (data.length < 2) {
+            return;
+        }
+        final int numSamples = ((data[0] & 0xff) << 8) | (data[1] & 0xff);
+        final XorChunkDecoder decoder = new XorChunkDecoder(data);
+        decoder.bitPosition = 16;
+        decoder.decode(numSamples, consumer);
+    }
+
+    private void decode(final int numSamples, final SampleConsumer consumer) {
+        if (numSamples == 0) {
+            return;
+        }
+        long t = readVarint();
+        long valueBits = readBits(64);
+        consumer.accept(t, Double.longBitsToDouble(valueBits));
+        if (numSamples == 1) {
+            return;
+        }
+
+        long tDelta = readUvarint();
+        t += tDelta;
+        // leading and trailing zeros of the last value XOR
+        final int[] leadingTrailing = new int[2];
+        valueBits = readValue(valueBits, leadingTrailing);
+        consumer.accept(t, Double.longBitsToDouble(valueBits));
+
+        for (int i = 2; i < numSamples; i++) {
+            int d = 0;
+            for (int j = 0; j < 4; j++) {
+                d <<= 1;
+                if (readBit() == 0) {
+                    break;
+                }
+                d |= 1;
+            }
+            int size = 0;
+            long dod = 0;
+            switch (d) {
+                case 0b0:
+                    break;
+                case 0b10:
+                    size = 14;
+                    break;
+                case 0b110:
+                    size = 17;
+                    break;
+                case 0b1110:
+                    size = 20;
+                    break;
+                default:
+                    dod = readBits(64);
+            }
+            if (size != 0) {
+                long bits = readBits(size);
+                // negative numbers come back as high unsigned numbers
+                if (bits > (1L << (size - 1))) {
+                    bits -= 1L << size;
+                }
+                dod = bits;
+            }
+            tDelta += dod;
+            t += tDelta;
+            valueBits = readValue(valueBits, leadingTrailing);
+            consumer.accept(t, Double.longBitsToDouble(valueBits));
+        }
+    }
+
+    private long readValue(final long previous, final int[] leadingTrailing) {
+        if (readBit() == 0) {
+            return previous;
+        }
+        final int leading;
+        final int significantBits;
+        if (readBit() == 0) {
+            // reuse the leading and trailing zeros of the previous value
+            leading = leadingTrailing[0];
+            significantBits = 64 - leadingTrailing[0] - leadingTrailing[1];
+        } else {
+            leading = (int) readBits(5);
+            int bits = (int) readBits(6);
+            // 0 significant bits means we overflowed and actually need 64
+            significantBits = bits == 0 ? 64 : bits;
+            leadingTrailing[0] = leading;
+            leadingTrailing[1] = 64 - leading - significantBits;
+        }
+        final long bits = readBits(significantBits);
+        return previous ^ (bits << (64 - leading - significantBits));
+    }
+
+    private int readBit() {
+        if (bitPosition >= data.length * 8) {
+            throw new IllegalArgumentException("Unexpected end of chunk");
+        }
+        final int bit = (data[bitPosition >>> 3] >>> (7 - (bitPosition & 7))) & 1;
+        bitPosition++;
+        return bit;
+    }
+
+    private long readBits(int n) {
+        if (bitPosition + n > data.length * 8) {
+            throw new IllegalArgumentException("Unexpected end of chunk");
+        }
+        long value = 0;
+        while (n > 0) {
+            final int current = data[bitPosition >>> 3] & 0xff;
+            final int available = 8 - (bitPosition & 7);
+            final int take = Math.min(available, n);
+            final int bits = (current >>> (available - take)) & ((1 << take) - 1);
+            value = (value << take) | bits;
+            bitPosition += take;
+            n -= take;
+        }
+        return value;
+    }
+
+    private long readUvarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final long b = readBits(8);
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint overflow");
+    }
+
+    private long readVarint() {
+        final long zigzag = readUvarint();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex.shell;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.MetaTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+import org.opennms.timeseries.cortex.CortexTSS;
+import org.opennms.timeseries.cortex.SelfMonitoringReporter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Pushes synthetic samples through {@link CortexTSS#store(List)}, i.e. the whole write path incl. all limits, and
+ * reports how fast store() accepted them and how fast they were written. The samples are real writes to Cortex, of the
+ * series {@value #METRIC_NAME} with resourceId {@value #RESOURCE_ID_PREFIX}&lt;n&gt;.
+ */
+@Command(scope = "opennms-cortex", name = "bench-write", description = "Write synthetic samples and report the achieved throughput.")
+@Service
+public class BenchWrite implements Action {
+
+    static final String METRIC_NAME = SelfMonitoringReporter.METRIC_NAME_PREFIX + "bench";
+    static final String RESOURCE_ID_PREFIX = "cortex-tss-bench:";
+
+    @Reference
+    private CortexTSS tss;
+
+    @Option(name = "-s", aliases = "--samples", description = "Number of samples to write.")
+    private int numberOfSamples = 100_000;
+
+    @Option(name = "-r", aliases = "--series", description = "Number of series the samples are spread over.")
+    private int numberOfSeries = 1_000;
+
+    @Option(name = "-b", aliases = "--batch-size", description = "Number of samples per store() call.")
+    private int batchSize = 500;
+
+    @Option(name = "-t", aliases = "--tenant", description = "Organization id to write as, the configured one by default.")
+    private String tenant;
+
+    @Option(name = "-w", aliases = "--timeout", description = "How long to wait for the writes to complete, in seconds.")
+    private int timeoutInSeconds = 60;
+
+    @Override
+    public Object execute() throws Exception {
+        final List<Metric> series = new ArrayList<>(numberOfSeries);
+        for (int i = 0; i < numberOfSeries; i++) {
+            series.add(ImmutableMetric.builder()
+                    .intrinsicTag(IntrinsicTagNames.name, METRIC_NAME)
+                    .intrinsicTag(IntrinsicTagNames.resourceId, RESOURCE_ID_PREFIX + i)
+                    .metaTag(MetaTagNames.mtype, Metric.Mtype.gauge.name())
+                    .build());
+        }
+        // the writes of other collectors are accounted to the same tenant, they are included in the numbers
+        final String tenantName = tss.getTenantName(tenant);
+        final Meter samplesWritten = tss.getMetrics().meter(MetricRegistry.name("tenants", tenantName, "samplesWritten"));
+        final Meter samplesLost = tss.getMetrics().meter(MetricRegistry.name("tenants", tenantName, "samplesLost"));
+        final long writtenBefore = samplesWritten.getCount();
+        final long lostBefore = samplesLost.getCount();
+
+        System.out.printf("Writing %d samples of %d series in batches of %d as tenant %s...%n", numberOfSamples, numberOfSeries, batchSize, tenantName);
+        // the samples of a series are 1 ms apart and end now, Cortex rejects samples out of order
+        final long samplesPerSeries = (numberOfSamples + numberOfSeries - 1) / numberOfSeries;
+        final long startTimeInMs = System.currentTimeMillis() - samplesPerSeries;
+        final long startNanos = System.nanoTime();
+        final List<Sample> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < numberOfSamples; i++) {
+            batch.add(ImmutableSample.builder()
+                    .metric(series.get(i % numberOfSeries))
+                    .time(Instant.ofEpochMilli(startTimeInMs + i / numberOfSeries))
+                    .value((double) i)
+                    .build());
+            if (batch.size() == batchSize || i == numberOfSamples - 1) {
+                if (tenant == null) {
+                    tss.store(batch);
+                } else {
+                    tss.store(batch, tenant);
+                }
+                batch.clear();
+            }
+        }
+        final long storedNanos = System.nanoTime();
+        System.out.printf("store() accepted them in %d ms: %.0f samples/s%n",
+                TimeUnit.NANOSECONDS.toMillis(storedNanos - startNanos), rate(numberOfSamples, storedNanos - startNanos));
+
+        final long deadlineNanos = storedNanos + TimeUnit.SECONDS.toNanos(timeoutInSeconds);
+        while (samplesWritten.getCount() - writtenBefore + samplesLost.getCount() - lostBefore < numberOfSamples
+                && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(10);
+        }
+        final long completedNanos = System.nanoTime();
+        final long written = samplesWritten.getCount() - writtenBefore;
+        final long lost = samplesLost.getCount() - lostBefore;
+        System.out.printf("Written in %d ms: %.0f samples/s, %d written, %d lost, %d dropped or still pending%n",
+                TimeUnit.NANOSECONDS.toMillis(completedNanos - startNanos), rate(written, completedNanos - startNanos),
+                written, lost, Math.max(0, numberOfSamples - written - lost));
+        return null;
+    }
+
+    private static double rate(final long samples, final long nanos) {
+        return nanos <= 0 ? 0 : samples * 1e9d / nanos;
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex.shell;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.timeseries.cortex.CardinalityGuard;
+import org.opennms.timeseries.cortex.CortexTSS;
+
+@Command(scope = "opennms-cortex", name = "cardinality", description = "Display the active series and the labels with the most values.")
+@Service
+public class Cardinality implements Action {
+
+    @Reference
+    private CortexTSS tss;
+
+    @Option(name = "-l", aliases = "--limit", description = "Number of labels to display.")
+    private int limit = 10;
+
+    @Override
+    public Object execute() {
+        final CardinalityGuard guard = tss.getCardinalityGuard();
+        System.out.println("Active series (estimated): " + guard.getActiveSeries());
+        System.out.println(String.format("%-40s %15s %15s", "Label", "Values", "Limited"));
+        for (CardinalityGuard.LabelCardinality label : guard.getTopLabels(limit)) {
+            System.out.println(String.format("%-40s %15d %15d", label.getLabel(), label.getValues(), label.getLimitedSamples()));
+        }
+        return null;
+    }
+}
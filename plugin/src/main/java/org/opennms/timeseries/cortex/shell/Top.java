@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex.shell;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.timeseries.cortex.CortexTSS;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+@Command(scope = "opennms-cortex", name = "top", description = "Display live write throughput, latency and saturation, in total and per tenant.")
+@Service
+public class Top implements Action {
+
+    private static final String CLEAR_SCREEN = "\033[H\033[2J";
+    private static final String TENANT_PREFIX = "tenants.";
+    private static final String TENANT_SAMPLES_WRITTEN = ".samplesWritten";
+
+    @Reference
+    private CortexTSS tss;
+
+    @Option(name = "-i", aliases = "--interval", description = "Refresh interval in seconds.")
+    private int interval = 2;
+
+    @Option(name = "-n", aliases = "--iterations", description = "Number of refreshes, 0 refreshes until interrupted with Ctrl-C.")
+    private int iterations = 0;
+
+    // counts of the last refresh, to calculate the rates of the last interval
+    private final Map<String, Long> lastCounts = new HashMap<>();
+    private long lastNanos;
+
+    @Override
+    public Object execute() {
+        for (int i = 0; iterations <= 0 || i < iterations; i++) {
+            if (i > 0) {
+                try {
+                    Thread.sleep(Math.max(1, interval) * 1000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            final String frame = render();
+            System.out.print(CLEAR_SCREEN);
+            System.out.print(frame);
+            System.out.flush();
+        }
+        return null;
+    }
+
+    private String render() {
+        final MetricRegistry metrics = tss.getMetrics();
+        final long nowNanos = System.nanoTime();
+        final double elapsedSeconds = lastCounts.isEmpty() ? 0 : (nowNanos - lastNanos) / 1e9d;
+        final Map<String, Long> counts = new HashMap<>();
+        final StringBuilder out = new StringBuilder();
+
+        out.append(String.format("Cortex TSS  %s  (every %ds, Ctrl-C to quit)%n%n", Instant.now().truncatedTo(ChronoUnit.SECONDS), interval));
+
+        final Timer writeLatency = metrics.timer(MetricRegistry.name("write", "latency"));
+        out.append(String.format("%-10s %12s %10s %12s %9s %9s%n", "WRITE", "samples/s", "lost/s", "requests/s", "p50 ms", "p99 ms"));
+        out.append(String.format("%-10s %12.1f %10.1f %12.1f %9.1f %9.1f%n%n", "",
+                rate(metrics.meter("samplesWritten"), "samplesWritten", elapsedSeconds, counts),
+                rate(metrics.meter("samplesLost"), "samplesLost", elapsedSeconds, counts),
+                rate(writeLatency, "write.latency", elapsedSeconds, counts),
+                toMillis(writeLatency.getSnapshot().getMedian()),
+                toMillis(writeLatency.getSnapshot().get99thPercentile())));
+
+        out.append(String.format("%-10s %12s %10s %12s %9s %9s%n", "HTTP", "running", "queued", "connections", "idle", "pending"));
+        out.append(String.format("%-10s %12d %10d %12d %9d %9d%n%n", "",
+                gauge(metrics, "runningCallsCount"), gauge(metrics, "queuedCallsCount"),
+                gauge(metrics, "connectionCount"), gauge(metrics, "idleConnectionCount"), gauge(metrics, "pendingWrites")));
+
+        final long maxCalls = gauge(metrics, "maxAllowedConcurrentCalls");
+        final long callsInUse = maxCalls - gauge(metrics, "availableConcurrentCalls");
+        out.append(String.format("%-10s %d of %d calls in use (%.0f%%)%n", "BULKHEAD", callsInUse, maxCalls, percent(callsInUse, maxCalls)));
+
+        final long extTagsHits = metrics.meter("extTagsCacheUsed").getCount();
+        final long extTagsMisses = metrics.meter("extTagsCacheMissed").getCount();
+        out.append(String.format("%-10s metrics %.1f%% hits (%d entries), external tags %.1f%% hits%n%n", "CACHES",
+                gaugeDouble(metrics, MetricRegistry.name("metricCache", "hitRate")) * 100, gauge(metrics, MetricRegistry.name("metricCache", "size")),
+                percent(extTagsHits, extTagsHits + extTagsMisses)));
+
+        out.append(String.format("%-20s %12s %10s %10s %10s %8s %8s %9s %9s%n", "TENANT", "samples/s", "lost/s", "limited/s",
+                "rejected/s", "pending", "in use", "p50 ms", "p99 ms"));
+        for (String tenant : getTenants(metrics)) {
+            final String prefix = TENANT_PREFIX + tenant + ".";
+            // not created if the tenant had no successful write yet
+            final Timer latency = metrics.getTimers().getOrDefault(MetricRegistry.name("write", "latency", tenant, "2xx"), new Timer());
+            final long tenantMaxCalls = gauge(metrics, prefix + "maxAllowedConcurrentCalls");
+            out.append(String.format("%-20s %12.1f %10.1f %10.1f %10.1f %8d %8s %9.1f %9.1f%n", tenant,
+                    rate(metrics.meter(prefix + "samplesWritten"), prefix + "samplesWritten", elapsedSeconds, counts),
+                    rate(metrics.meter(prefix + "samplesLost"), prefix + "samplesLost", elapsedSeconds, counts),
+                    rate(metrics.meter(prefix + "samplesRateLimited"), prefix + "samplesRateLimited", elapsedSeconds, counts),
+                    rate(metrics.meter(prefix + "callsRejected"), prefix + "callsRejected", elapsedSeconds, counts),
+                    gauge(metrics, prefix + "pendingCalls"),
+                    tenantMaxCalls == 0 ? "-" : String.format("%.0f%%", percent(tenantMaxCalls - gauge(metrics, prefix + "availableConcurrentCalls"), tenantMaxCalls)),
+                    toMillis(latency.getSnapshot().getMedian()),
+                    toMillis(latency.getSnapshot().get99thPercentile())));
+        }
+
+        lastCounts.clear();
+        lastCounts.putAll(counts);
+        lastNanos = nowNanos;
+        return out.toString();
+    }
+
+    private static SortedSet<String> getTenants(final MetricRegistry metrics) {
+        final SortedSet<String> tenants = new TreeSet<>();
+        for (String name : metrics.getMeters().keySet()) {
+            if (name.startsWith(TENANT_PREFIX) && name.endsWith(TENANT_SAMPLES_WRITTEN)) {
+                tenants.add(name.substring(TENANT_PREFIX.length(), name.length() - TENANT_SAMPLES_WRITTEN.length()));
+            }
+        }
+        return tenants;
+    }
+
+    /** Rate within the last interval, the one minute rate on the first refresh. */
+    private double rate(final Metered metered, final String name, final double elapsedSeconds, final Map<String, Long> counts) {
+        final long count = metered.getCount();
+        counts.put(name, count);
+        final Long lastCount = lastCounts.get(name);
+        if (elapsedSeconds <= 0 || lastCount == null) {
+            return metered.getOneMinuteRate();
+        }
+        return (count - lastCount) / elapsedSeconds;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static long gauge(final MetricRegistry metrics, final String name) {
+        final Gauge gauge = metrics.getGauges().get(name);
+        return gauge != null && gauge.getValue() instanceof Number ? ((Number) gauge.getValue()).longValue() : 0;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static double gaugeDouble(final MetricRegistry metrics, final String name) {
+        final Gauge gauge = metrics.getGauges().get(name);
+        return gauge != null && gauge.getValue() instanceof Number ? ((Number) gauge.getValue()).doubleValue() : 0;
+    }
+
+    private static double percent(final long part, final long total) {
+        return total <= 0 ? 0 : part * 100.0d / total;
+    }
+
+    private static double toMillis(final double nanos) {
+        return nanos / 1_000_000d;
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+public class CachesTest {
+
+    @Test
+    public void shouldEstimateBytesOfMetrics() {
+        final Metric small = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, "a")
+                .intrinsicTag(IntrinsicTagNames.resourceId, "r")
+                .build();
+        final Metric large = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, "a")
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp/1/eth0-04013f75f101/mib2-X-interfaces")
+                .metaTag("mtype", "counter")
+                .build();
+        assertTrue(Caches.estimateBytes(large) > Caches.estimateBytes(small) + 100);
+        assertEquals(Caches.estimateBytes("abc") + 3, Caches.estimateBytes("abcdef"));
+    }
+
+    @Test
+    public void shouldBoundCacheByBytes() {
+        final Cache<String, String> cache = Caches.<String>newBuilder(10_000, 1, Caches::estimateBytes)
+                .executor(Runnable::run)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        cache.cleanUp();
+        // bounded by bytes, not by the number of entries
+        assertTrue(cache.estimatedSize() > 1);
+        assertTrue(cache.estimatedSize() < 1000);
+        assertTrue(cache.policy().eviction().get().weightedSize().getAsLong() <= 10_000);
+    }
+
+    @Test
+    public void shouldBoundCacheByEntriesWithoutBytes() {
+        final Cache<String, String> cache = Caches.<String>newBuilder(0, 10, Caches::estimateBytes)
+                .executor(Runnable::run)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        cache.cleanUp();
+        assertEquals(10, cache.estimatedSize());
+    }
+
+    @Test
+    public void shouldRefreshAndRemoveEntries() {
+        final AtomicLong nanos = new AtomicLong();
+        final LoadingCache<String, String> cache = Caches.<String>newBuilder(0, 10, Caches::estimateBytes)
+                .executor(Runnable::run)
+                .ticker(nanos::get)
+                .refreshAfterWrite(1, TimeUnit.MINUTES)
+                .build(Caches.reloadingWith(old -> old.equals("gone") ? null : old + "!"));
+        cache.put("a", "x");
+        cache.put("b", "gone");
+        // nothing is loaded for missing entries
+        assertNull(cache.get("c"));
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        cache.getIfPresent("a");
+        cache.getIfPresent("b");
+        assertEquals("x!", cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+    }
+
+    @Test
+    public void shouldKeepEntriesWhenRefreshIsRejected() {
+        final AtomicLong nanos = new AtomicLong();
+        final LoadingCache<String, String> cache = Caches.<String>newBuilder(0, 10, Caches::estimateBytes)
+                .executor(runnable -> {
+                    throw new RejectedExecutionException();
+                })
+                .ticker(nanos::get)
+                .refreshAfterWrite(1, TimeUnit.MINUTES)
+                .build(Caches.reloadingWith(old -> old + "!"));
+        cache.put("a", "x");
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertEquals("x", cache.getIfPresent("a"));
+        assertEquals("x", cache.getIfPresent("a"));
+    }
+
+    @Test
+    public void shouldRegisterMetrics() {
+        final MetricRegistry metrics = new MetricRegistry();
+        final Cache<String, String> cache = Caches.<String>newBuilder(10_000, 0, Caches::estimateBytes)
+                .executor(Runnable::run)
+                .build();
+        Caches.registerMetrics(metrics, "testCache", () -> cache);
+        cache.put("a", "b");
+        cache.getIfPresent("a");
+        cache.getIfPresent("c");
+        cache.cleanUp();
+        assertEquals(1L, metrics.getGauges().get("testCache.hits").getValue());
+        assertEquals(1L, metrics.getGauges().get("testCache.misses").getValue());
+        assertEquals(0.5d, metrics.getGauges().get("testCache.hitRate").getValue());
+        assertEquals(1L, metrics.getGauges().get("testCache.size").getValue());
+        assertTrue((Long) metrics.getGauges().get("testCache.estimatedBytes").getValue() > 0);
+    }
+}
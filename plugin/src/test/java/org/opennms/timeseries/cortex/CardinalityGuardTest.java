@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.hash.Hashing;
+
+public class CardinalityGuardTest {
+
+    private static final String TENANT = CortexTSS.DEFAULT_TENANT;
+    private static final long WINDOW = 60_000;
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void shouldEstimateDistinctElements() {
+        HyperLogLog hll = new HyperLogLog(CardinalityGuard.SERIES_PRECISION);
+        HyperLogLog other = new HyperLogLog(CardinalityGuard.SERIES_PRECISION);
+        assertEquals(0, hll.estimate());
+        for (int i = 0; i < 100_000; i++) {
+            hll.add(Hashing.murmur3_128().hashInt(i).asLong());
+            // duplicates don't count
+            hll.add(Hashing.murmur3_128().hashInt(i).asLong());
+            other.add(Hashing.murmur3_128().hashInt(i + 50_000).asLong());
+        }
+        assertEquals(100_000, hll.estimate(), 3_000);
+        assertEquals(150_000, HyperLogLog.estimateUnion(hll, other), 4_500);
+    }
+
+    @Test
+    public void shouldDropNewSeriesAboveMaxActiveSeries() {
+        CardinalityGuard guard = guard(CortexTSSConfig.builder().maxActiveSeries(10));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(guard.check(sample("ifHCInOctets", "node[" + i + "]"), TENANT));
+        }
+        assertNull(guard.check(sample("ifHCInOctets", "node[1000]"), TENANT));
+        // known series are still accepted
+        assertNotNull(guard.check(sample("ifHCInOctets", "node[1]"), TENANT));
+        assertEquals(1, metrics.meter("cardinality.samplesDropped").getCount());
+        assertEquals(10L, metrics.getGauges().get("cardinality.activeSeries").getValue());
+    }
+
+    @Test
+    public void shouldDropSeriesWithLabelAboveMaxLabelValues() {
+        CardinalityGuard guard = guard(CortexTSSConfig.builder().maxLabelValues(10));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(guard.check(sample("ifHCInOctets", "node[" + i + "]"), TENANT));
+        }
+        assertNull(guard.check(sample("ifHCInOctets", "node[10]"), TENANT));
+        assertEquals(1, metrics.meter("cardinality.samplesDropped").getCount());
+
+        List<CardinalityGuard.LabelCardinality> top = guard.getTopLabels(10);
+        assertEquals(IntrinsicTagNames.resourceId, top.get(0).getLabel());
+        assertEquals(11, top.get(0).getValues());
+        assertEquals(1, top.get(0).getLimitedSamples());
+        assertEquals(IntrinsicTagNames.name, top.get(1).getLabel());
+        assertEquals(1, top.get(1).getValues());
+    }
+
+    @Test
+    public void shouldRelabelSeriesWithLabelAboveMaxLabelValues() {
+        CardinalityGuard guard = guard(CortexTSSConfig.builder()
+                .maxLabelValues(10)
+                .cardinalityLimitAction(CortexTSSConfig.CardinalityLimitAction.RELABEL));
+        for (int i = 0; i < 10; i++) {
+            guard.check(sample("ifHCInOctets", "node[" + i + "]"), TENANT);
+        }
+        final Sample relabeled = guard.check(sample("ifHCInOctets", "node[10]"), TENANT);
+        assertEquals(CardinalityGuard.OVERFLOW_VALUE, relabeled.getMetric().getFirstTagByKey(IntrinsicTagNames.resourceId).getValue());
+        assertEquals("ifHCInOctets", relabeled.getMetric().getFirstTagByKey(IntrinsicTagNames.name).getValue());
+        assertEquals(1, metrics.meter("cardinality.samplesRelabeled").getCount());
+    }
+
+    @Test
+    public void shouldNeverRelabelMetricName() {
+        CardinalityGuard guard = guard(CortexTSSConfig.builder()
+                .maxLabelValues(10)
+                .cardinalityLimitAction(CortexTSSConfig.CardinalityLimitAction.RELABEL));
+        for (int i = 0; i < 10; i++) {
+            guard.check(sample("metric" + i, "node[1]"), TENANT);
+        }
+        assertNull(guard.check(sample("metric10", "node[1]"), TENANT));
+    }
+
+    @Test
+    public void shouldForgetSeriesAfterTwoWindows() {
+        CardinalityGuard guard = guard(CortexTSSConfig.builder().maxActiveSeries(1));
+        Sample first = sample("ifHCInOctets", "node[1]");
+        assertSame(first, guard.check(first, TENANT));
+
+        now.addAndGet(WINDOW);
+        // still active from the last window
+        assertSame(first, guard.check(first, TENANT));
+        assertNull(guard.check(sample("ifHCInOctets", "node[2]"), TENANT));
+        assertEquals(1, guard.getActiveSeries());
+
+        now.addAndGet(3 * WINDOW);
+        assertEquals(0, guard.getActiveSeries());
+        assertNotNull(guard.check(sample("ifHCInOctets", "node[2]"), TENANT));
+    }
+
+    @Test
+    public void shouldCountTheSeriesOfTheLastWindowAfterRollingOver() {
+        CardinalityGuard guard = guard(CortexTSSConfig.builder().maxActiveSeries(10));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(guard.check(sample("ifHCInOctets", "node[" + i + "]"), TENANT));
+        }
+
+        now.addAndGet(WINDOW);
+        // the series of the last window are still active, even before they got a sample in this one
+        assertNull(guard.check(sample("ifHCInOctets", "node[10]"), TENANT));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(guard.check(sample("ifHCInOctets", "node[" + i + "]"), TENANT));
+        }
+        assertNull(guard.check(sample("ifHCInOctets", "node[11]"), TENANT));
+        assertEquals(2, metrics.meter("cardinality.samplesDropped").getCount());
+        assertEquals(10L, guard.getActiveSeries());
+    }
+
+    @Test
+    public void shouldTrackSeriesPerTenant() {
+        CardinalityGuard guard = guard(CortexTSSConfig.builder());
+        guard.check(sample("ifHCInOctets", "node[1]"), "customer1");
+        guard.check(sample("ifHCInOctets", "node[1]"), "customer2");
+        assertEquals(2, guard.getActiveSeries());
+        assertEquals(1, guard.getTopLabels(1).size());
+    }
+
+    private CardinalityGuard guard(final CortexTSSConfig.Builder config) {
+        return new CardinalityGuard(config.cardinalityWindowInMs(WINDOW).build(), metrics, now::get);
+    }
+
+    private static Sample sample(final String name, final String resourceId) {
+        return ImmutableSample.builder()
+                .metric(ImmutableMetric.builder()
+                        .intrinsicTag(IntrinsicTagNames.name, name)
+                        .intrinsicTag(IntrinsicTagNames.resourceId, resourceId)
+                        .build())
+                .time(Instant.now())
+                .value(42.0d)
+                .build();
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 30_000;
+
+    @Test
+    public void shouldDistributeKeysEvenly() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(List.of("a", "b", "c"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.get("series" + i), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> {
+            assertThat(count, greaterThan(KEYS / 3 * 8 / 10));
+            assertThat(count, lessThan(KEYS / 3 * 12 / 10));
+        });
+    }
+
+    @Test
+    public void shouldOnlyMoveKeysOfAddedNode() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(List.of("a", "b", "c"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        ConsistentHashRing<String> grownRing = new ConsistentHashRing<>(List.of("a", "b", "c", "d"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String before = ring.get("series" + i);
+            String after = grownRing.get("series" + i);
+            if (!before.equals(after)) {
+                assertEquals("d", after);
+                moved++;
+            }
+        }
+        // about a quarter of the keys go to the new node
+        assertThat(moved, greaterThan(KEYS / 4 * 7 / 10));
+        assertThat(moved, lessThan(KEYS / 4 * 13 / 10));
+    }
+}
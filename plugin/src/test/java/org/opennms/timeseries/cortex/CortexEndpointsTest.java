@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import okhttp3.HttpUrl;
+
+public class CortexEndpointsTest {
+
+    @Test
+    public void shouldNameEndpointsByHostPortAndPath() {
+        assertEquals("cortex1_9009_api_prom_push", CortexEndpoint.toName(HttpUrl.get("http://cortex1:9009/api/prom/push")));
+        assertEquals("cortex_eu_example_com_443", CortexEndpoint.toName(HttpUrl.get("https://cortex.eu.example.com/")));
+        assertEquals("gw_8080_tenant-a_prometheus_api_v1", CortexEndpoint.toName(HttpUrl.get("http://gw:8080/tenant-a/prometheus/api/v1")));
+    }
+
+    @Test
+    public void shouldKeepTheMetricsOfEndpointsBehindTheSameGateway() {
+        final MetricRegistry metrics = new MetricRegistry();
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .writeUrl("http://gw:8080/a/api/prom/push,http://gw:8080/b/api/prom/push")
+                .readUrl("http://gw:8080/a/prometheus/api/v1")
+                .build();
+        final CortexEndpoints endpoints = CortexEndpoints.create(config, metrics);
+        try {
+            final List<CortexEndpoint> write = endpoints.getWrite();
+            assertEquals("endpoints.write.gw_8080_a_api_prom_push", write.get(0).getName());
+            assertEquals("endpoints.write.gw_8080_b_api_prom_push", write.get(1).getName());
+
+            write.get(0).removeMetrics();
+            assertTrue(metrics.getNames().stream().noneMatch(name -> name.startsWith(write.get(0).getName() + ".")));
+            assertTrue(metrics.getNames().contains(write.get(1).getName() + ".connectionCount"));
+        } finally {
+            endpoints.getAll().forEach(CortexEndpoint::destroy);
+        }
+    }
+}
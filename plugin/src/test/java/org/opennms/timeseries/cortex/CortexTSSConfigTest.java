@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CortexTSSConfigTest {
+
+    @Test
+    public void canCreateFromProperties() {
+        CortexTSSConfig config = CortexTSSConfig.fromProperties(Map.of(
+                "writeUrl", "http://cortex1:9009/api/prom/push, http://cortex2:9009/api/prom/push",
+                "maxConcurrentHttpConnections", "10",
+                "bulkheadMaxWaitDuration", 1000L,
+                "writeMode", "replicate",
+                "remoteReadEnabled", "true"));
+        assertEquals(List.of("http://cortex1:9009/api/prom/push", "http://cortex2:9009/api/prom/push"), config.getWriteUrls());
+        assertEquals(10, config.getMaxConcurrentHttpConnections());
+        assertEquals(1000L, config.getBulkheadMaxWaitDurationInMs());
+        assertEquals(CortexTSSConfig.WriteMode.REPLICATE, config.getWriteMode());
+        assertEquals(true, config.isRemoteReadEnabled());
+        // the others keep their defaults
+        assertEquals(CortexTSSConfig.builder().build().getReadUrls(), config.getReadUrls());
+        assertEquals(CortexTSSConfig.builder().build().getMetricCacheSize(), config.getMetricCacheSize());
+    }
+
+    @Test
+    public void shouldBeEqualForSameValues() {
+        assertEquals(CortexTSSConfig.builder().build(), CortexTSSConfig.fromProperties(Map.of()));
+        assertEquals(CortexTSSConfig.builder().build().hashCode(), CortexTSSConfig.fromProperties(Map.of()).hashCode());
+        assertNotEquals(CortexTSSConfig.builder().build(), CortexTSSConfig.builder().metricCacheSize(1).build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRequireUrl() {
+        CortexTSSConfig.builder().writeUrl(" , ").build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRequireAReadUrlPerShard() {
+        CortexTSSConfig.builder()
+                .writeUrl("http://cortex1:9009/api/prom/push,http://cortex2:9009/api/prom/push,http://cortex3:9009/api/prom/push")
+                .readUrl("http://cortex1:9009/prometheus/api/v1,http://cortex2:9009/prometheus/api/v1")
+                .build();
+    }
+}
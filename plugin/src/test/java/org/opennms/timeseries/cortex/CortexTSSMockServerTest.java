@@ -0,0 +1,985 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.integration.api.v1.timeseries.Aggregation;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.StorageException;
+import org.opennms.integration.api.v1.timeseries.TagMatcher;
+import org.opennms.integration.api.v1.timeseries.TimeSeriesFetchRequest;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTagMatcher;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTimeSeriesFetchRequest;
+
+import io.prometheus.write.v2.PrometheusWriteV2;
+
+/**
+ * Round trips through {@link CortexTSS} against the in-process {@link MockCortexServer}.
+ */
+public class CortexTSSMockServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockCortexServer server;
+    private CortexTSS tss;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockCortexServer();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .jmxReporterEnabled(false)
+                .build(), new KVStoreMock());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tss.destroy();
+        server.close();
+    }
+
+    @Test
+    public void canWriteAndReadSamples() throws Exception {
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heapUsed")
+                .metaTag("mtype", Metric.Mtype.gauge.name())
+                .build();
+        final Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(60);
+        final List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            samples.add(ImmutableSample.builder().metric(metric).time(start.plusSeconds(i)).value(42.3).build());
+        }
+        tss.store(samples);
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 60);
+
+        final List<Metric> metrics = tss.findMetrics(List.of(ImmutableTagMatcher.builder()
+                .key(IntrinsicTagNames.resourceId)
+                .value("snmp:1:opennms-jvm")
+                .build()));
+        assertEquals(1, metrics.size());
+        assertEquals(metric, metrics.get(0));
+
+        final TimeSeriesFetchRequest request = ImmutableTimeSeriesFetchRequest.builder()
+                .start(start)
+                .end(start.plusSeconds(59))
+                .step(Duration.ofSeconds(1))
+                .aggregation(Aggregation.AVERAGE)
+                .metric(metric)
+                .build();
+        final List<Sample> samplesRead = tss.getTimeseries(request);
+        assertEquals(60, samplesRead.size());
+        assertThat(samplesRead.get(0).getValue(), equalTo(42.3));
+    }
+
+    @Test
+    public void shouldAlignRangeQueriesToTheStep() throws Exception {
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .jmxReporterEnabled(false)
+                .queryStepAlignmentEnabled(true)
+                .build(), new KVStoreMock());
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heapUsed")
+                .metaTag("mtype", Metric.Mtype.gauge.name())
+                .build();
+        final Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(60);
+        tss.store(samplesOf(metric, start, start.plusSeconds(60), 42.3));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 6);
+
+        // the same steps, however the window is shifted
+        for (int offset = 0; offset < 3; offset++) {
+            final Instant from = start.plusSeconds(7 + offset);
+            final Instant to = start.plusSeconds(53 + offset);
+            final List<Sample> samplesRead = tss.getTimeseries(ImmutableTimeSeriesFetchRequest.builder()
+                    .start(from)
+                    .end(to)
+                    .step(Duration.ofSeconds(5))
+                    .aggregation(Aggregation.AVERAGE)
+                    .metric(metric)
+                    .build());
+            assertFalse(samplesRead.isEmpty());
+            for (Sample sample : samplesRead) {
+                assertEquals(0, sample.getTime().toEpochMilli() % 5000);
+                assertFalse(sample.getTime().isBefore(from) || sample.getTime().isAfter(to));
+            }
+        }
+        assertEquals(3, tss.getMetrics().meter("queryRange.aligned").getCount());
+        assertEquals(0, tss.getMetrics().meter("queryRange.unaligned").getCount());
+    }
+
+    @Test
+    public void canWriteWithRemoteWrite2() throws Exception {
+        try (MockCortexServer other = new MockCortexServer()) {
+            final CortexTSS tssV2 = new CortexTSS(CortexTSSConfig.builder()
+                    .writeUrl(other.getWriteUrl())
+                    .readUrl(other.getReadUrl())
+                    .jmxReporterEnabled(false)
+                    .remoteWriteVersion(CortexTSSConfig.RemoteWriteVersion.V2)
+                    .build(), new KVStoreMock());
+            try {
+                // the same samples with both versions, OpenNMS like series sharing a long resource id prefix
+                final Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(60);
+                final List<Sample> samples = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    final Metric metric = ImmutableMetric.builder()
+                            .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:fs:NODES:server" + (i % 5) + ":interfaceSnmp:eth0-04013f75f101")
+                            .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets" + i)
+                            .metaTag("mtype", (i % 2 == 0 ? Metric.Mtype.counter : Metric.Mtype.gauge).name())
+                            .metaTag("node", "server" + (i % 5))
+                            .build();
+                    for (int j = 0; j < 10; j++) {
+                        samples.add(ImmutableSample.builder().metric(metric).time(start.plusSeconds(j)).value(i * 10.0d + j).build());
+                    }
+                }
+                tss.store(samples);
+                tssV2.store(samples);
+                await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 500 && other.getSamplesReceived() == 500);
+
+                assertEquals(new HashSet<>(server.getSeries()), new HashSet<>(other.getSeries()));
+                for (Map<String, String> labels : other.getSeries()) {
+                    assertEquals(labels.get("mtype").equals("counter")
+                            ? PrometheusWriteV2.Metadata.MetricType.METRIC_TYPE_COUNTER
+                            : PrometheusWriteV2.Metadata.MetricType.METRIC_TYPE_GAUGE, other.getMetricType(labels));
+                }
+                final TimeSeriesFetchRequest request = ImmutableTimeSeriesFetchRequest.builder()
+                        .start(start)
+                        .end(start.plusSeconds(9))
+                        .step(Duration.ofSeconds(1))
+                        .aggregation(Aggregation.NONE)
+                        .metric(samples.get(0).getMetric())
+                        .build();
+                assertEquals(tss.getTimeseries(request), tssV2.getTimeseries(request));
+                // the symbol table saves most of the repeated label names and values
+                assertThat(other.getWriteBytesReceived() * 2, lessThan(server.getWriteBytesReceived()));
+            } finally {
+                tssV2.destroy();
+            }
+        }
+    }
+
+    @Test
+    public void shouldWriteMetadataAndReadTheTypeFromIt() throws Exception {
+        tss.destroy();
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .jmxReporterEnabled(false)
+                .metadataEnabled(true)
+                .build();
+        tss = new CortexTSS(config, new KVStoreMock());
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:eth0")
+                .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+                .metaTag("mtype", Metric.Mtype.counter.name())
+                .build();
+        final Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(60);
+        for (int i = 0; i < 60; i++) {
+            tss.store(List.of(ImmutableSample.builder().metric(metric).time(start.plusSeconds(i)).value(i * 100.0d).build()));
+        }
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 60);
+        assertEquals("counter", server.getMetadata("ifHCInOctets"));
+        // with the first write request only
+        assertEquals(1, server.getMetadataReceived());
+
+        // a fresh instance without cached metric: the series found has the type already
+        tss.destroy();
+        tss = new CortexTSS(config, new KVStoreMock());
+        final List<Sample> samplesRead = tss.getTimeseries(ImmutableTimeSeriesFetchRequest.builder()
+                .start(start.plusSeconds(10))
+                .end(start.plusSeconds(50))
+                .step(Duration.ofSeconds(5))
+                .aggregation(Aggregation.AVERAGE)
+                .metric(ImmutableMetric.builder()
+                        .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:eth0")
+                        .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+                        .build())
+                .build());
+        assertEquals(0, server.getMetadataRequestsReceived());
+        // counters are queried as rate
+        assertEquals(100.0d, samplesRead.get(samplesRead.size() - 1).getValue(), 0.001d);
+    }
+
+    @Test
+    public void shouldAddTheTypeFromTheMetadataApiToTheFullMetric() throws Exception {
+        tss.destroy();
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .jmxReporterEnabled(false)
+                .metadataEnabled(true)
+                .build();
+        final KVStoreMock kvStore = new KVStoreMock();
+        tss = new CortexTSS(config, kvStore);
+        // written without mtype, the type is known from another source
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:eth0")
+                .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+                .metaTag("host", "router1")
+                .externalTag("location", "rack1")
+                .build();
+        server.withMetadata("ifHCInOctets", "counter");
+        final Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(60);
+        for (int i = 0; i < 60; i++) {
+            tss.store(List.of(ImmutableSample.builder().metric(metric).time(start.plusSeconds(i)).value(i * 100.0d).build()));
+        }
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 60);
+
+        tss.destroy();
+        tss = new CortexTSS(config, kvStore);
+        final List<Sample> samplesRead = tss.getTimeseries(ImmutableTimeSeriesFetchRequest.builder()
+                .start(start.plusSeconds(10))
+                .end(start.plusSeconds(50))
+                .step(Duration.ofSeconds(5))
+                .aggregation(Aggregation.AVERAGE)
+                .metric(ImmutableMetric.builder()
+                        .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:eth0")
+                        .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+                        .build())
+                .build());
+        assertEquals(1, server.getMetadataRequestsReceived());
+        final Metric metricRead = samplesRead.get(0).getMetric();
+        assertEquals("counter", metricRead.getFirstTagByKey("mtype").getValue());
+        assertEquals("router1", metricRead.getFirstTagByKey("host").getValue());
+        assertEquals("rack1", metricRead.getFirstTagByKey("location").getValue());
+        // counters are queried as rate
+        assertEquals(100.0d, samplesRead.get(samplesRead.size() - 1).getValue(), 0.001d);
+    }
+
+    @Test
+    public void shouldNotCountSelfMonitoringSamples() throws Exception {
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .jmxReporterEnabled(false)
+                .selfMonitoringIntervalInMs(100)
+                .tenantMaxSamplesPerSecond(1)
+                .build(), new KVStoreMock());
+
+        // more samples than the tenant may write
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() > 100);
+        assertEquals(0, tss.getMetrics().meter("samplesWritten").getCount());
+        assertEquals(0, tss.getMetrics().meter("samplesLost").getCount());
+        assertEquals(0, tss.getMetrics().meter("tenants.default.samplesRateLimited").getCount());
+    }
+
+    @Test
+    public void shouldCountLostSamplesOnErrors() throws Exception {
+        server.withFailures(1.0d, 429);
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, "heapUsed")
+                .build();
+        tss.store(List.of(ImmutableSample.builder().metric(metric).time(Instant.now()).value(1.0d).build()));
+        await().atMost(Duration.ofSeconds(10)).until(() -> tss.getMetrics().meter("samplesLost").getCount() == 1);
+        assertThat(tss.getMetrics().timer("write.latency.default.4xx").getCount(), greaterThan(0L));
+    }
+
+    @Test
+    public void canReadRawSamplesViaRemoteRead() throws Exception {
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .jmxReporterEnabled(false)
+                .remoteReadEnabled(true)
+                .build(), new KVStoreMock());
+
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heapUsed")
+                .metaTag("mtype", Metric.Mtype.gauge.name())
+                .build();
+        // sub-second samples, the query api would only give us one per step
+        final Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(60);
+        final List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            samples.add(ImmutableSample.builder().metric(metric).time(start.plusMillis(i * 100L)).value((double) i).build());
+        }
+        tss.store(samples);
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 300);
+
+        final TimeSeriesFetchRequest request = ImmutableTimeSeriesFetchRequest.builder()
+                .start(start)
+                .end(start.plusSeconds(60))
+                .step(Duration.ofSeconds(1))
+                .aggregation(Aggregation.NONE)
+                .metric(metric)
+                .build();
+        final List<Sample> samplesRead = tss.getTimeseries(request);
+        assertEquals(samples.size(), samplesRead.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(samples.get(i).getTime(), samplesRead.get(i).getTime());
+            assertEquals(samples.get(i).getValue(), samplesRead.get(i).getValue());
+        }
+    }
+
+    @Test
+    public void shouldShardSeriesOverWriteEndpoints() throws Exception {
+        try (MockCortexServer other = new MockCortexServer()) {
+            tss.destroy();
+            tss = new CortexTSS(CortexTSSConfig.builder()
+                    .writeUrl(server.getWriteUrl() + "," + other.getWriteUrl())
+                    .readUrl(server.getReadUrl())
+                    .jmxReporterEnabled(false)
+                    .build(), new KVStoreMock());
+
+            tss.store(samplesOfSeries(100));
+            await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() + other.getSamplesReceived() == 100);
+            assertThat(server.getSamplesReceived(), greaterThan(0L));
+            assertThat(other.getSamplesReceived(), greaterThan(0L));
+            // every series goes to exactly one endpoint
+            assertEquals(100, server.getSeries().size() + other.getSeries().size());
+            assertEquals(100, tss.getMetrics().meter("samplesWritten").getCount());
+        }
+    }
+
+    @Test
+    public void shouldWriteTheMetadataToEachShard() throws Exception {
+        try (MockCortexServer other = new MockCortexServer()) {
+            tss.destroy();
+            tss = new CortexTSS(CortexTSSConfig.builder()
+                    .writeUrl(server.getWriteUrl() + "," + other.getWriteUrl())
+                    .readUrl(server.getReadUrl() + "," + other.getReadUrl())
+                    .jmxReporterEnabled(false)
+                    .metadataEnabled(true)
+                    .build(), new KVStoreMock());
+
+            // series of the same family, spread over both shards
+            final Instant now = Instant.now();
+            final List<Sample> samples = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                samples.add(ImmutableSample.builder()
+                        .metric(ImmutableMetric.builder()
+                                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:" + i + ":jvm")
+                                .intrinsicTag(IntrinsicTagNames.name, "heap")
+                                .metaTag("mtype", Metric.Mtype.gauge.name())
+                                .build())
+                        .time(now)
+                        .value(1.0d)
+                        .build());
+            }
+            tss.store(samples);
+            await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() + other.getSamplesReceived() == 20);
+            assertThat(server.getSamplesReceived(), greaterThan(0L));
+            assertThat(other.getSamplesReceived(), greaterThan(0L));
+
+            assertEquals("gauge", server.getMetadata("heap"));
+            assertEquals("gauge", other.getMetadata("heap"));
+        }
+    }
+
+    @Test
+    public void shouldReadEachSeriesFromItsShard() throws Exception {
+        try (MockCortexServer other = new MockCortexServer()) {
+            tss.destroy();
+            tss = new CortexTSS(CortexTSSConfig.builder()
+                    .writeUrl(server.getWriteUrl() + "," + other.getWriteUrl())
+                    .readUrl(server.getReadUrl() + "," + other.getReadUrl())
+                    .jmxReporterEnabled(false)
+                    .build(), new KVStoreMock());
+
+            final List<Sample> samples = samplesOfSeries(20);
+            tss.store(samples);
+            await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() + other.getSamplesReceived() == 20);
+            assertThat(server.getSamplesReceived(), greaterThan(0L));
+            assertThat(other.getSamplesReceived(), greaterThan(0L));
+
+            // the series of both shards are found
+            final List<Metric> metrics = tss.findMetrics(List.of(ImmutableTagMatcher.builder()
+                    .key(IntrinsicTagNames.resourceId)
+                    .value("snmp:1:opennms-jvm")
+                    .build()));
+            assertEquals(20, metrics.size());
+            assertEquals(1, server.getReadRequestsReceived());
+            assertEquals(1, other.getReadRequestsReceived());
+
+            // and read from the shard holding them
+            for (Sample sample : samples) {
+                assertEquals(1, tss.getTimeseries(ImmutableTimeSeriesFetchRequest.builder()
+                        .start(sample.getTime())
+                        .end(sample.getTime())
+                        .step(Duration.ofSeconds(1))
+                        .aggregation(Aggregation.AVERAGE)
+                        .metric(sample.getMetric())
+                        .build()).size());
+            }
+            assertEquals(2 + 20, server.getReadRequestsReceived() + other.getReadRequestsReceived());
+        }
+    }
+
+    @Test
+    public void shouldSplitOversizedWriteRequests() throws Exception {
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .jmxReporterEnabled(false)
+                .writeRequestMaxBytes(1000)
+                .build(), new KVStoreMock());
+
+        tss.store(samplesOfSeries(100));
+        await().atMost(Duration.ofSeconds(10)).until(() -> tss.getMetrics().meter("samplesWritten").getCount() == 100);
+        assertEquals(100, server.getSamplesReceived());
+        assertThat(server.getWriteRequestsReceived(), greaterThan(5L));
+        assertEquals(1, tss.getMetrics().meter("write.requestsSplit").getCount());
+        assertThat(tss.getMetrics().histogram("write.uncompressedBytes").getSnapshot().getMax(), lessThanOrEqualTo(1000L));
+    }
+
+    @Test
+    public void shouldReplicateSamplesToAllWriteEndpoints() throws Exception {
+        try (MockCortexServer other = new MockCortexServer()) {
+            tss.destroy();
+            tss = new CortexTSS(CortexTSSConfig.builder()
+                    .writeUrl(server.getWriteUrl() + "," + other.getWriteUrl())
+                    .readUrl(server.getReadUrl())
+                    .writeMode(CortexTSSConfig.WriteMode.REPLICATE)
+                    .jmxReporterEnabled(false)
+                    .build(), new KVStoreMock());
+
+            // one endpoint failing doesn't lose the samples
+            other.withFailures(1.0d, 503);
+            tss.store(samplesOfSeries(10));
+            await().atMost(Duration.ofSeconds(10)).until(() -> tss.getMetrics().meter("samplesWritten").getCount() == 10);
+            assertEquals(10, server.getSamplesReceived());
+            assertEquals(0, tss.getMetrics().meter("samplesLost").getCount());
+
+            other.withFailures(0.0d, 503);
+            tss.store(samplesOfSeries(10));
+            await().atMost(Duration.ofSeconds(10)).until(() -> other.getSamplesReceived() == 10);
+            assertEquals(20, server.getSamplesReceived());
+        }
+    }
+
+    @Test
+    public void shouldFailOverToNextReadEndpoint() throws Exception {
+        try (MockCortexServer other = new MockCortexServer()) {
+            tss.destroy();
+            tss = new CortexTSS(CortexTSSConfig.builder()
+                    .writeUrl(server.getWriteUrl() + "," + other.getWriteUrl())
+                    .readUrl(server.getReadUrl() + "," + other.getReadUrl())
+                    .writeMode(CortexTSSConfig.WriteMode.REPLICATE)
+                    .jmxReporterEnabled(false)
+                    .build(), new KVStoreMock());
+            tss.store(samplesOfSeries(1));
+            await().atMost(Duration.ofSeconds(10)).until(() -> other.getSamplesReceived() == 1 && server.getSamplesReceived() == 1);
+
+            server.withFailures(1.0d, 503);
+            final List<TagMatcher> matchers = List.of(ImmutableTagMatcher.builder()
+                    .key(IntrinsicTagNames.name)
+                    .value("series0")
+                    .build());
+            assertEquals(1, tss.findMetrics(matchers).size());
+            assertEquals(1, server.getRequestsFailed());
+
+            // the failed endpoint is skipped now
+            assertEquals(1, tss.findMetrics(matchers).size());
+            assertEquals(1, server.getRequestsFailed());
+            assertEquals(2, other.getReadRequestsReceived());
+        }
+    }
+
+    @Test
+    public void shouldIsolateTenants() throws Exception {
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .tenantMaxSamplesPerSecond(10)
+                .jmxReporterEnabled(false)
+                .build(), new KVStoreMock());
+
+        tss.store(samplesOfSeries(10), "customer1");
+        // exceeds the rate of customer1 but not the one of customer2
+        tss.store(samplesOfSeries(10), "customer1");
+        tss.store(samplesOfSeries(10), "customer2");
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 20);
+        await().atMost(Duration.ofSeconds(10)).until(() -> tss.getMetrics().meter("tenants.customer2.samplesWritten").getCount() == 10);
+        assertEquals(10, tss.getMetrics().meter("tenants.customer1.samplesWritten").getCount());
+        assertEquals(10, tss.getMetrics().meter("tenants.customer1.samplesRateLimited").getCount());
+        assertEquals(10, tss.getMetrics().meter("samplesLost").getCount());
+    }
+
+    @Test
+    public void shouldReconfigureWithoutLosingWrites() throws Exception {
+        try (MockCortexServer other = new MockCortexServer()) {
+            server.withLatency(Duration.ofMillis(500));
+            tss.store(samplesOfSeries(10));
+
+            // while the write is still in flight
+            tss.reconfigure(CortexTSSConfig.builder()
+                    .writeUrl(other.getWriteUrl())
+                    .readUrl(server.getReadUrl())
+                    .jmxReporterEnabled(false)
+                    .build());
+            tss.store(samplesOfSeries(5));
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> tss.getMetrics().meter("samplesWritten").getCount() == 15);
+            assertEquals(10, server.getSamplesReceived());
+            assertEquals(5, other.getSamplesReceived());
+            assertEquals(0, tss.getMetrics().meter("samplesLost").getCount());
+            // only the metrics of the new endpoint are left
+            assertThat(tss.getMetrics().getNames().stream().filter(name -> name.startsWith("endpoints.write.")).count(), equalTo(7L));
+        }
+    }
+
+    @Test
+    public void shouldSpillPendingWritesOnShutdownAndReplayThem() throws Exception {
+        final Path spillDirectory = folder.getRoot().toPath();
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .shutdownFlushTimeoutInMs(200)
+                .spillDirectory(spillDirectory.toString())
+                .jmxReporterEnabled(false)
+                .build();
+        tss.destroy();
+        tss = new CortexTSS(config, new KVStoreMock());
+
+        // answered too late for the flush timeout
+        server.withLatency(Duration.ofSeconds(2));
+        tss.store(samplesOfSeries(10));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 10);
+        tss.destroy();
+        assertTrue(Files.exists(spillDirectory.resolve(SpillFile.FILE_NAME)));
+        assertEquals(0, tss.getMetrics().meter("samplesLost").getCount());
+
+        server.withLatency(Duration.ZERO);
+        tss = new CortexTSS(config, new KVStoreMock());
+        // Cortex drops the duplicates of samples it got already
+        await().atMost(Duration.ofSeconds(10)).until(() -> tss.getMetrics().meter("samplesWritten").getCount() == 10);
+        assertEquals(20, server.getSamplesReceived());
+        assertFalse(Files.exists(spillDirectory.resolve(SpillFile.FILE_NAME)));
+        await().atMost(Duration.ofSeconds(10)).until(() -> !Files.exists(spillDirectory.resolve(SpillFile.REPLAY_FILE_NAME)));
+    }
+
+    @Test
+    public void shouldKeepSpilledWritesUntilReplayed() throws Exception {
+        final Path spillDirectory = folder.getRoot().toPath();
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .shutdownFlushTimeoutInMs(200)
+                .endpointRetryIntervalInMs(100)
+                .spillDirectory(spillDirectory.toString())
+                .jmxReporterEnabled(false)
+                .build();
+        tss.destroy();
+        tss = new CortexTSS(config, new KVStoreMock());
+        server.withLatency(Duration.ofSeconds(2));
+        tss.store(samplesOfSeries(10));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 10);
+        tss.destroy();
+
+        // Cortex is still down after restarting
+        server.withLatency(Duration.ZERO);
+        server.withFailures(1.0d, 503);
+        tss = new CortexTSS(config, new KVStoreMock());
+        Thread.sleep(500);
+        assertTrue(Files.exists(spillDirectory.resolve(SpillFile.REPLAY_FILE_NAME)));
+        assertEquals(0, tss.getMetrics().meter("samplesWritten").getCount());
+        assertEquals(0, tss.getMetrics().meter("samplesLost").getCount());
+
+        server.withFailures(0.0d, 503);
+        await().atMost(Duration.ofSeconds(10)).until(() -> tss.getMetrics().meter("samplesWritten").getCount() == 10);
+        await().atMost(Duration.ofSeconds(10)).until(() -> !Files.exists(spillDirectory.resolve(SpillFile.REPLAY_FILE_NAME)));
+        assertEquals(0, tss.getMetrics().meter("samplesLost").getCount());
+    }
+
+    @Test
+    public void shouldDeleteSeriesInBatches() throws Exception {
+        final KVStoreMock kvStore = new KVStoreMock();
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .deleteEnabled(true)
+                .deleteBatchSize(2)
+                .deleteBatchIntervalInMs(60_000)
+                .jmxReporterEnabled(false)
+                .build(), kvStore);
+        final List<Sample> samples = samplesOfSeries(3);
+        tss.store(samples);
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSeries().size() == 3);
+        kvStore.put(samples.get(0).getMetric().getKey(), "{\"ifAlias\":\"uplink\"}", CortexTSS.CORTEX_TSS);
+
+        tss.delete(samples.get(0).getMetric());
+        assertFalse(kvStore.get(samples.get(0).getMetric().getKey(), CortexTSS.CORTEX_TSS).isPresent());
+        assertEquals(0, server.getDeleteRequestsReceived());
+        // the batch is full, both series are deleted with one call
+        tss.delete(samples.get(1).getMetric());
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSeries().size() == 1);
+        assertEquals(1, server.getDeleteRequestsReceived());
+        assertEquals("series2", server.getSeries().get(0).get(CortexTSS.METRIC_NAME_LABEL));
+        assertEquals(2, tss.getMetrics().meter("delete.seriesDeleted").getCount());
+
+        // the rest is sent when shutting down
+        tss.delete(samples.get(2).getMetric());
+        tss.destroy();
+        assertEquals(0, server.getSeries().size());
+        assertEquals(2, server.getDeleteRequestsReceived());
+    }
+
+    @Test(expected = StorageException.class)
+    public void shouldNotAcceptSamplesAfterShutdown() throws Exception {
+        tss.destroy();
+        tss.store(samplesOfSeries(1));
+    }
+
+    @Test
+    public void shouldFindMetricsInTheSeriesIndexAfterRestarting() throws Exception {
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .seriesIndexDirectory(folder.getRoot().getAbsolutePath())
+                .jmxReporterEnabled(false)
+                .build();
+        tss.destroy();
+        tss = new CortexTSS(config, new KVStoreMock());
+        tss.store(samplesOfSeries(10));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 10);
+        final List<TagMatcher> tagMatchers = List.of(ImmutableTagMatcher.builder()
+                .key(IntrinsicTagNames.resourceId)
+                .value("snmp:1:opennms-jvm")
+                .build());
+        // seeds the index with the series Cortex knows
+        assertEquals(10, tss.findMetrics(tagMatchers).size());
+        assertEquals(1, server.getReadRequestsReceived());
+        tss.destroy();
+
+        tss = new CortexTSS(config, new KVStoreMock());
+        assertEquals(10, tss.findMetrics(tagMatchers).size());
+        assertEquals(1, server.getReadRequestsReceived());
+
+        // unknown series are looked up in Cortex
+        assertEquals(0, tss.findMetrics(List.of(ImmutableTagMatcher.builder()
+                .key(IntrinsicTagNames.resourceId)
+                .value("snmp:2:opennms-jvm")
+                .build())).size());
+        assertEquals(2, server.getReadRequestsReceived());
+    }
+
+    @Test
+    public void shouldIndexTheSeriesAsRelabeled() throws Exception {
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .seriesIndexDirectory(folder.getRoot().getAbsolutePath())
+                .writeRelabelConfigs("[{\"action\": \"replace\", \"source_labels\": [\"resourceId\"], \"regex\": \"snmp:(.*):.*\", \"target_label\": \"node\", \"replacement\": \"$1\"}]")
+                .jmxReporterEnabled(false)
+                .build();
+        tss.destroy();
+        tss = new CortexTSS(config, new KVStoreMock());
+        final List<TagMatcher> tagMatchers = List.of(ImmutableTagMatcher.builder()
+                .key("node")
+                .value("1")
+                .build());
+        assertEquals(0, tss.findMetrics(tagMatchers).size());
+        assertEquals(1, server.getReadRequestsReceived());
+
+        tss.store(samplesOfSeries(10));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 10);
+        // answered from the index, which has the label added by relabeling
+        final List<Metric> metrics = tss.findMetrics(tagMatchers);
+        assertEquals(10, metrics.size());
+        assertEquals("1", metrics.get(0).getFirstTagByKey("node").getValue());
+        assertEquals(1, server.getReadRequestsReceived());
+    }
+
+    @Test
+    public void shouldLoadTheMetricFromTheIndexOfTheTenant() throws Exception {
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .seriesIndexDirectory(folder.getRoot().getAbsolutePath())
+                .jmxReporterEnabled(false)
+                .build();
+        tss.destroy();
+        tss = new CortexTSS(config, new KVStoreMock());
+        final List<Sample> samples = samplesOfSeries(1);
+        tss.store(samples, "customer1");
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 1);
+        // nothing cached anymore, only indexed
+        tss.destroy();
+        tss = new CortexTSS(config, new KVStoreMock());
+
+        final long readRequests = server.getReadRequestsReceived();
+        final Instant time = samples.get(0).getTime();
+        assertEquals(1, tss.getTimeseries(ImmutableTimeSeriesFetchRequest.builder()
+                .start(time)
+                .end(time)
+                .step(Duration.ofSeconds(1))
+                .aggregation(Aggregation.AVERAGE)
+                .metric(samples.get(0).getMetric())
+                .build(), "customer1").size());
+        // only the range query, the metric is found in the index of customer1
+        assertEquals(readRequests + 1, server.getReadRequestsReceived());
+    }
+
+    @Test
+    public void shouldReadRecentSamplesFromTheHotTier() throws Exception {
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heap")
+                .metaTag("mtype", Metric.Mtype.gauge.name())
+                .build();
+        final Instant end = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        final Instant start = end.minus(Duration.ofMinutes(20));
+        // written before the hot tier was enabled
+        tss.store(samplesOf(metric, start, start.plus(Duration.ofMinutes(10)), 1.0d));
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .hotTierMaxBytes(1024 * 1024)
+                .jmxReporterEnabled(false)
+                .build(), new KVStoreMock());
+        tss.store(samplesOf(metric, start.plus(Duration.ofMinutes(10)), end.plusSeconds(1), 2.0d));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 121);
+        tss.findMetrics(List.of(ImmutableTagMatcher.builder().key(IntrinsicTagNames.name).value("heap").build()));
+
+        // the older steps are queried, the ones covered by the hot tier are evaluated locally
+        long readRequests = server.getReadRequestsReceived();
+        final List<Sample> samples = tss.getTimeseries(fetchRequest(metric, start, end));
+        assertEquals(readRequests + 1, server.getReadRequestsReceived());
+        assertEquals(21, samples.size());
+        assertThat(samples.get(0).getValue(), equalTo(1.0d));
+        assertThat(samples.get(20).getValue(), equalTo(2.0d));
+        assertEquals(1, tss.getMetrics().meter("hotTier.queriesMerged").getCount());
+
+        // all steps are covered
+        readRequests = server.getReadRequestsReceived();
+        final List<Sample> recentSamples = tss.getTimeseries(fetchRequest(metric, end.minus(Duration.ofMinutes(4)), end));
+        assertEquals(readRequests, server.getReadRequestsReceived());
+        assertEquals(5, recentSamples.size());
+        assertEquals(1, tss.getMetrics().meter("hotTier.queriesAnswered").getCount());
+    }
+
+    @Test
+    public void shouldReadRollupsOnlyForTheWrittenWindows() throws Exception {
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heap")
+                .metaTag("mtype", Metric.Mtype.gauge.name())
+                .build();
+        final Instant end = Instant.ofEpochMilli(CortexTSS.floorToStep(System.currentTimeMillis(), Duration.ofMinutes(5).toMillis()));
+        final Instant start = end.minus(Duration.ofMinutes(170));
+        // written before the rollups were enabled
+        tss.store(samplesOf(metric, end.minus(Duration.ofMinutes(180)), end.minus(Duration.ofMinutes(60)), 1.0d, 60));
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .rollupIntervals("5m")
+                .jmxReporterEnabled(false)
+                .build(), new KVStoreMock());
+        // completes the 11 windows up to 5 minutes ago, with 4 rollup samples each
+        tss.store(samplesOf(metric, end.minus(Duration.ofMinutes(60)), end, 2.0d, 60));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 180 + 11 * 4);
+
+        final List<Sample> samples = tss.getTimeseries(ImmutableTimeSeriesFetchRequest.builder()
+                .start(start)
+                .end(end)
+                .step(Duration.ofMinutes(5))
+                .aggregation(Aggregation.MAX)
+                .metric(metric)
+                .build());
+        assertEquals(35, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(start.plus(Duration.ofMinutes(5L * i)), samples.get(i).getTime());
+        }
+        assertThat(samples.get(0).getValue(), equalTo(1.0d));
+        assertThat(samples.get(34).getValue(), equalTo(2.0d));
+
+        // the rollups, then the raw samples before the first window and the ones of the open window
+        final List<String> queries = server.getQueriesReceived();
+        assertEquals(3, queries.size());
+        assertTrue(queries.get(0).contains("heap:5m_max"));
+        assertFalse(queries.get(1).contains("heap:5m_max"));
+        assertFalse(queries.get(2).contains("heap:5m_max"));
+        assertEquals(0, tss.getMetrics().meter("rollups.queriesFallenBack").getCount());
+    }
+
+    @Test
+    public void shouldFallBackToRawSamplesWithoutRollups() throws Exception {
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heap")
+                .metaTag("mtype", Metric.Mtype.gauge.name())
+                .build();
+        final Instant end = Instant.ofEpochMilli(CortexTSS.floorToStep(System.currentTimeMillis(), Duration.ofMinutes(5).toMillis()));
+        final Instant start = end.minus(Duration.ofMinutes(60));
+        tss.store(samplesOf(metric, start, end, 1.0d, 60));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 60);
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .rollupIntervals("5m")
+                .jmxReporterEnabled(false)
+                .build(), new KVStoreMock());
+
+        final List<Sample> samples = tss.getTimeseries(ImmutableTimeSeriesFetchRequest.builder()
+                .start(start)
+                .end(end)
+                .step(Duration.ofMinutes(5))
+                .aggregation(Aggregation.MAX)
+                .metric(metric)
+                .build());
+        assertEquals(13, samples.size());
+        assertEquals(2, server.getQueriesReceived().size());
+        assertFalse(server.getQueriesReceived().get(1).contains("heap:5m_max"));
+        assertEquals(1, tss.getMetrics().meter("rollups.queriesFallenBack").getCount());
+    }
+
+    @Test
+    public void shouldNotFindTheRollupSeries() throws Exception {
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heap")
+                .metaTag("mtype", Metric.Mtype.gauge.name())
+                .build();
+        final Instant end = Instant.ofEpochMilli(CortexTSS.floorToStep(System.currentTimeMillis(), Duration.ofMinutes(5).toMillis()));
+        final CortexTSSConfig.Builder config = CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .rollupIntervals("5m")
+                .jmxReporterEnabled(false);
+        tss.destroy();
+        tss = new CortexTSS(config.build(), new KVStoreMock());
+        // completes one window, with 4 rollup samples
+        tss.store(samplesOf(metric, end.minus(Duration.ofMinutes(10)), end, 1.0d, 60));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 10 + 4);
+
+        final List<TagMatcher> tagMatchers = List.of(ImmutableTagMatcher.builder()
+                .key(IntrinsicTagNames.resourceId)
+                .value("snmp:1:opennms-jvm")
+                .build());
+        assertEquals(List.of(metric), tss.findMetrics(tagMatchers));
+
+        // neither from the index
+        tss.destroy();
+        tss = new CortexTSS(config.seriesIndexDirectory(folder.getRoot().getAbsolutePath()).build(), new KVStoreMock());
+        assertEquals(List.of(metric), tss.findMetrics(tagMatchers));
+        assertEquals(List.of(metric), tss.findMetrics(tagMatchers));
+    }
+
+    @Test
+    public void shouldCountTheRollupsAgainstTheLimits() throws Exception {
+        final Metric metric = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heap")
+                .metaTag("mtype", Metric.Mtype.gauge.name())
+                .build();
+        final Instant end = Instant.ofEpochMilli(CortexTSS.floorToStep(System.currentTimeMillis(), Duration.ofMinutes(5).toMillis()));
+        tss.destroy();
+        tss = new CortexTSS(CortexTSSConfig.builder()
+                .writeUrl(server.getWriteUrl())
+                .readUrl(server.getReadUrl())
+                .rollupIntervals("5m")
+                .maxActiveSeries(1)
+                .jmxReporterEnabled(false)
+                .build(), new KVStoreMock());
+        tss.store(samplesOf(metric, end.minus(Duration.ofMinutes(10)), end, 1.0d, 60));
+        await().atMost(Duration.ofSeconds(10)).until(() -> server.getSamplesReceived() == 10);
+
+        // the rollup series are new series beyond the limit
+        assertEquals(4, tss.getMetrics().meter("cardinality.samplesDropped").getCount());
+        assertEquals(4, tss.getMetrics().meter("rollups.samplesEmitted").getCount());
+    }
+
+    private static List<Sample> samplesOf(final Metric metric, final Instant start, final Instant end, final double value) {
+        return samplesOf(metric, start, end, value, 10);
+    }
+
+    private static List<Sample> samplesOf(final Metric metric, final Instant start, final Instant end, final double value,
+                                          final long intervalInSeconds) {
+        final List<Sample> samples = new ArrayList<>();
+        for (Instant time = start; time.isBefore(end); time = time.plusSeconds(intervalInSeconds)) {
+            samples.add(ImmutableSample.builder().metric(metric).time(time).value(value).build());
+        }
+        return samples;
+    }
+
+    private static TimeSeriesFetchRequest fetchRequest(final Metric metric, final Instant start, final Instant end) {
+        return ImmutableTimeSeriesFetchRequest.builder()
+                .start(start)
+                .end(end)
+                .step(Duration.ofMinutes(1))
+                .aggregation(Aggregation.NONE)
+                .metric(metric)
+                .build();
+    }
+
+    private static List<Sample> samplesOfSeries(final int numberOfSeries) {
+        final Instant now = Instant.now();
+        final List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < numberOfSeries; i++) {
+            final Metric metric = ImmutableMetric.builder()
+                    .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                    .intrinsicTag(IntrinsicTagNames.name, "series" + i)
+                    .metaTag("mtype", Metric.Mtype.gauge.name())
+                    .build();
+            samples.add(ImmutableSample.builder().metric(metric).time(now).value(1.0d).build());
+        }
+        return samples;
+    }
+}
@@ -30,11 +30,15 @@ package org.opennms.timeseries.cortex;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
 import static org.opennms.timeseries.cortex.CortexTSS.LABEL_NAME_PATTERN;
 import static org.opennms.timeseries.cortex.CortexTSS.MAX_SAMPLES;
 import static org.opennms.timeseries.cortex.CortexTSS.METRIC_NAME_PATTERN;
 
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -42,9 +46,14 @@ import java.util.List;
 
 import org.junit.Test;
 import org.opennms.integration.api.v1.timeseries.Aggregation;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.MetaTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
 import org.opennms.integration.api.v1.timeseries.Tag;
 import org.opennms.integration.api.v1.timeseries.TimeSeriesFetchRequest;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTag;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTimeSeriesFetchRequest;
 
@@ -83,6 +92,56 @@ public class CortexTSSTest {
         assertEquals(1, CortexTSS.determineStepInSeconds(request(2 * MAX_SAMPLES + 1, 1)));
     }
 
+    @Test
+    public void shouldFormatTimesWithMilliseconds() {
+        assertEquals("1602783564", CortexTSS.toPrometheusTime(Instant.ofEpochSecond(1602783564)));
+        assertEquals("1602783564.005", CortexTSS.toPrometheusTime(Instant.ofEpochMilli(1602783564005L)));
+        assertEquals("-1.500", CortexTSS.toPrometheusTime(Instant.ofEpochMilli(-500L)));
+    }
+
+    @Test
+    public void shouldAlignTimesToTheStep() {
+        assertEquals(60_000, CortexTSS.floorToStep(60_000, 30_000));
+        assertEquals(60_000, CortexTSS.floorToStep(89_999, 30_000));
+        assertEquals(60_000, CortexTSS.ceilToStep(60_000, 30_000));
+        assertEquals(90_000, CortexTSS.ceilToStep(60_001, 30_000));
+        assertEquals(-30_000, CortexTSS.floorToStep(-1, 30_000));
+        assertEquals(0, CortexTSS.ceilToStep(-1, 30_000));
+    }
+
+    @Test
+    public void shouldBuildRollupQueries() {
+        final Metric gauge = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, "heap")
+                .intrinsicTag(IntrinsicTagNames.resourceId, "jvm")
+                .metaTag(MetaTagNames.mtype, Metric.Mtype.gauge.name())
+                .build();
+        final Metric counter = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+                .intrinsicTag(IntrinsicTagNames.resourceId, "eth0")
+                .metaTag(MetaTagNames.mtype, Metric.Mtype.counter.name())
+                .build();
+        assertEquals("avg(sum_over_time({__name__=\"heap:1h_sum\", resourceId=\"jvm\"}[7200s])"
+                        + " / sum_over_time({__name__=\"heap:1h_count\", resourceId=\"jvm\"}[7200s]))",
+                CortexTSS.createRollupQuery(request(gauge, Aggregation.AVERAGE, 7200), gauge, 3600));
+        assertEquals("max(max_over_time({__name__=\"heap:5m_max\", resourceId=\"jvm\"}[7200s]))",
+                CortexTSS.createRollupQuery(request(gauge, Aggregation.MAX, 7200), gauge, 300));
+        assertEquals("min(min_over_time({__name__=\"heap:5m_min\", resourceId=\"jvm\"}[7200s]))",
+                CortexTSS.createRollupQuery(request(gauge, Aggregation.MIN, 7200), gauge, 300));
+        assertEquals("avg(rate({__name__=\"ifHCInOctets:1h_max\", resourceId=\"eth0\"}[15120s]))",
+                CortexTSS.createRollupQuery(request(counter, Aggregation.AVERAGE, 7200), counter, 3600));
+    }
+
+    private TimeSeriesFetchRequest request(final Metric metric, final Aggregation aggregation, final long step) {
+        return ImmutableTimeSeriesFetchRequest.builder()
+                .start(Instant.ofEpochSecond(0))
+                .end(Instant.ofEpochSecond(86400 * 365))
+                .aggregation(aggregation)
+                .step(Duration.ofSeconds(step))
+                .metric(metric)
+                .build();
+    }
+
     private TimeSeriesFetchRequest request(final long end, final long step) {
         return ImmutableTimeSeriesFetchRequest.builder()
                 .start(Instant.ofEpochSecond(0))
@@ -93,6 +152,37 @@ public class CortexTSSTest {
                 .build();
     }
 
+    @Test
+    public void shouldSplitWriteRequestsBySeries() {
+        final Metric heap = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "heapUsed")
+                .metaTag(MetaTagNames.mtype, Metric.Mtype.gauge.name())
+                .build();
+        final Metric threads = ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, "threads")
+                .metaTag(MetaTagNames.mtype, Metric.Mtype.gauge.name())
+                .build();
+        final List<Sample> samples = new ArrayList<>();
+        for (Metric metric : List.of(heap, threads)) {
+            for (int i = 0; i < 3; i++) {
+                samples.add(ImmutableSample.builder().metric(metric).time(Instant.ofEpochSecond(1700000000L + i)).value(1.0d).build());
+            }
+        }
+
+        // close to the actual size
+        final int actualBytes = CortexTSS.toPrometheusTimeSeries(samples.get(0), CortexTSS.toPrometheusLabels(heap)).build().getSerializedSize() + 3;
+        assertEquals(actualBytes, CortexTSS.estimateWriteBytes(heap), actualBytes / 10.0d);
+
+        final int totalBytes = 3 * (CortexTSS.estimateWriteBytes(heap) + CortexTSS.estimateWriteBytes(threads));
+        assertEquals(List.of(samples), CortexTSS.splitBySize(samples, 0));
+        assertEquals(List.of(samples), CortexTSS.splitBySize(samples, totalBytes));
+        assertEquals(List.of(samples.subList(0, 3), samples.subList(3, 6)), CortexTSS.splitBySize(samples, totalBytes - 1));
+        // the samples of a series stay together even if larger
+        assertEquals(List.of(samples.subList(0, 3), samples.subList(3, 6)), CortexTSS.splitBySize(samples, 1));
+    }
+
     @Test
     public void testTagsToQuery() {
         final List<Tag> tags = new ArrayList<>();
@@ -101,4 +191,57 @@ public class CortexTSSTest {
         final String query = CortexTSS.tagsToQuery(tags);
         assertEquals("resourceId=\"response:Klatschmohnwiese:192.168.12.34:icmp\", resourceId=\"response:Klatschmohnwiese:2001\\\\:1234\\\\:1234\\\\:1234\\\\:1234\\\\:1234\\\\:1234\\\\:1234:icmp\"", query);
     }
+
+    @Test
+    public void shouldBuildMetricNameParts() {
+        assertEquals("2xx", CortexTSS.toStatusClass(204));
+        assertEquals("4xx", CortexTSS.toStatusClass(429));
+        assertEquals("5xx", CortexTSS.toStatusClass(503));
+        assertEquals("error", CortexTSS.toStatusClass(-1));
+        assertEquals(CortexTSS.DEFAULT_TENANT, CortexTSS.toTenantName(null));
+        assertEquals(CortexTSS.DEFAULT_TENANT, CortexTSS.toTenantName(" "));
+        assertEquals("tenant1", CortexTSS.toTenantName("tenant1"));
+    }
+
+    @Test
+    public void shouldReturnValidNamesUnchanged() {
+        String metricName = "ifHCInOctets:rate_5m";
+        assertSame(metricName, CortexTSS.sanitizeMetricName(metricName));
+        String labelName = "_idx2w";
+        assertSame(labelName, CortexTSS.sanitizeLabelName(labelName));
+        String value = "response:127.0.0.1:icmp";
+        assertSame(value, CortexTSS.escapeBackslashes(value));
+
+        assertEquals("_abc", CortexTSS.sanitizeMetricName("1abc"));
+        assertEquals("a_b", CortexTSS.sanitizeLabelName("a:b"));
+        assertEquals("_ber_1", CortexTSS.sanitizeLabelName("über-1"));
+        assertEquals("a\\\\b\\\\", CortexTSS.escapeBackslashes("a\\b\\"));
+    }
+
+    @Test
+    public void shouldNotAllocateForValidNames() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        String metricName = "ifHCInOctets";
+        String labelName = "resourceId";
+        String value = "snmp:1:opennms-jvm";
+        for (int i = 0; i < 100_000; i++) {
+            CortexTSS.sanitizeMetricName(metricName);
+            CortexTSS.sanitizeLabelName(labelName);
+            CortexTSS.escapeBackslashes(value);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            CortexTSS.sanitizeMetricName(metricName);
+            CortexTSS.sanitizeLabelName(labelName);
+            CortexTSS.escapeBackslashes(value);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        // allow for some noise of the measurement itself, a single allocation per call would be > 1MB
+        assertThat(allocated, lessThan(64L * 1024));
+    }
 }
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+
+public class ExternalTagsWarmupTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private ExternalTagsWarmup warmup;
+
+    @After
+    public void tearDown() {
+        if (warmup != null) {
+            warmup.close();
+        }
+    }
+
+    @Test
+    public void shouldLoadAllEntriesInBatches() throws Exception {
+        final KVStoreMock kvStore = storeWith(250);
+        final Cache<String, String> cache = Caches.<String>newBuilder(0, 1000, Caches::estimateBytes).build();
+        cache.put("key0", "{\"newer\":\"tags\"}");
+
+        warmup = new ExternalTagsWarmup(() -> config(100), () -> cache, metrics);
+        warmup.start(kvStore, CortexTSS.CORTEX_TSS).get(10, TimeUnit.SECONDS);
+
+        assertEquals(250, cache.estimatedSize());
+        // tags cached meanwhile are kept
+        assertEquals("{\"newer\":\"tags\"}", cache.getIfPresent("key0"));
+        assertEquals("{\"tag\":\"value1\"}", cache.getIfPresent("key1"));
+        assertEquals(250L, metrics.counter("externalTagsWarmup.entriesLoaded").getCount());
+        assertEquals(250L, metrics.getGauges().get("externalTagsWarmup.entriesTotal").getValue());
+    }
+
+    @Test
+    public void shouldStopWhenCacheIsFull() throws Exception {
+        final KVStoreMock kvStore = storeWith(1000);
+        final Cache<String, String> cache = Caches.<String>newBuilder(0, 100, Caches::estimateBytes)
+                .executor(Runnable::run)
+                .build();
+
+        warmup = new ExternalTagsWarmup(() -> config(10), () -> cache, metrics);
+        warmup.start(kvStore, CortexTSS.CORTEX_TSS).get(10, TimeUnit.SECONDS);
+
+        assertEquals(100, cache.estimatedSize());
+        assertEquals(100L, metrics.counter("externalTagsWarmup.entriesLoaded").getCount());
+        assertTrue((Long) metrics.getGauges().get("externalTagsWarmup.durationInMs").getValue() >= 0);
+    }
+
+    @Test
+    public void shouldStopBeforeEvictingFromCacheBoundedByBytes() throws Exception {
+        final KVStoreMock kvStore = storeWith(1000);
+        final Cache<String, String> cache = Caches.<String>newBuilder(10_000, 0, Caches::estimateBytes)
+                .executor(Runnable::run)
+                .build();
+
+        warmup = new ExternalTagsWarmup(() -> config(10), () -> cache, metrics);
+        warmup.start(kvStore, CortexTSS.CORTEX_TSS).get(10, TimeUnit.SECONDS);
+
+        final long loaded = metrics.counter("externalTagsWarmup.entriesLoaded").getCount();
+        assertTrue(loaded > 0);
+        assertTrue(loaded < 1000);
+        // everything loaded is still cached
+        assertEquals(0, cache.stats().evictionCount());
+        assertEquals(loaded, cache.estimatedSize());
+        assertTrue(cache.policy().eviction().get().weightedSize().getAsLong() <= 10_000);
+    }
+
+    private static KVStoreMock storeWith(final int entries) {
+        final KVStoreMock kvStore = new KVStoreMock();
+        for (int i = 0; i < entries; i++) {
+            kvStore.put("key" + i, "{\"tag\":\"value" + i + "\"}", CortexTSS.CORTEX_TSS);
+        }
+        return kvStore;
+    }
+
+    private static CortexTSSConfig config(final int batchSize) {
+        return CortexTSSConfig.builder()
+                .externalTagsWarmupBatchSize(batchSize)
+                .externalTagsWarmupPauseInMs(0)
+                .build();
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class HotTierTest {
+
+    private static final Metric METRIC = metric("ifHCInOctets");
+
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @Test
+    public void shouldEvaluateGaugesWithTheLatestSample() {
+        final HotTier hotTier = new HotTier(1 << 20, 128, metrics);
+        // every 10s from 1000s on
+        hotTier.add("default", samples(METRIC, 1000, 10, 100, 0));
+
+        final HotTier.Evaluation evaluation = hotTier.evaluate("default", METRIC.getKey(), METRIC,
+                1300_000, 1400_000, 60_000, false, 0);
+        assertEquals(1300_000, evaluation.getFromMs());
+        assertEquals(2, evaluation.getSamples().size());
+        assertEquals(Instant.ofEpochSecond(1360), evaluation.getSamples().get(1).getTime());
+        assertEquals(36d, evaluation.getSamples().get(1).getValue(), 0d);
+        assertEquals(1, metrics.meter("hotTier.queriesAnswered").getCount());
+    }
+
+    @Test
+    public void shouldOnlyEvaluateTheStepsCovered() {
+        final HotTier hotTier = new HotTier(1 << 20, 128, metrics);
+        hotTier.add("default", samples(METRIC, 1000, 10, 100, 0));
+
+        // the steps before 1000s + the lookback delta of 5 minutes may miss samples written before
+        final HotTier.Evaluation evaluation = hotTier.evaluate("default", METRIC.getKey(), METRIC,
+                900_000, 1900_000, 60_000, false, 0);
+        assertEquals(1320_000, evaluation.getFromMs());
+        assertEquals(1, metrics.meter("hotTier.queriesMerged").getCount());
+        // every step from 1320s to 1860s
+        assertEquals(10, evaluation.getSamples().size());
+
+        assertNull(hotTier.evaluate("default", METRIC.getKey(), METRIC, 900_000, 1200_000, 60_000, false, 0));
+        assertNull(hotTier.evaluate("customer1", METRIC.getKey(), METRIC, 1300_000, 1400_000, 60_000, false, 0));
+    }
+
+    @Test
+    public void shouldEvaluateRatesOfCountersLikePrometheus() {
+        final HotTier hotTier = new HotTier(1 << 20, 128, metrics);
+        // increases by 1 per second
+        hotTier.add("default", samples(METRIC, 0, 10, 30, 10));
+
+        final HotTier.Evaluation evaluation = hotTier.evaluate("default", METRIC.getKey(), METRIC,
+                100_000, 200_000, 50_000, true, 60_000);
+        assertEquals(3, evaluation.getSamples().size());
+        evaluation.getSamples().forEach(sample -> assertEquals(1.0d, sample.getValue(), 0.0001d));
+
+        // a counter reset doesn't count as decrease
+        final List<Sample> samples = new ArrayList<>(samples(METRIC, 300, 10, 3, 10));
+        hotTier.add("default", samples);
+        final HotTier.Evaluation afterReset = hotTier.evaluate("default", METRIC.getKey(), METRIC,
+                320_000, 320_000, 50_000, true, 60_000);
+        assertEquals(1, afterReset.getSamples().size());
+        assertEquals(true, afterReset.getSamples().get(0).getValue() > 0);
+    }
+
+    @Test
+    public void shouldOverwriteTheOldestSamples() {
+        final HotTier hotTier = new HotTier(1 << 20, 4, metrics);
+        hotTier.add("default", samples(METRIC, 1000, 10, 6, 0));
+
+        assertNull(hotTier.getSamples("default", METRIC.getKey(), METRIC, 1010_000, 1050_000));
+        final List<Sample> samples = hotTier.getSamples("default", METRIC.getKey(), METRIC, 1011_000, 1050_000);
+        assertEquals(4, samples.size());
+        assertEquals(Instant.ofEpochSecond(1020), samples.get(0).getTime());
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedSeries() {
+        // room for 2 series of 4 samples
+        final HotTier hotTier = new HotTier(128, 4, metrics);
+        final Metric other = metric("ifHCOutOctets");
+        final Metric third = metric("ifInErrors");
+        hotTier.add("default", samples(METRIC, 1000, 10, 2, 0));
+        hotTier.add("default", samples(other, 1000, 10, 2, 0));
+        hotTier.add("default", samples(METRIC, 1020, 10, 1, 0));
+        hotTier.add("default", samples(third, 1000, 10, 2, 0));
+
+        assertEquals(2, hotTier.size());
+        assertEquals(1, metrics.meter("hotTier.seriesEvicted").getCount());
+        assertNull(hotTier.getSamples("default", other.getKey(), other, 1000_000, 1100_000));
+        assertEquals(3, hotTier.getSamples("default", METRIC.getKey(), METRIC, 1000_000, 1100_000).size());
+        assertEquals(2, hotTier.getSamples("default", third.getKey(), third, 1000_000, 1100_000).size());
+    }
+
+    /** Returns count samples every intervalInSeconds, with the seconds since 1000s (or times increase) as value. */
+    private static List<Sample> samples(final Metric metric, final long startInSeconds, final long intervalInSeconds,
+                                        final int count, final double increase) {
+        final List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final long time = startInSeconds + i * intervalInSeconds;
+            samples.add(ImmutableSample.builder()
+                    .metric(metric)
+                    .time(Instant.ofEpochSecond(time))
+                    .value(increase > 0 ? i * increase : (time - 1000) / 10d)
+                    .build());
+        }
+        return samples;
+    }
+
+    private static Metric metric(final String name) {
+        return ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, name)
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp/1/eth0/mib2-X-interfaces")
+                .metaTag("mtype", "gauge")
+                .build();
+    }
+}
@@ -47,7 +47,7 @@ import java.util.concurrent.CompletableFuture;
 
         @Override
         public void delete(String key, String context) {
-            throw new RuntimeException();
+            kvStore.remove(key);
         }
 
         @Override
@@ -94,7 +94,8 @@ import java.util.concurrent.CompletableFuture;
 
         @Override
         public CompletableFuture<Void> deleteAsync(String key, String context) {
-            throw new RuntimeException();
+            kvStore.remove(key);
+            return CompletableFuture.completedFuture(null);
         }
 
         @Override
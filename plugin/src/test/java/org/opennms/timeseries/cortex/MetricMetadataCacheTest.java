@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+
+import com.google.common.base.Ticker;
+
+import prometheus.PrometheusTypes;
+
+public class MetricMetadataCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final MetricMetadataCache cache = new MetricMetadataCache(100, 1000, new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    });
+
+    @Test
+    public void shouldSendMetadataOncePerInterval() {
+        final PrometheusTypes.MetricMetadata metadata = cache.toSend("default", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.counter));
+        assertEquals(PrometheusTypes.MetricMetadata.MetricType.COUNTER, metadata.getType());
+        assertEquals("ifHCInOctets", metadata.getMetricFamilyName());
+        assertNull(cache.toSend("default", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.counter)));
+        // other tenant
+        assertEquals("ifHCInOctets", cache.toSend("customer1", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.counter)).getMetricFamilyName());
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001));
+        assertEquals("ifHCInOctets", cache.toSend("default", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.counter)).getMetricFamilyName());
+    }
+
+    @Test
+    public void shouldSendMetadataToEachEndpoint() {
+        assertEquals("ifHCInOctets", cache.toSend("default", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.counter)).getMetricFamilyName());
+        assertEquals("ifHCInOctets", cache.toSend("default", "http://cortex2", "ifHCInOctets", metric(Metric.Mtype.counter)).getMetricFamilyName());
+        assertNull(cache.toSend("default", "http://cortex2", "ifHCInOctets", metric(Metric.Mtype.counter)));
+        assertEquals(PrometheusTypes.MetricMetadata.MetricType.COUNTER, cache.get("default", "ifHCInOctets"));
+
+        cache.invalidate("default", "http://cortex2", "ifHCInOctets");
+        assertNull(cache.toSend("default", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.counter)));
+        assertEquals("ifHCInOctets", cache.toSend("default", "http://cortex2", "ifHCInOctets", metric(Metric.Mtype.counter)).getMetricFamilyName());
+    }
+
+    @Test
+    public void shouldResendChangedOrInvalidatedMetadata() {
+        cache.toSend("default", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.counter));
+        assertEquals(PrometheusTypes.MetricMetadata.MetricType.GAUGE,
+                cache.toSend("default", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.gauge)).getType());
+
+        cache.invalidate("default", "http://cortex1", "ifHCInOctets");
+        assertNull(cache.get("default", "ifHCInOctets"));
+        assertEquals(PrometheusTypes.MetricMetadata.MetricType.GAUGE,
+                cache.toSend("default", "http://cortex1", "ifHCInOctets", metric(Metric.Mtype.gauge)).getType());
+    }
+
+    @Test
+    public void shouldNotSendUnknownTypes() {
+        assertNull(cache.toSend("default", "http://cortex1", "ifHCInOctets", ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+                .build()));
+        assertNull(MetricMetadataCache.toMtype(PrometheusTypes.MetricMetadata.MetricType.HISTOGRAM));
+        assertEquals(Metric.Mtype.counter, MetricMetadataCache.toMtype(PrometheusTypes.MetricMetadata.MetricType.COUNTER));
+    }
+
+    private static Metric metric(final Metric.Mtype type) {
+        return ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:eth0")
+                .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+                .metaTag("mtype", type.name())
+                .build();
+    }
+}
@@ -0,0 +1,625 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.xerial.snappy.Snappy;
+
+import com.google.protobuf.ByteString;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import io.prometheus.write.v2.PrometheusWriteV2;
+import prometheus.PrometheusRemote;
+import prometheus.PrometheusTypes;
+
+/**
+ * In-process stand-in for Cortex: decodes Snappy compressed remote-write requests (1.0 and 2.0) into an in-memory store and
+ * answers /series, /query_range (for the queries built by {@link CortexTSS}), /metadata, remote-read requests
+ * (as STREAMED_XOR_CHUNKS) and series deletions from it.
+ * Latency and error responses (e.g. 429 or 5xx) can be injected to test backpressure without a Docker environment.
+ */
+public class MockCortexServer implements AutoCloseable {
+
+    public static final String WRITE_PATH = "/api/prom/push";
+    public static final String READ_PATH = "/prometheus/api/v1";
+
+    private static final long LOOKBACK_IN_MS = Duration.ofMinutes(5).toMillis();
+    private static final Pattern MATCHER_PATTERN = Pattern.compile("\\s*([a-zA-Z_][a-zA-Z0-9_]*)\\s*(=~|!~|!=|=)\\s*\"((?:[^\"\\\\]|\\\\.)*)\"\\s*,?");
+    private static final Pattern AGGREGATION_PATTERN = Pattern.compile("^(avg|max|min)\\((.*)\\)$");
+    private static final Pattern RATE_PATTERN = Pattern.compile("^rate\\((\\{.*\\})\\[(\\d+)s\\]\\)$");
+    private static final Pattern OVER_TIME_PATTERN = Pattern.compile("^(max|min|sum)_over_time\\((\\{.*\\})\\[(\\d+)s\\]\\)$");
+
+    // MockWebServer logs every request on INFO, keep a reference so that the level sticks
+    private static final Logger MOCK_WEB_SERVER_LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+    private final MockWebServer server;
+    // series labels (sorted by name) => samples by timestamp in ms
+    private final Map<Map<String, String>, NavigableMap<Long, Double>> series = new ConcurrentHashMap<>();
+
+    private final AtomicLong writeRequestsReceived = new AtomicLong();
+    private final AtomicLong samplesReceived = new AtomicLong();
+    private final AtomicLong readRequestsReceived = new AtomicLong();
+    private final AtomicLong requestsFailed = new AtomicLong();
+    private final AtomicLong deleteRequestsReceived = new AtomicLong();
+    private final AtomicLong writeBytesReceived = new AtomicLong();
+    // metric types received with remote write 2.0, by series labels
+    private final Map<Map<String, String>, PrometheusWriteV2.Metadata.MetricType> metricTypes = new ConcurrentHashMap<>();
+    // metric family => type, as returned by the metadata api
+    private final Map<String, String> metadata = new ConcurrentHashMap<>();
+    private final AtomicLong metadataRequestsReceived = new AtomicLong();
+    private final AtomicLong metadataReceived = new AtomicLong();
+    private final List<String> queriesReceived = new CopyOnWriteArrayList<>();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile double failureRate = 0.0d;
+    private volatile int failureStatusCode = 503;
+
+    public MockCortexServer() throws IOException {
+        MOCK_WEB_SERVER_LOGGER.setLevel(Level.WARNING);
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                return handle(request);
+            }
+        });
+        server.start();
+    }
+
+    public String getWriteUrl() {
+        return getBaseUrl() + WRITE_PATH;
+    }
+
+    public String getReadUrl() {
+        return getBaseUrl() + READ_PATH;
+    }
+
+    private String getBaseUrl() {
+        return String.format("http://%s:%d", server.getHostName(), server.getPort());
+    }
+
+    /** Delays every response by the given duration. */
+    public MockCortexServer withLatency(final Duration latency) {
+        this.latency = Objects.requireNonNull(latency);
+        return this;
+    }
+
+    /** Answers the given fraction (0..1) of all requests with the given status code, e.g. 429 or 503. */
+    public MockCortexServer withFailures(final double failureRate, final int statusCode) {
+        this.failureRate = failureRate;
+        this.failureStatusCode = statusCode;
+        return this;
+    }
+
+    /** Answers the metadata api with the given type for the metric family, as if another source had written it. */
+    public MockCortexServer withMetadata(final String family, final String type) {
+        metadata.put(family, type);
+        return this;
+    }
+
+    public long getWriteRequestsReceived() {
+        return writeRequestsReceived.get();
+    }
+
+    public long getSamplesReceived() {
+        return samplesReceived.get();
+    }
+
+    public long getReadRequestsReceived() {
+        return readRequestsReceived.get();
+    }
+
+    public long getRequestsFailed() {
+        return requestsFailed.get();
+    }
+
+    public long getDeleteRequestsReceived() {
+        return deleteRequestsReceived.get();
+    }
+
+    /** Returns the size of all write requests received so far, uncompressed. */
+    public long getWriteBytesReceived() {
+        return writeBytesReceived.get();
+    }
+
+    /** Returns the metric type of a series received with remote write 2.0, null otherwise. */
+    public PrometheusWriteV2.Metadata.MetricType getMetricType(final Map<String, String> labels) {
+        return metricTypes.get(labels);
+    }
+
+    /** Returns the number of metadata entries received with remote write 1.0 requests. */
+    public long getMetadataReceived() {
+        return metadataReceived.get();
+    }
+
+    public long getMetadataRequestsReceived() {
+        return metadataRequestsReceived.get();
+    }
+
+    /** Returns the type of the metric family received as metadata, null if none. */
+    public String getMetadata(final String family) {
+        return metadata.get(family);
+    }
+
+    /** Returns the queries of all range queries received so far. */
+    public List<String> getQueriesReceived() {
+        return new ArrayList<>(queriesReceived);
+    }
+
+    /** Returns the labels of all series received so far. */
+    public List<Map<String, String>> getSeries() {
+        return new ArrayList<>(series.keySet());
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    private MockResponse handle(final RecordedRequest request) {
+        final String path = request.getPath();
+        final int idx = path.indexOf('?');
+        final String endpoint = idx < 0 ? path : path.substring(0, idx);
+        final Map<String, String> params = parseQuery(idx < 0 ? null : path.substring(idx + 1));
+
+        final MockResponse response = new MockResponse();
+        if (!latency.isZero()) {
+            response.setHeadersDelay(latency.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            requestsFailed.incrementAndGet();
+            return response.setResponseCode(failureStatusCode).setBody("injected failure");
+        }
+        try {
+            if (WRITE_PATH.equals(endpoint)) {
+                if (CortexTSSConfig.RemoteWriteVersion.V2.getContentType().equals(request.getHeader("Content-Type"))) {
+                    handleWriteV2(request.getBody().readByteArray());
+                } else {
+                    handleWrite(request.getBody().readByteArray());
+                }
+                return response.setResponseCode(200);
+            } else if ((READ_PATH + "/series").equals(endpoint)) {
+                return response.setResponseCode(200).setBody(handleSeries(params));
+            } else if ((READ_PATH + "/metadata").equals(endpoint)) {
+                return response.setResponseCode(200).setBody(handleMetadata(params));
+            } else if ((READ_PATH + "/query_range").equals(endpoint)) {
+                return response.setResponseCode(200).setBody(handleQueryRange(params));
+            } else if ((READ_PATH + CortexTSS.DELETE_SERIES_PATH).equals(endpoint)) {
+                handleDeleteSeries(request.getBody().readUtf8());
+                return response.setResponseCode(204);
+            } else if ((READ_PATH + "/read").equals(endpoint)) {
+                return response.setResponseCode(200)
+                        .setHeader("Content-Type", RemoteReadMapper.STREAMED_CONTENT_TYPE)
+                        .setBody(handleRemoteRead(request.getBody().readByteArray()));
+            }
+            return response.setResponseCode(404);
+        } catch (IOException | RuntimeException e) {
+            return response.setResponseCode(400).setBody(String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void handleWrite(final byte[] compressed) throws IOException {
+        writeRequestsReceived.incrementAndGet();
+        final byte[] uncompressed = Snappy.uncompress(compressed);
+        writeBytesReceived.addAndGet(uncompressed.length);
+        final PrometheusRemote.WriteRequest writeRequest = PrometheusRemote.WriteRequest.parseFrom(uncompressed);
+        for (PrometheusTypes.TimeSeries ts : writeRequest.getTimeseriesList()) {
+            final Map<String, String> labels = new TreeMap<>();
+            ts.getLabelsList().forEach(l -> labels.put(l.getName(), l.getValue()));
+            final NavigableMap<Long, Double> samples = series.computeIfAbsent(Collections.unmodifiableMap(labels), k -> new ConcurrentSkipListMap<>());
+            ts.getSamplesList().forEach(s -> samples.put(s.getTimestamp(), s.getValue()));
+            samplesReceived.addAndGet(ts.getSamplesCount());
+        }
+        for (PrometheusTypes.MetricMetadata m : writeRequest.getMetadataList()) {
+            metadata.put(m.getMetricFamilyName(), m.getType().name().toLowerCase(Locale.ROOT));
+            metadataReceived.incrementAndGet();
+        }
+    }
+
+    /** Decodes a remote write 2.0 request, rejecting the ones that violate the spec (symbol table, label references). */
+    private void handleWriteV2(final byte[] compressed) throws IOException {
+        writeRequestsReceived.incrementAndGet();
+        final byte[] uncompressed = Snappy.uncompress(compressed);
+        writeBytesReceived.addAndGet(uncompressed.length);
+        final PrometheusWriteV2.Request writeRequest = PrometheusWriteV2.Request.parseFrom(uncompressed);
+        final List<String> symbols = writeRequest.getSymbolsList();
+        if (symbols.isEmpty() || !symbols.get(0).isEmpty()) {
+            throw new IllegalArgumentException("the first symbol must be the empty string");
+        }
+        for (PrometheusWriteV2.TimeSeries ts : writeRequest.getTimeseriesList()) {
+            if (ts.getLabelsRefsCount() % 2 != 0) {
+                throw new IllegalArgumentException("odd number of label references");
+            }
+            final Map<String, String> labels = new TreeMap<>();
+            String previousName = "";
+            for (int i = 0; i < ts.getLabelsRefsCount(); i += 2) {
+                final String name = symbols.get(ts.getLabelsRefs(i));
+                if (name.compareTo(previousName) <= 0) {
+                    throw new IllegalArgumentException("labels not sorted by name: " + name);
+                }
+                labels.put(name, symbols.get(ts.getLabelsRefs(i + 1)));
+                previousName = name;
+            }
+            final Map<String, String> key = Collections.unmodifiableMap(labels);
+            final NavigableMap<Long, Double> samples = series.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>());
+            ts.getSamplesList().forEach(s -> samples.put(s.getTimestamp(), s.getValue()));
+            samplesReceived.addAndGet(ts.getSamplesCount());
+            metricTypes.put(key, ts.getMetadata().getType());
+            if (ts.getMetadata().getType() != PrometheusWriteV2.Metadata.MetricType.METRIC_TYPE_UNSPECIFIED) {
+                metadata.put(labels.get(CortexTSS.METRIC_NAME_LABEL),
+                        ts.getMetadata().getType().name().substring("METRIC_TYPE_".length()).toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    private String handleMetadata(final Map<String, String> params) {
+        metadataRequestsReceived.incrementAndGet();
+        final JSONObject data = new JSONObject();
+        metadata.forEach((family, type) -> {
+            if (params.get("metric") == null || params.get("metric").equals(family)) {
+                data.put(family, new JSONArray().put(new JSONObject().put("type", type).put("help", "").put("unit", "")));
+            }
+        });
+        return new JSONObject()
+                .put("status", "success")
+                .put("data", data)
+                .toString();
+    }
+
+    private void handleDeleteSeries(final String form) {
+        deleteRequestsReceived.incrementAndGet();
+        // every match[] parameter is a selector of its own, series matching any of them are deleted
+        final List<List<LabelMatcher>> selectors = new ArrayList<>();
+        for (String part : form.split("&")) {
+            final int idx = part.indexOf('=');
+            if (idx > 0 && "match[]".equals(URLDecoder.decode(part.substring(0, idx), StandardCharsets.UTF_8))) {
+                selectors.add(parseSelector(URLDecoder.decode(part.substring(idx + 1), StandardCharsets.UTF_8)));
+            }
+        }
+        if (selectors.isEmpty()) {
+            throw new IllegalArgumentException("no match[] parameter");
+        }
+        series.keySet().removeIf(labels -> selectors.stream().anyMatch(matchers -> matches(matchers, labels)));
+    }
+
+    private String handleSeries(final Map<String, String> params) {
+        readRequestsReceived.incrementAndGet();
+        final List<LabelMatcher> matchers = parseSelector(params.get("match[]"));
+        final JSONArray data = new JSONArray();
+        series.keySet().stream()
+                .filter(labels -> matches(matchers, labels))
+                .forEach(labels -> data.put(new JSONObject(labels)));
+        return new JSONObject()
+                .put("status", "success")
+                .put("data", data)
+                .toString();
+    }
+
+    private String handleQueryRange(final Map<String, String> params) {
+        readRequestsReceived.incrementAndGet();
+        queriesReceived.add(params.get("query"));
+        final long start = (long) (Double.parseDouble(params.get("start")) * 1000);
+        final long end = (long) (Double.parseDouble(params.get("end")) * 1000);
+        final long step = Long.parseLong(params.get("step").replace("s", "")) * 1000;
+
+        String query = params.get("query").trim();
+        String aggregation = null;
+        Matcher m = AGGREGATION_PATTERN.matcher(query);
+        if (m.matches()) {
+            aggregation = m.group(1);
+            query = m.group(2).trim();
+        }
+        long rateWindow = -1;
+        m = RATE_PATTERN.matcher(query);
+        if (m.matches()) {
+            query = m.group(1);
+            rateWindow = Long.parseLong(m.group(2)) * 1000;
+        }
+        String overTime = null;
+        long overTimeWindow = -1;
+        m = OVER_TIME_PATTERN.matcher(query);
+        if (m.matches()) {
+            overTime = m.group(1);
+            query = m.group(2);
+            overTimeWindow = Long.parseLong(m.group(3)) * 1000;
+        }
+        final List<LabelMatcher> matchers = parseSelector(query);
+
+        final Map<Map<String, String>, NavigableMap<Long, Double>> results = new HashMap<>();
+        final NavigableMap<Long, List<Double>> toAggregate = new TreeMap<>();
+        for (Map.Entry<Map<String, String>, NavigableMap<Long, Double>> entry : series.entrySet()) {
+            if (!matches(matchers, entry.getKey())) {
+                continue;
+            }
+            final NavigableMap<Long, Double> values = new TreeMap<>();
+            for (long t = start; t <= end; t += step) {
+                final Double value = rateWindow > 0 ? rate(entry.getValue(), t, rateWindow)
+                        : overTime != null ? overTime(overTime, entry.getValue(), t, overTimeWindow)
+                        : latest(entry.getValue(), t);
+                if (value != null) {
+                    values.put(t, value);
+                    toAggregate.computeIfAbsent(t, k -> new ArrayList<>()).add(value);
+                }
+            }
+            if (aggregation == null && !values.isEmpty()) {
+                results.put(entry.getKey(), values);
+            }
+        }
+        if (aggregation != null && !toAggregate.isEmpty()) {
+            results.put(Collections.emptyMap(), aggregate(aggregation, toAggregate));
+        }
+
+        final JSONArray result = new JSONArray();
+        results.forEach((labels, values) -> {
+            final JSONArray jsonValues = new JSONArray();
+            values.forEach((t, v) -> jsonValues.put(new JSONArray().put(t / 1000.0d).put(Double.toString(v))));
+            result.put(new JSONObject()
+                    .put("metric", new JSONObject(labels))
+                    .put("values", jsonValues));
+        });
+        return new JSONObject()
+                .put("status", "success")
+                .put("data", new JSONObject()
+                        .put("resultType", "matrix")
+                        .put("result", result))
+                .toString();
+    }
+
+    private Buffer handleRemoteRead(final byte[] compressed) throws IOException {
+        readRequestsReceived.incrementAndGet();
+        final PrometheusRemote.ReadRequest readRequest = PrometheusRemote.ReadRequest.parseFrom(Snappy.uncompress(compressed));
+        final Buffer body = new Buffer();
+        for (int queryIndex = 0; queryIndex < readRequest.getQueriesCount(); queryIndex++) {
+            final PrometheusRemote.Query query = readRequest.getQueries(queryIndex);
+            final List<LabelMatcher> matchers = new ArrayList<>();
+            for (PrometheusTypes.LabelMatcher m : query.getMatchersList()) {
+                matchers.add(new LabelMatcher(m.getName(), toOperator(m.getType()), m.getValue()));
+            }
+            for (Map.Entry<Map<String, String>, NavigableMap<Long, Double>> entry : series.entrySet()) {
+                if (!matches(matchers, entry.getKey())) {
+                    continue;
+                }
+                final PrometheusTypes.ChunkedSeries.Builder chunkedSeries = PrometheusTypes.ChunkedSeries.newBuilder();
+                entry.getKey().forEach((name, value) -> chunkedSeries.addLabels(PrometheusTypes.Label.newBuilder().setName(name).setValue(value)));
+                XorChunkEncoder encoder = new XorChunkEncoder();
+                long minTime = 0;
+                long maxTime = 0;
+                for (Map.Entry<Long, Double> sample : entry.getValue().subMap(query.getStartTimestampMs(), true, query.getEndTimestampMs(), true).entrySet()) {
+                    if (encoder.getNumSamples() == 0) {
+                        minTime = sample.getKey();
+                    }
+                    encoder.append(sample.getKey(), sample.getValue());
+                    maxTime = sample.getKey();
+                    // Prometheus cuts chunks at 120 samples
+                    if (encoder.getNumSamples() == 120) {
+                        chunkedSeries.addChunks(toChunk(encoder, minTime, maxTime));
+                        encoder = new XorChunkEncoder();
+                    }
+                }
+                if (encoder.getNumSamples() > 0) {
+                    chunkedSeries.addChunks(toChunk(encoder, minTime, maxTime));
+                }
+                writeFrame(body, PrometheusRemote.ChunkedReadResponse.newBuilder()
+                        .setQueryIndex(queryIndex)
+                        .addChunkedSeries(chunkedSeries)
+                        .build()
+                        .toByteArray());
+            }
+        }
+        return body;
+    }
+
+    private static PrometheusTypes.Chunk toChunk(final XorChunkEncoder encoder, final long minTime, final long maxTime) {
+        return PrometheusTypes.Chunk.newBuilder()
+                .setType(PrometheusTypes.Chunk.Encoding.XOR)
+                .setMinTimeMs(minTime)
+                .setMaxTimeMs(maxTime)
+                .setData(ByteString.copyFrom(encoder.toByteArray()))
+                .build();
+    }
+
+    private static void writeFrame(final Buffer body, final byte[] message) {
+        long size = message.length;
+        while ((size & ~0x7fL) != 0) {
+            body.writeByte((int) ((size & 0x7f) | 0x80));
+            size >>>= 7;
+        }
+        body.writeByte((int) size);
+        final CRC32C crc = new CRC32C();
+        crc.update(message);
+        body.writeInt((int) crc.getValue());
+        body.write(message);
+    }
+
+    private static String toOperator(final PrometheusTypes.LabelMatcher.Type type) {
+        switch (type) {
+            case NEQ:
+                return "!=";
+            case RE:
+                return "=~";
+            case NRE:
+                return "!~";
+            default:
+                return "=";
+        }
+    }
+
+    private static Double latest(final NavigableMap<Long, Double> samples, final long t) {
+        final Map.Entry<Long, Double> entry = samples.floorEntry(t);
+        if (entry == null || entry.getKey() <= t - LOOKBACK_IN_MS) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    private static Double overTime(final String function, final NavigableMap<Long, Double> samples, final long t, final long window) {
+        final Collection<Double> inWindow = samples.subMap(t - window, false, t, true).values();
+        if (inWindow.isEmpty()) {
+            return null;
+        }
+        switch (function) {
+            case "max":
+                return Collections.max(inWindow);
+            case "min":
+                return Collections.min(inWindow);
+            default:
+                return inWindow.stream().mapToDouble(Double::doubleValue).sum();
+        }
+    }
+
+    private static Double rate(final NavigableMap<Long, Double> samples, final long t, final long window) {
+        final NavigableMap<Long, Double> inWindow = samples.subMap(t - window, false, t, true);
+        if (inWindow.size() < 2) {
+            return null;
+        }
+        final Map.Entry<Long, Double> first = inWindow.firstEntry();
+        final Map.Entry<Long, Double> last = inWindow.lastEntry();
+        return (last.getValue() - first.getValue()) / ((last.getKey() - first.getKey()) / 1000.0d);
+    }
+
+    private static NavigableMap<Long, Double> aggregate(final String function, final NavigableMap<Long, List<Double>> values) {
+        final NavigableMap<Long, Double> aggregated = new TreeMap<>();
+        values.forEach((t, v) -> {
+            final DoubleSummaryStatistics stats = v.stream().mapToDouble(Double::doubleValue).summaryStatistics();
+            switch (function) {
+                case "max":
+                    aggregated.put(t, stats.getMax());
+                    break;
+                case "min":
+                    aggregated.put(t, stats.getMin());
+                    break;
+                default:
+                    aggregated.put(t, stats.getAverage());
+            }
+        });
+        return aggregated;
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String part : rawQuery.split("&")) {
+            final int idx = part.indexOf('=');
+            final String key = decode(idx < 0 ? part : part.substring(0, idx));
+            final String value = idx < 0 ? "" : decode(part.substring(idx + 1));
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static String decode(final String s) {
+        // OkHttp doesn't encode '+' in the query, keep it as it is
+        return URLDecoder.decode(s.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    static List<LabelMatcher> parseSelector(final String selector) {
+        Objects.requireNonNull(selector, "selector");
+        final String trimmed = selector.trim();
+        if (!trimmed.startsWith("{") || !trimmed.endsWith("}")) {
+            throw new IllegalArgumentException("Unsupported selector: " + selector);
+        }
+        final String inner = trimmed.substring(1, trimmed.length() - 1);
+        final List<LabelMatcher> matchers = new ArrayList<>();
+        final Matcher m = MATCHER_PATTERN.matcher(inner);
+        int pos = 0;
+        while (pos < inner.length() && m.find(pos) && m.start() == pos) {
+            final String value = m.group(3).replace("\\\"", "\"").replace("\\\\", "\\");
+            matchers.add(new LabelMatcher(m.group(1), m.group(2), value));
+            pos = m.end();
+        }
+        if (pos < inner.trim().length()) {
+            throw new IllegalArgumentException("Unsupported selector: " + selector);
+        }
+        return matchers;
+    }
+
+    private static boolean matches(final List<LabelMatcher> matchers, final Map<String, String> labels) {
+        return matchers.stream().allMatch(m -> m.matches(labels.getOrDefault(m.name, "")));
+    }
+
+    static class LabelMatcher {
+        private final String name;
+        private final String operator;
+        private final String value;
+        private final Pattern pattern;
+
+        LabelMatcher(final String name, final String operator, final String value) {
+            this.name = name;
+            this.operator = operator;
+            this.value = value;
+            this.pattern = operator.contains("~") ? Pattern.compile(value) : null;
+        }
+
+        boolean matches(final String labelValue) {
+            switch (operator) {
+                case "=":
+                    return value.equals(labelValue);
+                case "!=":
+                    return !value.equals(labelValue);
+                case "=~":
+                    return pattern.matcher(labelValue).matches();
+                default:
+                    return !pattern.matcher(labelValue).matches();
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+
+import prometheus.PrometheusTypes;
+
+public class RelabelerTest {
+
+    private static final Metric METRIC = ImmutableMetric.builder()
+            .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+            .intrinsicTag(IntrinsicTagNames.resourceId, "snmp/1/eth0-04013f75f101/mib2-X-interfaces")
+            .metaTag("node", "fs:router1")
+            .metaTag("ifDescr", "eth0")
+            .metaTag("ifAlias", "uplink")
+            .build();
+
+    @Test
+    public void shouldDropLabels() {
+        assertEquals(Map.of("__name__", "ifHCInOctets", "resourceId", "snmp/1/eth0-04013f75f101/mib2-X-interfaces", "node", "fs:router1"),
+                relabel("[{\"action\": \"labeldrop\", \"regex\": \"ifDescr|ifAlias\"}]"));
+        assertEquals(Map.of("__name__", "ifHCInOctets", "node", "fs:router1"),
+                relabel("[{\"action\": \"labelkeep\", \"regex\": \"__name__|node\"}]"));
+    }
+
+    @Test
+    public void shouldKeepAndDropSeries() {
+        assertNull(relabel("[{\"action\": \"drop\", \"source_labels\": [\"__name__\"], \"regex\": \"ifHC.*\"}]"));
+        assertEquals(5, relabel("[{\"action\": \"drop\", \"source_labels\": [\"__name__\"], \"regex\": \"ifHC\"}]").size());
+        assertNull(relabel("[{\"action\": \"keep\", \"source_labels\": [\"__name__\", \"node\"], \"regex\": \"ifHCInOctets;fs:router2\"}]"));
+        assertEquals(5, relabel("[{\"action\": \"keep\", \"source_labels\": [\"__name__\", \"node\"], \"regex\": \"ifHCInOctets;fs:router1\"}]").size());
+    }
+
+    @Test
+    public void shouldReplaceLabels() {
+        Map<String, String> labels = relabel("[{\"source_labels\": [\"node\"], \"regex\": \"(.*):(.*)\", \"target_label\": \"requisition\"},"
+                + "{\"action\": \"replace\", \"source_labels\": [\"ifAlias\"], \"regex\": \"up.*\", \"target_label\": \"ifAlias\", \"replacement\": \"\"}]");
+        assertEquals("fs", labels.get("requisition"));
+        // empty replacement removes the label
+        assertEquals(null, labels.get("ifAlias"));
+    }
+
+    @Test
+    public void shouldSortAndCacheLabels() {
+        Relabeler relabeler = new Relabeler(Relabeler.parseRules("[{\"action\": \"labeldrop\", \"regex\": \"ifAlias\"}]"), 10);
+        List<PrometheusTypes.Label> labels = relabeler.getLabels(METRIC);
+        assertEquals(List.of("__name__", "ifDescr", "node", "resourceId"),
+                labels.stream().map(PrometheusTypes.Label::getName).collect(Collectors.toList()));
+        assertSame(labels, relabeler.getLabels(METRIC));
+
+        // same key, other meta tags
+        Metric other = ImmutableMetric.builder()
+                .intrinsicTags(METRIC.getIntrinsicTags())
+                .metaTag("node", "fs:router2")
+                .build();
+        assertEquals("fs:router2", relabeler.getLabels(other).get(1).getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectReplaceWithoutTargetLabel() {
+        CortexTSSConfig.builder().writeRelabelConfigs("[{\"action\": \"replace\", \"source_labels\": [\"node\"]}]").build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidJson() {
+        CortexTSSConfig.builder().writeRelabelConfigs("{\"action\": \"drop\"").build();
+    }
+
+    private static Map<String, String> relabel(final String rules) {
+        final List<PrometheusTypes.Label> labels = new Relabeler(Relabeler.parseRules(rules), 10).getLabels(METRIC);
+        return labels == null ? null : labels.stream().collect(Collectors.toMap(PrometheusTypes.Label::getName, PrometheusTypes.Label::getValue));
+    }
+}
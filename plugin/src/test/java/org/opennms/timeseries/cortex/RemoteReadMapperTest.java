@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import com.google.protobuf.ByteString;
+
+import prometheus.PrometheusRemote;
+import prometheus.PrometheusTypes;
+
+public class RemoteReadMapperTest {
+
+    private final Metric metric = ImmutableMetric.builder()
+            .intrinsicTag(IntrinsicTagNames.name, "ifHCInOctets")
+            .build();
+
+    @Test
+    public void canDecodeXorChunks() {
+        Random random = new Random(42);
+        List<Long> expectedTimes = new ArrayList<>();
+        List<Double> expectedValues = new ArrayList<>();
+        XorChunkEncoder encoder = new XorChunkEncoder();
+        long t = 1_602_783_564_123L;
+        double v = 42.3;
+        for (int i = 0; i < 1000; i++) {
+            // mix regular intervals, jitter and large gaps to hit all delta-of-delta buckets
+            int kind = random.nextInt(5);
+            t += kind == 0 ? 30_000 : kind == 1 ? 30_000 + random.nextInt(500) : kind == 2 ? random.nextInt(100_000) : kind == 3 ? random.nextInt(1_000_000) : 1 + random.nextInt(Integer.MAX_VALUE);
+            v = random.nextInt(3) == 0 ? v : random.nextBoolean() ? v + random.nextInt(10) : random.nextDouble() * 1e9;
+            encoder.append(t, v);
+            expectedTimes.add(t);
+            expectedValues.add(v);
+        }
+
+        List<Long> times = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        XorChunkDecoder.decode(encoder.toByteArray(), (time, value) -> {
+            times.add(time);
+            values.add(value);
+        });
+        assertEquals(expectedTimes.size(), times.size());
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(expectedTimes.get(i), times.get(i));
+            assertEquals(expectedValues.get(i), values.get(i));
+        }
+    }
+
+    @Test
+    public void canMapChunkedReadResponse() throws IOException {
+        XorChunkEncoder first = new XorChunkEncoder().append(1000, 1.0).append(2000, 2.0).append(3000, 3.0);
+        // overlaps with the first chunk and contains a stale marker
+        XorChunkEncoder second = new XorChunkEncoder().append(3000, 3.0).append(4000, Double.NaN).append(5000, 5.0).append(9000, 9.0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFrame(out, PrometheusRemote.ChunkedReadResponse.newBuilder()
+                .addChunkedSeries(PrometheusTypes.ChunkedSeries.newBuilder()
+                        .addChunks(chunk(first, 1000, 3000)))
+                .build().toByteArray());
+        writeFrame(out, PrometheusRemote.ChunkedReadResponse.newBuilder()
+                .addChunkedSeries(PrometheusTypes.ChunkedSeries.newBuilder()
+                        .addChunks(chunk(second, 3000, 9000)))
+                .build().toByteArray());
+
+        List<Sample> samples = RemoteReadMapper.fromChunkedReadResponse(new ByteArrayInputStream(out.toByteArray()), metric,
+                Instant.ofEpochMilli(2000), Instant.ofEpochMilli(5000));
+        assertEquals(3, samples.size());
+        assertEquals(Instant.ofEpochMilli(2000), samples.get(0).getTime());
+        assertEquals(Instant.ofEpochMilli(3000), samples.get(1).getTime());
+        assertEquals(Instant.ofEpochMilli(5000), samples.get(2).getTime());
+        assertEquals(5.0d, samples.get(2).getValue(), 0.0d);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectCorruptFrames() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFrame(out, PrometheusRemote.ChunkedReadResponse.newBuilder().setQueryIndex(1).build().toByteArray());
+        byte[] bytes = out.toByteArray();
+        bytes[bytes.length - 1] ^= 0x01;
+        RemoteReadMapper.fromChunkedReadResponse(new ByteArrayInputStream(bytes), metric, Instant.EPOCH, Instant.now());
+    }
+
+    @Test
+    public void canCalculateRates() {
+        List<Sample> counter = new ArrayList<>();
+        counter.add(sample(0, 100));
+        counter.add(sample(10_000, 200));
+        counter.add(sample(20_000, 50)); // counter reset
+        List<Sample> rates = RemoteReadMapper.toRates(counter);
+        assertEquals(2, rates.size());
+        assertEquals(10.0d, rates.get(0).getValue(), 0.0d);
+        assertEquals(5.0d, rates.get(1).getValue(), 0.0d);
+    }
+
+    private Sample sample(long time, double value) {
+        return ImmutableSample.builder().metric(metric).time(Instant.ofEpochMilli(time)).value(value).build();
+    }
+
+    private static PrometheusTypes.Chunk chunk(XorChunkEncoder encoder, long minTime, long maxTime) {
+        return PrometheusTypes.Chunk.newBuilder()
+                .setType(PrometheusTypes.Chunk.Encoding.XOR)
+                .setMinTimeMs(minTime)
+                .setMaxTimeMs(maxTime)
+                .setData(ByteString.copyFrom(encoder.toByteArray()))
+                .build();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, byte[] message) {
+        long size = message.length;
+        while ((size & ~0x7fL) != 0) {
+            out.write((int) ((size & 0x7f) | 0x80));
+            size >>>= 7;
+        }
+        out.write((int) size);
+        CRC32C crc = new CRC32C();
+        crc.update(message);
+        long checksum = crc.getValue();
+        out.write((int) (checksum >>> 24));
+        out.write((int) (checksum >>> 16));
+        out.write((int) (checksum >>> 8));
+        out.write((int) checksum);
+        out.write(message, 0, message.length);
+    }
+}
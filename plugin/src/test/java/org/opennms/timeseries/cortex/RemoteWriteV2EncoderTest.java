@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import io.prometheus.write.v2.PrometheusWriteV2;
+
+public class RemoteWriteV2EncoderTest {
+
+    @Test
+    public void shouldInternLabelsAndGroupSamplesBySeries() {
+        final Metric heap = metric("heapUsed", Metric.Mtype.gauge);
+        final Metric octets = metric("ifHCInOctets", Metric.Mtype.counter);
+        final RemoteWriteV2Encoder encoder = new RemoteWriteV2Encoder();
+        encoder.add(sample(heap, 1000L, 1.0d), CortexTSS.toPrometheusLabels(heap));
+        encoder.add(sample(octets, 1000L, 2.0d), CortexTSS.toPrometheusLabels(octets));
+        encoder.add(sample(heap, 2000L, 3.0d), CortexTSS.toPrometheusLabels(heap));
+
+        final PrometheusWriteV2.Request request = encoder.build();
+        // the empty string, the 3 label names and their 5 distinct values
+        assertEquals(List.of("", "__name__", "heapUsed", "mtype", "gauge", "resourceId", "snmp:1:opennms-jvm",
+                "ifHCInOctets", "counter"), request.getSymbolsList());
+        assertEquals(2, request.getTimeseriesCount());
+
+        final PrometheusWriteV2.TimeSeries heapSeries = request.getTimeseries(0);
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), heapSeries.getLabelsRefsList());
+        assertEquals(2, heapSeries.getSamplesCount());
+        assertEquals(1000L, heapSeries.getSamples(0).getTimestamp());
+        assertEquals(3.0d, heapSeries.getSamples(1).getValue(), 0.0d);
+        assertEquals(PrometheusWriteV2.Metadata.MetricType.METRIC_TYPE_GAUGE, heapSeries.getMetadata().getType());
+
+        final PrometheusWriteV2.TimeSeries octetsSeries = request.getTimeseries(1);
+        assertEquals(List.of(1, 7, 3, 8, 5, 6), octetsSeries.getLabelsRefsList());
+        assertEquals(1, octetsSeries.getSamplesCount());
+        assertEquals(PrometheusWriteV2.Metadata.MetricType.METRIC_TYPE_COUNTER, octetsSeries.getMetadata().getType());
+    }
+
+    @Test
+    public void shouldMapMetricTypes() {
+        assertEquals(PrometheusWriteV2.Metadata.MetricType.METRIC_TYPE_COUNTER, RemoteWriteV2Encoder.toMetricType(metric("a", Metric.Mtype.count)));
+        assertEquals(PrometheusWriteV2.Metadata.MetricType.METRIC_TYPE_GAUGE, RemoteWriteV2Encoder.toMetricType(metric("a", Metric.Mtype.rate)));
+        assertEquals(PrometheusWriteV2.Metadata.MetricType.METRIC_TYPE_UNSPECIFIED, RemoteWriteV2Encoder.toMetricType(ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, "a")
+                .build()));
+    }
+
+    private static Metric metric(final String name, final Metric.Mtype type) {
+        return ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.resourceId, "snmp:1:opennms-jvm")
+                .intrinsicTag(IntrinsicTagNames.name, name)
+                .metaTag("mtype", type.name())
+                .build();
+    }
+
+    private static Sample sample(final Metric metric, final long time, final double value) {
+        return ImmutableSample.builder().metric(metric).time(Instant.ofEpochMilli(time)).value(value).build();
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class ReorderBufferTest {
+
+    private static final Metric HEAP = metric("heap");
+    private static final Metric THREADS = metric("threads");
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final Map<String, List<Sample>> sent = new LinkedHashMap<>();
+    private ReorderBuffer buffer;
+
+    @After
+    public void tearDown() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void shouldReleaseSamplesInOrderOnceTheToleranceHasPassed() {
+        buffer = createBuffer(100, 60_000);
+        assertThat(buffer.add("tenant", List.of(sample(HEAP, 0), sample(HEAP, 30))), empty());
+        // arrives late, but within the tolerance
+        assertThat(buffer.add("tenant", List.of(sample(HEAP, 10))), empty());
+        assertThat(times(buffer.add("tenant", List.of(sample(HEAP, 100)))), contains(0L, 10L, 30L));
+        assertEquals(1, metrics.getGauges().get("reorder.pendingSamples").getValue());
+        assertEquals(0, metrics.meter("reorder.outOfOrderDropped").getCount());
+    }
+
+    @Test
+    public void shouldDropDuplicatesAndSamplesOlderThanTheLastOneWritten() {
+        buffer = createBuffer(100, 0);
+        assertThat(times(buffer.add("tenant", List.of(sample(HEAP, 10), sample(HEAP, 0)))), contains(0L, 10L));
+        assertThat(buffer.add("tenant", List.of(sample(HEAP, 10), sample(HEAP, 5))), empty());
+        assertThat(times(buffer.add("tenant", List.of(sample(HEAP, 20), sample(HEAP, 20), sample(THREADS, 5)))), contains(20L, 5L));
+        assertEquals(2, metrics.meter("reorder.duplicatesDropped").getCount());
+        assertEquals(1, metrics.meter("reorder.outOfOrderDropped").getCount());
+    }
+
+    @Test
+    public void shouldFlushPendingSamplesPerTenant() {
+        buffer = createBuffer(1, 60_000);
+        buffer.add("a", List.of(sample(HEAP, 0), sample(HEAP, 30)));
+        // evicts the series of tenant a, its samples go with the next flush
+        buffer.add("b", List.of(sample(HEAP, 0), sample(HEAP, 50)));
+        buffer.flush(40_000);
+        assertThat(times(sent.get("a")), contains(0L, 30L));
+        assertThat(times(sent.get("b")), contains(0L));
+        buffer.close();
+        assertThat(times(sent.get("b")), contains(0L, 50L));
+    }
+
+    @Test
+    public void shouldSortSamplesPerSeries() {
+        final List<Sample> sorted = ReorderBuffer.sortPerSeries(List.of(sample(HEAP, 20), sample(THREADS, 10), sample(HEAP, 10), sample(THREADS, 0)));
+        assertThat(times(sorted), contains(10L, 20L, 0L, 10L));
+        assertEquals(HEAP, sorted.get(0).getMetric());
+        assertEquals(THREADS, sorted.get(2).getMetric());
+    }
+
+    private ReorderBuffer createBuffer(final int maxSeries, final long toleranceInMs) {
+        final CortexTSSConfig config = CortexTSSConfig.builder()
+                .reorderBufferMaxSeries(maxSeries)
+                .reorderToleranceInMs(toleranceInMs)
+                .build();
+        return new ReorderBuffer(() -> config,
+                (clientID, samples) -> sent.computeIfAbsent(clientID, c -> new ArrayList<>()).addAll(samples), metrics);
+    }
+
+    /** The times of the samples in seconds. */
+    private static List<Long> times(final List<Sample> samples) {
+        return samples.stream().map(sample -> sample.getTime().getEpochSecond()).collect(Collectors.toList());
+    }
+
+    private static Sample sample(final Metric metric, final long timeInSeconds) {
+        return ImmutableSample.builder()
+                .metric(metric)
+                .time(Instant.ofEpochSecond(timeInSeconds))
+                .value(1.0d)
+                .build();
+    }
+
+    private static Metric metric(final String name) {
+        return ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, name)
+                .intrinsicTag(IntrinsicTagNames.resourceId, "jvm")
+                .build();
+    }
+}
@@ -1,6 +1,8 @@
 package org.opennms.timeseries.cortex;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.opennms.timeseries.cortex.CortexTSS.CORTEX_TSS;
 
 import java.io.IOException;
@@ -10,6 +12,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import org.json.JSONObject;
@@ -20,6 +23,8 @@ import org.opennms.integration.api.v1.timeseries.Metric;
 import org.opennms.integration.api.v1.timeseries.Sample;
 import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
 
+import prometheus.PrometheusTypes;
+
 public class ResultMapperTest {
 
     private Metric expectedMetric;
@@ -62,6 +67,67 @@ public class ResultMapperTest {
         assertEquals(60, samples.size());
     }
 
+    @Test
+    public void shouldMapRangeQueryResultWithMillisecondsAndSpecialValues() throws IOException, URISyntaxException {
+        String json = readStringFromFile("rangeQueryResultMillis.json");
+        List<Sample> samples = ResultMapper.fromRangeQueryResult(json, expectedMetric);
+
+        assertEquals(7, samples.size());
+        assertEquals(Instant.ofEpochMilli(1602783564100L), samples.get(0).getTime());
+        assertEquals(Instant.ofEpochMilli(1602783564250L), samples.get(1).getTime());
+        assertEquals(Instant.ofEpochMilli(1602783564375L), samples.get(2).getTime());
+        assertEquals(Instant.ofEpochSecond(1602783565L), samples.get(6).getTime());
+
+        assertEquals(42.3d, samples.get(0).getValue(), 0.0d);
+        assertEquals(-0.000123d, samples.get(1).getValue(), 0.0d);
+        assertTrue(Double.isNaN(samples.get(2).getValue()));
+        assertEquals(Double.POSITIVE_INFINITY, samples.get(3).getValue(), 0.0d);
+        assertEquals(Double.NEGATIVE_INFINITY, samples.get(4).getValue(), 0.0d);
+        assertEquals(1.5e21d, samples.get(5).getValue(), 0.0d);
+        assertEquals(12345678901234567890d, samples.get(6).getValue(), 0.0d);
+    }
+
+    @Test
+    public void shouldParseDoublesLikeTheJdk() {
+        String[] values = {"0", "-0", "1", "42.3", "0.1", "3.141592653589793", "9007199254740993", "123456789.123456789",
+                "1e-7", "2.5E10", "1e22", "1e23", "4.9e-324", "1.7976931348623157e308", "0.000000000000000000000000123"};
+        for (String value : values) {
+            assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+                    Double.doubleToLongBits(ResultMapper.parseDouble(value.toCharArray(), 0, value.length())));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            String value = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+            assertEquals(value, Double.parseDouble(value), ResultMapper.parseDouble(value.toCharArray(), 0, value.length()), 0.0d);
+            value = Long.toString(random.nextInt(1000000)) + "." + Long.toString(random.nextInt(1000));
+            assertEquals(value, Double.parseDouble(value), ResultMapper.parseDouble(value.toCharArray(), 0, value.length()), 0.0d);
+        }
+    }
+
+    @Test
+    public void shouldParseEpochMillis() {
+        assertEquals(1602783564000L, parseEpochMillis("1602783564"));
+        assertEquals(1602783564000L, parseEpochMillis("1602783564.0"));
+        assertEquals(1602783564100L, parseEpochMillis("1602783564.1"));
+        assertEquals(1602783564123L, parseEpochMillis("1602783564.1239"));
+        assertEquals(-1500L, parseEpochMillis("-1.5"));
+        assertEquals(1602783564123L, parseEpochMillis("1.602783564123E9"));
+    }
+
+    private static long parseEpochMillis(String value) {
+        return ResultMapper.parseEpochMillis(value.toCharArray(), 0, value.length());
+    }
+
+    @Test
+    public void shouldMapMetadataQueryResult() {
+        String json = "{\"status\":\"success\",\"data\":{\"ifHCInOctets\":[{\"type\":\"counter\",\"help\":\"\",\"unit\":\"\"}],"
+                + "\"heapUsed\":[{\"type\":\"gauge\",\"help\":\"\",\"unit\":\"\"}]}}";
+        assertEquals(PrometheusTypes.MetricMetadata.MetricType.COUNTER, ResultMapper.fromMetadataQueryResult(json, "ifHCInOctets"));
+        assertEquals(PrometheusTypes.MetricMetadata.MetricType.GAUGE, ResultMapper.fromMetadataQueryResult(json, "heapUsed"));
+        assertNull(ResultMapper.fromMetadataQueryResult(json, "other"));
+        assertNull(ResultMapper.fromMetadataQueryResult("{\"status\":\"success\",\"data\":{}}", "heapUsed"));
+    }
+
     @Test
     public void testAppendExternalTagsToMetric() throws IOException, URISyntaxException {
         String json = readStringFromFile("seriesQueryResult.json");
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.MetaTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.Sample;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableSample;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class RollupsTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final Rollups rollups = new Rollups(List.of(300L, 3600L), metrics);
+
+    @Test
+    public void shouldEmitAggregatesOfCompletedWindows() {
+        final Metric gauge = metric("heap", Metric.Mtype.gauge);
+        // every minute for 2 hours, the value is the minute
+        final List<Sample> rollupSamples = rollups.add("default", samples(gauge, 0, 120));
+
+        // 23 complete 5 minute windows and one complete hour
+        final Map<String, List<Sample>> bySeries = rollupSamples.stream()
+                .collect(Collectors.groupingBy(sample -> sample.getMetric().getFirstTagByKey(IntrinsicTagNames.name).getValue()));
+        assertEquals(23, bySeries.get("heap:5m_max").size());
+        assertEquals(1, bySeries.get("heap:1h_max").size());
+
+        final Sample firstMax = bySeries.get("heap:5m_max").get(0);
+        assertEquals(Instant.ofEpochSecond(300), firstMax.getTime());
+        assertEquals(4.0d, firstMax.getValue(), 0.0d);
+        assertEquals(0.0d, bySeries.get("heap:5m_min").get(0).getValue(), 0.0d);
+        assertEquals(10.0d, bySeries.get("heap:5m_sum").get(0).getValue(), 0.0d);
+        assertEquals(5.0d, bySeries.get("heap:5m_count").get(0).getValue(), 0.0d);
+        assertEquals(Instant.ofEpochSecond(3600), bySeries.get("heap:1h_count").get(0).getTime());
+        assertEquals(60.0d, bySeries.get("heap:1h_count").get(0).getValue(), 0.0d);
+        assertEquals("jvm", firstMax.getMetric().getFirstTagByKey(IntrinsicTagNames.resourceId).getValue());
+        assertEquals(Metric.Mtype.gauge.name(), firstMax.getMetric().getFirstTagByKey(MetaTagNames.mtype).getValue());
+
+        // the next sample completes the last 5 minutes and the second hour
+        assertEquals(8, rollups.add("default", samples(gauge, 120, 1)).size());
+        assertEquals(24 * 4 + 2 * 4, metrics.meter("rollups.samplesEmitted").getCount());
+    }
+
+    @Test
+    public void shouldOnlyEmitTheMaxOfCounters() {
+        final Metric counter = metric("ifHCInOctets", Metric.Mtype.counter);
+        final List<Sample> rollupSamples = rollups.add("default", samples(counter, 0, 11));
+        assertEquals(2, rollupSamples.size());
+        assertEquals("ifHCInOctets:5m_max", rollupSamples.get(0).getMetric().getFirstTagByKey(IntrinsicTagNames.name).getValue());
+        assertEquals(9.0d, rollupSamples.get(1).getValue(), 0.0d);
+    }
+
+    @Test
+    public void shouldSelectTheCoarsestIntervalThatFits() {
+        assertEquals(-1, Rollups.selectInterval(List.of(300L, 3600L), 60));
+        assertEquals(300, Rollups.selectInterval(List.of(300L, 3600L), 300));
+        assertEquals(300, Rollups.selectInterval(List.of(300L, 3600L), 3599));
+        assertEquals(3600, Rollups.selectInterval(List.of(300L, 3600L), 86400));
+        assertEquals("90s", Rollups.toDuration(90));
+        // the window ending at 600s is emitted with the first sample after it
+        assertEquals(300_000, Rollups.writtenUntilMs(600_000, 300));
+        assertEquals(300_000, Rollups.writtenUntilMs(899_999, 300));
+        assertEquals("1d", Rollups.toDuration(86400));
+        assertTrue(Rollups.isRollup(Rollups.toRollupMetric(metric("heap", Metric.Mtype.gauge), 300, Rollups.COUNT)));
+        assertFalse(Rollups.isRollup(metric("heap", Metric.Mtype.gauge)));
+        assertFalse(Rollups.isRollup(metric("heap:used_max", Metric.Mtype.gauge)));
+        assertEquals(metric("heap", Metric.Mtype.gauge).getKey(),
+                Rollups.toSeriesKey(Rollups.toRollupMetric(metric("heap", Metric.Mtype.gauge), 300, Rollups.MAX)));
+    }
+
+    /** Returns a sample every minute from the given minute on, with the minute as value. */
+    private static List<Sample> samples(final Metric metric, final int fromMinute, final int count) {
+        final List<Sample> samples = new ArrayList<>();
+        for (int minute = fromMinute; minute < fromMinute + count; minute++) {
+            samples.add(ImmutableSample.builder()
+                    .metric(metric)
+                    .time(Instant.ofEpochSecond(minute * 60L))
+                    .value((double) minute)
+                    .build());
+        }
+        return samples;
+    }
+
+    private static Metric metric(final String name, final Metric.Mtype type) {
+        return ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, name)
+                .intrinsicTag(IntrinsicTagNames.resourceId, "jvm")
+                .metaTag(MetaTagNames.mtype, type.name())
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Sample;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class SelfMonitoringReporterTest {
+
+    @Test
+    public void shouldWriteMetricsWithReservedPrefix() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.meter("samplesWritten").mark(5);
+        registry.timer("write.latency").update(20, TimeUnit.MILLISECONDS);
+
+        List<Sample> written = new ArrayList<>();
+
+        new SelfMonitoringReporter(registry, written::addAll).report();
+
+        assertTrue(written.stream()
+                .map(s -> s.getMetric().getFirstTagByKey(IntrinsicTagNames.name).getValue())
+                .allMatch(name -> name.startsWith(SelfMonitoringReporter.METRIC_NAME_PREFIX)));
+        Sample count = written.stream()
+                .filter(s -> "opennms_cortex_tss_samplesWritten_count".equals(s.getMetric().getFirstTagByKey(IntrinsicTagNames.name).getValue()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(5.0d, count.getValue(), 0.0d);
+        Sample max = written.stream()
+                .filter(s -> "opennms_cortex_tss_write_latency_max".equals(s.getMetric().getFirstTagByKey(IntrinsicTagNames.name).getValue()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(20.0d, max.getValue(), 0.001d);
+    }
+
+    @Test
+    public void shouldWriteTenantsEndpointsAndInstanceAsLabels() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.meter("tenants.customer1.samplesWritten").mark(3);
+        registry.meter("tenants.customer.with.dots.samplesWritten").mark(4);
+        registry.meter("endpoints.write.cortex1_9009_api_prom_push.failures").mark(2);
+        registry.timer("write.latency.customer1.2xx").update(10, TimeUnit.MILLISECONDS);
+
+        List<Sample> written = new ArrayList<>();
+
+        new SelfMonitoringReporter(registry, "opennms1", written::addAll).report();
+
+        assertEquals(Map.of("tenant", "customer1", "instance", "opennms1"),
+                labels(written, "opennms_cortex_tss_tenants_samplesWritten_count", 3.0d));
+        assertEquals(Map.of("tenant", "customer.with.dots", "instance", "opennms1"),
+                labels(written, "opennms_cortex_tss_tenants_samplesWritten_count", 4.0d));
+        assertEquals(Map.of("endpoint", "cortex1_9009_api_prom_push", "instance", "opennms1"),
+                labels(written, "opennms_cortex_tss_endpoints_write_failures_count", 2.0d));
+        assertEquals(Map.of("tenant", "customer1", "status", "2xx", "instance", "opennms1"),
+                labels(written, "opennms_cortex_tss_write_tenantLatency_count", 1.0d));
+        assertTrue(written.stream().allMatch(s -> SelfMonitoringReporter.RESOURCE_ID.equals(
+                s.getMetric().getFirstTagByKey(IntrinsicTagNames.resourceId).getValue())));
+    }
+
+    @Test
+    public void shouldKeepFixedNamesAsTheyAre() {
+        SelfMonitoringReporter.Series series = SelfMonitoringReporter.toSeries("write.latency");
+        assertEquals("write.latency", series.getName());
+        assertTrue(series.getLabels().isEmpty());
+        assertEquals("cardinality.activeSeries", SelfMonitoringReporter.toSeries("cardinality.activeSeries").getName());
+    }
+
+    /** The labels besides name and resourceId of the sample with the given name and value. */
+    private static Map<String, String> labels(final List<Sample> samples, final String name, final double value) {
+        final Sample sample = samples.stream()
+                .filter(s -> name.equals(s.getMetric().getFirstTagByKey(IntrinsicTagNames.name).getValue()) && s.getValue() == value)
+                .findFirst()
+                .orElseThrow();
+        final Map<String, String> labels = new HashMap<>();
+        sample.getMetric().getIntrinsicTags().stream()
+                .filter(tag -> !IntrinsicTagNames.name.equals(tag.getKey()) && !IntrinsicTagNames.resourceId.equals(tag.getKey()))
+                .forEach(tag -> labels.put(tag.getKey(), tag.getValue()));
+        return labels;
+    }
+}
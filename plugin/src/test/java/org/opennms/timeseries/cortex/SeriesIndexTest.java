@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.integration.api.v1.timeseries.IntrinsicTagNames;
+import org.opennms.integration.api.v1.timeseries.Metric;
+import org.opennms.integration.api.v1.timeseries.TagMatcher;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableMetric;
+import org.opennms.integration.api.v1.timeseries.immutables.ImmutableTagMatcher;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class SeriesIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long NOT_WRITTEN_BEFORE = NOW - TimeUnit.DAYS.toMillis(90);
+
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @Test
+    public void shouldFindIndexedSeriesOnceSeeded() throws IOException {
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth0/mib2-X-interfaces", "counter"), NOW);
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth1/mib2-X-interfaces", "counter"), NOW);
+            index.add("default", metric("ifHCOutOctets", "snmp/1/eth0/mib2-X-interfaces", "counter"), NOW);
+            index.add("customer1", metric("ifHCInOctets", "snmp/2/eth0/mib2-X-interfaces", "counter"), NOW);
+            final List<TagMatcher> inOctets = List.of(equals(IntrinsicTagNames.name, "ifHCInOctets"));
+            final List<TagMatcher> inOctetsOfEth1 = List.of(equals(IntrinsicTagNames.name, "ifHCInOctets"),
+                    regex(IntrinsicTagNames.resourceId, "snmp/1/eth1/.*"));
+            final List<TagMatcher> inOctetsNotOfEth1 = List.of(equals(IntrinsicTagNames.name, "ifHCInOctets"),
+                    ImmutableTagMatcher.builder().type(TagMatcher.Type.NOT_EQUALS_REGEX).key(IntrinsicTagNames.resourceId)
+                            .value("snmp/1/eth1/.*").build());
+
+            // Cortex needs to be asked first, it might know series written by others
+            assertNull(index.find("default", inOctets, NOT_WRITTEN_BEFORE, NOW));
+            assertEquals(2, index.seed("default", inOctets, List.of(), NOT_WRITTEN_BEFORE, NOW).size());
+            assertEquals(2, index.find("default", inOctets, NOT_WRITTEN_BEFORE, NOW).size());
+            index.seed("default", inOctetsOfEth1, List.of(), NOT_WRITTEN_BEFORE, NOW);
+            assertEquals(1, index.find("default", inOctetsOfEth1, NOT_WRITTEN_BEFORE, NOW).size());
+            index.seed("default", inOctetsNotOfEth1, List.of(), NOT_WRITTEN_BEFORE, NOW);
+            assertEquals(1, index.find("default", inOctetsNotOfEth1, NOT_WRITTEN_BEFORE, NOW).size());
+            // seeded per tenant
+            assertNull(index.find("customer1", inOctets, NOT_WRITTEN_BEFORE, NOW));
+            index.seed("customer1", inOctets, List.of(), NOT_WRITTEN_BEFORE, NOW);
+            assertEquals(1, index.find("customer1", inOctets, NOT_WRITTEN_BEFORE, NOW).size());
+            // Cortex doesn't know it either
+            final List<TagMatcher> inErrors = List.of(equals(IntrinsicTagNames.name, "ifInErrors"));
+            index.seed("default", inErrors, List.of(), NOT_WRITTEN_BEFORE, NOW);
+            assertEquals(0, index.find("default", inErrors, NOT_WRITTEN_BEFORE, NOW).size());
+            // without equals matcher the index can't tell
+            final List<TagMatcher> hcOctets = List.of(regex(IntrinsicTagNames.name, "ifHC.*"));
+            index.seed("default", hcOctets, List.of(), NOT_WRITTEN_BEFORE, NOW);
+            assertNull(index.find("default", hcOctets, NOT_WRITTEN_BEFORE, NOW));
+            assertEquals(4, index.size());
+            assertEquals(5, metrics.meter("seriesIndex.queriesAnswered").getCount());
+            assertEquals(3, metrics.meter("seriesIndex.queriesForwarded").getCount());
+        }
+    }
+
+    @Test
+    public void shouldAddTheSeriesFoundInCortexWhenSeeding() throws IOException {
+        final List<TagMatcher> inOctets = List.of(equals(IntrinsicTagNames.name, "ifHCInOctets"));
+        final Metric writtenByOthers = metric("ifHCInOctets", "snmp/1/eth1/mib2-X-interfaces", "counter");
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth0/mib2-X-interfaces", "counter"), NOW);
+            assertEquals(2, index.seed("default", inOctets, List.of(writtenByOthers), NOT_WRITTEN_BEFORE, NOW).size());
+            assertEquals(2, index.find("default", inOctets, NOT_WRITTEN_BEFORE, NOW).size());
+            // seeded again after the interval
+            assertNull(index.find("default", inOctets, NOT_WRITTEN_BEFORE, NOW + SeriesIndex.RESEED_INTERVAL_MS));
+        }
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            assertEquals(2, index.find("default", inOctets, NOT_WRITTEN_BEFORE, NOW).size());
+            assertEquals(writtenByOthers, index.get("default", writtenByOthers.getKey()));
+        }
+    }
+
+    @Test
+    public void shouldBoundTheSeededQueries() throws IOException {
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            for (int i = 0; i <= SeriesIndex.MAX_SEEDED_QUERIES; i++) {
+                index.seed("default", List.of(equals(IntrinsicTagNames.name, "metric" + i)), List.of(), NOT_WRITTEN_BEFORE, NOW);
+            }
+            assertTrue(index.seededQueries() <= SeriesIndex.MAX_SEEDED_QUERIES);
+            // the last one seeded is still answered from the index
+            assertEquals(0, index.find("default", List.of(equals(IntrinsicTagNames.name, "metric" + SeriesIndex.MAX_SEEDED_QUERIES)),
+                    NOT_WRITTEN_BEFORE, NOW).size());
+        }
+    }
+
+    @Test
+    public void shouldOnlyFindSeriesWrittenWithinTheLookback() throws IOException {
+        final List<TagMatcher> inOctets = List.of(equals(IntrinsicTagNames.name, "ifHCInOctets"));
+        final Metric old = metric("ifHCInOctets", "snmp/1/eth0/mib2-X-interfaces", "counter");
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            index.add("default", old, NOW - TimeUnit.DAYS.toMillis(100));
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth1/mib2-X-interfaces", "counter"), NOW);
+            index.seed("default", inOctets, List.of(), NOT_WRITTEN_BEFORE, NOW);
+            assertEquals(1, index.find("default", inOctets, NOT_WRITTEN_BEFORE, NOW).size());
+
+            // written again
+            index.add("default", old, NOW);
+            assertEquals(2, index.find("default", inOctets, NOT_WRITTEN_BEFORE, NOW).size());
+        }
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            assertEquals(2, index.find("default", inOctets, NOT_WRITTEN_BEFORE, NOW).size());
+        }
+    }
+
+    @Test
+    public void shouldKeepSeriesAfterReopening() throws IOException {
+        final Metric metric = metric("ifHCInOctets", "snmp/1/eth0/mib2-X-interfaces", "counter");
+        final Metric changed = metric("ifHCInOctets", "snmp/1/eth0/mib2-X-interfaces", "gauge");
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            index.add("default", metric("ifHCOutOctets", "snmp/1/eth0/mib2-X-interfaces", "counter"), NOW);
+            index.add("default", metric, NOW);
+            index.add("default", metric, NOW);
+            index.add("default", changed, NOW);
+            index.remove("default", metric("ifHCOutOctets", "snmp/1/eth0/mib2-X-interfaces", "counter"));
+            index.seed("default", List.of(equals("mtype", "gauge")), List.of(), NOT_WRITTEN_BEFORE, NOW);
+            index.seed("default", List.of(equals("mtype", "counter")), List.of(), NOT_WRITTEN_BEFORE, NOW);
+            index.seed("default", List.of(equals(IntrinsicTagNames.name, "ifHCOutOctets")), List.of(), NOT_WRITTEN_BEFORE, NOW);
+        }
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            assertEquals(1, index.size());
+            assertEquals(changed, index.get("default", metric.getKey()));
+            assertEquals("gauge", index.get("default", metric.getKey()).getFirstTagByKey("mtype").getValue());
+            assertEquals("value", index.get("default", metric.getKey()).getFirstTagByKey("external").getValue());
+            assertEquals(List.of(changed), index.find("default", List.of(equals("mtype", "gauge")), NOT_WRITTEN_BEFORE, NOW));
+            assertEquals(List.of(), index.find("default", List.of(equals("mtype", "counter")), NOT_WRITTEN_BEFORE, NOW));
+            assertEquals(List.of(), index.find("default", List.of(equals(IntrinsicTagNames.name, "ifHCOutOctets")), NOT_WRITTEN_BEFORE, NOW));
+        }
+    }
+
+    @Test
+    public void shouldCompactWhenReopening() throws IOException {
+        final int bytes;
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth0/mib2-X-interfaces", "counter"), NOW);
+            for (int i = 0; i < 10; i++) {
+                index.add("default", metric("ifHCInOctets", "snmp/1/eth1/mib2-X-interfaces", "counter" + i), NOW);
+            }
+            bytes = index.getBytes();
+        }
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            assertEquals(2, index.size());
+            assertTrue(index.getBytes() < bytes / 2);
+            assertEquals("counter9", index.get("default", metric("ifHCInOctets", "snmp/1/eth1/mib2-X-interfaces", "counter").getKey())
+                    .getFirstTagByKey("mtype").getValue());
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth2/mib2-X-interfaces", "counter"), NOW);
+        }
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            assertEquals(3, index.size());
+            assertFalse(Files.exists(file().resolveSibling(SeriesIndex.FILE_NAME + ".tmp")));
+        }
+    }
+
+    @Test
+    public void shouldGrowTheFile() throws IOException {
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            for (int i = 0; i < 20_000; i++) {
+                index.add("default", metric("ifHCInOctets", "snmp/1/eth" + i + "/mib2-X-interfaces", "counter"), NOW);
+            }
+            index.seed("default", List.of(equals(IntrinsicTagNames.name, "ifHCInOctets")), List.of(), NOT_WRITTEN_BEFORE, NOW);
+        }
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            assertEquals(20_000, index.size());
+            assertEquals(20_000, index.find("default", List.of(equals(IntrinsicTagNames.name, "ifHCInOctets")), NOT_WRITTEN_BEFORE, NOW).size());
+        }
+    }
+
+    @Test
+    public void shouldDropTruncatedRecords() throws IOException {
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth0/mib2-X-interfaces", "counter"), NOW);
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth1/mib2-X-interfaces", "counter"), NOW);
+        }
+        // claim more records than there are, as if a write was interrupted
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, Files.size(file()) + 100), 8);
+        }
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            assertEquals(2, index.size());
+            index.add("default", metric("ifHCInOctets", "snmp/1/eth2/mib2-X-interfaces", "counter"), NOW);
+        }
+        try (SeriesIndex index = SeriesIndex.open(file(), metrics)) {
+            assertEquals(3, index.size());
+        }
+    }
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve(SeriesIndex.FILE_NAME);
+    }
+
+    private static Metric metric(final String name, final String resourceId, final String mtype) {
+        return ImmutableMetric.builder()
+                .intrinsicTag(IntrinsicTagNames.name, name)
+                .intrinsicTag(IntrinsicTagNames.resourceId, resourceId)
+                .metaTag("mtype", mtype)
+                .externalTag("external", "value")
+                .build();
+    }
+
+    private static TagMatcher equals(final String key, final String value) {
+        return ImmutableTagMatcher.builder().key(key).value(value).build();
+    }
+
+    private static TagMatcher regex(final String key, final String value) {
+        return ImmutableTagMatcher.builder().type(TagMatcher.Type.EQUALS_REGEX).key(key).value(value).build();
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpillFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void canWriteAndReadEntries() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("spill").resolve(SpillFile.FILE_NAME);
+        SpillFile.append(file, List.of(new SpillFile.Entry("http://cortex1/push", null, 2, new byte[]{1, 2, 3})));
+        // appends to the existing file
+        SpillFile.append(file, List.of(new SpillFile.Entry("http://cortex2/push", "customer1", 5, new byte[]{4},
+                CortexTSSConfig.RemoteWriteVersion.V2)));
+
+        Path replayFile = file.resolveSibling(SpillFile.REPLAY_FILE_NAME);
+        assertTrue(SpillFile.moveToReplayFile(file, replayFile));
+        assertFalse(Files.exists(file));
+
+        List<SpillFile.Entry> entries = SpillFile.read(replayFile);
+        assertEquals(2, entries.size());
+        assertEquals("http://cortex1/push", entries.get(0).getUrl());
+        assertNull(entries.get(0).getClientID());
+        assertEquals(2, entries.get(0).getNumberOfSamples());
+        assertArrayEquals(new byte[]{1, 2, 3}, entries.get(0).getWriteRequestCompressed());
+        assertEquals(CortexTSSConfig.RemoteWriteVersion.V1, entries.get(0).getRemoteWriteVersion());
+        assertEquals("customer1", entries.get(1).getClientID());
+        assertEquals(5, entries.get(1).getNumberOfSamples());
+        assertEquals(CortexTSSConfig.RemoteWriteVersion.V2, entries.get(1).getRemoteWriteVersion());
+    }
+
+    @Test
+    public void shouldRewriteTheEntriesLeft() throws IOException {
+        Path file = folder.getRoot().toPath().resolve(SpillFile.REPLAY_FILE_NAME);
+        SpillFile.append(file, List.of(new SpillFile.Entry("http://cortex1/push", null, 2, new byte[]{1}),
+                new SpillFile.Entry("http://cortex1/push", null, 3, new byte[]{2})));
+
+        SpillFile.rewrite(file, SpillFile.read(file).subList(1, 2));
+        List<SpillFile.Entry> entries = SpillFile.read(file);
+        assertEquals(1, entries.size());
+        assertEquals(3, entries.get(0).getNumberOfSamples());
+
+        SpillFile.rewrite(file, List.of());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void shouldSkipTruncatedEntry() throws IOException {
+        Path file = folder.getRoot().toPath().resolve(SpillFile.FILE_NAME);
+        SpillFile.append(file, List.of(new SpillFile.Entry("http://cortex1/push", null, 2, new byte[]{1, 2, 3}),
+                new SpillFile.Entry("http://cortex1/push", null, 2, new byte[100])));
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10), StandardOpenOption.TRUNCATE_EXISTING);
+
+        List<SpillFile.Entry> entries = SpillFile.read(file);
+        assertEquals(1, entries.size());
+    }
+
+    @Test
+    public void shouldReturnNothingWithoutFile() throws IOException {
+        assertEquals(0, SpillFile.read(folder.getRoot().toPath().resolve(SpillFile.FILE_NAME)).size());
+        assertFalse(SpillFile.moveToReplayFile(folder.getRoot().toPath().resolve(SpillFile.FILE_NAME),
+                folder.getRoot().toPath().resolve(SpillFile.REPLAY_FILE_NAME)));
+    }
+}
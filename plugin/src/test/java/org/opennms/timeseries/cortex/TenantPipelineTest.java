@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class TenantPipelineTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @Test
+    public void shouldLimitSampleRate() {
+        TenantPipeline pipeline = new TenantPipeline("customer1", CortexTSSConfig.builder()
+                .tenantMaxSamplesPerSecond(100)
+                .build(), metrics);
+        assertTrue(pipeline.tryAcquireSamples(100));
+        assertFalse(pipeline.tryAcquireSamples(100));
+        assertEquals(100, metrics.meter("tenants.customer1.samplesRateLimited").getCount());
+    }
+
+    @Test
+    public void shouldRejectCallsBeyondQueue() throws Exception {
+        TenantPipeline pipeline = new TenantPipeline("customer1", CortexTSSConfig.builder()
+                .tenantMaxConcurrentCalls(1)
+                .tenantMaxQueuedCalls(1)
+                .bulkheadMaxWaitDurationInMs(10_000)
+                .build(), metrics);
+
+        // occupies the only slot
+        CompletableFuture<Void> running = new CompletableFuture<>();
+        pipeline.execute(() -> running);
+        // waits for the slot
+        CompletableFuture<Void> queued = new CompletableFuture<>();
+        Thread waiting = new Thread(() -> pipeline.execute(() -> queued));
+        waiting.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> getPendingCalls() == 2);
+
+        CompletionStage<Void> rejected = pipeline.execute(() -> CompletableFuture.completedFuture(null));
+        assertTrue(rejected.toCompletableFuture().isCompletedExceptionally());
+        assertEquals(1, metrics.meter("tenants.customer1.callsRejected").getCount());
+        assertEquals(0, metrics.getGauges().get("tenants.customer1.availableConcurrentCalls").getValue());
+
+        running.complete(null);
+        waiting.join(5_000);
+        queued.complete(null);
+        assertEquals(0, getPendingCalls());
+    }
+
+    @Test
+    public void shouldOnlyRemoveOwnMetrics() {
+        TenantPipeline pipeline = new TenantPipeline("customer1", CortexTSSConfig.builder().build(), metrics);
+        new TenantPipeline("customer1.eu", CortexTSSConfig.builder().build(), metrics);
+        metrics.timer("write.latency.customer1.2xx");
+        metrics.timer("write.latency.customer1.eu.2xx");
+        metrics.timer("write.latency");
+
+        pipeline.removeMetrics();
+        assertFalse(metrics.getNames().contains("tenants.customer1.samplesWritten"));
+        assertFalse(metrics.getNames().contains("write.latency.customer1.2xx"));
+        assertTrue(metrics.getNames().contains("tenants.customer1.eu.samplesWritten"));
+        assertTrue(metrics.getNames().contains("write.latency.customer1.eu.2xx"));
+        assertTrue(metrics.getNames().contains("write.latency"));
+    }
+
+    private int getPendingCalls() {
+        return (Integer) metrics.getGauges().get("tenants.customer1.pendingCalls").getValue();
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2026 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2026 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.timeseries.cortex;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Test counterpart of {@link XorChunkDecoder}, a port of the xorAppender of
+ * https://github.com/prometheus/prometheus/blob/main/tsdb/chunkenc/xor.go.
+ */
+public class XorChunkEncoder {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int currentByte;
+    private int bitsInCurrentByte;
+
+    private int numSamples;
+    private long t;
+    private long tDelta;
+    private long valueBits;
+    private int leading = 0xff;
+    private int trailing;
+
+    public XorChunkEncoder append(final long timestampInMs, final double value) {
+        final long bits = Double.doubleToRawLongBits(value);
+        if (numSamples == 0) {
+            writeVarint(timestampInMs);
+            writeBits(bits, 64);
+        } else if (numSamples == 1) {
+            tDelta = timestampInMs - t;
+            writeUvarint(tDelta);
+            writeValue(bits);
+        } else {
+            final long newDelta = timestampInMs - t;
+            final long dod = newDelta - tDelta;
+            if (dod == 0) {
+                writeBits(0, 1);
+            } else if (bitRange(dod, 14)) {
+                writeBits(0b10, 2);
+                writeBits(dod, 14);
+            } else if (bitRange(dod, 17)) {
+                writeBits(0b110, 3);
+                writeBits(dod, 17);
+            } else if (bitRange(dod, 20)) {
+                writeBits(0b1110, 4);
+                writeBits(dod, 20);
+            } else {
+                writeBits(0b1111, 4);
+                writeBits(dod, 64);
+            }
+            tDelta = newDelta;
+            writeValue(bits);
+        }
+        t = timestampInMs;
+        valueBits = bits;
+        numSamples++;
+        return this;
+    }
+
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    public byte[] toByteArray() {
+        final byte[] body = out.toByteArray();
+        final int length = body.length + (bitsInCurrentByte > 0 ? 1 : 0);
+        final byte[] chunk = new byte[2 + length];
+        chunk[0] = (byte) (numSamples >>> 8);
+        chunk[1] = (byte) numSamples;
+        System.arraycopy(body, 0, chunk, 2, body.length);
+        if (bitsInCurrentByte > 0) {
+            chunk[chunk.length - 1] = (byte) (currentByte << (8 - bitsInCurrentByte));
+        }
+        return chunk;
+    }
+
+    private static boolean bitRange(final long x, final int nbits) {
+        return -((1L << (nbits - 1)) - 1) <= x && x <= 1L << (nbits - 1);
+    }
+
+    private void writeValue(final long bits) {
+        final long delta = bits ^ valueBits;
+        if (delta == 0) {
+            writeBits(0, 1);
+            return;
+        }
+        writeBits(1, 1);
+        int newLeading = Long.numberOfLeadingZeros(delta);
+        final int newTrailing = Long.numberOfTrailingZeros(delta);
+        if (newLeading >= 32) {
+            newLeading = 31;
+        }
+        if (leading != 0xff && newLeading >= leading && newTrailing >= trailing) {
+            writeBits(0, 1);
+            writeBits(delta >>> trailing, 64 - leading - trailing);
+            return;
+        }
+        leading = newLeading;
+        trailing = newTrailing;
+        writeBits(1, 1);
+        writeBits(newLeading, 5);
+        final int significantBits = 64 - newLeading - newTrailing;
+        // 64 significant bits overflow the 6 bits and are written as 0
+        writeBits(significantBits, 6);
+        writeBits(delta >>> newTrailing, significantBits);
+    }
+
+    private void writeUvarint(long value) {
+        while ((value & ~0x7fL) != 0) {
+            writeBits((value & 0x7f) | 0x80, 8);
+            value >>>= 7;
+        }
+        writeBits(value, 8);
+    }
+
+    private void writeVarint(final long value) {
+        writeUvarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeBits(final long value, final int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            currentByte = (currentByte << 1) | (int) ((value >>> i) & 1);
+            bitsInCurrentByte++;
+            if (bitsInCurrentByte == 8) {
+                out.write(currentByte);
+                currentByte = 0;
+                bitsInCurrentByte = 0;
+            }
+        }
+    }
+}